@@ -10,6 +10,7 @@ import com.tyron.completion.index.CompilerService;
 import com.tyron.completion.java.JavaCompilerProvider;
 import com.tyron.completion.java.JavaCompletionProvider;
 import com.tyron.completion.main.CompletionEngine;
+import com.tyron.completion.xml.XmlCompletionProvider;
 
 public class MainActivity extends AppCompatActivity {
     @Override
@@ -23,6 +24,7 @@ public class MainActivity extends AppCompatActivity {
             CompletionEngine.getInstance().clear();
             CompilerService.getInstance().registerIndexProvider(JavaCompilerProvider.KEY, new JavaCompilerProvider());
             CompletionEngine.getInstance().registerCompletionProvider(new JavaCompletionProvider());
+            CompletionEngine.getInstance().registerCompletionProvider(new XmlCompletionProvider());
         });
         startupManager.startup();
 
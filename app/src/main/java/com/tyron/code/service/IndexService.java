@@ -84,6 +84,18 @@ public class IndexService extends Service {
                 mMainHandler.post(() -> listener.onTaskStarted(message));
             }
 
+            @Override
+            public void onProgress(String message, int progress, int max) {
+                Notification notification = new NotificationCompat.Builder(IndexService.this, "Index")
+                        .setProgress(max, progress, false)
+                        .setSmallIcon(R.drawable.ic_launcher)
+                        .setContentTitle("Indexing")
+                        .setContentText(message)
+                        .build();
+                updateNotification(notification);
+                mMainHandler.post(() -> listener.onProgress(message, progress, max));
+            }
+
             @Override
             public void onComplete(Project project, boolean success, String message) {
                 mMainHandler.post(() -> listener.onComplete(project, success, message));
@@ -0,0 +1,158 @@
+package com.tyron.code.ui.editor.language;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
+
+import java.util.Arrays;
+
+import io.github.rosemoe.sora.text.IncrementalLexer;
+
+/**
+ * Adapts an ANTLR lexer to {@link IncrementalLexer}. The state of a line is the mode of the
+ * lexer and the type of the last token that is not a whitespace.
+ *
+ * ANTLR lexers may read the text after the end of a token, how far the lexer has read is
+ * reported to the session. They also skip some characters such as indentation, so the start
+ * of a line that begins with skipped characters or inside a whitespace token is reported to
+ * the session as a token to let lexing restart there.
+ */
+public abstract class AntlrIncrementalLexer implements IncrementalLexer.Lexer<AntlrIncrementalLexer.State> {
+
+    private static final int[] EMPTY_STACK = new int[0];
+
+    private int mModeBefore;
+    private int[] mModeStackBefore = EMPTY_STACK;
+
+    protected int mPreviousType;
+    /**
+     * Line of the last token that is not a whitespace, -1 if it is before the line where
+     * lexing started
+     */
+    protected int mPreviousLine;
+
+    protected abstract Lexer createLexer(CharStream stream);
+
+    /**
+     * Add the spans and blocks of the token, the session is at the start of the token
+     */
+    protected abstract void handleToken(Token token, IncrementalLexer.Session session);
+
+    /**
+     * @return Whether the token does not change the previous token, whitespace tokens
+     * that span several lines are split at every line
+     */
+    protected boolean isWhitespace(int type) {
+        return false;
+    }
+
+    /**
+     * @return Whether lexing can restart before the next token with the current state
+     */
+    protected boolean canRestart() {
+        return true;
+    }
+
+    @Override
+    public State getInitialState() {
+        return new State(Lexer.DEFAULT_MODE, EMPTY_STACK, Token.INVALID_TYPE);
+    }
+
+    @Override
+    public State getState() {
+        if (!canRestart()) {
+            return null;
+        }
+        return new State(mModeBefore, mModeStackBefore, mPreviousType);
+    }
+
+    @Override
+    public void lex(CharSequence text, int offset, State state, IncrementalLexer.Session session) {
+        CharSequenceCharStream stream = new CharSequenceCharStream(text, offset);
+        Lexer lexer = createLexer(stream);
+        lexer._mode = state.mMode;
+        for (int mode : state.mModeStack) {
+            lexer._modeStack.push(mode);
+        }
+        mPreviousType = state.mPreviousType;
+        mPreviousLine = -1;
+
+        int end = offset;
+        while (true) {
+            mModeBefore = lexer._mode;
+            mModeStackBefore = lexer._modeStack.isEmpty() ? EMPTY_STACK : lexer._modeStack.toArray();
+
+            Token token = lexer.nextToken();
+            if (token == null || token.getType() == Token.EOF) {
+                break;
+            }
+            int start = token.getStartIndex();
+            session.setReadEnd(stream.getReadEnd());
+            if (!reportLineStart(text, end, start, session) || !session.nextToken(start)) {
+                break;
+            }
+            handleToken(token, session);
+
+            end = token.getStopIndex() + 1;
+            int type = token.getType();
+            if (isWhitespace(type)) {
+                if (!reportLineStart(text, start + 1, end, session)) {
+                    break;
+                }
+            } else {
+                mPreviousType = type;
+                mPreviousLine = session.getLine();
+            }
+        }
+    }
+
+    /**
+     * Report the last line that starts in the given range if only spaces follow it in the range
+     *
+     * @return Whether lexing should continue
+     */
+    private static boolean reportLineStart(CharSequence text, int start, int end,
+                                           IncrementalLexer.Session session) {
+        for (int i = end - 1; i >= Math.max(start, 1); i--) {
+            char c = text.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\f' && c != '\r') {
+                return true;
+            }
+            if (text.charAt(i - 1) == '\n') {
+                return session.nextToken(i);
+            }
+        }
+        return true;
+    }
+
+    public static final class State {
+
+        private final int mMode;
+        private final int[] mModeStack;
+        private final int mPreviousType;
+
+        public State(int mode, int[] modeStack, int previousType) {
+            mMode = mode;
+            mModeStack = modeStack;
+            mPreviousType = previousType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof State)) {
+                return false;
+            }
+            State state = (State) o;
+            return mMode == state.mMode && mPreviousType == state.mPreviousType &&
+                    Arrays.equals(mModeStack, state.mModeStack);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * mMode + mPreviousType) + Arrays.hashCode(mModeStack);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.tyron.code.ui.editor.language;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * A {@link CharStream} that reads the text directly instead of copying its code points
+ * like {@link org.antlr.v4.runtime.CharStreams#fromString(String)}, so a lexer can start
+ * anywhere in the text. Indices are the indices of the text, the stream starts at the given
+ * offset.
+ */
+public class CharSequenceCharStream implements CharStream {
+
+    private final CharSequence mText;
+    private final int mLength;
+    private int mIndex;
+    private int mReadEnd;
+
+    public CharSequenceCharStream(CharSequence text, int offset) {
+        mText = text;
+        mLength = text.length();
+        mIndex = offset;
+        mReadEnd = offset;
+    }
+
+    /**
+     * @return The end of the text that has been read by {@link #LA(int)}, exclusive. It is
+     * after the end of the text if the end has been reached.
+     */
+    public int getReadEnd() {
+        return mReadEnd;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = Math.max(interval.a, 0);
+        int end = Math.min(interval.b + 1, mLength);
+        if (start >= end) {
+            return "";
+        }
+        return mText.subSequence(start, end).toString();
+    }
+
+    @Override
+    public void consume() {
+        if (mIndex >= mLength) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        mIndex++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        int index = i < 0 ? mIndex + i : mIndex + i - 1;
+        if (index >= mReadEnd) {
+            mReadEnd = Math.min(index, mLength) + 1;
+        }
+        if (index < 0 || index >= mLength) {
+            return IntStream.EOF;
+        }
+        return mText.charAt(index);
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+
+    }
+
+    @Override
+    public int index() {
+        return mIndex;
+    }
+
+    @Override
+    public void seek(int index) {
+        mIndex = Math.min(index, mLength);
+    }
+
+    @Override
+    public int size() {
+        return mLength;
+    }
+
+    @Override
+    public String getSourceName() {
+        return IntStream.UNKNOWN_SOURCE_NAME;
+    }
+}
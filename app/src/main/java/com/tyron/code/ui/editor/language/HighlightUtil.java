@@ -11,7 +11,7 @@ public class HighlightUtil {
     public static int[] setErrorSpan(TextAnalyzeResult colors, int line, int column) {
         int lineCount = colors.getSpanMap().size();
         int realLine = line - 1;
-        List<Span> spans = colors.getSpanMap().get(Math.min(realLine, lineCount - 1));
+        List<Span> spans = colors.getLineSpansForUpdate(Math.min(realLine, lineCount - 1));
 
         int[] end = new int[2];
         end[0] = Math.min(realLine, lineCount - 1);
@@ -17,6 +17,7 @@ import com.tyron.completion.java.CompileTask;
 import com.tyron.completion.java.JavaCompilerService;
 import com.tyron.completion.java.JavaCompilerProvider;
 import com.tyron.completion.java.provider.CompletionEngine;
+import com.tyron.completion.progress.ProgressManager;
 
 import org.openjdk.javax.tools.Diagnostic;
 
@@ -26,24 +27,22 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Stack;
 import java.util.stream.Collectors;
 
-import io.github.rosemoe.sora.data.BlockLine;
-import io.github.rosemoe.sora.data.NavigationItem;
 import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.interfaces.BackgroundAnalyzer;
 import io.github.rosemoe.sora.langs.java.JavaCodeAnalyzer;
 import io.github.rosemoe.sora.langs.java.JavaTextTokenizer;
 import io.github.rosemoe.sora.langs.java.Tokens;
 import io.github.rosemoe.sora.text.CharPosition;
+import io.github.rosemoe.sora.text.IncrementalLexer;
 import io.github.rosemoe.sora.text.Indexer;
-import io.github.rosemoe.sora.text.LineNumberCalculator;
 import io.github.rosemoe.sora.text.TextAnalyzeResult;
 import io.github.rosemoe.sora.text.TextAnalyzer;
 import io.github.rosemoe.sora.widget.CodeEditor;
 import io.github.rosemoe.sora.widget.EditorColorScheme;
 
-public class JavaAnalyzer extends JavaCodeAnalyzer {
+public class JavaAnalyzer extends JavaCodeAnalyzer implements BackgroundAnalyzer<List<DiagnosticWrapper>> {
 
     private static final String TAG = JavaAnalyzer.class.getSimpleName();
     /**
@@ -56,6 +55,7 @@ public class JavaAnalyzer extends JavaCodeAnalyzer {
             Tokens.PLUSEQ, Tokens.MINUS, Tokens.MINUSEQ, Tokens.MULT, Tokens.MULTEQ, Tokens.DIV, Tokens.DIVEQ};
 
     private final WeakReference<CodeEditor> mEditorReference;
+    private final IncrementalLexer<Tokens> mLexer = new IncrementalLexer<>(new JavaLexer());
     private DefaultLintClient mClient;
 
     private final SharedPreferences mPreferences;
@@ -70,193 +70,194 @@ public class JavaAnalyzer extends JavaCodeAnalyzer {
         if (editor == null) {
             return;
         }
-        StringBuilder text = content instanceof StringBuilder ? (StringBuilder) content : new StringBuilder(content);
-        JavaTextTokenizer tokenizer = new JavaTextTokenizer(text);
-        tokenizer.setCalculateLineColumn(false);
-        Tokens token, previous = Tokens.UNKNOWN;
-        int line = 0, column = 0;
-        LineNumberCalculator helper = new LineNumberCalculator(text);
+        if (!mLexer.analyze(content, colors, delegate)) {
+            return;
+        }
+        colors.setSuppressSwitch(mLexer.getMaxSwitch() + 10);
+        colors.setNavigation(new ArrayList<>());
+    }
 
-        Stack<BlockLine> stack = new Stack<>();
-        List<NavigationItem> labels = new ArrayList<>();
-        int maxSwitch = 1, currSwitch = 0;
+    /**
+     * Highlights the tokens of the text, the state of a line is the last token before it
+     * that is not a whitespace
+     */
+    private static class JavaLexer implements IncrementalLexer.Lexer<Tokens> {
 
-        boolean first = true;
+        private Tokens mPrevious;
 
-        while (delegate.shouldAnalyze()) {
-            try {
-                // directNextToken() does not skip any token
-                token = tokenizer.directNextToken();
-            } catch (RuntimeException e) {
-                //When a spelling input is in process, this will happen because of format mismatch
-                token = Tokens.CHARACTER_LITERAL;
-            }
-            if (token == Tokens.EOF) {
-                break;
-            }
-            // Backup values because looking ahead in function name match will change them
-            int thisIndex = tokenizer.getIndex();
-            int thisLength = tokenizer.getTokenLength();
+        @Override
+        public Tokens getInitialState() {
+            return Tokens.UNKNOWN;
+        }
 
-            switch (token) {
-                case WHITESPACE:
-                case NEWLINE:
-                    if (first) {
-                        colors.addNormalIfNull();
-                    }
+        @Override
+        public Tokens getState() {
+            return mPrevious;
+        }
+
+        @Override
+        public void lex(CharSequence text, int offset, Tokens state, IncrementalLexer.Session session) {
+            JavaTextTokenizer tokenizer = new JavaTextTokenizer(text);
+            tokenizer.setCalculateLineColumn(false);
+            tokenizer.seek(offset);
+            Tokens token;
+            mPrevious = state;
+
+            while (true) {
+                try {
+                    // directNextToken() does not skip any token
+                    token = tokenizer.directNextToken();
+                } catch (RuntimeException e) {
+                    //When a spelling input is in process, this will happen because of format mismatch
+                    token = Tokens.CHARACTER_LITERAL;
+                }
+                if (token == Tokens.EOF || !session.nextToken(tokenizer.getIndex())) {
                     break;
-                case IDENTIFIER:
-                    //Add a identifier to auto complete
+                }
 
-                    //The previous so this will be the annotation's type name
-                    if (previous == Tokens.AT) {
-                        colors.addIfNeeded(line, column, EditorColorScheme.ANNOTATION);
+                switch (token) {
+                    case WHITESPACE:
+                    case NEWLINE:
                         break;
-                    }
-                    //Here we have to get next token to see if it is function
-                    //We can only get the next token in stream.
-                    //If more tokens required, we have to use a stack in tokenizer
-                    Tokens next = tokenizer.directNextToken();
-                    //The next is LPAREN,so this is function name or type name
-                    if (next == Tokens.LPAREN) {
-                        boolean found = false;
-                        for (Tokens before : sKeywordsBeforeFunctionName) {
-                            if (before == previous) {
-                                found = true;
-                                break;
-                            }
-                        }
-                        if (!found) {
-                            colors.addIfNeeded(line, column, EditorColorScheme.FUNCTION_NAME);
-                            tokenizer.pushBack(tokenizer.getTokenLength());
+                    case IDENTIFIER:
+                        //Add a identifier to auto complete
+
+                        //The previous so this will be the annotation's type name
+                        if (mPrevious == Tokens.AT) {
+                            session.addIfNeeded(EditorColorScheme.ANNOTATION);
                             break;
                         }
-                    }
-                    //Push back the next token
-                    tokenizer.pushBack(tokenizer.getTokenLength());
-                    //This is a class definition
-
-                    colors.addIfNeeded(line, column, EditorColorScheme.TEXT_NORMAL);
-                    break;
-                case CHARACTER_LITERAL:
-                case STRING:
-                case FLOATING_POINT_LITERAL:
-                case INTEGER_LITERAL:
-                    colors.addIfNeeded(line, column, EditorColorScheme.LITERAL);
-                    break;
-                case INT:
-                case LONG:
-                case BOOLEAN:
-                case BYTE:
-                case CHAR:
-                case FLOAT:
-                case DOUBLE:
-                case SHORT:
-                case VOID:
-                case ABSTRACT:
-                case ASSERT:
-                case CLASS:
-                case DO:
-                case FINAL:
-                case FOR:
-                case IF:
-                case NEW:
-                case PUBLIC:
-                case PRIVATE:
-                case PROTECTED:
-                case PACKAGE:
-                case RETURN:
-                case STATIC:
-                case SUPER:
-                case SWITCH:
-                case ELSE:
-                case VOLATILE:
-                case SYNCHRONIZED:
-                case STRICTFP:
-                case GOTO:
-                case CONTINUE:
-                case BREAK:
-                case TRANSIENT:
-                case TRY:
-                case CATCH:
-                case FINALLY:
-                case WHILE:
-                case CASE:
-                case DEFAULT:
-                case CONST:
-                case ENUM:
-                case EXTENDS:
-                case IMPLEMENTS:
-                case IMPORT:
-                case INSTANCEOF:
-                case INTERFACE:
-                case NATIVE:
-                case THIS:
-                case THROW:
-                case THROWS:
-                case TRUE:
-                case FALSE:
-                case NULL:
-                case SEMICOLON:
-                    colors.addIfNeeded(line, column, EditorColorScheme.KEYWORD);
-                    break;
-                case LBRACE: {
-                    colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                    if (stack.isEmpty()) {
-                        if (currSwitch > maxSwitch) {
-                            maxSwitch = currSwitch;
+                        //Here we have to get next token to see if it is function
+                        //We can only get the next token in stream.
+                        //If more tokens required, we have to use a stack in tokenizer
+                        Tokens next;
+                        try {
+                            next = tokenizer.directNextToken();
+                        } catch (RuntimeException e) {
+                            next = Tokens.UNKNOWN;
                         }
-                        currSwitch = 0;
-                    }
-                    currSwitch++;
-                    BlockLine block = colors.obtainNewBlock();
-                    block.startLine = line;
-                    block.startColumn = column;
-                    stack.push(block);
-                    break;
-                }
-                case RBRACE: {
-                    colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                    if (!stack.isEmpty()) {
-                        BlockLine block = stack.pop();
-                        block.endLine = line;
-                        block.endColumn = column;
-                        if (block.startLine != block.endLine) {
-                            colors.addBlockLine(block);
+                        //The next is LPAREN,so this is function name or type name
+                        if (next == Tokens.LPAREN) {
+                            boolean found = false;
+                            for (Tokens before : sKeywordsBeforeFunctionName) {
+                                if (before == mPrevious) {
+                                    found = true;
+                                    break;
+                                }
+                            }
+                            if (!found) {
+                                session.addIfNeeded(EditorColorScheme.FUNCTION_NAME);
+                                tokenizer.pushBack(tokenizer.getTokenLength());
+                                break;
+                            }
                         }
+                        //Push back the next token
+                        tokenizer.pushBack(tokenizer.getTokenLength());
+                        //This is a class definition
+
+                        session.addIfNeeded(EditorColorScheme.TEXT_NORMAL);
+                        break;
+                    case CHARACTER_LITERAL:
+                    case STRING:
+                    case FLOATING_POINT_LITERAL:
+                    case INTEGER_LITERAL:
+                        session.addIfNeeded(EditorColorScheme.LITERAL);
+                        break;
+                    case INT:
+                    case LONG:
+                    case BOOLEAN:
+                    case BYTE:
+                    case CHAR:
+                    case FLOAT:
+                    case DOUBLE:
+                    case SHORT:
+                    case VOID:
+                    case ABSTRACT:
+                    case ASSERT:
+                    case CLASS:
+                    case DO:
+                    case FINAL:
+                    case FOR:
+                    case IF:
+                    case NEW:
+                    case PUBLIC:
+                    case PRIVATE:
+                    case PROTECTED:
+                    case PACKAGE:
+                    case RETURN:
+                    case STATIC:
+                    case SUPER:
+                    case SWITCH:
+                    case ELSE:
+                    case VOLATILE:
+                    case SYNCHRONIZED:
+                    case STRICTFP:
+                    case GOTO:
+                    case CONTINUE:
+                    case BREAK:
+                    case TRANSIENT:
+                    case TRY:
+                    case CATCH:
+                    case FINALLY:
+                    case WHILE:
+                    case CASE:
+                    case DEFAULT:
+                    case CONST:
+                    case ENUM:
+                    case EXTENDS:
+                    case IMPLEMENTS:
+                    case IMPORT:
+                    case INSTANCEOF:
+                    case INTERFACE:
+                    case NATIVE:
+                    case THIS:
+                    case THROW:
+                    case THROWS:
+                    case TRUE:
+                    case FALSE:
+                    case NULL:
+                    case SEMICOLON:
+                        session.addIfNeeded(EditorColorScheme.KEYWORD);
+                        break;
+                    case LBRACE: {
+                        session.addIfNeeded(EditorColorScheme.OPERATOR);
+                        session.startBlock(session.getLine(), session.getColumn());
+                        break;
                     }
-                    break;
-                }
-                case LINE_COMMENT:
-                case LONG_COMMENT:
-                    colors.addIfNeeded(line, column, EditorColorScheme.COMMENT);
-                    break;
-                default:
-                    if (token == Tokens.LBRACK || (token == Tokens.RBRACK && previous == Tokens.LBRACK)) {
-                        colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
+                    case RBRACE: {
+                        session.addIfNeeded(EditorColorScheme.OPERATOR);
+                        session.endBlock(session.getLine(), session.getColumn(), false);
                         break;
                     }
-                    colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-            }
-
+                    case LINE_COMMENT:
+                    case LONG_COMMENT:
+                        session.addIfNeeded(EditorColorScheme.COMMENT);
+                        break;
+                    default:
+                        if (token == Tokens.LBRACK || (token == Tokens.RBRACK && mPrevious == Tokens.LBRACK)) {
+                            session.addIfNeeded(EditorColorScheme.OPERATOR);
+                            break;
+                        }
+                        session.addIfNeeded(EditorColorScheme.OPERATOR);
+                }
 
-            first = false;
-            helper.update(thisLength);
-            line = helper.getLine();
-            column = helper.getColumn();
-            if (token != Tokens.WHITESPACE && token != Tokens.NEWLINE) {
-                previous = token;
-            }
-        }
-        if (stack.isEmpty()) {
-            if (currSwitch > maxSwitch) {
-                maxSwitch = currSwitch;
+                if (token != Tokens.WHITESPACE && token != Tokens.NEWLINE) {
+                    mPrevious = token;
+                }
             }
         }
-        colors.determine(line);
-        colors.setSuppressSwitch(maxSwitch + 10);
-        colors.setNavigation(labels);
+    }
 
+    /**
+     * Compiles the file to find errors, this runs after the user stops typing so it does
+     * not delay the highlighting done by {@link #analyze}
+     */
+    @Override
+    public List<DiagnosticWrapper> analyzeInBackground(CharSequence content) {
+        CodeEditor editor = mEditorReference.get();
+        if (editor == null) {
+            return Collections.emptyList();
+        }
         List<DiagnosticWrapper> innerDiagnostics = new ArrayList<>();
 
         // do not compile the file if it not yet closed as it will cause issues when
@@ -265,11 +266,12 @@ public class JavaAnalyzer extends JavaCodeAnalyzer {
             Project project = ProjectManager.getInstance().getCurrentProject();
             if (project != null) {
                 Module module = project.getModule(editor.getCurrentFile());
-                if (module != null) {
+                if (module instanceof JavaModule) {
                     JavaCompilerProvider provider = CompilerService.getInstance().getIndex(JavaCompilerProvider.KEY);
                     if (provider != null) {
                         JavaCompilerService service = provider.getCompiler(project, (JavaModule) module);
                         if (service != null && service.isReady()) {
+                            ProgressManager.checkCanceled();
                             try {
                                 try (CompileTask task = service.compile(
                                         Collections.singletonList(new SourceFileObject(editor.getCurrentFile().toPath(), content.toString(), Instant.now())))) {
@@ -284,7 +286,16 @@ public class JavaAnalyzer extends JavaCodeAnalyzer {
                 }
             }
         }
-        markDiagnostics(editor, innerDiagnostics, colors);
+        return innerDiagnostics;
+    }
+
+    @Override
+    public void applyBackgroundResult(List<DiagnosticWrapper> diagnostics, TextAnalyzeResult colors) {
+        CodeEditor editor = mEditorReference.get();
+        if (editor == null) {
+            return;
+        }
+        markDiagnostics(editor, diagnostics, colors);
     }
 
     private void markDiagnostics(CodeEditor editor, List<DiagnosticWrapper> diagnostics, TextAnalyzeResult colors) {
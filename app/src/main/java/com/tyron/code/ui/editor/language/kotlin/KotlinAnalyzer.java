@@ -5,6 +5,7 @@ import android.util.Log;
 
 import androidx.preference.PreferenceManager;
 
+import com.tyron.code.ui.editor.language.AntlrIncrementalLexer;
 import com.tyron.code.ui.project.ProjectManager;
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.Project;
@@ -12,32 +13,35 @@ import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.common.BuildConfig;
 import com.tyron.common.SharedPreferenceKeys;
+import com.tyron.completion.progress.ProgressIndicator;
+import com.tyron.completion.progress.ProgressManager;
 import com.tyron.kotlin_completion.CompletionEngine;
 
 import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CodePointCharStream;
+import org.antlr.v4.runtime.Lexer;
 import org.antlr.v4.runtime.Token;
-import org.antlr.v4.runtime.TokenSource;
 import org.openjdk.javax.tools.Diagnostic;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Stack;
 
-import io.github.rosemoe.sora.data.BlockLine;
 import io.github.rosemoe.sora.data.Span;
-import io.github.rosemoe.sora.interfaces.CodeAnalyzer;
+import io.github.rosemoe.sora.interfaces.BackgroundAnalyzer;
 import io.github.rosemoe.sora.text.CharPosition;
+import io.github.rosemoe.sora.text.IncrementalLexer;
 import io.github.rosemoe.sora.text.Indexer;
 import io.github.rosemoe.sora.text.TextAnalyzeResult;
 import io.github.rosemoe.sora.text.TextAnalyzer;
 import io.github.rosemoe.sora.widget.CodeEditor;
 import io.github.rosemoe.sora.widget.EditorColorScheme;
 
-public class KotlinAnalyzer implements CodeAnalyzer {
+public class KotlinAnalyzer implements BackgroundAnalyzer<List<DiagnosticWrapper>> {
 
     private final WeakReference<CodeEditor> mEditorReference;
+    private final IncrementalLexer<AntlrIncrementalLexer.State> mLexer =
+            new IncrementalLexer<>(new KotlinIncrementalLexer());
 
     public KotlinAnalyzer(CodeEditor editor) {
         mEditorReference = new WeakReference<>(editor);
@@ -50,169 +54,8 @@ public class KotlinAnalyzer implements CodeAnalyzer {
             return;
         }
         try {
-            CodePointCharStream stream = CharStreams.fromString(String.valueOf(content));
-            KotlinLexer lexer = new KotlinLexer(stream);
-
-            Stack<BlockLine> stack = new Stack<>();
-            int maxSwitch = 1, currSwitch = 0;
-            int lastLine = 0;
-            int line, column;
-            Token previous = UnknownToken.INSTANCE;
-            Token token = null;
-
-            while (delegate.shouldAnalyze()) {
-                token = lexer.nextToken();
-                if (token == null) {
-                    break;
-                }
-
-                if (token.getType() == KotlinLexer.EOF) {
-                    lastLine = token.getLine() - 1;
-                    break;
-                }
-                line = token.getLine() - 1;
-                column = token.getCharPositionInLine();
-                lastLine = line;
-
-                switch (token.getType()) {
-                    case KotlinLexer.ADD:
-                    case KotlinLexer.SUB:
-                    case KotlinLexer.MULT:
-                    case KotlinLexer.DIV:
-                    case KotlinLexer.ELVIS:
-                        colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                        break;
-                    case KotlinLexer.INTERNAL:
-                    case KotlinLexer.IF:
-                    case KotlinLexer.ELSE:
-                    case KotlinLexer.IS:
-                    case KotlinLexer.FUN:
-                    case KotlinLexer.SUSPEND:
-                    case KotlinLexer.OVERRIDE:
-                    case KotlinLexer.CLASS:
-                    case KotlinLexer.OPEN:
-                    case KotlinLexer.PRIVATE:
-                    case KotlinLexer.PUBLIC:
-                    case KotlinLexer.PROTECTED:
-                    case KotlinLexer.DATA:
-                    case KotlinLexer.CONSTRUCTOR:
-                    case KotlinLexer.VAL:
-                    case KotlinLexer.VAR:
-                    case KotlinLexer.VARARG:
-                    case KotlinLexer.SEALED:
-                    case KotlinLexer.PACKAGE:
-                    case KotlinLexer.IMPORT:
-                    case KotlinLexer.RETURN:
-                    case KotlinLexer.INNER:
-                    case KotlinLexer.REIFIED:
-                    case KotlinLexer.BY:
-                    case KotlinLexer.ABSTRACT:
-                    case KotlinLexer.CATCH:
-                    case KotlinLexer.THROW:
-                    case KotlinLexer.CONTINUE:
-                    case KotlinLexer.FOR:
-                    case KotlinLexer.WHEN:
-                    case KotlinLexer.WHILE:
-                    case KotlinLexer.FINAL:
-                    case KotlinLexer.LATEINIT:
-                    case KotlinLexer.IN:
-                    case KotlinLexer.INFIX:
-                    case KotlinLexer.AS:
-                    case KotlinLexer.INLINE:
-                    case KotlinLexer.SUPER:
-                    case KotlinLexer.GET:
-                    case KotlinLexer.THIS:
-                    case KotlinLexer.INIT:
-                    case KotlinLexer.OBJECT:
-                    case KotlinLexer.INTERFACE:
-                        colors.addIfNeeded(line, column, EditorColorScheme.KEYWORD);
-                        break;
-                    case KotlinLexer.Identifier:
-                        colors.addIfNeeded(line, column, EditorColorScheme.IDENTIFIER_NAME);
-                        break;
-                    case KotlinLexer.QUOTE_CLOSE:
-                    case KotlinLexer.QUOTE_OPEN:
-                    case KotlinLexer.LineStrText:
-                    case KotlinLexer.LineStrExprStart:
-                    case KotlinLexer.MultiLineStrText:
-                    case KotlinLexer.MultiLineString:
-                    case KotlinLexer.LineString:
-                    case KotlinLexer.StringExpression:
-                    case KotlinLexer.IntegerLiteral:
-                    case KotlinLexer.CharacterLiteral:
-                    case KotlinLexer.BinLiteral:
-                    case KotlinLexer.RealLiteral:
-                    case KotlinLexer.BooleanLiteral:
-                    case KotlinLexer.DoubleLiteral:
-                    case KotlinLexer.FloatLiteral:
-                    case KotlinLexer.LongLiteral:
-                    case KotlinLexer.HexLiteral:
-                        Span span = Span.obtain(column, EditorColorScheme.LITERAL);
-                        if (token.getType() == KotlinLexer.HexLiteral) {
-                            try {
-                                span.setUnderlineColor(Integer.parseInt(token.getText(), 16));
-                            } catch (Exception e) {
-                                span.setUnderlineColor(Color.TRANSPARENT);
-                            }
-                        }
-                        colors.addIfNeeded(line, span);
-                        break;
-                    case KotlinLexer.AT:
-                    case KotlinLexer.LabelReference:
-                        colors.addIfNeeded(line, column, EditorColorScheme.ANNOTATION);
-                        break;
-                    case KotlinLexer.LCURL:
-                        if (stack.isEmpty()) {
-                            if (currSwitch > maxSwitch) {
-                                maxSwitch = currSwitch;
-                            }
-                            currSwitch = 0;
-                        }
-                        currSwitch++;
-                        BlockLine block = colors.obtainNewBlock();
-                        block.startLine = line;
-                        block.startColumn = column;
-                        stack.push(block);
-                        break;
-                    case KotlinLexer.RCURL:
-                        if (!stack.isEmpty()) {
-                            BlockLine b = stack.pop();
-                            b.endLine = line;
-                            b.endColumn = column;
-                            if (b.startLine != b.endLine) {
-                                colors.addBlockLine(b);
-                            }
-                        }
-                        break;
-                    default:
-                        colors.addIfNeeded(line, column, EditorColorScheme.TEXT_NORMAL);
-                        break;
-                }
-
-                if (token.getType() != KotlinLexer.WS && token.getType() != KotlinLexer.NL) {
-                    previous = token;
-                }
-            }
-            colors.determine(lastLine);
-
-            if (stack.isEmpty()) {
-                if (currSwitch > maxSwitch) {
-                    maxSwitch = currSwitch;
-                }
-            }
-            colors.setSuppressSwitch(maxSwitch + 10);
-
-            Project currentProject = ProjectManager.getInstance().getCurrentProject();
-            if (currentProject != null) {
-                Module module = currentProject.getModule(editor.getCurrentFile());
-                if (module instanceof AndroidModule) {
-                    if (PreferenceManager.getDefaultSharedPreferences(editor.getContext())
-                            .getBoolean(SharedPreferenceKeys.KOTLIN_COMPLETIONS, false)) {
-                        CompletionEngine.getInstance((AndroidModule) module)
-                                .doLint(editor.getCurrentFile(), content.toString(), diagnostics ->
-                        markDiagnostics(editor, diagnostics, colors));
-                    }
-                }
+            if (mLexer.analyze(content, colors, delegate)) {
+                colors.setSuppressSwitch(mLexer.getMaxSwitch() + 10);
             }
         } catch (Throwable e) {
             if (BuildConfig.DEBUG) {
@@ -221,59 +64,151 @@ public class KotlinAnalyzer implements CodeAnalyzer {
         }
     }
 
-    private static class UnknownToken implements Token {
-
-        public static UnknownToken INSTANCE = new UnknownToken();
-
-        @Override
-        public String getText() {
-            return "";
-        }
-
-        @Override
-        public int getType() {
-            return -1;
-        }
-
-        @Override
-        public int getLine() {
-            return 0;
-        }
-
-        @Override
-        public int getCharPositionInLine() {
-            return 0;
-        }
+    private static class KotlinIncrementalLexer extends AntlrIncrementalLexer {
 
         @Override
-        public int getChannel() {
-            return 0;
+        protected Lexer createLexer(CharStream stream) {
+            return new KotlinLexer(stream);
         }
 
         @Override
-        public int getTokenIndex() {
-            return 0;
+        protected boolean isWhitespace(int type) {
+            return type == KotlinLexer.WS || type == KotlinLexer.NL;
         }
 
         @Override
-        public int getStartIndex() {
-            return 0;
+        protected void handleToken(Token token, IncrementalLexer.Session session) {
+            switch (token.getType()) {
+                case KotlinLexer.ADD:
+                case KotlinLexer.SUB:
+                case KotlinLexer.MULT:
+                case KotlinLexer.DIV:
+                case KotlinLexer.ELVIS:
+                    session.addIfNeeded(EditorColorScheme.OPERATOR);
+                    break;
+                case KotlinLexer.INTERNAL:
+                case KotlinLexer.IF:
+                case KotlinLexer.ELSE:
+                case KotlinLexer.IS:
+                case KotlinLexer.FUN:
+                case KotlinLexer.SUSPEND:
+                case KotlinLexer.OVERRIDE:
+                case KotlinLexer.CLASS:
+                case KotlinLexer.OPEN:
+                case KotlinLexer.PRIVATE:
+                case KotlinLexer.PUBLIC:
+                case KotlinLexer.PROTECTED:
+                case KotlinLexer.DATA:
+                case KotlinLexer.CONSTRUCTOR:
+                case KotlinLexer.VAL:
+                case KotlinLexer.VAR:
+                case KotlinLexer.VARARG:
+                case KotlinLexer.SEALED:
+                case KotlinLexer.PACKAGE:
+                case KotlinLexer.IMPORT:
+                case KotlinLexer.RETURN:
+                case KotlinLexer.INNER:
+                case KotlinLexer.REIFIED:
+                case KotlinLexer.BY:
+                case KotlinLexer.ABSTRACT:
+                case KotlinLexer.CATCH:
+                case KotlinLexer.THROW:
+                case KotlinLexer.CONTINUE:
+                case KotlinLexer.FOR:
+                case KotlinLexer.WHEN:
+                case KotlinLexer.WHILE:
+                case KotlinLexer.FINAL:
+                case KotlinLexer.LATEINIT:
+                case KotlinLexer.IN:
+                case KotlinLexer.INFIX:
+                case KotlinLexer.AS:
+                case KotlinLexer.INLINE:
+                case KotlinLexer.SUPER:
+                case KotlinLexer.GET:
+                case KotlinLexer.THIS:
+                case KotlinLexer.INIT:
+                case KotlinLexer.OBJECT:
+                case KotlinLexer.INTERFACE:
+                    session.addIfNeeded(EditorColorScheme.KEYWORD);
+                    break;
+                case KotlinLexer.Identifier:
+                    session.addIfNeeded(EditorColorScheme.IDENTIFIER_NAME);
+                    break;
+                case KotlinLexer.QUOTE_CLOSE:
+                case KotlinLexer.QUOTE_OPEN:
+                case KotlinLexer.LineStrText:
+                case KotlinLexer.LineStrExprStart:
+                case KotlinLexer.MultiLineStrText:
+                case KotlinLexer.MultiLineString:
+                case KotlinLexer.LineString:
+                case KotlinLexer.StringExpression:
+                case KotlinLexer.IntegerLiteral:
+                case KotlinLexer.CharacterLiteral:
+                case KotlinLexer.BinLiteral:
+                case KotlinLexer.RealLiteral:
+                case KotlinLexer.BooleanLiteral:
+                case KotlinLexer.DoubleLiteral:
+                case KotlinLexer.FloatLiteral:
+                case KotlinLexer.LongLiteral:
+                case KotlinLexer.HexLiteral:
+                    Span span = Span.obtain(session.getColumn(), EditorColorScheme.LITERAL);
+                    if (token.getType() == KotlinLexer.HexLiteral) {
+                        try {
+                            span.setUnderlineColor(Integer.parseInt(token.getText(), 16));
+                        } catch (Exception e) {
+                            span.setUnderlineColor(Color.TRANSPARENT);
+                        }
+                    }
+                    session.addIfNeeded(span);
+                    break;
+                case KotlinLexer.AT:
+                case KotlinLexer.LabelReference:
+                    session.addIfNeeded(EditorColorScheme.ANNOTATION);
+                    break;
+                case KotlinLexer.LCURL:
+                    session.startBlock(session.getLine(), session.getColumn());
+                    break;
+                case KotlinLexer.RCURL:
+                    session.endBlock(session.getLine(), session.getColumn(), false);
+                    break;
+                default:
+                    session.addIfNeeded(EditorColorScheme.TEXT_NORMAL);
+                    break;
+            }
         }
+    }
 
-        @Override
-        public int getStopIndex() {
-            return 0;
+    @Override
+    public List<DiagnosticWrapper> analyzeInBackground(CharSequence content) {
+        CodeEditor editor = mEditorReference.get();
+        if (editor == null) {
+            return Collections.emptyList();
         }
-
-        @Override
-        public TokenSource getTokenSource() {
-            return null;
+        List<DiagnosticWrapper> result = new ArrayList<>();
+        Project currentProject = ProjectManager.getInstance().getCurrentProject();
+        if (currentProject != null) {
+            Module module = currentProject.getModule(editor.getCurrentFile());
+            if (module instanceof AndroidModule) {
+                if (PreferenceManager.getDefaultSharedPreferences(editor.getContext())
+                        .getBoolean(SharedPreferenceKeys.KOTLIN_COMPLETIONS, false)) {
+                    ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+                    CompletionEngine.getInstance((AndroidModule) module)
+                            .doLint(editor.getCurrentFile(), content.toString(),
+                                    () -> indicator != null && indicator.isCanceled(),
+                                    result::addAll);
+                }
+            }
         }
+        return result;
+    }
 
-        @Override
-        public CharStream getInputStream() {
-            return null;
+    @Override
+    public void applyBackgroundResult(List<DiagnosticWrapper> diagnostics, TextAnalyzeResult colors) {
+        CodeEditor editor = mEditorReference.get();
+        if (editor == null) {
+            return;
         }
+        markDiagnostics(editor, diagnostics, colors);
     }
 
     private void markDiagnostics(CodeEditor editor, List<DiagnosticWrapper> diagnostics, TextAnalyzeResult colors) {
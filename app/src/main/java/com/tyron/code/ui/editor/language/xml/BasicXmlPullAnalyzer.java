@@ -2,11 +2,17 @@ package com.tyron.code.ui.editor.language.xml;
 
 import com.tyron.builder.util.CharSequenceReader;
 import com.tyron.code.ui.editor.language.HighlightUtil;
+import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.progress.ProgressManager;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
 import io.github.rosemoe.sora.interfaces.CodeAnalyzer;
 import io.github.rosemoe.sora.text.LineNumberCalculator;
 import io.github.rosemoe.sora.text.TextAnalyzeResult;
@@ -16,6 +22,26 @@ public class BasicXmlPullAnalyzer implements CodeAnalyzer {
 
     @Override
     public void analyze(CharSequence content, TextAnalyzeResult result, TextAnalyzer.AnalyzeThread.Delegate delegate) {
+        for (int[] error : findErrors(content, delegate::shouldAnalyze)) {
+            HighlightUtil.setErrorSpan(result, error[0], error[1]);
+        }
+    }
+
+    /**
+     * Find the positions of the syntax errors, this stops when the current process is canceled
+     *
+     * @return The line and column of each error, starting from 1
+     * @see ProgressManager#checkCanceled()
+     */
+    public List<int[]> findErrors(CharSequence content) {
+        return findErrors(content, () -> {
+            ProgressManager.checkCanceled();
+            return true;
+        });
+    }
+
+    private List<int[]> findErrors(CharSequence content, BooleanSupplier shouldContinue) {
+        List<int[]> errors = new ArrayList<>();
         try {
             XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
             factory.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
@@ -26,7 +52,7 @@ public class BasicXmlPullAnalyzer implements CodeAnalyzer {
             int errLine = 0;
             int errColumn = 0;
             parser.setInput(new CharSequenceReader(content));
-            while (delegate.shouldAnalyze()) {
+            while (shouldContinue.getAsBoolean()) {
                 try {
                     if (calculator.getLine() + 1 == parser.getLineNumber() &&
                             calculator.getColumn() + 1 == parser.getColumnNumber()) {
@@ -39,11 +65,14 @@ public class BasicXmlPullAnalyzer implements CodeAnalyzer {
                     }
                     errLine = parser.getLineNumber();
                     errColumn = parser.getColumnNumber();
-                    HighlightUtil.setErrorSpan(result, errLine, errColumn);
+                    errors.add(new int[]{errLine, errColumn});
                 }
             }
+        } catch (ProcessCanceledException e) {
+            throw e;
         } catch (Exception ignored) {
 
         }
+        return errors;
     }
 }
@@ -12,6 +12,8 @@ import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.api.Module;
+import com.tyron.code.ui.editor.language.AntlrIncrementalLexer;
+import com.tyron.code.ui.editor.language.HighlightUtil;
 import com.tyron.code.ui.project.ProjectManager;
 import com.tyron.code.util.ProjectUtils;
 import com.tyron.completion.index.CompilerService;
@@ -19,30 +21,31 @@ import com.tyron.completion.java.CompileTask;
 import com.tyron.completion.java.JavaCompilerProvider;
 import com.tyron.completion.java.JavaCompilerService;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CodePointCharStream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Lexer;
 import org.antlr.v4.runtime.Token;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
 import java.lang.ref.WeakReference;
 import java.nio.charset.StandardCharsets;
-import java.util.Stack;
+import java.util.List;
 import java.util.concurrent.Executors;
 
-import io.github.rosemoe.sora.data.BlockLine;
-import io.github.rosemoe.sora.interfaces.CodeAnalyzer;
 import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.interfaces.BackgroundAnalyzer;
+import io.github.rosemoe.sora.text.IncrementalLexer;
 import io.github.rosemoe.sora.text.TextAnalyzeResult;
 import io.github.rosemoe.sora.text.TextAnalyzer;
 import io.github.rosemoe.sora.widget.CodeEditor;
 import io.github.rosemoe.sora.widget.EditorColorScheme;
 
-public class XMLAnalyzer implements CodeAnalyzer {
+public class XMLAnalyzer implements BackgroundAnalyzer<List<int[]>> {
 
     private final WeakReference<CodeEditor> mEditorReference;
+    private final IncrementalLexer<AntlrIncrementalLexer.State> mLexer =
+            new IncrementalLexer<>(new XmlIncrementalLexer());
 
     public XMLAnalyzer(CodeEditor codeEditor) {
         mEditorReference = new WeakReference<>(codeEditor);
@@ -56,125 +59,121 @@ public class XMLAnalyzer implements CodeAnalyzer {
             return;
         }
         try {
-            CodePointCharStream stream =
-                    CharStreams.fromReader(new StringReader(content.toString()));
-            XMLLexer lexer = new XMLLexer(stream);
-            Token token, previous = null;
-            Stack<BlockLine> stack = new Stack<>();
-
-            int lastLine = 1;
-            int line, column;
-
-            while (delegate.shouldAnalyze()) {
-                token = lexer.nextToken();
-                if (token == null) break;
-                if (token.getType() == XMLLexer.EOF) {
-                    lastLine = token.getLine() - 1;
-                    break;
-                }
-                line = token.getLine() - 1;
-                column = token.getCharPositionInLine();
-                lastLine = line;
+            if (!mLexer.analyze(content, colors, delegate)) {
+                return;
+            }
+            compile(editor.getCurrentFile(), content.toString(), colors);
+        } catch (Throwable ignore) {
 
-                switch (token.getType()) {
-                    case XMLLexer.COMMENT:
-                        colors.addIfNeeded(line, column, EditorColorScheme.COMMENT);
-                        break;
-                    case XMLLexer.Name:
-                        if (previous != null && previous.getType() == XMLLexer.SLASH) {
-                            colors.addIfNeeded(line, column, EditorColorScheme.HTML_TAG);
-                            break;
-                        } else if (previous != null && previous.getType() == XMLLexer.OPEN) {
-                            colors.addIfNeeded(line, column, EditorColorScheme.HTML_TAG);
-                            BlockLine block = new BlockLine();
-                            block.startLine = previous.getLine() - 1;
-                            block.startColumn = previous.getCharPositionInLine();
-                            stack.push(block);
-                            break;
-                        }
-                        String attribute = token.getText();
-                        if (attribute.contains(":")) {
-                            colors.addIfNeeded(line, column, EditorColorScheme.ATTRIBUTE_NAME);
-                            colors.addIfNeeded(line, column + attribute.indexOf(":"),
-                                    EditorColorScheme.TEXT_NORMAL);
-                            break;
-                        }
-                        colors.addIfNeeded(line, column, EditorColorScheme.IDENTIFIER_NAME);
-                        break;
-                    case XMLLexer.EQUALS:
-                        Span span1 = colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                        span1.setUnderlineColor(Color.TRANSPARENT);
+        }
+    }
+
+    /**
+     * Parses the file to find syntax errors, the pull parser reads the whole file so this
+     * runs after the user stops typing
+     */
+    @Override
+    public List<int[]> analyzeInBackground(CharSequence content) {
+        return new BasicXmlPullAnalyzer().findErrors(content);
+    }
+
+    @Override
+    public void applyBackgroundResult(List<int[]> errors, TextAnalyzeResult colors) {
+        for (int[] error : errors) {
+            HighlightUtil.setErrorSpan(colors, error[0], error[1]);
+        }
+    }
+
+    private static class XmlIncrementalLexer extends AntlrIncrementalLexer {
+
+        private int mOpenLine;
+        private int mOpenColumn;
+
+        @Override
+        protected Lexer createLexer(CharStream stream) {
+            return new XMLLexer(stream);
+        }
+
+        @Override
+        protected boolean isWhitespace(int type) {
+            return type == XMLLexer.SEA_WS || type == XMLLexer.S;
+        }
+
+        @Override
+        protected boolean canRestart() {
+            // the position of the open tag is not part of the state
+            return mPreviousType != XMLLexer.OPEN;
+        }
+
+        @Override
+        protected void handleToken(Token token, IncrementalLexer.Session session) {
+            int line = session.getLine();
+            int column = session.getColumn();
+            switch (token.getType()) {
+                case XMLLexer.COMMENT:
+                    session.addIfNeeded(EditorColorScheme.COMMENT);
+                    break;
+                case XMLLexer.Name:
+                    if (mPreviousType == XMLLexer.SLASH) {
+                        session.addIfNeeded(EditorColorScheme.HTML_TAG);
                         break;
-                    case XMLLexer.STRING:
-                        String text = token.getText();
-                        if (text.startsWith("\"#")) {
-                            try {
-                                int color = Color.parseColor(text.substring(1, text.length() - 1));
-                                colors.addIfNeeded(line, Span.obtain(column,
-                                        EditorColorScheme.LITERAL));
-                                colors.add(line, Span.obtain(column + 1,
-                                        EditorColorScheme.LITERAL)).setUnderlineColor(color);
-                                colors.add(line, Span.obtain(column + text.length() - 1,
-                                        EditorColorScheme.LITERAL)).setUnderlineColor(Color.TRANSPARENT);
-                                colors.addIfNeeded(line, column + text.length(),
-                                        EditorColorScheme.TEXT_NORMAL).setUnderlineColor(Color.TRANSPARENT);
-                                break;
-                            } catch (Exception ignore) {
-                            }
-                        }
-                        colors.addIfNeeded(line, column, EditorColorScheme.LITERAL);
+                    } else if (mPreviousType == XMLLexer.OPEN) {
+                        session.addIfNeeded(EditorColorScheme.HTML_TAG);
+                        session.startBlock(mOpenLine, mOpenColumn);
                         break;
-                    case XMLLexer.SLASH_CLOSE:
-                        colors.addIfNeeded(line, column, EditorColorScheme.HTML_TAG);
-                        if (!stack.isEmpty()) {
-                            BlockLine block = stack.pop();
-                            block.endLine = line;
-                            block.endColumn = column;
-                            if (block.startLine != block.endLine) {
-                                if (previous.getLine() == token.getLine()) {
-                                    block.toBottomOfEndLine = true;
-                                }
-                                colors.addBlockLine(block);
-                            }
-                        }
+                    }
+                    String attribute = token.getText();
+                    if (attribute.contains(":")) {
+                        session.addIfNeeded(EditorColorScheme.ATTRIBUTE_NAME);
+                        session.addIfNeeded(column + attribute.indexOf(":"),
+                                EditorColorScheme.TEXT_NORMAL);
                         break;
-                    case XMLLexer.SLASH:
-                        colors.addIfNeeded(line, column, EditorColorScheme.HTML_TAG);
-                        if (previous != null && previous.getType() == XMLLexer.OPEN) {
-                            if (!stack.isEmpty()) {
-                                BlockLine block = stack.pop();
-                                block.endLine = previous.getLine() - 1;
-                                block.endColumn = previous.getCharPositionInLine();
-                                if (block.startLine != block.endLine) {
-                                    if (previous.getLine() == token.getLine()) {
-                                        block.toBottomOfEndLine = true;
-                                    }
-                                    colors.addBlockLine(block);
-                                }
-                            }
+                    }
+                    session.addIfNeeded(EditorColorScheme.IDENTIFIER_NAME);
+                    break;
+                case XMLLexer.EQUALS:
+                    session.addIfNeeded(EditorColorScheme.OPERATOR);
+                    break;
+                case XMLLexer.STRING:
+                    String text = token.getText();
+                    if (text.startsWith("\"#")) {
+                        try {
+                            int color = Color.parseColor(text.substring(1, text.length() - 1));
+                            session.addIfNeeded(EditorColorScheme.LITERAL);
+                            Span span = Span.obtain(column + 1, EditorColorScheme.LITERAL);
+                            span.setUnderlineColor(color);
+                            session.add(span);
+                            session.add(Span.obtain(column + text.length() - 1,
+                                    EditorColorScheme.LITERAL));
+                            session.addIfNeeded(column + text.length(),
+                                    EditorColorScheme.TEXT_NORMAL);
+                            break;
+                        } catch (Exception ignore) {
                         }
-                        break;
-                    case XMLLexer.OPEN:
-                    case XMLLexer.CLOSE:
-                        colors.addIfNeeded(line, column, EditorColorScheme.HTML_TAG);
-                        break;
-                    default:
-                        Span s = Span.obtain(column, EditorColorScheme.TEXT_NORMAL);
-                        colors.addIfNeeded(line, s);
-                        s.setUnderlineColor(Color.TRANSPARENT);
-                }
-
-                if (token.getType() != XMLLexer.SEA_WS && token.getType() != XMLLexer.S) {
-                    previous = token;
-                }
+                    }
+                    session.addIfNeeded(EditorColorScheme.LITERAL);
+                    break;
+                case XMLLexer.SLASH_CLOSE:
+                    session.addIfNeeded(EditorColorScheme.HTML_TAG);
+                    session.endBlock(line, column, mPreviousLine == line);
+                    break;
+                case XMLLexer.SLASH:
+                    session.addIfNeeded(EditorColorScheme.HTML_TAG);
+                    if (mPreviousType == XMLLexer.OPEN) {
+                        session.endBlock(mOpenLine, mOpenColumn, mPreviousLine == line);
+                    }
+                    break;
+                case XMLLexer.OPEN:
+                    mOpenLine = line;
+                    mOpenColumn = column;
+                    session.addIfNeeded(EditorColorScheme.HTML_TAG);
+                    break;
+                case XMLLexer.CLOSE:
+                    session.addIfNeeded(EditorColorScheme.HTML_TAG);
+                    break;
+                default:
+                    session.addIfNeeded(EditorColorScheme.TEXT_NORMAL);
             }
-
-            new BasicXmlPullAnalyzer().analyze(content, colors, delegate);
-
-            colors.determine(lastLine);
-            compile(editor.getCurrentFile(), content.toString(), colors);
-        } catch (Throwable ignore) {
-
         }
     }
 
@@ -1,80 +1,71 @@
 package com.tyron.code.ui.editor.language.xml;
 
-import com.tyron.builder.util.CharSequenceReader;
+import android.content.SharedPreferences;
 
-import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlPullParserFactory;
+import androidx.preference.PreferenceManager;
 
-import io.github.rosemoe.sora.interfaces.AutoCompleteProvider;
-import io.github.rosemoe.sora.text.TextAnalyzeResult;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.api.Module;
+import com.tyron.code.ui.project.ProjectManager;
+import com.tyron.completion.main.CompletionEngine;
+import com.tyron.completion.model.CompletionList;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import io.github.rosemoe.sora.data.CompletionItem;
+import io.github.rosemoe.sora.interfaces.AutoCompleteProvider;
+import io.github.rosemoe.sora.text.TextAnalyzeResult;
 import io.github.rosemoe.sora.widget.CodeEditor;
 
-import java.util.Collections;
-import java.util.Stack;
-
 public class XMLAutoCompleteProvider implements AutoCompleteProvider {
 
     private final CodeEditor mEditor;
+    private final SharedPreferences mPreferences;
 
     public XMLAutoCompleteProvider(CodeEditor editor) {
         mEditor = editor;
+        mPreferences = PreferenceManager.getDefaultSharedPreferences(editor.getContext());
     }
 
     @Override
     public List<CompletionItem> getAutoCompleteItems(String prefix, TextAnalyzeResult analyzeResult, int line, int column) {
-        return null;
-    }
-
-    private List<CompletionItem> getClosingTagSuggestions() {
-        try {
-            XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-            factory.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
-            XmlPullParser parser = factory.newPullParser();
-            parser.setInput(new CharSequenceReader(mEditor.getText()));
-
-            Stack<String> stack = new Stack<>();
-
-            int next = parser.nextTag();
-            while (true) {
-                int type = parser.getEventType();
-                switch (type) {
-                    case XmlPullParser.START_TAG:
-                        stack.push(parser.getName());
-                        break;
-                    case XmlPullParser.END_TAG:
-                        stack.pop();
-                        break;
-                }
+        if (!mPreferences.getBoolean("code_editor_completion", true)) {
+            return null;
+        }
 
-                try {
-                    next = parser.nextTag();
-                    if (next == XmlPullParser.END_DOCUMENT) {
-                        break;
-                    }
-                } catch (Exception e) {
-                    break;
-                }
-            }
+        Project project = ProjectManager.getInstance().getCurrentProject();
+        if (project == null) {
+            return null;
+        }
 
-            if (!stack.isEmpty()) {
-                List<CompletionItem> list = new ArrayList<>();
-                for (int i = stack.size() - 1; i >= 0; i--) {
-                    String s = stack.get(i);
-                    list.add(new CompletionItem(s, "tag"));
-                }
-                return list;
-            }
+        Module currentModule = project.getModule(mEditor.getCurrentFile());
+        if (!(currentModule instanceof AndroidModule)) {
+            return null;
+        }
 
-        } catch (XmlPullParserException | IOException e) {
+        Optional<CharSequence> content = currentModule.getFileManager()
+                .getFileContent(mEditor.getCurrentFile());
+        if (!content.isPresent()) {
             return null;
         }
-        return null;
+
+        CompletionList completionList = CompletionEngine.getInstance()
+                .complete(project,
+                        currentModule,
+                        mEditor.getCurrentFile(),
+                        content.get().toString(),
+                        prefix,
+                        line,
+                        column,
+                        mEditor.getCursor().getLeft());
+
+        List<CompletionItem> result = new ArrayList<>();
+        for (com.tyron.completion.model.CompletionItem item : completionList.items) {
+            result.add(new CompletionItem(item));
+        }
+        return result;
     }
 }
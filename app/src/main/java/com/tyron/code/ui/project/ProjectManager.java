@@ -9,13 +9,16 @@ import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.vfs.ChangeJournal;
+import com.tyron.builder.project.vfs.FileChange;
+import com.tyron.builder.project.vfs.FileWatcher;
 import com.tyron.code.ApplicationLoader;
 import com.tyron.code.template.CodeTemplate;
 import com.tyron.code.util.ProjectUtils;
 import com.tyron.completion.index.CompilerService;
-import com.tyron.completion.java.CompileTask;
 import com.tyron.completion.java.JavaCompilerProvider;
 import com.tyron.completion.java.JavaCompilerService;
+import com.tyron.completion.java.JavaIndexer;
 import com.tyron.completion.java.provider.CompletionEngine;
 
 import org.apache.commons.io.FileUtils;
@@ -31,6 +34,15 @@ public class ProjectManager {
     public interface TaskListener {
         void onTaskStarted(String message);
 
+        /**
+         * Called repeatedly while a task is running, by default it is reported as a new task
+         *
+         * @param progress the amount of work done so far, out of {@code max}
+         */
+        default void onProgress(String message, int progress, int max) {
+            onTaskStarted(message + " (" + progress + "/" + max + ")");
+        }
+
         void onComplete(Project project, boolean success, String message);
     }
 
@@ -49,9 +61,39 @@ public class ProjectManager {
 
     private final List<OnProjectOpenListener> mProjectOpenListeners = new ArrayList<>();
     private volatile Project mCurrentProject;
+    private FileWatcher mFileWatcher;
 
     private ProjectManager() {
+        ChangeJournal.getInstance().addListener(this::onFilesChanged);
+    }
 
+    /**
+     * Keeps the java files of the module up to date with the files that are created or deleted
+     * outside of the file tree, such as by a git checkout
+     */
+    private void onFilesChanged(List<FileChange> changes) {
+        Project project = mCurrentProject;
+        if (project == null || !(project.getMainModule() instanceof JavaModule)) {
+            return;
+        }
+        JavaModule module = (JavaModule) project.getMainModule();
+        String javaDirectory = module.getJavaDirectory().getAbsolutePath() + File.separator;
+        for (FileChange change : changes) {
+            File file = change.getFile();
+            String path = file.getAbsolutePath();
+            if (!path.endsWith(".java") || !path.startsWith(javaDirectory)) {
+                continue;
+            }
+            if (change.getKind() == FileChange.Kind.CREATED) {
+                module.addJavaFile(file);
+            } else if (change.getKind() == FileChange.Kind.DELETED) {
+                String className = path.substring(javaDirectory.length(),
+                        path.length() - ".java".length()).replace(File.separatorChar, '.');
+                if (file.equals(module.getJavaFile(className))) {
+                    module.removeJavaFile(className);
+                }
+            }
+        }
     }
 
     public void addOnProjectOpenListener(OnProjectOpenListener listener) {
@@ -86,6 +128,7 @@ public class ProjectManager {
         }
 
         mCurrentProject = project;
+        watchFiles(project);
 
         if (module instanceof JavaModule) {
             JavaModule javaModule = (JavaModule) module;
@@ -106,12 +149,9 @@ public class ProjectManager {
                 JavaCompilerProvider provider = CompilerService.getInstance()
                         .getIndex(JavaCompilerProvider.KEY);
                 JavaCompilerService service = provider.get(project, (JavaModule) module);
-                ((JavaModule) module).getJavaFiles().forEach((key, value) -> {
-                    //noinspection EmptyTryBlock
-                    try (CompileTask task = service.compile(value.toPath())) {
-
-                    }
-                });
+                JavaIndexer indexer = new JavaIndexer(project, (JavaModule) module, service);
+                List<File> indexed = indexer.index(mListener::onProgress);
+                logger.debug("Indexed " + indexed.size() + " java files");
                 mListener.onComplete(project, true, "Index successful");
             } catch (Throwable e) {
                 String message = "Failure indexing project.\n" +
@@ -129,7 +169,26 @@ public class ProjectManager {
     public void closeProject(@NonNull Project project) {
         if (project.equals(mCurrentProject)) {
             mCurrentProject = null;
+            watchFiles(null);
+        }
+    }
+
+    private synchronized void watchFiles(@Nullable Project project) {
+        if (mFileWatcher != null) {
+            mFileWatcher.close();
+            mFileWatcher = null;
+        }
+        if (project == null) {
+            return;
         }
+        File root = project.getRootFile();
+        List<File> excluded = new ArrayList<>();
+        excluded.add(project.getMainModule().getBuildDirectory());
+        excluded.add(new File(root, ".git"));
+        excluded.add(new File(root, ".gradle"));
+        excluded.add(new File(root, ".idea"));
+        mFileWatcher = new FileWatcher(root, excluded, ChangeJournal.getInstance());
+        mFileWatcher.start();
     }
 
     public synchronized Project getCurrentProject() {
@@ -29,5 +29,12 @@ public class EditorSettingsFragment extends PreferenceFragmentCompat {
             fontSize.setOnBindEditTextListener(editText ->
                     editText.setInputType(InputType.TYPE_CLASS_NUMBER));
         }
+
+        EditTextPreference poolSize =
+                findPreference(SharedPreferenceKeys.KOTLIN_COMPILER_POOL_SIZE);
+        if (poolSize != null) {
+            poolSize.setOnBindEditTextListener(editText ->
+                    editText.setInputType(InputType.TYPE_CLASS_NUMBER));
+        }
     }
 }
@@ -2,11 +2,22 @@ package com.tyron.builder.compiler;
 
 import androidx.annotation.VisibleForTesting;
 
+import com.android.apksig.DefaultApkSignerEngine;
 import com.tyron.builder.BuildModule;
+import com.tyron.builder.compiler.apk.IncrementalApkSigner;
 import com.tyron.common.util.Decompress;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Collections;
+import java.util.List;
 
 
 public class ApkSigner {
@@ -16,37 +27,46 @@ public class ApkSigner {
         //ToDo add more modes
     }
 
+    private static final String SIGNER_NAME = "CERT";
+    private static final int MIN_SDK_VERSION = 21;
 
-    private final ArrayList<String> commands ;
     private final String mApkInputPath ;
     private final String mApkOutputPath;
 
     public ApkSigner(String inputPath ,String outputPath,int mode){
-        commands = new ArrayList<>();
         mApkInputPath = inputPath;
         mApkOutputPath = outputPath;
     }
 
     //TODO: Adjust min and max sdk
     public void sign() throws Exception {
-        commands.add("sign");
-        commands.add("--key");
-        commands.add(getTestKeyFilePath());
-        commands.add("--cert");
-        commands.add(getTestCertFilePath());
-        commands.add("--min-sdk-version");
-        commands.add("21");
-        commands.add("--max-sdk-version");
-        commands.add("30");
-        commands.add("--out");
-        commands.add(mApkOutputPath);
-        commands.add("--in");
-        commands.add(mApkInputPath);
-        com.android.apksigner.ApkSignerTool.main(commands.toArray(new String[0]));
+        IncrementalApkSigner signer = new IncrementalApkSigner(getTestSignerConfigs(),
+                MIN_SDK_VERSION);
+        signer.sign(new File(mApkInputPath), new File(mApkOutputPath));
     }
 
+    /**
+     * The key and certificate are only read the first time an APK is signed
+     */
+    public static synchronized List<DefaultApkSignerEngine.SignerConfig> getTestSignerConfigs()
+            throws Exception {
+        if (sTestSignerConfigs == null) {
+            byte[] encodedKey = Files.readAllBytes(new File(getTestKeyFilePath()).toPath());
+            X509Certificate certificate;
+            try (InputStream stream = new FileInputStream(getTestCertFilePath())) {
+                certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                        .generateCertificate(stream);
+            }
+            PrivateKey key = KeyFactory.getInstance(certificate.getPublicKey().getAlgorithm())
+                    .generatePrivate(new PKCS8EncodedKeySpec(encodedKey));
+            sTestSignerConfigs = Collections.singletonList(
+                    new DefaultApkSignerEngine.SignerConfig.Builder(SIGNER_NAME, key,
+                            Collections.singletonList(certificate)).build());
+        }
+        return sTestSignerConfigs;
+    }
 
-    private String getTestKeyFilePath() {
+    private static String getTestKeyFilePath() {
         if (sTestKeyFile != null) {
             return sTestKeyFile.getAbsolutePath();
         }
@@ -63,7 +83,7 @@ public class ApkSigner {
         return check.getAbsolutePath();
     }
 
-    private String getTestCertFilePath() {
+    private static String getTestCertFilePath() {
         if (sTestCertFile != null) {
             return sTestCertFile.getAbsolutePath();
         }
@@ -83,16 +103,19 @@ public class ApkSigner {
     }
 
     @VisibleForTesting
-    public static void setTestKeyFile(File file) {
+    public static synchronized void setTestKeyFile(File file) {
         sTestKeyFile = file;
+        sTestSignerConfigs = null;
     }
 
     @VisibleForTesting
-    public static void setTestCertFile(File file) {
+    public static synchronized void setTestCertFile(File file) {
         sTestCertFile = file;
+        sTestSignerConfigs = null;
     }
 
     private static File sTestKeyFile;
     private static File sTestCertFile;
+    private static List<DefaultApkSignerEngine.SignerConfig> sTestSignerConfigs;
 
 }
@@ -11,10 +11,27 @@ import com.tyron.builder.project.api.Module;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class BuilderImpl<T extends Module> implements Builder<T> {
 
+    /**
+     * The maximum number of tasks that can run at the same time, tasks that does not
+     * depend on each other are ran concurrently.
+     */
+    private static final int MAX_WORKERS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
     private final Handler mMainHandler;
     private final T mProject;
     private final ILogger mLogger;
@@ -48,28 +65,142 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
     public final void build(BuildType type) throws CompilationFailedException, IOException {
         mTasksRan.clear();
         List<Task<? super T>> tasks = getTasks(type);
-        for (int i = 0, tasksSize = tasks.size(); i < tasksSize; i++) {
-            Task<? super T> task = tasks.get(i);
-            final float current = i;
-            getLogger().info("Running " + task.getName());
-            try {
-                mMainHandler.post(() -> updateProgress(task.getName(), "Task started",
-                        (int) ((current / (float) tasks.size()) * 100f)));
-                task.prepare(type);
-                task.run();
-            } catch (Throwable e) {
-                if (e instanceof OutOfMemoryError) {
-                    tasks.clear();
-                    mTasksRan.clear();
-                    throw new CompilationFailedException("Builder ran out of memory", e);
+        TaskGraph graph = new TaskGraph(tasks);
+
+        int[] remaining = new int[tasks.size()];
+        for (int i = 0; i < remaining.length; i++) {
+            remaining[i] = graph.getDependencies(i).size();
+        }
+
+        List<TaskRun> runs = new ArrayList<>(Collections.nCopies(tasks.size(), null));
+        AtomicInteger finished = new AtomicInteger();
+        long buildStart = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_WORKERS);
+        CompletionService<TaskRun> completionService = new ExecutorCompletionService<>(executor);
+        int running = 0;
+        TaskRun failed = null;
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                if (remaining[i] == 0) {
+                    runs.set(i, new TaskRun(i, tasks.get(i), type, finished, tasks.size()));
+                    completionService.submit(runs.get(i));
+                    running++;
                 }
-                task.clean();
-                mTasksRan.forEach(Task::clean);
-                throw e;
             }
-            mTasksRan.add(task);
+
+            while (running > 0) {
+                TaskRun run = completionService.take().get();
+                running--;
+
+                if (run.error != null) {
+                    // wait for the tasks that are currently running but don't start new ones
+                    if (failed == null) {
+                        failed = run;
+                    }
+                    continue;
+                }
+
+                mTasksRan.add(tasks.get(run.index));
+                finished.incrementAndGet();
+                if (failed != null) {
+                    continue;
+                }
+
+                for (int dependent : graph.getDependents(run.index)) {
+                    remaining[dependent]--;
+                    if (remaining[dependent] == 0) {
+                        runs.set(dependent, new TaskRun(dependent, tasks.get(dependent), type,
+                                finished, tasks.size()));
+                        completionService.submit(runs.get(dependent));
+                        running++;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            mTasksRan.forEach(Task::clean);
+            throw new CompilationFailedException("Build was interrupted", e);
+        } catch (ExecutionException e) {
+            // TaskRun catches everything thrown by the task, this should not happen
+            throw new CompilationFailedException(e);
+        } finally {
+            executor.shutdown();
+        }
+
+        if (failed != null) {
+            if (failed.error instanceof OutOfMemoryError) {
+                tasks.clear();
+                mTasksRan.clear();
+                throw new CompilationFailedException("Builder ran out of memory", failed.error);
+            }
+            failed.task.clean();
+            mTasksRan.forEach(Task::clean);
+            rethrow(failed.error);
         }
         mTasksRan.forEach(Task::clean);
+
+        reportTimings(graph, runs, buildStart);
+    }
+
+    private static void rethrow(Throwable e) throws CompilationFailedException, IOException {
+        if (e instanceof CompilationFailedException) {
+            throw (CompilationFailedException) e;
+        }
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new CompilationFailedException("Task failed", e);
+    }
+
+    /**
+     * Logs how long each task took and the chain of tasks that determined the total
+     * duration of the build.
+     */
+    private void reportTimings(TaskGraph graph, List<TaskRun> runs, long buildStart) {
+        StringBuilder report = new StringBuilder();
+        report.append("Build finished in ")
+                .append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - buildStart))
+                .append(" ms\n");
+
+        int last = -1;
+        for (TaskRun run : runs) {
+            if (run == null) {
+                continue;
+            }
+            report.append(String.format(Locale.ENGLISH, "  %-28s %6d ms (started at +%d ms)\n",
+                    run.task.getName(),
+                    TimeUnit.NANOSECONDS.toMillis(run.end - run.start),
+                    TimeUnit.NANOSECONDS.toMillis(run.start - buildStart)));
+            if (last == -1 || run.end > runs.get(last).end) {
+                last = run.index;
+            }
+        }
+
+        // walk back from the last task to finish through the dependency that finished last
+        List<String> criticalPath = new ArrayList<>();
+        while (last != -1) {
+            criticalPath.add(0, runs.get(last).task.getName());
+            int previous = -1;
+            for (int dependency : graph.getDependencies(last)) {
+                if (runs.get(dependency) == null) {
+                    continue;
+                }
+                if (previous == -1 || runs.get(dependency).end > runs.get(previous).end) {
+                    previous = dependency;
+                }
+            }
+            last = previous;
+        }
+        report.append("Critical path: ").append(String.join(" -> ", criticalPath));
+        getLogger().debug(report.toString());
     }
 
     public abstract List<Task<? super T>> getTasks(BuildType type);
@@ -86,4 +217,43 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
     public ILogger getLogger() {
         return mLogger;
     }
+
+    private class TaskRun implements Callable<TaskRun> {
+
+        private final int index;
+        private final Task<? super T> task;
+        private final BuildType type;
+        private final AtomicInteger finished;
+        private final int total;
+
+        private long start;
+        private long end;
+        private Throwable error;
+
+        private TaskRun(int index, Task<? super T> task, BuildType type,
+                        AtomicInteger finished, int total) {
+            this.index = index;
+            this.task = task;
+            this.type = type;
+            this.finished = finished;
+            this.total = total;
+        }
+
+        @Override
+        public TaskRun call() {
+            start = System.nanoTime();
+            getLogger().info("Running " + task.getName());
+            final float current = finished.get();
+            mMainHandler.post(() -> updateProgress(task.getName(), "Task started",
+                    (int) ((current / (float) total) * 100f)));
+            try {
+                task.prepare(type);
+                task.run();
+            } catch (Throwable e) {
+                error = e;
+            }
+            end = System.nanoTime();
+            return this;
+        }
+    }
 }
@@ -69,6 +69,10 @@ public class CleanTask extends Task<AndroidModule> {
                 .clear();
         getModule().getCache(MergeSymbolsTask.CACHE_KEY, new Cache<>())
                 .clear();
+        getModule().getPersistentCache(IncrementalJavaTask.CACHE_KEY).clear();
+        getModule().getPersistentCache(IncrementalD8Task.CACHE_KEY).clear();
+        getModule().getPersistentCache(MergeSymbolsTask.CACHE_KEY).clear();
+        FileUtils.deleteQuietly(IncrementalJavaTask.getDependencyIndexFile(getModule()));
     }
     private void cleanClasses() {
 
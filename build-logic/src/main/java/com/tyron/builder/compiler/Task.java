@@ -1,10 +1,14 @@
 package com.tyron.builder.compiler;
 
+import androidx.annotation.Nullable;
+
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.project.api.Module;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 
 /**
  *
@@ -51,6 +55,29 @@ public abstract class Task<T extends Module> {
      */
     public abstract void run() throws IOException, CompilationFailedException;
 
+    /**
+     * The files or directories that this task reads. The builder will run this task only after
+     * every task before it that writes to any of these has finished.
+     *
+     * @return the inputs of this task, or null if they are unknown in which case this task
+     * will wait for every task before it and every task after it will wait for this task
+     */
+    @Nullable
+    public Collection<File> getInputs() {
+        return null;
+    }
+
+    /**
+     * The files or directories that this task writes to.
+     *
+     * @return the outputs of this task, or null if they are unknown
+     * @see #getInputs()
+     */
+    @Nullable
+    public Collection<File> getOutputs() {
+        return null;
+    }
+
     /**
      * Called after the compilation has finished successfully on every tasks
      */
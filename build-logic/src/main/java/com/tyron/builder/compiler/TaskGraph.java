@@ -0,0 +1,102 @@
+package com.tyron.builder.compiler;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Computes the dependencies between a list of tasks from their declared inputs and outputs.
+ *
+ * A task depends on every task before it in the list whose outputs overlap with its inputs or
+ * outputs, or whose inputs overlap with its outputs. Tasks that do not declare their inputs or
+ * outputs act as barriers, they depend on every task before them and every task after them
+ * depends on them, so the original ordering is preserved for them.
+ */
+public class TaskGraph {
+
+    private final List<? extends Task<?>> mTasks;
+    private final List<Set<Integer>> mDependencies;
+    private final List<Set<Integer>> mDependents;
+
+    public TaskGraph(@NonNull List<? extends Task<?>> tasks) {
+        mTasks = tasks;
+        mDependencies = new ArrayList<>(tasks.size());
+        mDependents = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            mDependencies.add(new HashSet<>());
+            mDependents.add(new HashSet<>());
+        }
+
+        for (int i = 0; i < tasks.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                if (dependsOn(tasks.get(i), tasks.get(j))) {
+                    mDependencies.get(i).add(j);
+                    mDependents.get(j).add(i);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return mTasks.size();
+    }
+
+    public Task<?> getTask(int index) {
+        return mTasks.get(index);
+    }
+
+    /**
+     * @return the indices of the tasks that must finish before the task at the given index
+     */
+    public Set<Integer> getDependencies(int index) {
+        return Collections.unmodifiableSet(mDependencies.get(index));
+    }
+
+    /**
+     * @return the indices of the tasks that wait for the task at the given index
+     */
+    public Set<Integer> getDependents(int index) {
+        return Collections.unmodifiableSet(mDependents.get(index));
+    }
+
+    private static boolean dependsOn(Task<?> task, Task<?> previous) {
+        Collection<File> inputs = task.getInputs();
+        Collection<File> outputs = task.getOutputs();
+        Collection<File> previousInputs = previous.getInputs();
+        Collection<File> previousOutputs = previous.getOutputs();
+        if (inputs == null || outputs == null || previousInputs == null ||
+                previousOutputs == null) {
+            return true;
+        }
+        return overlaps(previousOutputs, inputs) ||
+                overlaps(previousOutputs, outputs) ||
+                overlaps(previousInputs, outputs);
+    }
+
+    private static boolean overlaps(Collection<File> first, Collection<File> second) {
+        for (File a : first) {
+            for (File b : second) {
+                if (isAncestorOrSelf(a, b) || isAncestorOrSelf(b, a)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAncestorOrSelf(File ancestor, File file) {
+        String ancestorPath = ancestor.getAbsolutePath();
+        String path = file.getAbsolutePath();
+        if (!path.startsWith(ancestorPath)) {
+            return false;
+        }
+        return path.length() == ancestorPath.length() ||
+                path.charAt(ancestorPath.length()) == File.separatorChar;
+    }
+}
@@ -8,27 +8,21 @@ import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.common.util.BinaryExecutor;
 import com.tyron.common.util.Decompress;
+import com.tyron.common.util.ZipArchiver;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 public class AabTask extends Task<AndroidModule> {
 
@@ -97,36 +91,7 @@ public class AabTask extends Task<AndroidModule> {
     }
 
     private static void uApks(String Apks, String dApks) throws IOException {
-        File dir = new File(dApks);
-        // create output directory if it doesn't exist
-        if (!dir.exists() && !dir.mkdirs()) {
-            throw new IOException("Failed to create directory: " + dir);
-        }
-
-        try (FileInputStream fis = new FileInputStream(Apks)) {
-            byte[] buffer = new byte[1024];
-            try (ZipInputStream zis = new ZipInputStream(fis)) {
-                ZipEntry ze = zis.getNextEntry();
-                while (ze != null) {
-                    String fileName = ze.getName();
-                    File newFile = new File(dApks + File.separator + fileName);
-                    //create directories for sub directories in zip
-                    File parent = newFile.getParentFile();
-                    if (parent != null) {
-                        if (!parent.exists() && !parent.mkdirs()) {
-                            throw new IOException("Failed to create directories: " + parent);
-                        }
-                    }
-                    try (FileOutputStream fos = new FileOutputStream(newFile)) {
-                        int len;
-                        while ((len = zis.read(buffer)) > 0) {
-                            fos.write(buffer, 0, len);
-                        }
-                    }
-                    ze = zis.getNextEntry();
-                }
-            }
-        }
+        ZipArchiver.unzip(new File(Apks), new File(dApks), true);
     }
 
     private void buildApks() throws CompilationFailedException {
@@ -199,18 +164,8 @@ public class AabTask extends Task<AndroidModule> {
         zipFolder(Paths.get(folderToZip), Paths.get(zipName));
     }
 
-    // Uses java.util.zip to create zip file
     private void zipFolder(final Path sourceFolderPath, Path zipPath) throws IOException {
-        final ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipPath.toFile()));
-        Files.walkFileTree(sourceFolderPath, new SimpleFileVisitor<Path>() {
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                zos.putNextEntry(new ZipEntry(sourceFolderPath.relativize(file).toString()));
-                Files.copy(file, zos);
-                zos.closeEntry();
-                return FileVisitResult.CONTINUE;
-            }
-        });
-        zos.close();
+        ZipArchiver.zipDirectory(sourceFolderPath.toFile(), zipPath.toFile());
     }
 
 
@@ -0,0 +1,372 @@
+package com.tyron.builder.compiler.apk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.common.util.RawZipFile;
+import com.tyron.common.util.RawZipWriter;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Packages an APK by reusing the previous one. Entries that come from other archives, such as
+ * the resources linked by aapt2 and the java resources of libraries, are copied without
+ * decompressing them. Files such as dex files and native libraries are only compressed again
+ * if their contents have changed since the last build, otherwise their compressed data is
+ * copied from the previous APK.
+ *
+ * The source of each file entry is recorded in an index next to the APK, so unchanged files
+ * are not even read on the next build.
+ */
+public class IncrementalApkBuilder {
+
+    private static final String INDEX_EXTENSION = ".index";
+
+    private static final String[] IGNORED_EXTENSIONS = {"aidl", "rs", "fs", "rsh", "d", "java",
+            "scala", "class", "scc", "swp"};
+    private static final String[] IGNORED_FILES = {"thumbs.db", "picasa.ini", "package.html",
+            "overview.html"};
+    private static final String[] IGNORED_FOLDERS = {"cvs", ".svn", "sccs"};
+
+    private static class Input {
+        final File file;
+        final RawZipFile zip;
+        final RawZipFile.Entry entry;
+
+        Input(File file) {
+            this.file = file;
+            this.zip = null;
+            this.entry = null;
+        }
+
+        Input(RawZipFile zip, RawZipFile.Entry entry) {
+            this.file = null;
+            this.zip = zip;
+            this.entry = entry;
+        }
+
+        String getSource() {
+            return file != null ? file.getAbsolutePath() : zip.getFile().getAbsolutePath();
+        }
+    }
+
+    private final File mApk;
+    private final File mIndexFile;
+    private final Map<String, Input> mInputs = new LinkedHashMap<>();
+    private final List<RawZipFile> mOpenFiles = new ArrayList<>();
+    private boolean mDebugMode;
+
+    private int mCopiedCount;
+    private int mCompressedCount;
+
+    public IncrementalApkBuilder(@NonNull File apk) {
+        mApk = apk;
+        mIndexFile = new File(apk.getAbsolutePath() + INDEX_EXTENSION);
+    }
+
+    /**
+     * In debug mode, changed files are compressed with the fastest level and gdbserver is
+     * packaged along with the native libraries
+     */
+    public void setDebugMode(boolean debugMode) {
+        mDebugMode = debugMode;
+    }
+
+    /**
+     * Adds the file to the APK at the given path
+     */
+    public void addFile(@NonNull File file, @NonNull String path)
+            throws CompilationFailedException {
+        addInput(path, new Input(file));
+    }
+
+    /**
+     * Adds every entry of the archive, used for the resources linked by aapt2
+     */
+    public void addZip(@NonNull File zip) throws IOException, CompilationFailedException {
+        RawZipFile zipFile = open(zip);
+        for (RawZipFile.Entry entry : zipFile.getEntries()) {
+            if (!entry.isDirectory()) {
+                addInput(entry.name, new Input(zipFile, entry));
+            }
+        }
+    }
+
+    /**
+     * Adds the java resources of the jar, class files, signatures and source files are skipped
+     */
+    public void addResourcesFromJar(@NonNull File jar)
+            throws IOException, CompilationFailedException {
+        RawZipFile zipFile = open(jar);
+        for (RawZipFile.Entry entry : zipFile.getEntries()) {
+            if (!entry.isDirectory() && isJavaResource(entry.name)) {
+                addInput(entry.name, new Input(zipFile, entry));
+            }
+        }
+    }
+
+    /**
+     * Adds the native libraries of a jni directory, the libraries of each abi are expected in a
+     * sub directory named after it.
+     */
+    public void addNativeLibraries(@NonNull File jniDirectory) throws CompilationFailedException {
+        File[] abis = jniDirectory.listFiles(File::isDirectory);
+        if (abis == null) {
+            return;
+        }
+        for (File abi : abis) {
+            File[] libraries = abi.listFiles(File::isFile);
+            if (libraries == null) {
+                continue;
+            }
+            for (File library : libraries) {
+                String name = library.getName();
+                if (name.endsWith(".so") || (mDebugMode && name.equals("gdbserver"))) {
+                    addFile(library, "lib/" + abi.getName() + "/" + name);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries whose compressed data was copied as is in the last build
+     */
+    public int getCopiedCount() {
+        return mCopiedCount;
+    }
+
+    /**
+     * @return the number of entries that had to be compressed in the last build
+     */
+    public int getCompressedCount() {
+        return mCompressedCount;
+    }
+
+    /**
+     * Writes the APK, the previous APK is replaced only once the new one has been written
+     */
+    public void build() throws IOException {
+        mCopiedCount = 0;
+        mCompressedCount = 0;
+
+        File parent = mApk.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(parent, mApk.getName() + ".tmp");
+
+        Map<String, String> index = readIndex();
+        Map<String, String> newIndex = new LinkedHashMap<>();
+        RawZipFile previous = openPrevious();
+        try {
+            int level = mDebugMode ? Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION;
+            try (RawZipWriter writer = new RawZipWriter(temp, level)) {
+                for (Map.Entry<String, Input> it : mInputs.entrySet()) {
+                    String path = it.getKey();
+                    Input input = it.getValue();
+                    if (input.file == null) {
+                        writer.writeRaw(path, input.zip, input.entry);
+                        mCopiedCount++;
+                        continue;
+                    }
+
+                    String fingerprint = fingerprint(input.file);
+                    RawZipFile.Entry old = previous != null ? previous.getEntry(path) : null;
+                    if (old != null && isUnchanged(input.file, fingerprint, index.get(path), old)) {
+                        writer.writeRaw(path, previous, old);
+                        mCopiedCount++;
+                    } else {
+                        writer.writeDeflated(path, input.file);
+                        mCompressedCount++;
+                    }
+                    newIndex.put(path, fingerprint);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            FileUtils.deleteQuietly(temp);
+            throw e;
+        } finally {
+            if (previous != null) {
+                previous.close();
+            }
+            closeInputs();
+        }
+
+        Files.move(temp.toPath(), mApk.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        writeIndex(newIndex);
+    }
+
+    /**
+     * A file is unchanged if it is still the same file that was packaged in the previous
+     * build, or if it has been written again with the same contents
+     */
+    private static boolean isUnchanged(File file, String fingerprint, String oldFingerprint,
+                                       RawZipFile.Entry old) throws IOException {
+        if (fingerprint.equals(oldFingerprint)) {
+            return true;
+        }
+        if (file.length() != old.size) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue() == old.crc;
+    }
+
+    private void addInput(String path, Input input) throws CompilationFailedException {
+        Input existing = mInputs.get(path);
+        if (existing != null) {
+            closeInputs();
+            throw new CompilationFailedException("Duplicate file " + path + ": " +
+                    existing.getSource() + " and " + input.getSource());
+        }
+        mInputs.put(path, input);
+    }
+
+    private RawZipFile open(File zip) throws IOException {
+        RawZipFile zipFile;
+        try {
+            zipFile = new RawZipFile(zip);
+        } catch (IOException e) {
+            closeInputs();
+            throw e;
+        }
+        mOpenFiles.add(zipFile);
+        return zipFile;
+    }
+
+    private RawZipFile openPrevious() {
+        if (!mApk.exists()) {
+            return null;
+        }
+        try {
+            return new RawZipFile(mApk);
+        } catch (IOException e) {
+            // a corrupted APK is written from scratch
+            return null;
+        }
+    }
+
+    private void closeInputs() {
+        for (RawZipFile file : mOpenFiles) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+
+            }
+        }
+        mOpenFiles.clear();
+    }
+
+    private Map<String, String> readIndex() {
+        Map<String, String> index = new HashMap<>();
+        if (!mIndexFile.exists() || !mApk.exists()) {
+            return index;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(mIndexFile.toPath(),
+                StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('\t');
+                if (separator != -1) {
+                    index.put(line.substring(0, separator), line.substring(separator + 1));
+                }
+            }
+        } catch (IOException e) {
+            // every file is checked against the previous APK instead
+            index.clear();
+        }
+        return index;
+    }
+
+    private void writeIndex(Map<String, String> index) {
+        try (BufferedWriter writer = Files.newBufferedWriter(mIndexFile.toPath(),
+                StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : index.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(entry.getValue());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            // the next build compares the files against the previous APK instead
+            FileUtils.deleteQuietly(mIndexFile);
+        }
+    }
+
+    private static String fingerprint(File file) {
+        return file.getAbsolutePath() + '\t' + file.length() + '\t' + file.lastModified();
+    }
+
+    /**
+     * Mirrors the files that the ApkBuilder of the SDK packages from the jars of libraries
+     */
+    @VisibleForTesting
+    static boolean isJavaResource(@NonNull String path) {
+        if (path.equals("META-INF/MANIFEST.MF")) {
+            return false;
+        }
+        String[] segments = path.split("/");
+        for (int i = 0; i < segments.length - 1; i++) {
+            String folder = segments[i].toLowerCase(Locale.ROOT);
+            if (folder.startsWith("_")) {
+                return false;
+            }
+            for (String ignored : IGNORED_FOLDERS) {
+                if (folder.equals(ignored)) {
+                    return false;
+                }
+            }
+        }
+
+        String name = segments[segments.length - 1];
+        if (name.startsWith(".") || name.endsWith("~")) {
+            return false;
+        }
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        if (path.startsWith("META-INF/") && (lowerCase.endsWith(".sf") ||
+                lowerCase.endsWith(".rsa") || lowerCase.endsWith(".dsa") ||
+                lowerCase.endsWith(".ec") || lowerCase.startsWith("sig-"))) {
+            return false;
+        }
+        for (String ignored : IGNORED_FILES) {
+            if (lowerCase.equals(ignored)) {
+                return false;
+            }
+        }
+        int dot = lowerCase.lastIndexOf('.');
+        if (dot != -1) {
+            String extension = lowerCase.substring(dot + 1);
+            for (String ignored : IGNORED_EXTENSIONS) {
+                if (extension.equals(ignored)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
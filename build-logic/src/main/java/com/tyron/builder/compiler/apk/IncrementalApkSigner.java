@@ -0,0 +1,259 @@
+package com.tyron.builder.compiler.apk;
+
+import androidx.annotation.NonNull;
+
+import com.android.apksig.ApkSignerEngine;
+import com.android.apksig.DefaultApkSignerEngine;
+import com.android.apksig.util.DataSink;
+import com.android.apksig.util.DataSources;
+import com.android.apksig.util.RunnablesExecutor;
+import com.tyron.common.util.RawZipFile;
+import com.tyron.common.util.RawZipWriter;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Signs an APK in process with the v1 and v2 schemes.
+ *
+ * The v1 scheme lists the digest of every entry in the manifest of the jar. The manifest of the
+ * previously signed APK is used to seed these digests, so only the entries whose contents have
+ * changed since then are decompressed and digested again. The other entries are copied without
+ * decompressing them. The v2 scheme digests the whole file, its chunks are digested in parallel.
+ */
+public class IncrementalApkSigner {
+
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    private static final int EOCD_CENTRAL_DIRECTORY_OFFSET = 16;
+
+    private final List<DefaultApkSignerEngine.SignerConfig> mSignerConfigs;
+    private final int mMinSdkVersion;
+
+    private int mDigestedCount;
+
+    public IncrementalApkSigner(@NonNull List<DefaultApkSignerEngine.SignerConfig> signerConfigs,
+                                int minSdkVersion) {
+        mSignerConfigs = signerConfigs;
+        mMinSdkVersion = minSdkVersion;
+    }
+
+    /**
+     * @return the number of entries whose digests were computed in the last signing
+     */
+    public int getDigestedCount() {
+        return mDigestedCount;
+    }
+
+    /**
+     * Signs the unsigned input APK, the output APK of the previous signing is reused if it
+     * exists and is replaced once the new one has been written
+     */
+    public void sign(@NonNull File inputApk, @NonNull File outputApk) throws Exception {
+        mDigestedCount = 0;
+
+        File temp = new File(outputApk.getAbsolutePath() + ".tmp");
+        try (ApkSignerEngine engine = createEngine();
+             RawZipFile input = new RawZipFile(inputApk)) {
+            Set<String> unchanged = seedDigests(engine, input, outputApk);
+
+            try (RawZipWriter writer = new RawZipWriter(temp, Deflater.DEFAULT_COMPRESSION)) {
+                for (RawZipFile.Entry entry : input.getEntries()) {
+                    ApkSignerEngine.InputJarEntryInstructions instructions =
+                            engine.inputJarEntry(entry.name);
+                    if (instructions.getOutputPolicy() !=
+                            ApkSignerEngine.InputJarEntryInstructions.OutputPolicy.OUTPUT) {
+                        // signatures of the input are replaced by the ones of the engine
+                        continue;
+                    }
+                    writer.writeRaw(entry.name, input, entry);
+                    if (unchanged.contains(entry.name)) {
+                        continue;
+                    }
+                    ApkSignerEngine.InspectJarEntryRequest request =
+                            engine.outputJarEntry(entry.name);
+                    if (request != null) {
+                        consume(input, entry, request.getDataSink());
+                        request.done();
+                        mDigestedCount++;
+                    }
+                }
+
+                ApkSignerEngine.OutputJarSignatureRequest signatureRequest =
+                        engine.outputJarEntries();
+                if (signatureRequest != null) {
+                    for (ApkSignerEngine.OutputJarSignatureRequest.JarEntry entry :
+                            signatureRequest.getAdditionalJarEntries()) {
+                        byte[] data = entry.getData();
+                        writer.writeDeflated(entry.getName(), data);
+                        // the engine checks that the signature files were output as is
+                        ApkSignerEngine.InspectJarEntryRequest request =
+                                engine.outputJarEntry(entry.getName());
+                        if (request != null) {
+                            request.getDataSink().consume(data, 0, data.length);
+                            request.done();
+                        }
+                    }
+                    signatureRequest.done();
+                }
+            }
+
+            writeSigningBlock(engine, temp);
+            engine.outputDone();
+        } catch (Exception e) {
+            FileUtils.deleteQuietly(temp);
+            throw e;
+        }
+        Files.move(temp.toPath(), outputApk.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private ApkSignerEngine createEngine() throws Exception {
+        DefaultApkSignerEngine engine =
+                new DefaultApkSignerEngine.Builder(mSignerConfigs, mMinSdkVersion)
+                        .setV1SigningEnabled(true)
+                        .setV2SigningEnabled(true)
+                        // v3 only adds key rotation, which the same key of every build does
+                        // not need, it would digest the whole file a second time
+                        .setV3SigningEnabled(false)
+                        .build();
+        engine.setExecutor(RunnablesExecutor.MULTI_THREADED);
+        return engine;
+    }
+
+    /**
+     * Passes the digests of the previously signed APK to the engine
+     *
+     * @return the names of the entries whose digests can be reused
+     */
+    private static Set<String> seedDigests(ApkSignerEngine engine, RawZipFile input,
+                                           File previousApk) {
+        Set<String> unchanged = new HashSet<>();
+        if (!previousApk.exists()) {
+            return unchanged;
+        }
+        try (RawZipFile previous = new RawZipFile(previousApk)) {
+            RawZipFile.Entry manifest = previous.getEntry(MANIFEST);
+            if (manifest == null) {
+                return unchanged;
+            }
+            Set<String> names = new HashSet<>();
+            for (RawZipFile.Entry entry : input.getEntries()) {
+                names.add(entry.name);
+                RawZipFile.Entry old = previous.getEntry(entry.name);
+                if (old != null && old.crc == entry.crc && old.size == entry.size) {
+                    unchanged.add(entry.name);
+                }
+            }
+
+            byte[] manifestBytes;
+            try (InputStream stream = previous.getInputStream(manifest)) {
+                manifestBytes = readFully(stream, (int) manifest.size);
+            }
+            Set<String> digested = new HashSet<>(engine.initWith(manifestBytes, names));
+            for (String name : digested) {
+                if (!names.contains(name)) {
+                    engine.outputJarEntryRemoved(name);
+                }
+            }
+            unchanged.retainAll(digested);
+        } catch (IOException | RuntimeException e) {
+            // every entry is digested again
+            unchanged.clear();
+        }
+        return unchanged;
+    }
+
+    /**
+     * Inserts the APK signing block before the central directory of the zip
+     */
+    private static void writeSigningBlock(ApkSignerEngine engine, File apk) throws Exception {
+        long directoryOffset;
+        long directorySize;
+        try (RawZipFile zip = new RawZipFile(apk)) {
+            directoryOffset = zip.getCentralDirectoryOffset();
+            directorySize = zip.getCentralDirectorySize();
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(apk, "rw")) {
+            FileChannel channel = file.getChannel();
+            long eocdOffset = directoryOffset + directorySize;
+            ByteBuffer directory = readFully(channel, directoryOffset, (int) directorySize);
+            ByteBuffer eocd = readFully(channel, eocdOffset, (int) (channel.size() - eocdOffset));
+            eocd.order(ByteOrder.LITTLE_ENDIAN);
+
+            ApkSignerEngine.OutputApkSigningBlockRequest2 request = engine.outputZipSections2(
+                    DataSources.asDataSource(channel, 0, directoryOffset),
+                    DataSources.asDataSource(directory.duplicate()),
+                    DataSources.asDataSource(eocd.duplicate()));
+            if (request == null) {
+                return;
+            }
+            byte[] block = request.getApkSigningBlock();
+            int padding = request.getPaddingSizeBeforeApkSigningBlock();
+            eocd.putInt(EOCD_CENTRAL_DIRECTORY_OFFSET,
+                    (int) (directoryOffset + padding + block.length));
+
+            channel.position(directoryOffset);
+            writeFully(channel, ByteBuffer.allocate(padding));
+            writeFully(channel, ByteBuffer.wrap(block));
+            writeFully(channel, directory);
+            writeFully(channel, eocd);
+            request.done();
+        }
+    }
+
+    private static void consume(RawZipFile zip, RawZipFile.Entry entry, DataSink sink)
+            throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = zip.getInputStream(entry)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                sink.consume(buffer, 0, read);
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream input, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        int offset = 0;
+        while (offset < size) {
+            int read = input.read(bytes, offset, size - offset);
+            if (read == -1) {
+                throw new IOException("Unexpected end of stream");
+            }
+            offset += read;
+        }
+        return bytes;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int size)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -2,10 +2,6 @@ package com.tyron.builder.compiler.apk;
 
 import android.net.Uri;
 
-import com.android.sdklib.build.ApkBuilder;
-import com.android.sdklib.build.ApkCreationException;
-import com.android.sdklib.build.DuplicateFileException;
-import com.android.sdklib.build.SealedApkException;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -15,6 +11,7 @@ import com.tyron.builder.project.api.AndroidModule;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class PackageTask extends Task<AndroidModule> {
@@ -78,56 +75,54 @@ public class PackageTask extends Task<AndroidModule> {
 
     @Override
     public void run() throws IOException, CompilationFailedException {
+        IncrementalApkBuilder builder = new IncrementalApkBuilder(mApk);
+        builder.addZip(mGeneratedRes);
+        builder.addFile(mDexFile, "classes.dex");
 
         int dexCount = 1;
-        try {
-            ApkBuilder builder = new ApkBuilder(
-                    mApk.getAbsolutePath(),
-                    mGeneratedRes.getAbsolutePath(),
-                    mDexFile.getAbsolutePath(),
-                    null,
-                    null);
-
-            for (File extraDex : mDexFiles) {
-                dexCount++;
-                builder.addFile(extraDex, Uri.parse(extraDex.getAbsolutePath()).getLastPathSegment());
-            }
+        for (File extraDex : mDexFiles) {
+            dexCount++;
+            builder.addFile(extraDex, Uri.parse(extraDex.getAbsolutePath()).getLastPathSegment());
+        }
 
-            for (File library : mLibraries) {
-                builder.addResourcesFromJar(library);
+        for (File library : mLibraries) {
+            builder.addResourcesFromJar(library);
 
-                File parent = library.getParentFile();
-                if (parent != null) {
-                    File jniFolder = new File(parent, "jni");
-                    if (jniFolder.exists() && jniFolder.isDirectory()) {
-                        builder.addNativeLibraries(jniFolder);
-                    }
+            File parent = library.getParentFile();
+            if (parent != null) {
+                File jniFolder = new File(parent, "jni");
+                if (jniFolder.exists() && jniFolder.isDirectory()) {
+                    builder.addNativeLibraries(jniFolder);
                 }
             }
+        }
 
-            if (getModule().getNativeLibrariesDirectory().exists()) {
-                builder.addNativeLibraries(getModule().getNativeLibrariesDirectory());
-            }
+        if (getModule().getNativeLibrariesDirectory().exists()) {
+            builder.addNativeLibraries(getModule().getNativeLibrariesDirectory());
+        }
 
-            if (mBuildType == BuildType.DEBUG) {
-                builder.setDebugMode(true);
-                // For debug mode, dex files are not merged to save up compile time
-                for (File it : getModule().getLibraries()) {
-                    File parent = it.getParentFile();
-                    if (parent != null) {
-                        File[] dexFiles = parent.listFiles(c -> c.getName().endsWith(".dex"));
-                        if (dexFiles != null) {
-                            for (File dexFile : dexFiles) {
-                                dexCount++;
-                                builder.addFile(dexFile, "classes" + dexCount + ".dex");
-                            }
+        if (mBuildType == BuildType.DEBUG) {
+            // set after the native libraries are added so gdbserver is not packaged
+            builder.setDebugMode(true);
+            // For debug mode, dex files are not merged to save up compile time
+            for (File it : getModule().getLibraries()) {
+                File parent = it.getParentFile();
+                if (parent != null) {
+                    File[] dexFiles = parent.listFiles(c -> c.getName().endsWith(".dex"));
+                    if (dexFiles != null) {
+                        // keeps the names of the entries stable between builds
+                        Arrays.sort(dexFiles);
+                        for (File dexFile : dexFiles) {
+                            dexCount++;
+                            builder.addFile(dexFile, "classes" + dexCount + ".dex");
                         }
                     }
                 }
             }
-            builder.sealApk();
-        } catch (ApkCreationException | SealedApkException | DuplicateFileException e) {
-            throw new CompilationFailedException(e);
         }
+        builder.build();
+
+        getLogger().debug("Packaged APK, " + builder.getCopiedCount() + " entries copied and " +
+                builder.getCompressedCount() + " entries compressed.");
     }
 }
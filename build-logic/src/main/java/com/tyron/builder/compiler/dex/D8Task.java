@@ -1,6 +1,5 @@
 package com.tyron.builder.compiler.dex;
 
-import com.android.tools.r8.CompilationMode;
 import com.android.tools.r8.D8;
 import com.android.tools.r8.D8Command;
 import com.android.tools.r8.OutputMode;
@@ -74,37 +73,8 @@ public class D8Task extends Task<JavaModule> {
 	 * @throws com.android.tools.r8.CompilationFailedException if the compilation has failed
 	 */
 	protected void ensureDexedLibraries() throws com.android.tools.r8.CompilationFailedException {
-		List<File> libraries = getModule().getLibraries();
-
-		for (File lib : libraries) {
-			File parentFile = lib.getParentFile();
-			if (parentFile == null) {
-				continue;
-			}
-			File[] libFiles = lib.getParentFile().listFiles();
-			if (libFiles == null) {
-				if (!lib.delete()) {
-					getLogger().warning("Failed to delete " + lib.getAbsolutePath());
-				}
-			} else {
-				File dex = new File(lib.getParentFile(), "classes.dex");
-				if (dex.exists()) {
-					continue;
-				}
-				if (lib.exists()) {
-					getLogger().debug("Dexing jar " + parentFile.getName());
-					D8Command command = D8Command.builder(new DexDiagnosticHandler(getLogger()))
-							.addLibraryFiles(getLibraryFiles())
-							.addClasspathFiles(libraries.stream().map(File::toPath).collect(Collectors.toList()))
-							.setMinApiLevel(21)
-							.addProgramFiles(lib.toPath())
-							.setMode(CompilationMode.RELEASE)
-							.setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
-							.build();
-					D8.run(command);
-				}
-			}
-		}
+		LibraryDexCache.getInstance().ensureDexedLibraries(getModule().getLibraries(),
+				getLibraryFiles(), 21, new DexDiagnosticHandler(getLogger()), getLogger());
 	}
 
 	private List<Path> getLibraryFiles() {
@@ -13,6 +13,7 @@ import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.cache.PersistentCache;
 import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
@@ -47,6 +48,8 @@ public class JavaD8Task extends Task<JavaModule> {
     private List<Path> mFilesToCompile;
 
     private Cache<String, List<File>> mDexCache;
+    private PersistentCache mPersistentCache;
+    private String mFingerprint;
     private Path mOutputPath;
 
     private BuildType mBuildType;
@@ -68,15 +71,36 @@ public class JavaD8Task extends Task<JavaModule> {
         mClassFiles = new ArrayList<>(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/java/classes")));
         mClassFiles.addAll(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/kotlin/classes")));
         for (Cache.Key<String> key : new HashSet<>(mDexCache.getKeys())) {
-            if (!mFilesToCompile.contains(key.file)) {
-                File file = mDexCache.get(key.file, "dex").iterator().next();
-                deleteAllFiles(file, ".dex");
+            if (!mClassFiles.contains(key.file)) {
+                deleteAllFiles(key.file.toFile(), ".dex");
                 mDexCache.remove(key.file, "dex");
             }
         }
 
+        // the files may have been written by other tasks since the last build
+        mDexCache.invalidateModified();
+
+        mPersistentCache = getModule().getPersistentCache(IncrementalD8Task.CACHE_KEY);
+        List<File> classpath = new ArrayList<>(getModule().getLibraries());
+        classpath.add(getModule().getBootstrapJarFile());
+        classpath.add(getModule().getLambdaStubsJarFile());
+        mFingerprint = PersistentCache.fingerprint(classpath, 21, type);
+
+        for (File file : mPersistentCache.getInputs()) {
+            if (!mClassFiles.contains(file.toPath())) {
+                for (File dexFile : mPersistentCache.getOutputs(file)) {
+                    FileUtils.deleteQuietly(dexFile);
+                }
+                mPersistentCache.remove(file);
+            }
+        }
+
         for (Path file : mClassFiles) {
             if (mDexCache.needs(file, "dex")) {
+                if (mPersistentCache.isUpToDate(file.toFile(), mFingerprint)) {
+                    mDexCache.load(file, "dex", mPersistentCache.getOutputs(file.toFile()));
+                    continue;
+                }
                 mFilesToCompile.add(file);
             }
         }
@@ -89,6 +113,7 @@ public class JavaD8Task extends Task<JavaModule> {
         } else if (mBuildType == BuildType.DEBUG) {
             doDebug();
         }
+        mPersistentCache.save();
     }
 
     @Override
@@ -110,7 +135,9 @@ public class JavaD8Task extends Task<JavaModule> {
                     .build();
             D8.run(command);
             for (Path file : mFilesToCompile) {
-                mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
+                List<File> dexFiles = Collections.singletonList(getDexFile(file.toFile()));
+                mDexCache.load(file, "dex", dexFiles);
+                mPersistentCache.put(file.toFile(), mFingerprint, dexFiles);
             }
 
             mergeRelease();
@@ -135,7 +162,9 @@ public class JavaD8Task extends Task<JavaModule> {
             D8.run(command);
 
             for (Path file : mFilesToCompile) {
-                mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
+                List<File> dexFiles = Collections.singletonList(getDexFile(file.toFile()));
+                mDexCache.load(file, "dex", dexFiles);
+                mPersistentCache.put(file.toFile(), mFingerprint, dexFiles);
             }
 
             D8Command.Builder builder = D8Command.builder(diagnosticsHandler)
@@ -193,7 +222,10 @@ public class JavaD8Task extends Task<JavaModule> {
 
 
     private File getDexFile(File file) {
-        File output = new File(getModule().getBuildDirectory(), "bin/classes/");
+        File output = new File(getModule().getBuildDirectory(), "bin/java/classes/");
+        if (!file.getAbsolutePath().startsWith(output.getAbsolutePath())) {
+            output = new File(getModule().getBuildDirectory(), "bin/kotlin/classes/");
+        }
         String packageName = file.getAbsolutePath()
                 .replace(output.getAbsolutePath(), "")
                 .substring(1)
@@ -210,38 +242,8 @@ public class JavaD8Task extends Task<JavaModule> {
      * @throws com.android.tools.r8.CompilationFailedException if the compilation has failed
      */
     protected void ensureDexedLibraries() throws com.android.tools.r8.CompilationFailedException {
-        List<File> libraries = getModule().getLibraries();
-
-        for (File lib : libraries) {
-            File parentFile = lib.getParentFile();
-            if (parentFile == null) {
-                continue;
-            }
-            File[] libFiles = lib.getParentFile().listFiles();
-            if (libFiles == null) {
-                if (!lib.delete()) {
-                    getLogger().warning("Failed to delete " + lib.getAbsolutePath());
-                }
-            } else {
-                File dex = new File(lib.getParentFile(), "classes.dex");
-                if (dex.exists()) {
-                    continue;
-                }
-                if (lib.exists()) {
-                    getLogger().debug("Dexing jar " + parentFile.getName());
-                    D8Command command = D8Command.builder(diagnosticsHandler)
-                            .addLibraryFiles(getLibraryFiles())
-                            .addClasspathFiles(libraries.stream().map(File::toPath)
-                                    .collect(Collectors.toList()))
-                            .setMinApiLevel(21)
-                            .addProgramFiles(lib.toPath())
-                            .setMode(CompilationMode.RELEASE)
-                            .setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
-                            .build();
-                    D8.run(command);
-                }
-            }
-        }
+        LibraryDexCache.getInstance().ensureDexedLibraries(getModule().getLibraries(),
+                getLibraryFiles(), 21, diagnosticsHandler, getLogger());
     }
 
     private List<Path> getLibraryFiles() {
@@ -0,0 +1,236 @@
+package com.tyron.builder.compiler.dex;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.tools.r8.CompilationFailedException;
+import com.android.tools.r8.CompilationMode;
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.DiagnosticsHandler;
+import com.android.tools.r8.OutputMode;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.cache.SharedCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * A cache of dexed library jars that is shared by every project on the device.
+ *
+ * Entries are keyed by the hash of the jar contents and the min sdk it was dexed for, so the
+ * same library used by two different projects is only dexed once. Libraries that are not in the
+ * cache yet are dexed in parallel, the resulting dex files are then linked next to the
+ * library jar where the rest of the build expects them.
+ */
+public class LibraryDexCache {
+
+    private static final String TAG = LibraryDexCache.class.getSimpleName();
+    private static final int MAX_THREADS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static LibraryDexCache sInstance;
+    private static File sCacheDirectory;
+
+    public static synchronized LibraryDexCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new LibraryDexCache(getCacheDirectory());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    public static synchronized void setCacheDirectory(File directory) {
+        sCacheDirectory = directory;
+        sInstance = null;
+    }
+
+    private static File getCacheDirectory() {
+        if (sCacheDirectory != null) {
+            return sCacheDirectory;
+        }
+        return SharedCache.getDefaultDirectory("dex");
+    }
+
+    public interface Dexer {
+        /**
+         * Dexes the library jar, writing the dex files to the output directory
+         */
+        void dex(@NonNull File lib, @NonNull List<Path> classpath,
+                 @NonNull List<Path> libraryFiles, int minSdk,
+                 @NonNull DiagnosticsHandler diagnosticsHandler, @NonNull File output)
+                throws CompilationFailedException;
+    }
+
+    private static final Dexer D8_DEXER = (lib, classpath, libraryFiles, minSdk,
+                                           diagnosticsHandler, output) -> {
+        D8Command command = D8Command.builder(diagnosticsHandler)
+                .addLibraryFiles(libraryFiles)
+                .addClasspathFiles(classpath)
+                .setMinApiLevel(minSdk)
+                .addProgramFiles(lib.toPath())
+                .setMode(CompilationMode.RELEASE)
+                .setOutput(output.toPath(), OutputMode.DexIndexed)
+                .build();
+        D8.run(command);
+    };
+
+    private final SharedCache mCache;
+    private final Dexer mDexer;
+
+    public LibraryDexCache(File directory) {
+        this(directory, D8_DEXER);
+    }
+
+    @VisibleForTesting
+    public LibraryDexCache(File directory, Dexer dexer) {
+        mCache = new SharedCache(directory);
+        mDexer = dexer;
+    }
+
+    /**
+     * Ensures that all the given libraries have been dex-ed. Libraries that already have a dex
+     * file next to them are skipped.
+     *
+     * @param libraries    the library jars to dex
+     * @param libraryFiles the bootstrap jars, passed as library files to D8
+     * @param minSdk       the min sdk to dex the libraries with
+     * @throws CompilationFailedException if dexing any of the libraries failed
+     */
+    public void ensureDexedLibraries(@NonNull List<File> libraries,
+                                     @NonNull List<Path> libraryFiles,
+                                     int minSdk,
+                                     @NonNull DiagnosticsHandler diagnosticsHandler,
+                                     @NonNull ILogger logger) throws CompilationFailedException {
+        List<Path> classpath = libraries.stream()
+                .map(File::toPath)
+                .collect(Collectors.toList());
+
+        List<File> misses = new ArrayList<>();
+        for (File lib : libraries) {
+            File parentFile = lib.getParentFile();
+            if (parentFile == null) {
+                continue;
+            }
+            File[] libFiles = parentFile.listFiles();
+            if (libFiles == null) {
+                if (!lib.delete()) {
+                    logger.warning("Failed to delete " + lib.getAbsolutePath());
+                }
+                continue;
+            }
+            if (new File(parentFile, "classes.dex").exists() || !lib.exists()) {
+                continue;
+            }
+
+            File cached = getCachedDirectory(lib, minSdk);
+            if (cached != null && cached.exists()) {
+                logger.debug("Using cached dex for " + parentFile.getName());
+                linkDexFiles(cached, parentFile, logger);
+            } else {
+                misses.add(lib);
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor =
+                Executors.newFixedThreadPool(Math.min(MAX_THREADS, misses.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (File lib : misses) {
+                futures.add(executor.submit(() -> {
+                    dexLibrary(lib, classpath, libraryFiles, minSdk, diagnosticsHandler, logger);
+                    return null;
+                }));
+            }
+
+            CompilationFailedException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        if (e.getCause() instanceof CompilationFailedException) {
+                            failure = (CompilationFailedException) e.getCause();
+                        } else {
+                            failure = new CompilationFailedException(
+                                    String.valueOf(e.getCause()));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CompilationFailedException("Dexing was interrupted");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void dexLibrary(File lib, List<Path> classpath, List<Path> libraryFiles,
+                            int minSdk, DiagnosticsHandler diagnosticsHandler,
+                            ILogger logger) throws CompilationFailedException, IOException {
+        File parentFile = lib.getParentFile();
+        logger.debug("Dexing jar " + parentFile.getName());
+
+        File target = getCachedDirectory(lib, minSdk);
+        File output = target == null
+                ? parentFile
+                : mCache.createTempDirectory("dex");
+
+        mDexer.dex(lib, classpath, libraryFiles, minSdk, diagnosticsHandler, output);
+
+        if (target == null) {
+            // the cache directory is not available, the dex files are written directly
+            return;
+        }
+
+        mCache.commit(output, target);
+        linkDexFiles(target, parentFile, logger);
+    }
+
+    /**
+     * @return the directory where the dex files of this library are stored in the cache,
+     * or null if the cache directory could not be created or the jar can't be read
+     */
+    private File getCachedDirectory(File lib, int minSdk) {
+        try {
+            return mCache.getEntry(mCache.hash(lib) + "-" + minSdk);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Hard links the dex files from the cache to the library directory, falls back to copying
+     * if the file system does not support links.
+     */
+    private static void linkDexFiles(File cached, File libraryDir, ILogger logger) {
+        File[] dexFiles = cached.listFiles(c -> c.getName().endsWith(".dex"));
+        if (dexFiles == null) {
+            return;
+        }
+        for (File dexFile : dexFiles) {
+            File destination = new File(libraryDir, dexFile.getName());
+            try {
+                SharedCache.link(dexFile, destination);
+            } catch (IOException e) {
+                logger.warning(TAG + ": Unable to copy " + dexFile + " to " + libraryDir);
+            }
+        }
+    }
+}
@@ -18,6 +18,8 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -35,6 +37,18 @@ public class GenerateFirebaseConfigTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Collection<File> getInputs() {
+        return Collections.singletonList(
+                new File(getModule().getRootFile(), "app/google-services.json"));
+    }
+
+    @Override
+    public Collection<File> getOutputs() {
+        return Collections.singletonList(
+                new File(getModule().getAndroidResourcesDirectory(), "values/secrets.xml"));
+    }
+
     private File mConfigFile;
 
     @Override
@@ -9,10 +9,12 @@ import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.dex.D8Task;
 import com.tyron.builder.compiler.dex.DexDiagnosticHandler;
+import com.tyron.builder.compiler.dex.LibraryDexCache;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.builder.project.cache.PersistentCache;
 import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
@@ -38,6 +40,8 @@ public class IncrementalD8Task extends Task<AndroidModule> {
     private List<Path> mFilesToCompile;
 
     private Cache<String, List<File>> mDexCache;
+    private PersistentCache mPersistentCache;
+    private String mFingerprint;
     private Path mOutputPath;
 
     private BuildType mBuildType;
@@ -68,15 +72,36 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         mClassFiles = new ArrayList<>(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/java/classes")));
         mClassFiles.addAll(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/kotlin/classes")));
         for (Cache.Key<String> key : new HashSet<>(mDexCache.getKeys())) {
-            if (!mFilesToCompile.contains(key.file)) {
-                File file = mDexCache.get(key.file, "dex").iterator().next();
-                deleteAllFiles(file, ".dex");
+            if (!mClassFiles.contains(key.file)) {
+                deleteAllFiles(key.file.toFile(), ".dex");
                 mDexCache.remove(key.file, "dex");
             }
         }
 
+        // the files may have been written by other tasks since the last build
+        mDexCache.invalidateModified();
+
+        mPersistentCache = getModule().getPersistentCache(IncrementalD8Task.CACHE_KEY);
+        List<File> classpath = new ArrayList<>(getModule().getLibraries());
+        classpath.add(getModule().getBootstrapJarFile());
+        classpath.add(getModule().getLambdaStubsJarFile());
+        mFingerprint = PersistentCache.fingerprint(classpath, getModule().getMinSdk(), type);
+
+        for (File file : mPersistentCache.getInputs()) {
+            if (!mClassFiles.contains(file.toPath())) {
+                for (File dexFile : mPersistentCache.getOutputs(file)) {
+                    FileUtils.deleteQuietly(dexFile);
+                }
+                mPersistentCache.remove(file);
+            }
+        }
+
         for (Path file : mClassFiles) {
             if (mDexCache.needs(file, "dex")) {
+                if (mPersistentCache.isUpToDate(file.toFile(), mFingerprint)) {
+                    mDexCache.load(file, "dex", mPersistentCache.getOutputs(file.toFile()));
+                    continue;
+                }
                 mFilesToCompile.add(file);
             }
         }
@@ -89,6 +114,7 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         } else if (mBuildType == BuildType.DEBUG) {
             doDebug();
         }
+        mPersistentCache.save();
     }
 
     @Override
@@ -110,7 +136,9 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                     .build();
             D8.run(command);
             for (Path file : mFilesToCompile) {
-                mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
+                List<File> dexFiles = Collections.singletonList(getDexFile(file.toFile()));
+                mDexCache.load(file, "dex", dexFiles);
+                mPersistentCache.put(file.toFile(), mFingerprint, dexFiles);
             }
 
             mergeRelease();
@@ -135,7 +163,9 @@ public class IncrementalD8Task extends Task<AndroidModule> {
             D8.run(command);
 
             for (Path file : mFilesToCompile) {
-                mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
+                List<File> dexFiles = Collections.singletonList(getDexFile(file.toFile()));
+                mDexCache.load(file, "dex", dexFiles);
+                mPersistentCache.put(file.toFile(), mFingerprint, dexFiles);
             }
 
             D8Command.Builder builder = D8Command.builder(diagnosticsHandler)
@@ -186,7 +216,10 @@ public class IncrementalD8Task extends Task<AndroidModule> {
 
 
     private File getDexFile(File file) {
-        File output = new File(getModule().getBuildDirectory(), "bin/classes/");
+        File output = new File(getModule().getBuildDirectory(), "bin/java/classes/");
+        if (!file.getAbsolutePath().startsWith(output.getAbsolutePath())) {
+            output = new File(getModule().getBuildDirectory(), "bin/kotlin/classes/");
+        }
         String packageName = file.getAbsolutePath()
                 .replace(output.getAbsolutePath(), "")
                 .substring(1)
@@ -203,38 +236,8 @@ public class IncrementalD8Task extends Task<AndroidModule> {
      * @throws com.android.tools.r8.CompilationFailedException if the compilation has failed
      */
     protected void ensureDexedLibraries() throws com.android.tools.r8.CompilationFailedException {
-        List<File> libraries = getModule().getLibraries();
-
-        for (File lib : libraries) {
-            File parentFile = lib.getParentFile();
-            if (parentFile == null) {
-                continue;
-            }
-            File[] libFiles = lib.getParentFile().listFiles();
-            if (libFiles == null) {
-                if (!lib.delete()) {
-                    getLogger().warning("Failed to delete " + lib.getAbsolutePath());
-                }
-            } else {
-                File dex = new File(lib.getParentFile(), "classes.dex");
-                if (dex.exists()) {
-                    continue;
-                }
-                if (lib.exists()) {
-                    getLogger().debug("Dexing jar " + parentFile.getName());
-                    D8Command command = D8Command.builder(diagnosticsHandler)
-                            .addLibraryFiles(getLibraryFiles())
-                            .addClasspathFiles(libraries.stream().map(File::toPath)
-                                    .collect(Collectors.toList()))
-                            .setMinApiLevel(getModule().getMinSdk())
-                            .addProgramFiles(lib.toPath())
-                            .setMode(CompilationMode.RELEASE)
-                            .setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
-                            .build();
-                    D8.run(command);
-                }
-            }
-        }
+        LibraryDexCache.getInstance().ensureDexedLibraries(getModule().getLibraries(),
+                getLibraryFiles(), getModule().getMinSdk(), diagnosticsHandler, getLogger());
     }
 
     private List<Path> getLibraryFiles() {
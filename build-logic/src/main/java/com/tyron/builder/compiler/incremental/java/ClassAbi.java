@@ -0,0 +1,318 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+
+import org.jetbrains.org.objectweb.asm.AnnotationVisitor;
+import org.jetbrains.org.objectweb.asm.ClassReader;
+import org.jetbrains.org.objectweb.asm.ClassVisitor;
+import org.jetbrains.org.objectweb.asm.FieldVisitor;
+import org.jetbrains.org.objectweb.asm.Handle;
+import org.jetbrains.org.objectweb.asm.Label;
+import org.jetbrains.org.objectweb.asm.MethodVisitor;
+import org.jetbrains.org.objectweb.asm.Opcodes;
+import org.jetbrains.org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The application binary interface of a single class file, that is everything about the class
+ * that other classes can see: its non private members and their signatures. Along with the
+ * classes that it references, either from its signatures or from its method bodies.
+ *
+ * Compile time constants are tracked separately since javac inlines them on the classes that
+ * use them, so those classes don't have a reference to the class declaring the constant.
+ */
+public class ClassAbi {
+
+    private final String mName;
+    private final String mAbi;
+    private final String mConstants;
+    private final Set<String> mReferences;
+
+    private ClassAbi(String name, String abi, String constants, Set<String> references) {
+        mName = name;
+        mAbi = abi;
+        mConstants = constants;
+        mReferences = references;
+    }
+
+    /**
+     * @return the internal name of the class, e.g. {@code com/example/Foo$Bar}
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return a string that changes whenever the visible API of this class changes
+     */
+    public String getAbi() {
+        return mAbi;
+    }
+
+    /**
+     * @return a string that changes whenever a visible compile time constant changes
+     */
+    public String getConstants() {
+        return mConstants;
+    }
+
+    /**
+     * @return the internal names of the classes this class references
+     */
+    public Set<String> getReferences() {
+        return mReferences;
+    }
+
+    public static ClassAbi read(@NonNull byte[] classFile) {
+        AbiVisitor visitor = new AbiVisitor();
+        new ClassReader(classFile).accept(visitor, ClassReader.SKIP_FRAMES);
+        visitor.mReferences.remove(visitor.mName);
+        Collections.sort(visitor.mMembers);
+        Collections.sort(visitor.mConstants);
+        return new ClassAbi(visitor.mName,
+                visitor.mHeader + "\n" + String.join("\n", visitor.mMembers),
+                String.join("\n", visitor.mConstants),
+                visitor.mReferences);
+    }
+
+    private static boolean isVisible(int access) {
+        return (access & Opcodes.ACC_PRIVATE) == 0 && (access & Opcodes.ACC_SYNTHETIC) == 0;
+    }
+
+    private static class AbiVisitor extends ClassVisitor {
+
+        private final Set<String> mReferences = new HashSet<>();
+        private final List<String> mMembers = new ArrayList<>();
+        private final List<String> mConstants = new ArrayList<>();
+        private String mName;
+        private String mHeader;
+
+        private final AnnotationVisitor mAnnotationVisitor = new AnnotationVisitor(Opcodes.ASM7) {
+            @Override
+            public void visit(String name, Object value) {
+                if (value instanceof Type) {
+                    addType((Type) value);
+                }
+            }
+
+            @Override
+            public void visitEnum(String name, String descriptor, String value) {
+                addDescriptor(descriptor);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+                addDescriptor(descriptor);
+                return this;
+            }
+
+            @Override
+            public AnnotationVisitor visitArray(String name) {
+                return this;
+            }
+        };
+
+        private final MethodVisitor mMethodVisitor = new MethodVisitor(Opcodes.ASM7) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                addDescriptor(descriptor);
+                return mAnnotationVisitor;
+            }
+
+            @Override
+            public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor,
+                                                              boolean visible) {
+                addDescriptor(descriptor);
+                return mAnnotationVisitor;
+            }
+
+            @Override
+            public void visitTypeInsn(int opcode, String type) {
+                addInternalName(type);
+            }
+
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                addInternalName(owner);
+                addDescriptor(descriptor);
+            }
+
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String descriptor,
+                                        boolean isInterface) {
+                addInternalName(owner);
+                addType(Type.getMethodType(descriptor));
+            }
+
+            @Override
+            public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrap,
+                                               Object... arguments) {
+                addType(Type.getMethodType(descriptor));
+                addHandle(bootstrap);
+                for (Object argument : arguments) {
+                    if (argument instanceof Type) {
+                        addType((Type) argument);
+                    } else if (argument instanceof Handle) {
+                        addHandle((Handle) argument);
+                    }
+                }
+            }
+
+            @Override
+            public void visitLdcInsn(Object value) {
+                if (value instanceof Type) {
+                    addType((Type) value);
+                } else if (value instanceof Handle) {
+                    addHandle((Handle) value);
+                }
+            }
+
+            @Override
+            public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+                addDescriptor(descriptor);
+            }
+
+            @Override
+            public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+                if (type != null) {
+                    addInternalName(type);
+                }
+            }
+
+            @Override
+            public void visitLocalVariable(String name, String descriptor, String signature,
+                                           Label start, Label end, int index) {
+                addDescriptor(descriptor);
+            }
+        };
+
+        private final FieldVisitor mFieldVisitor = new FieldVisitor(Opcodes.ASM7) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                addDescriptor(descriptor);
+                return mAnnotationVisitor;
+            }
+        };
+
+        AbiVisitor() {
+            super(Opcodes.ASM7);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature,
+                          String superName, String[] interfaces) {
+            mName = name;
+            StringBuilder header = new StringBuilder();
+            header.append(access).append(' ').append(name).append(' ').append(signature)
+                    .append(' ').append(superName);
+            if (superName != null) {
+                addInternalName(superName);
+            }
+            if (interfaces != null) {
+                for (String anInterface : interfaces) {
+                    header.append(' ').append(anInterface);
+                    addInternalName(anInterface);
+                }
+            }
+            mHeader = header.toString();
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            addDescriptor(descriptor);
+            mMembers.add("@" + descriptor);
+            return mAnnotationVisitor;
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            addInternalName(name);
+            if (outerName != null) {
+                addInternalName(outerName);
+            }
+            if (mName != null && (mName.equals(name) || mName.equals(outerName))) {
+                mMembers.add("inner " + name + " " + access);
+            }
+        }
+
+        @Override
+        public void visitOuterClass(String owner, String name, String descriptor) {
+            addInternalName(owner);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor,
+                                       String signature, Object value) {
+            addDescriptor(descriptor);
+            if (isVisible(access)) {
+                mMembers.add("field " + access + " " + name + " " + descriptor + " " + signature);
+                if (value != null) {
+                    mConstants.add(name + "=" + value);
+                }
+            }
+            return mFieldVisitor;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                         String signature, String[] exceptions) {
+            addType(Type.getMethodType(descriptor));
+            StringBuilder member = new StringBuilder();
+            member.append("method ").append(access).append(' ').append(name).append(' ')
+                    .append(descriptor).append(' ').append(signature);
+            if (exceptions != null) {
+                for (String exception : exceptions) {
+                    member.append(' ').append(exception);
+                    addInternalName(exception);
+                }
+            }
+            if (isVisible(access)) {
+                mMembers.add(member.toString());
+            }
+            return mMethodVisitor;
+        }
+
+        private void addHandle(Handle handle) {
+            addInternalName(handle.getOwner());
+            if (handle.getDesc().startsWith("(")) {
+                addType(Type.getMethodType(handle.getDesc()));
+            } else {
+                addDescriptor(handle.getDesc());
+            }
+        }
+
+        private void addDescriptor(String descriptor) {
+            addType(Type.getType(descriptor));
+        }
+
+        private void addType(Type type) {
+            switch (type.getSort()) {
+                case Type.ARRAY:
+                    addType(type.getElementType());
+                    break;
+                case Type.OBJECT:
+                    mReferences.add(type.getInternalName());
+                    break;
+                case Type.METHOD:
+                    addType(type.getReturnType());
+                    for (Type argument : type.getArgumentTypes()) {
+                        addType(argument);
+                    }
+                    break;
+            }
+        }
+
+        private void addInternalName(String name) {
+            if (name.startsWith("[")) {
+                addDescriptor(name);
+            } else {
+                mReferences.add(name);
+            }
+        }
+    }
+}
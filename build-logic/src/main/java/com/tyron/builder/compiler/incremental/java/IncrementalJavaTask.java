@@ -2,19 +2,20 @@ package com.tyron.builder.compiler.incremental.java;
 
 import androidx.annotation.VisibleForTesting;
 
+import org.openjdk.source.tree.ClassTree;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.tree.Tree;
 import org.openjdk.source.util.JavacTask;
-import org.openjdk.tools.javac.api.JavacTaskImpl;
 import org.openjdk.tools.javac.api.JavacTool;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.DiagnosticWrapper;
-import com.tyron.builder.model.ModuleSettings;
-import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.cache.CacheHolder;
-import com.tyron.common.TestUtil;
+import com.tyron.builder.project.cache.PersistentCache;
+import com.tyron.builder.project.vfs.ChangeJournal;
 import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
@@ -29,9 +30,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Set;
 
 import org.openjdk.javax.tools.DiagnosticListener;
 import org.openjdk.javax.tools.JavaFileObject;
@@ -39,16 +42,33 @@ import org.openjdk.javax.tools.SimpleJavaFileObject;
 import org.openjdk.javax.tools.StandardJavaFileManager;
 import org.openjdk.javax.tools.StandardLocation;
 
+/**
+ * Compiles the java files of a module, only the files that have been modified since the last
+ * build are compiled along with the files that depend on a class whose ABI has changed.
+ *
+ * The ABI of the generated classes and the classes they reference are tracked by
+ * {@link JavaDependencyIndex}, after compiling the modified files the dependents of the classes
+ * whose ABI has changed are compiled as well, until no more ABI changes are found.
+ */
 public class IncrementalJavaTask extends Task<JavaModule> {
 
     public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
             new CacheHolder.CacheKey<>("javaCache");
     private static final String TAG = IncrementalJavaTask.class.getSimpleName();
 
+    /**
+     * How long the change journal is waited for before checking the files directly
+     */
+    private static final long JOURNAL_TIMEOUT_MS = 1000;
+
     private File mOutputDir;
     private List<File> mJavaFiles;
     private List<File> mFilesToCompile;
+    private final List<File> mCompiledFiles = new ArrayList<>();
     private Cache<String, List<File>> mClassCache;
+    private PersistentCache mPersistentCache;
+    private JavaDependencyIndex mDependencyIndex;
+    private String mClasspathFingerprint;
 
     public IncrementalJavaTask(JavaModule project, ILogger logger) {
         super(project, logger);
@@ -59,6 +79,13 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         return TAG;
     }
 
+    /**
+     * @return the file where the dependency index of the given module is stored
+     */
+    public static File getDependencyIndexFile(JavaModule module) {
+        return new File(module.getBuildDirectory(), "cache/javaDependencies.json");
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mOutputDir = new File(getModule().getBuildDirectory(), "bin/java/classes");
@@ -67,25 +94,82 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         }
 
         mFilesToCompile = new ArrayList<>();
+        mCompiledFiles.clear();
         mClassCache = getModule().getCache(CACHE_KEY, new Cache<>());
+        mPersistentCache = getModule().getPersistentCache(CACHE_KEY);
+        mDependencyIndex = new JavaDependencyIndex(getDependencyIndexFile(getModule()));
 
         mJavaFiles = new ArrayList<>(getModule().getJavaFiles().values());
 
+        List<File> classpath = new ArrayList<>(getModule().getLibraries());
+        classpath.add(getModule().getBootstrapJarFile());
+        classpath.add(getModule().getLambdaStubsJarFile());
+        mClasspathFingerprint = PersistentCache.fingerprint(classpath);
+
         for (Cache.Key<String> key : new HashSet<>(mClassCache.getKeys())) {
             if (!mJavaFiles.contains(key.file.toFile())) {
-                File file = mClassCache.get(key.file, "class").iterator().next();
-                deleteAllFiles(file, ".class");
+                for (File file : mClassCache.get(key.file, "class")) {
+                    deleteAllFiles(file, ".class");
+                }
                 mClassCache.remove(key.file, "class", "dex");
             }
         }
 
+        // the files may have been modified outside of the editor since the last build, the
+        // change journal has reported them if it watches the project and has caught up with
+        // the changes made until now. Otherwise their modification times are checked.
+        if (!ChangeJournal.getInstance().awaitChanges(getModule().getJavaDirectory(),
+                JOURNAL_TIMEOUT_MS)) {
+            mClassCache.invalidateModified();
+        }
+
+        // the in memory cache is empty after a restart, files that were
+        // deleted while the app was closed are only known by the persistent cache
+        for (File file : mPersistentCache.getInputs()) {
+            if (!mJavaFiles.contains(file)) {
+                for (File classFile : mPersistentCache.getOutputs(file)) {
+                    deleteAllFiles(classFile, ".class");
+                }
+                mPersistentCache.remove(file);
+            }
+        }
+
+        Set<File> dirtyFiles = new LinkedHashSet<>();
         for (File file : mJavaFiles) {
+            // the classes this file references are unknown, it would never be compiled
+            // again when one of them changes
+            if (mDependencyIndex.get(file) == null) {
+                dirtyFiles.add(file);
+                continue;
+            }
             Path filePath = file.toPath();
             if (mClassCache.needs(filePath, "class")) {
-                mFilesToCompile.add(file);
+                if (mPersistentCache.isUpToDate(file, mClasspathFingerprint)) {
+                    mClassCache.load(filePath, "class", mPersistentCache.getOutputs(file));
+                    continue;
+                }
+                dirtyFiles.add(file);
             }
         }
 
+        // files that referenced a class from a deleted file needs to be compiled again
+        // so the missing class is reported instead of leaving stale class files behind
+        Set<String> deletedClasses = new HashSet<>();
+        for (File file : mDependencyIndex.getSources()) {
+            if (!mJavaFiles.contains(file)) {
+                JavaDependencyIndex.Entry removed = mDependencyIndex.remove(file);
+                if (removed != null) {
+                    deletedClasses.addAll(removed.getClasses());
+                }
+            }
+        }
+        for (File dependent : mDependencyIndex.getDependents(deletedClasses)) {
+            if (mJavaFiles.contains(dependent)) {
+                dirtyFiles.add(dependent);
+            }
+        }
+
+        mFilesToCompile.addAll(dirtyFiles);
     }
 
     private boolean mHasErrors = false;
@@ -93,6 +177,8 @@ public class IncrementalJavaTask extends Task<JavaModule> {
     @Override
     public void run() throws IOException, CompilationFailedException {
         if (mFilesToCompile.isEmpty()) {
+            // sources may have been deleted without anything else changing
+            mDependencyIndex.save();
             return;
         }
 
@@ -129,8 +215,89 @@ public class IncrementalJavaTask extends Task<JavaModule> {
             throw new CompilationFailedException(e);
         }
 
+        List<File> filesToCompile = new ArrayList<>(mFilesToCompile);
+        while (!filesToCompile.isEmpty()) {
+            Map<File, List<File>> compiledFiles;
+            try {
+                compiledFiles = compile(tool, standardJavaFileManager, diagnosticCollector,
+                        filesToCompile);
+            } catch (Exception e) {
+                invalidate(filesToCompile);
+                throw new CompilationFailedException(e);
+            }
+            mCompiledFiles.addAll(filesToCompile);
+
+            if (mHasErrors) {
+                // make sure the files are compiled again on the next build, along with
+                // the dependents that have not been compiled yet
+                invalidate(mCompiledFiles);
+                throw new CompilationFailedException("Compilation failed, check logs for more details");
+            }
+
+            Set<String> changedClasses = new HashSet<>();
+            boolean constantsChanged = false;
+            for (File sourceFile : filesToCompile) {
+                List<File> classFiles = compiledFiles.get(sourceFile);
+                if (classFiles == null) {
+                    classFiles = Collections.emptyList();
+                }
+                JavaDependencyIndex.Entry previous = mDependencyIndex.get(sourceFile);
+                deleteStaleClassFiles(sourceFile, previous, classFiles);
+
+                mClassCache.load(sourceFile.toPath(), "class", classFiles);
+                mPersistentCache.put(sourceFile, mClasspathFingerprint, classFiles);
+                mDependencyIndex.put(sourceFile, classFiles);
+                JavaDependencyIndex.Entry current = mDependencyIndex.get(sourceFile);
+
+                if (previous == null || !previous.getAbi().equals(current.getAbi())) {
+                    if (previous != null) {
+                        changedClasses.addAll(previous.getClasses());
+                    }
+                    changedClasses.addAll(current.getClasses());
+                }
+                if (previous != null && !previous.getConstants().equals(current.getConstants())) {
+                    constantsChanged = true;
+                }
+            }
+
+            filesToCompile = new ArrayList<>();
+            if (constantsChanged) {
+                // constants are inlined by javac, there is no way to tell which classes
+                // used them so everything that has not been compiled yet is compiled
+                getLogger().debug("A constant has changed, compiling all java files");
+                for (File file : mJavaFiles) {
+                    if (!mCompiledFiles.contains(file)) {
+                        filesToCompile.add(file);
+                    }
+                }
+            } else {
+                for (File dependent : mDependencyIndex.getDependents(changedClasses)) {
+                    if (mJavaFiles.contains(dependent) && !mCompiledFiles.contains(dependent)) {
+                        filesToCompile.add(dependent);
+                    }
+                }
+            }
+            if (!filesToCompile.isEmpty()) {
+                getLogger().debug("Compiling " + filesToCompile.size() +
+                        " dependent java files");
+            }
+        }
+
+        mPersistentCache.save();
+        mDependencyIndex.save();
+    }
+
+    /**
+     * Compiles the given files
+     *
+     * @return a map of source files to the class files generated from them
+     */
+    private Map<File, List<File>> compile(JavacTool tool,
+                                          StandardJavaFileManager fileManager,
+                                          DiagnosticListener<JavaFileObject> diagnosticListener,
+                                          List<File> files) throws IOException {
         List<JavaFileObject> javaFileObjects = new ArrayList<>();
-        for (File file : mFilesToCompile) {
+        for (File file : files) {
             javaFileObjects.add(new SimpleJavaFileObject(file.toURI(), JavaFileObject.Kind.SOURCE) {
                 @Override
                 public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
@@ -139,81 +306,93 @@ public class IncrementalJavaTask extends Task<JavaModule> {
             });
         }
 
-        JavacTask task = tool.getTask(null, standardJavaFileManager, diagnosticCollector,
-                Collections.emptyList(), null, javaFileObjects);
+        // files from the source path are only used to resolve symbols, their classes
+        // are not generated so every class file can be attributed to a compiled file
+        JavacTask task = tool.getTask(null, fileManager, diagnosticListener,
+                Collections.singletonList("-implicit:none"), null, javaFileObjects);
+
+        Map<String, File> topLevelClasses = new HashMap<>();
+        for (CompilationUnitTree unit : task.parse()) {
+            File sourceFile = new File(unit.getSourceFile().toUri());
+            String packagePrefix = unit.getPackageName() == null
+                    ? ""
+                    : unit.getPackageName().toString().replace('.', '/') + "/";
+            topLevelClasses.put(packagePrefix + "package-info", sourceFile);
+            for (Tree decl : unit.getTypeDecls()) {
+                if (decl instanceof ClassTree) {
+                    topLevelClasses.put(packagePrefix + ((ClassTree) decl).getSimpleName(),
+                            sourceFile);
+                }
+            }
+        }
+        task.analyze();
 
-        HashMap<String, List<File>> compiledFiles = new HashMap<>();
-        try {
+        Map<File, List<File>> compiledFiles = new HashMap<>();
+        for (JavaFileObject fileObject : task.generate()) {
+            File classFile = new File(fileObject.getName());
+            if (!classFile.exists()) {
+                continue;
+            }
+            File sourceFile = findSourceFile(topLevelClasses, classFile);
+            if (sourceFile == null) {
+                getLogger().warning(TAG + ": Unable to find the source of " + classFile);
+                continue;
+            }
+            List<File> classFiles = compiledFiles.get(sourceFile);
+            if (classFiles == null) {
+                classFiles = new ArrayList<>();
+                compiledFiles.put(sourceFile, classFiles);
+            }
+            classFiles.add(classFile);
+        }
+        return compiledFiles;
+    }
 
-            task.parse();
-            task.analyze();
-            Iterable<? extends JavaFileObject> generate = task.generate();
-            for (JavaFileObject fileObject : generate) {
-                String path = fileObject.getName();
-                File classFile = new File(path);
-                if (classFile. exists()) {
-                    String classPath = classFile.getAbsolutePath().replace("build/bin/classes/",
-                            "src/main/java/").replace(".class", ".java");
-                    if (classFile.getName().indexOf('$') != -1) {
-                        classPath = classPath.substring(0, classPath.indexOf('$')) + ".java";
-                    }
-                    File file = new File(classPath);
-                    if (!file.exists()) {
-                        file = new File(classPath.replace("src/main/java", "build/gen"));
-                    }
+    private File findSourceFile(Map<String, File> topLevelClasses, File classFile) {
+        String path = mOutputDir.toPath().relativize(classFile.toPath()).toString()
+                .replace(File.separatorChar, '/');
+        String name = path.substring(0, path.length() - ".class".length());
+        File sourceFile = topLevelClasses.get(name);
+        if (sourceFile != null) {
+            return sourceFile;
+        }
+        int dollar = name.indexOf('$', name.lastIndexOf('/') + 1);
+        if (dollar != -1) {
+            return topLevelClasses.get(name.substring(0, dollar));
+        }
+        return null;
+    }
 
-                    if (!compiledFiles.containsKey(file.getAbsolutePath())) {
-                        ArrayList<File> list = new ArrayList<>();
-                        list.add(classFile);
-                        compiledFiles.put(file.getAbsolutePath(), list);
-                    } else {
-                        Objects.requireNonNull(compiledFiles.get(file.getAbsolutePath())).add(classFile);
-                    }
-                    mClassCache.load(file.toPath(), "class", Collections.singletonList(classFile));
-                }
+    /**
+     * Deletes the class files that were generated by a previous compilation of this source file
+     * but not by the current one, for example a nested class that has been removed.
+     */
+    private void deleteStaleClassFiles(File sourceFile, JavaDependencyIndex.Entry previous,
+                                       List<File> classFiles) {
+        List<File> previousOutputs = previous != null
+                ? previous.getOutputs()
+                : mPersistentCache.getOutputs(sourceFile);
+        for (File file : previousOutputs) {
+            if (!classFiles.contains(file) && file.delete()) {
+                getLogger().debug("Deleted file " + file.getAbsolutePath());
             }
-
-            compiledFiles.forEach((key, values) -> {
-                File sourceFile = new File(key);
-                String name = sourceFile.getName().replace(".java", "");
-                File first = values.iterator().next();
-                File parent = first.getParentFile();
-                if (parent != null) {
-                    File[] children = parent.listFiles(c -> {
-                        if (!c.getName().contains("$")) {
-                            return false;
-                        }
-                        String baseClassName = c.getName().substring(0, c.getName().indexOf('$'));
-                        return baseClassName.equals(name);
-                    });
-                    if (children != null) {
-                        for (File file : children) {
-                            if (!values.contains(file)) {
-                                if (file.delete()) {
-                                    getLogger().debug("Deleted file " + file.getAbsolutePath());
-                                }
-                            }
-                        }
-                    }
-                }
-            });
-        } catch (Exception e) {
-            throw new CompilationFailedException(e);
         }
+    }
 
-        if (mHasErrors) {
-            throw new CompilationFailedException("Compilation failed, check logs for more details");
+    private void invalidate(List<File> files) {
+        for (File file : files) {
+            mClassCache.remove(file.toPath(), "class");
+            mPersistentCache.remove(file);
         }
     }
 
+    /**
+     * @return all the files that were compiled by this task, including the files that were
+     * compiled because a class they depend on has changed
+     */
     @VisibleForTesting
     public List<File> getCompiledFiles() {
-        return mFilesToCompile;
-    }
-
-    private File findClassFile(String packageName) {
-        String path = packageName.replace(".", "/").concat(".class");
-        return new File(mOutputDir, path);
+        return mCompiledFiles;
     }
 
     private void deleteAllFiles(File classFile, String ext) throws IOException {
@@ -0,0 +1,175 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.tyron.builder.project.cache.PersistentCache;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keeps track of the classes each java source file declares, the classes it references and the
+ * fingerprint of its ABI. This is used to find the source files that need to be recompiled
+ * when the public API of another source file changes.
+ *
+ * The index is stored on the build directory of the module in a {@link PersistentCache} so it
+ * survives restarts. Source files that have no entry, for example because the index has been
+ * deleted, are not known to depend on anything and have to be compiled again.
+ */
+public class JavaDependencyIndex {
+
+    public static class Entry {
+        private String abi;
+        private String constants;
+        private List<String> classes;
+        private List<String> references;
+
+        private transient List<File> outputs;
+
+        public String getAbi() {
+            return abi;
+        }
+
+        public String getConstants() {
+            return constants;
+        }
+
+        /**
+         * @return the internal names of the classes declared in the source file
+         */
+        public List<String> getClasses() {
+            return classes;
+        }
+
+        public List<String> getReferences() {
+            return references;
+        }
+
+        public List<File> getOutputs() {
+            return outputs;
+        }
+    }
+
+    /**
+     * The entries of the index do not depend on the class path, only on the class files
+     */
+    private static final String FINGERPRINT = "";
+
+    private final PersistentCache mCache;
+
+    public JavaDependencyIndex(File file) {
+        mCache = new PersistentCache(file);
+    }
+
+    @Nullable
+    public Entry get(@NonNull File source) {
+        Entry entry = mCache.getData(source, Entry.class);
+        if (entry != null) {
+            entry.outputs = mCache.getOutputs(source);
+        }
+        return entry;
+    }
+
+    /**
+     * @return all the source files that currently have an entry in this index
+     */
+    @NonNull
+    public Set<File> getSources() {
+        return mCache.getInputs();
+    }
+
+    /**
+     * Reads the given class files and replaces the entry of the source file they were
+     * compiled from.
+     *
+     * @return the previous entry of the source file, or null if there was none
+     */
+    @Nullable
+    public Entry put(@NonNull File source, @NonNull Collection<File> classFiles) throws IOException {
+        // sorted so the fingerprints do not depend on the order javac generated the classes
+        Map<String, ClassAbi> abis = new TreeMap<>();
+        for (File classFile : classFiles) {
+            ClassAbi abi = ClassAbi.read(FileUtils.readFileToByteArray(classFile));
+            abis.put(abi.getName(), abi);
+        }
+
+        Hasher abiHasher = Hashing.sha256().newHasher();
+        Hasher constantsHasher = Hashing.sha256().newHasher();
+        Set<String> references = new HashSet<>();
+        for (ClassAbi abi : abis.values()) {
+            abiHasher.putString(abi.getAbi(), StandardCharsets.UTF_8);
+            constantsHasher.putString(abi.getName(), StandardCharsets.UTF_8);
+            constantsHasher.putString(abi.getConstants(), StandardCharsets.UTF_8);
+            references.addAll(abi.getReferences());
+        }
+        references.removeAll(abis.keySet());
+
+        Entry entry = new Entry();
+        entry.abi = abiHasher.hash().toString();
+        entry.constants = constantsHasher.hash().toString();
+        entry.classes = new ArrayList<>(abis.keySet());
+        entry.references = new ArrayList<>(references);
+
+        Entry previous = get(source);
+        mCache.put(source, FINGERPRINT, classFiles, entry);
+        return previous;
+    }
+
+    @Nullable
+    public Entry remove(@NonNull File source) {
+        Entry removed = get(source);
+        mCache.remove(source);
+        return removed;
+    }
+
+    /**
+     * @param classes the internal names of the classes that have changed
+     * @return the source files in this index that reference any of the given classes
+     */
+    @NonNull
+    public Set<File> getDependents(@NonNull Collection<String> classes) {
+        if (classes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> changed = new HashSet<>(classes);
+        Set<File> dependents = new HashSet<>();
+        for (File source : mCache.getInputs()) {
+            Entry entry = mCache.getData(source, Entry.class);
+            if (entry == null) {
+                continue;
+            }
+            for (String reference : entry.references) {
+                if (changed.contains(reference)) {
+                    dependents.add(source);
+                    break;
+                }
+            }
+        }
+        return dependents;
+    }
+
+    public void clear() {
+        mCache.clear();
+    }
+
+    /**
+     * Writes the index to disk, does nothing if nothing has changed since it was loaded.
+     */
+    public void save() throws IOException {
+        mCache.save();
+    }
+}
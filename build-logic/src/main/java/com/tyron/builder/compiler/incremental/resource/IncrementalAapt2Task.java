@@ -5,9 +5,13 @@ import androidx.annotation.VisibleForTesting;
 import com.tyron.builder.BuildModule;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.resource.Aapt2Daemon;
+import com.tyron.builder.compiler.resource.LibraryResourceCache;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.cache.PersistentCache;
+import com.tyron.builder.project.vfs.ChangeJournal;
 import com.tyron.common.util.BinaryExecutor;
 
 import org.apache.commons.io.FileUtils;
@@ -16,9 +20,11 @@ import org.apache.commons.io.filefilter.TrueFileFilter;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -41,6 +47,26 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Collection<File> getInputs() {
+        List<File> inputs = new ArrayList<>();
+        inputs.add(getModule().getAndroidResourcesDirectory());
+        inputs.add(getModule().getAssetsDirectory());
+        inputs.add(new File(getModule().getBuildDirectory(), "bin/AndroidManifest.xml"));
+        inputs.add(new File(getModule().getBuildDirectory(), "libs"));
+        inputs.add(getModule().getLibraryDirectory());
+        return inputs;
+    }
+
+    @Override
+    public Collection<File> getOutputs() {
+        return Arrays.asList(new File(getModule().getBuildDirectory(), "bin/res"),
+                new File(getModule().getBuildDirectory(), "bin/generated.apk.res"),
+                new File(getModule().getBuildDirectory(), "bin/proto-format.zip"),
+                new File(getModule().getBuildDirectory(), "gen"),
+                new File(getModule().getBuildDirectory(), "intermediate/resources"));
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
 
@@ -48,10 +74,9 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
 
     public void run() throws IOException, CompilationFailedException {
         Map<String, List<File>> filesToCompile = getFiles();
-        List<File> librariesToCompile = getLibraries();
 
         compileProject(filesToCompile);
-        compileLibraries(librariesToCompile);
+        compileLibraries();
 
         link();
 
@@ -71,7 +96,6 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
     private void compileProject(Map<String, List<File>> files)
             throws IOException, CompilationFailedException {
         List<String> args = new ArrayList<>();
-        args.add(getBinary().getAbsolutePath());
         args.add("compile");
 
         for (String resourceType : files.keySet()) {
@@ -90,54 +114,30 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         }
         args.add(outputCompiled.getAbsolutePath());
 
-        BinaryExecutor executor = new BinaryExecutor();
-        executor.setCommands(args);
-        if (!executor.execute().isEmpty()) {
-            throw new CompilationFailedException(executor.getLog());
-        }
+        runAapt2(args);
 
         copyMapToDir(files);
     }
 
-    private void compileLibraries(List<File> libraries)
-            throws IOException, CompilationFailedException {
+    /**
+     * Compiles the resources of the libraries that are not in the {@link LibraryResourceCache}
+     * yet, the ones that are cached are only linked to the output directory
+     */
+    private void compileLibraries() throws IOException, CompilationFailedException {
         getLogger().debug("Compiling libraries.");
 
-        File output = new File(getModule().getBuildDirectory(), "bin/res");
-        if (!output.exists()) {
-            if (!output.mkdirs()) {
-                throw new IOException("Failed to create resource output directory");
-            }
-        }
-
-        for (File file : libraries) {
-            File parent = file.getParentFile();
-            if (parent == null) {
-                throw new IOException("Library folder doesn't exist");
-            }
-            File[] files = parent.listFiles();
-            if (files == null) {
-                continue;
-            }
-
-            for (File inside : files) {
-                if (inside.isDirectory() && inside.getName().equals("res")) {
+        // the path of the binary changes when the application is updated
+        String compilerKey = PersistentCache.fingerprint(Collections.singletonList(getBinary()));
+        LibraryResourceCache.getInstance().ensureCompiledLibraries(getModule().getLibraries(),
+                getOutputPath(), compilerKey, (res, output) -> {
                     List<String> args = new ArrayList<>();
-                    args.add(getBinary().getAbsolutePath());
                     args.add("compile");
                     args.add("--dir");
-                    args.add(inside.getAbsolutePath());
+                    args.add(res.getAbsolutePath());
                     args.add("-o");
-                    args.add(createNewFile(output, parent.getName() + ".zip").getAbsolutePath());
-
-                    BinaryExecutor exec = new BinaryExecutor();
-                    exec.setCommands(args);
-                    if (!exec.execute().trim().isEmpty()) {
-                        throw new CompilationFailedException(exec.getLog());
-                    }
-                }
-            }
-        }
+                    args.add(output.getAbsolutePath());
+                    runAapt2(args);
+                }, getLogger());
     }
 
     /**
@@ -145,13 +145,11 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
      */
     public void generateResourceClasses() throws IOException, CompilationFailedException {
         Map<String, List<File>> filesToCompile = getFiles();
-        List<File> librariesToCompile = getLibraries();
 
         compileProject(filesToCompile);
-        compileLibraries(librariesToCompile);
+        compileLibraries();
 
         List<String> args = new ArrayList<>();
-        args.add(getBinary().getAbsolutePath());
         args.add("link");
         args.add("-I");
         args.add(getModule().getBootstrapJarFile().getAbsolutePath());  File files = new File(getOutputPath(), "compiled");
@@ -203,11 +201,7 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         args.add("-o");
         args.add(getOutputPath().getParent() + "/generated.apk.res");
 
-        BinaryExecutor exec = new BinaryExecutor();
-        exec.setCommands(args);
-        if (!exec.execute().trim().isEmpty()) {
-            throw new CompilationFailedException(exec.getLog());
-        }
+        runAapt2(args);
 
         updateJavaFiles();
     }
@@ -216,7 +210,6 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         getLogger().debug("Linking resources");
 
         List<String> args = new ArrayList<>();
-        args.add(getBinary().getAbsolutePath());
         args.add("link");
         args.add("-I");
         args.add(getModule().getBootstrapJarFile().getAbsolutePath());  File files = new File(getOutputPath(), "compiled");
@@ -315,11 +308,7 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
             args.add(getModule().getAssetsDirectory().getAbsolutePath());
         }
 
-        BinaryExecutor exec = new BinaryExecutor();
-        exec.setCommands(args);
-        if (!exec.execute().trim().isEmpty()) {
-            throw new CompilationFailedException(exec.getLog());
-        }
+        runAapt2(args);
     }
     /**
      * Utility function to get all the files that needs to be recompiled
@@ -415,7 +404,7 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
                     if (copy.exists()) {
                         FileUtils.deleteQuietly(copy);
                     }
-                    FileUtils.copyFileToDirectory(file, outputDir, false);
+                    FileUtils.copyFileToDirectory(file, outputDir, true);
                 }
             }
         }
@@ -454,7 +443,12 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         return resourceFiles;
     }
 
-    private boolean contentModified(File newFile, File oldFile) {
+    /**
+     * The copy of the last compiled version of a file keeps its modification time, so files
+     * whose length or modification time differ have their contents compared to tell apart
+     * the ones that have only been touched or saved without changes.
+     */
+    private boolean contentModified(File newFile, File oldFile) throws IOException {
         if (!oldFile.exists() || !newFile.exists()) {
             return true;
         }
@@ -463,7 +457,21 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
             return true;
         }
 
-        return newFile.lastModified() > oldFile.lastModified();
+        if (newFile.lastModified() == oldFile.lastModified()) {
+            return false;
+        }
+
+        String hash = ChangeJournal.getInstance().getHash(newFile);
+        if (hash == null) {
+            hash = PersistentCache.hash(newFile);
+        }
+        if (!hash.equals(PersistentCache.hash(oldFile))) {
+            return true;
+        }
+        // only touched, the contents don't need to be compared again on the next build
+        //noinspection ResultOfMethodCallIgnored
+        oldFile.setLastModified(newFile.lastModified());
+        return false;
     }
 
     /**
@@ -500,40 +508,6 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         return map;
     }
 
-    /**
-     * Returns the list of resource directories of libraries that needs to be compiled
-     * It determines whether the library should be compiled by checking the build/bin/res folder,
-     * if it contains a zip file with its name, then its most likely the same library
-     */
-    private List<File> getLibraries()  throws IOException {
-        File resDir = new File(getModule().getBuildDirectory(), "bin/res");
-        if (!resDir.exists()) {
-            if (!resDir.mkdirs()) {
-                throw new IOException("Failed to create resource directory");
-            }
-        }
-
-        List<File> libraries = new ArrayList<>();
-
-        for (File library : getModule().getLibraries()) {
-            File parent = library.getParentFile();
-            if (parent != null) {
-
-                if (!new File(parent, "res").exists()) {
-                    // we don't need to check it if it has no resource directory
-                    continue;
-                }
-
-                File check = new File(resDir, parent.getName() + ".zip");
-                if (!check.exists()) {
-                    libraries.add(library);
-                }
-            }
-        }
-
-        return libraries;
-    }
-
     private File createNewFile(File parent, String name) throws IOException {
         File createdFile = new File(parent, name);
         if (!parent.exists()) {
@@ -575,6 +549,53 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         return file;
     }
 
+    /**
+     * Runs the command on the aapt2 daemon, the first argument is the name of the command.
+     * Diagnostics are logged as soon as aapt2 prints them. If the daemon is not supported or
+     * keeps crashing, a new aapt2 process is used instead. A command that timed out is not run
+     * again.
+     */
+    private void runAapt2(List<String> args) throws IOException, CompilationFailedException {
+        File binary = getBinary();
+        Aapt2Daemon daemon = Aapt2Daemon.getInstance(binary);
+        if (!daemon.isSupported()) {
+            runAapt2Process(binary, args);
+            return;
+        }
+
+        Aapt2Daemon.Result result;
+        try {
+            result = daemon.execute(args.get(0), args.subList(1, args.size()), line -> {
+                if (Aapt2Daemon.isWarning(line)) {
+                    getLogger().warning(line);
+                } else {
+                    getLogger().debug(line);
+                }
+            });
+        } catch (InterruptedIOException e) {
+            throw new CompilationFailedException(e.getMessage(), e);
+        } catch (IOException e) {
+            getLogger().debug("aapt2 daemon is not available: " + e.getMessage());
+            runAapt2Process(binary, args);
+            return;
+        }
+        if (!result.isSuccessful()) {
+            throw new CompilationFailedException(result.getLog());
+        }
+    }
+
+    private void runAapt2Process(File binary, List<String> args)
+            throws CompilationFailedException {
+        List<String> commands = new ArrayList<>(args.size() + 1);
+        commands.add(binary.getAbsolutePath());
+        commands.addAll(args);
+        BinaryExecutor exec = new BinaryExecutor();
+        exec.setCommands(commands);
+        if (!exec.execute().trim().isEmpty()) {
+            throw new CompilationFailedException(exec.getLog());
+        }
+    }
+
     private static File sAapt2Binary;
 
     @VisibleForTesting
@@ -31,6 +31,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 public class InjectLoggerTask extends Task<AndroidModule> {
@@ -144,6 +146,19 @@ public class InjectLoggerTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Collection<File> getInputs() {
+        return Arrays.asList(getModule().getJavaDirectory(),
+                new File(getModule().getBuildDirectory(), "bin/AndroidManifest.xml"));
+    }
+
+    @Override
+    public Collection<File> getOutputs() {
+        // the merged manifest is rewritten when the project has no application class
+        return Arrays.asList(getModule().getJavaDirectory(),
+                new File(getModule().getBuildDirectory(), "bin/AndroidManifest.xml"));
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         getModule().getJavaFiles();
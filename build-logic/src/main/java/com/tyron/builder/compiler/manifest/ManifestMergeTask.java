@@ -18,6 +18,8 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 public class ManifestMergeTask extends Task<AndroidModule> {
@@ -36,6 +38,21 @@ public class ManifestMergeTask extends Task<AndroidModule> {
         return "ManifestMerger";
     }
 
+    @Override
+    public Collection<File> getInputs() {
+        List<File> inputs = new ArrayList<>();
+        inputs.add(getModule().getManifestFile());
+        inputs.add(new File(getModule().getBuildDirectory(), "libs"));
+        inputs.add(getModule().getLibraryDirectory());
+        return inputs;
+    }
+
+    @Override
+    public Collection<File> getOutputs() {
+        return Collections.singletonList(
+                new File(getModule().getBuildDirectory(), "bin/AndroidManifest.xml"));
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mPackageName = getApplicationId();
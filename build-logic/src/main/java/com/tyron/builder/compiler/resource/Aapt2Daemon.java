@@ -0,0 +1,411 @@
+package com.tyron.builder.compiler.resource;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long running aapt2 process started with {@code aapt2 daemon}, so compiling and linking
+ * resources does not pay for starting a new process and initializing aapt2 every time.
+ *
+ * Each command is written to the standard input of the process with every argument on its
+ * own line and is terminated by an empty line. aapt2 prints {@code Ready} once it has started
+ * and {@code Done} after each command, a failed command prints {@code Error} before
+ * {@code Done}. Everything else it prints is a diagnostic of the running command.
+ *
+ * Commands are queued and each one is sent to a process that is not busy, so independent
+ * commands such as compiling different libraries run in parallel on a small pool of processes.
+ * If a process dies while running a command it is started again and the command is retried
+ * once, a command that times out is not retried. If a process cannot be started at all the
+ * daemon is marked as unsupported and every later command fails without trying again.
+ */
+public class Aapt2Daemon implements Closeable {
+
+    private static final String TAG = Aapt2Daemon.class.getSimpleName();
+
+    private static final long START_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long COMMAND_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Each process takes a few dozen megabytes, only a couple of them are kept
+     */
+    private static final int DEFAULT_MAX_PROCESSES =
+            Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static final String READY = "Ready";
+    private static final String DONE = "Done";
+    private static final String ERROR = "Error";
+
+    /**
+     * aapt2 prints the level of a diagnostic after its optional source, e.g.
+     * {@code res/values/strings.xml:3: warn: ...}
+     */
+    private static final String WARNING_LEVEL = "warn: ";
+
+    /**
+     * Put on the output queue when the output of the process has ended
+     */
+    private static final String END_OF_OUTPUT = new String("<end of output>");
+
+    public interface DiagnosticListener {
+        /**
+         * Called from the thread of the daemon for every line aapt2 prints while running
+         * a command
+         */
+        void onDiagnostic(String line);
+    }
+
+    public static class Result {
+        private final boolean mSuccessful;
+        private final List<String> mDiagnostics;
+
+        Result(boolean successful, List<String> diagnostics) {
+            mSuccessful = successful;
+            mDiagnostics = Collections.unmodifiableList(diagnostics);
+        }
+
+        public boolean isSuccessful() {
+            return mSuccessful;
+        }
+
+        public List<String> getDiagnostics() {
+            return mDiagnostics;
+        }
+
+        public String getLog() {
+            return String.join(System.lineSeparator(), mDiagnostics);
+        }
+    }
+
+    private static final Map<File, Aapt2Daemon> sDaemons = new HashMap<>();
+
+    /**
+     * @return whether the diagnostic printed by aapt2 is a warning
+     */
+    public static boolean isWarning(@NonNull String line) {
+        return line.startsWith(WARNING_LEVEL) || line.contains(": " + WARNING_LEVEL);
+    }
+
+    /**
+     * @return the daemon of the given aapt2 binary, its processes are started when they are
+     * first needed
+     */
+    public static synchronized Aapt2Daemon getInstance(@NonNull File binary) {
+        Aapt2Daemon daemon = sDaemons.get(binary);
+        if (daemon == null) {
+            daemon = new Aapt2Daemon(binary, DEFAULT_MAX_PROCESSES);
+            sDaemons.put(binary, daemon);
+        }
+        return daemon;
+    }
+
+    /**
+     * Stops all the daemons, they are started again when needed
+     */
+    public static void shutdownAll() {
+        List<Aapt2Daemon> daemons;
+        synchronized (Aapt2Daemon.class) {
+            daemons = new ArrayList<>(sDaemons.values());
+        }
+        for (Aapt2Daemon daemon : daemons) {
+            daemon.close();
+        }
+    }
+
+    private final File mBinary;
+    private final ExecutorService mQueue;
+
+    /**
+     * Processes that are not running a command, the most recently used one is reused first
+     */
+    private final Deque<Worker> mIdle = new ArrayDeque<>();
+    private int mStarts;
+
+    /**
+     * Set when a process could not be started, aapt2 does not support the daemon command on
+     * this device
+     */
+    private volatile boolean mUnsupported;
+
+    private Aapt2Daemon(File binary, int maxProcesses) {
+        mBinary = binary;
+        mQueue = Executors.newFixedThreadPool(maxProcesses, runnable -> {
+            Thread thread = new Thread(runnable, "Aapt2Daemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the number of times a process has been started, for testing
+     */
+    public synchronized int getStartCount() {
+        return mStarts;
+    }
+
+    /**
+     * @return false if a process of the daemon could not be started, commands should be run
+     * on a new aapt2 process instead
+     */
+    public boolean isSupported() {
+        return !mUnsupported;
+    }
+
+    public Result compile(@NonNull List<String> args, @Nullable DiagnosticListener listener)
+            throws IOException {
+        return execute("compile", args, listener);
+    }
+
+    public Result link(@NonNull List<String> args, @Nullable DiagnosticListener listener)
+            throws IOException {
+        return execute("link", args, listener);
+    }
+
+    /**
+     * Queues the command and waits for it to finish. Commands from different threads run
+     * on different processes, up to the size of the pool.
+     *
+     * @throws IOException if the daemon could not be started, died twice while running
+     *                     the command or the command timed out
+     */
+    public Result execute(@NonNull String command, @NonNull List<String> args,
+                          @Nullable DiagnosticListener listener) throws IOException {
+        if (mUnsupported) {
+            throw new IOException("aapt2 daemon is not supported");
+        }
+        Future<Result> future = mQueue.submit(() -> run(command, args, listener));
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for aapt2", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private Result run(String command, List<String> args, DiagnosticListener listener)
+            throws IOException, InterruptedException {
+        Worker worker = obtainWorker();
+        boolean finished = false;
+        try {
+            IOException failure = null;
+            for (int attempt = 0; attempt < 2; attempt++) {
+                try {
+                    worker.ensureStarted();
+                } catch (IOException e) {
+                    mUnsupported = true;
+                    throw e;
+                }
+                try {
+                    Result result = worker.send(command, args, listener);
+                    finished = true;
+                    return result;
+                } catch (InterruptedIOException e) {
+                    // aapt2 is still running it, running it again would take as long
+                    throw e;
+                } catch (IOException e) {
+                    Log.w(TAG, "aapt2 daemon failed, restarting", e);
+                    worker.destroy();
+                    failure = e;
+                }
+            }
+            throw failure;
+        } finally {
+            if (finished) {
+                release(worker);
+            } else {
+                // the command was interrupted or failed before aapt2 printed Done, the rest
+                // of its output would be read as the output of the next command
+                worker.destroy();
+            }
+        }
+    }
+
+    private synchronized Worker obtainWorker() {
+        Worker worker = mIdle.pollFirst();
+        if (worker == null) {
+            // the queue never runs more commands than the size of the pool at once
+            worker = new Worker();
+        }
+        return worker;
+    }
+
+    private synchronized void release(Worker worker) {
+        if (mQueue.isShutdown()) {
+            worker.destroy();
+        } else {
+            mIdle.addFirst(worker);
+        }
+    }
+
+    private synchronized void started() {
+        mStarts++;
+    }
+
+    /**
+     * A single aapt2 process, only used by one thread at a time
+     */
+    private class Worker {
+
+        private Process mProcess;
+        private BufferedWriter mInput;
+        private BlockingQueue<String> mOutput;
+
+        void ensureStarted() throws IOException, InterruptedException {
+            if (mProcess != null && mProcess.isAlive()) {
+                return;
+            }
+            destroy();
+
+            ProcessBuilder builder = new ProcessBuilder(mBinary.getAbsolutePath(), "daemon");
+            // diagnostics are printed on stderr, merging the streams keeps them in order with
+            // the end of the command
+            builder.redirectErrorStream(true);
+            Process process = builder.start();
+            BlockingQueue<String> output = new LinkedBlockingQueue<>();
+            Thread reader = new Thread(() -> {
+                try (BufferedReader stream = new BufferedReader(new InputStreamReader(
+                        process.getInputStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = stream.readLine()) != null) {
+                        output.add(line);
+                    }
+                } catch (IOException e) {
+                    // the process has been destroyed
+                } finally {
+                    output.add(END_OF_OUTPUT);
+                }
+            }, "Aapt2Daemon-output");
+            reader.setDaemon(true);
+            reader.start();
+
+            mProcess = process;
+            mOutput = output;
+            mInput = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(),
+                    StandardCharsets.UTF_8));
+            started();
+
+            List<String> banner = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + START_TIMEOUT_MS;
+            while (true) {
+                String line = next(deadline);
+                if (line == null) {
+                    throw new IOException("aapt2 daemon did not start in time");
+                }
+                if (line == END_OF_OUTPUT) {
+                    throw new IOException("aapt2 daemon exited while starting: " +
+                            String.join("\n", banner));
+                }
+                if (READY.equals(line.trim())) {
+                    return;
+                }
+                banner.add(line);
+            }
+        }
+
+        Result send(String command, List<String> args, DiagnosticListener listener)
+                throws IOException, InterruptedException {
+            mInput.write(command);
+            mInput.write('\n');
+            for (String arg : args) {
+                mInput.write(arg);
+                mInput.write('\n');
+            }
+            mInput.write('\n');
+            mInput.flush();
+
+            List<String> diagnostics = new ArrayList<>();
+            boolean error = false;
+            long deadline = System.currentTimeMillis() + COMMAND_TIMEOUT_MS;
+            while (true) {
+                String line = next(deadline);
+                if (line == null) {
+                    throw new InterruptedIOException("aapt2 " + command + " timed out");
+                }
+                if (line == END_OF_OUTPUT) {
+                    throw new IOException("aapt2 daemon exited while running " + command);
+                }
+                String trimmed = line.trim();
+                if (DONE.equals(trimmed)) {
+                    return new Result(!error, diagnostics);
+                }
+                if (ERROR.equals(trimmed)) {
+                    error = true;
+                    continue;
+                }
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                diagnostics.add(line);
+                if (listener != null) {
+                    listener.onDiagnostic(line);
+                }
+            }
+        }
+
+        private String next(long deadline) throws InterruptedException {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+            return mOutput.poll(remaining, TimeUnit.MILLISECONDS);
+        }
+
+        synchronized void destroy() {
+            if (mProcess != null) {
+                mProcess.destroy();
+            }
+            mProcess = null;
+            mInput = null;
+            mOutput = null;
+        }
+    }
+
+    /**
+     * Stops the processes once the queued commands have finished
+     */
+    @Override
+    public void close() {
+        synchronized (Aapt2Daemon.class) {
+            sDaemons.remove(mBinary, this);
+        }
+        mQueue.shutdown();
+        synchronized (this) {
+            // busy workers are destroyed when they are released
+            for (Worker worker : mIdle) {
+                worker.destroy();
+            }
+            mIdle.clear();
+        }
+    }
+}
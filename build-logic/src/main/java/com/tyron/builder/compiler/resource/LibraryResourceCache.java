@@ -0,0 +1,214 @@
+package com.tyron.builder.compiler.resource;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.common.hash.Hashing;
+import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.cache.SharedCache;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A cache of compiled library resources that is shared by every project on the device.
+ *
+ * Entries are keyed by the hash of the contents of the res directory of a library and the
+ * aapt2 binary that compiled it, so a library is only compiled again if its resources have
+ * actually changed. Libraries that are not in the cache yet are compiled in parallel, the
+ * resulting archives are then linked to the output directory where the link step expects them.
+ */
+public class LibraryResourceCache {
+
+    private static final int MAX_THREADS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final String EXTENSION = ".zip";
+
+    private static LibraryResourceCache sInstance;
+    private static File sCacheDirectory;
+
+    public static synchronized LibraryResourceCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new LibraryResourceCache(getCacheDirectory());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    public static synchronized void setCacheDirectory(File directory) {
+        sCacheDirectory = directory;
+        sInstance = null;
+    }
+
+    private static File getCacheDirectory() {
+        if (sCacheDirectory != null) {
+            return sCacheDirectory;
+        }
+        return SharedCache.getDefaultDirectory("resources");
+    }
+
+    public interface Compiler {
+        /**
+         * Compiles the resource directory into the given archive
+         */
+        void compile(@NonNull File resDirectory, @NonNull File output)
+                throws IOException, CompilationFailedException;
+    }
+
+    private final SharedCache mCache;
+
+    public LibraryResourceCache(File directory) {
+        mCache = new SharedCache(directory);
+    }
+
+    /**
+     * Ensures that the resources of all the given libraries are compiled to
+     * {@code <output>/<library name>.zip}. Archives of libraries that are no longer used are
+     * deleted from the output directory.
+     *
+     * @param libraries   the library jars, their res directory is expected next to them
+     * @param compilerKey identifies the compiler, archives compiled by another version of aapt2
+     *                    are not reused
+     * @throws CompilationFailedException if compiling any of the libraries failed
+     */
+    public void ensureCompiledLibraries(@NonNull List<File> libraries,
+                                        @NonNull File outputDirectory,
+                                        @NonNull String compilerKey,
+                                        @NonNull Compiler compiler,
+                                        @NonNull ILogger logger)
+            throws IOException, CompilationFailedException {
+        if (!outputDirectory.exists() && !outputDirectory.mkdirs()) {
+            throw new IOException("Failed to create resource output directory");
+        }
+
+        Set<String> outputs = new HashSet<>();
+        List<File> misses = new ArrayList<>();
+        for (File lib : libraries) {
+            File parentFile = lib.getParentFile();
+            if (parentFile == null) {
+                continue;
+            }
+            File res = new File(parentFile, "res");
+            if (!res.isDirectory()) {
+                continue;
+            }
+            File output = new File(outputDirectory, parentFile.getName() + EXTENSION);
+            outputs.add(output.getName());
+
+            File cached = getCachedFile(res, compilerKey);
+            if (cached != null && cached.exists()) {
+                if (!mCache.isLinked(cached, output)) {
+                    logger.debug("Using cached resources for " + parentFile.getName());
+                    SharedCache.link(cached, output);
+                }
+            } else {
+                misses.add(res);
+            }
+        }
+
+        // the link step uses every archive in the output directory
+        File[] archives = outputDirectory.listFiles(c -> c.getName().endsWith(EXTENSION));
+        if (archives != null) {
+            for (File archive : archives) {
+                if (!outputs.contains(archive.getName())) {
+                    FileUtils.deleteQuietly(archive);
+                }
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor =
+                Executors.newFixedThreadPool(Math.min(MAX_THREADS, misses.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (File res : misses) {
+                futures.add(executor.submit(() -> {
+                    compileLibrary(res, outputDirectory, compilerKey, compiler, logger);
+                    return null;
+                }));
+            }
+
+            CompilationFailedException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    if (failure == null) {
+                        if (e.getCause() instanceof CompilationFailedException) {
+                            failure = (CompilationFailedException) e.getCause();
+                        } else {
+                            failure = new CompilationFailedException(
+                                    String.valueOf(e.getCause()), e.getCause());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CompilationFailedException("Compiling resources was interrupted");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void compileLibrary(File res, File outputDirectory, String compilerKey,
+                                Compiler compiler, ILogger logger)
+            throws IOException, CompilationFailedException {
+        File libraryDir = res.getParentFile();
+        logger.debug("Compiling resources of " + libraryDir.getName());
+
+        File output = new File(outputDirectory, libraryDir.getName() + EXTENSION);
+        File target = getCachedFile(res, compilerKey);
+        if (target == null) {
+            // the cache directory is not available, the resources are compiled directly
+            FileUtils.deleteQuietly(output);
+            compiler.compile(res, output);
+            return;
+        }
+
+        File temp = mCache.createTempFile("resources", EXTENSION);
+        try {
+            compiler.compile(res, temp);
+            mCache.commit(temp, target);
+        } finally {
+            FileUtils.deleteQuietly(temp);
+        }
+        SharedCache.link(target, output);
+    }
+
+    /**
+     * @return the archive of the compiled resources of this res directory in the cache,
+     * or null if the cache directory could not be created or the resources can't be read
+     */
+    private File getCachedFile(File res, String compilerKey) {
+        try {
+            String key = Hashing.sha256().hashString(mCache.hashDirectory(res) + compilerKey,
+                    StandardCharsets.UTF_8).toString();
+            return mCache.getEntry(key + EXTENSION);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.builder.project.cache.PersistentCache;
 import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
@@ -18,9 +19,13 @@ import org.apache.commons.io.FileUtils;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Class that loads R.txt files generated by AAPT/AAPT2  and converts them
@@ -43,6 +48,21 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
         return "SymbolProcessor";
     }
 
+    @Override
+    public Collection<File> getInputs() {
+        List<File> inputs = new ArrayList<>();
+        inputs.add(new File(getModule().getBuildDirectory(), "bin/res/R.txt"));
+        inputs.add(new File(getModule().getBuildDirectory(), "libs"));
+        inputs.add(getModule().getLibraryDirectory());
+        return inputs;
+    }
+
+    @Override
+    public Collection<File> getOutputs() {
+        return Arrays.asList(new File(getModule().getBuildDirectory(), "gen"),
+                new File(getModule().getBuildDirectory(), "cache/" + CACHE_KEY.getName() + ".json"));
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mSymbolOutputDir = new File(getModule().getBuildDirectory(), "gen");
@@ -52,6 +72,11 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
     @Override
     public void run() throws IOException, CompilationFailedException {
         Cache<Void, Void> cache = getModule().getCache(CACHE_KEY, new Cache<>());
+        PersistentCache persistentCache = getModule().getPersistentCache(CACHE_KEY);
+        // the values of the library symbols are taken from the full R.txt of the app
+        String fingerprint = mFullResourceFile.exists()
+                ? PersistentCache.hash(mFullResourceFile) : "";
+        Map<File, String> packageNames = new HashMap<>();
         SymbolLoader fullSymbolValues = null;
         Multimap<String, SymbolLoader> libMap = ArrayListMultimap.create();
 
@@ -89,12 +114,26 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
             }
         }
 
+        // the files may have been written by other tasks since the last build
+        cache.invalidateModified();
+
+        for (File file : persistentCache.getInputs()) {
+            if (!RFiles.contains(file)) {
+                persistentCache.remove(file);
+            }
+        }
+
         for (File rFile : RFiles) {
 
             if (!cache.needs(rFile.toPath(), null)) {
                 continue;
             }
 
+            if (persistentCache.isUpToDate(rFile, fingerprint)) {
+                cache.load(rFile.toPath(), null, null);
+                continue;
+            }
+
             File parent = rFile.getParentFile();
             if (parent == null) {
                 getLogger().error("Unable to access parent directory for " + rFile);
@@ -114,6 +153,7 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
             libSymbols.load();
 
             libMap.put(packageName, libSymbols);
+            packageNames.put(rFile, packageName);
         }
 
         // now loop on all the package name, merge all the symbols to write, and write them
@@ -131,5 +171,12 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
         for (File file : RFiles) {
             cache.load(file.toPath(), null, null);
         }
+
+        for (Map.Entry<File, String> entry : packageNames.entrySet()) {
+            File rJava = new File(mSymbolOutputDir,
+                    entry.getValue().replace('.', '/') + "/R.java");
+            persistentCache.put(entry.getKey(), fingerprint, Collections.singletonList(rJava));
+        }
+        persistentCache.save();
     }
 }
@@ -80,7 +80,7 @@ public class SymbolLoader {
         }
     }
 
-    Table<String, String, SymbolEntry> getSymbols() {
+    public Table<String, String, SymbolEntry> getSymbols() {
         return mSymbols;
     }
 }
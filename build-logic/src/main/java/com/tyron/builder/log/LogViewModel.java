@@ -96,7 +96,7 @@ public class LogViewModel extends ViewModel {
      * @param id                the log id to set to
      * @param diagnosticWrapper the DiagnosticWrapper to add
      */
-    private void add(int id, DiagnosticWrapper diagnosticWrapper) {
+    private synchronized void add(int id, DiagnosticWrapper diagnosticWrapper) {
         List<DiagnosticWrapper> list = getLogs(id).getValue();
         if (list == null) {
             list = new ArrayList<>();
@@ -2,6 +2,8 @@ package com.tyron.builder.project.api;
 
 import androidx.annotation.NonNull;
 
+import com.tyron.builder.project.index.ClassNameIndex;
+
 import java.io.File;
 import java.util.List;
 import java.util.Map;
@@ -9,11 +11,19 @@ import java.util.Map;
 public interface JavaModule extends Module {
 
     /**
-     * @return a map of fully qualified name and its java file
+     * @return a map of fully qualified name and its java file, use {@link #addJavaFile(File)}
+     * and {@link #removeJavaFile(String)} to modify it
      */
     @NonNull
     Map<String, File> getJavaFiles();
 
+    /**
+     * @return the java files whose package is exactly the given package, this does not
+     * iterate over all the files of the module
+     */
+    @NonNull
+    List<File> getJavaFilesInPackage(@NonNull String packageName);
+
     File getJavaFile(@NonNull String packageName);
 
     void removeJavaFile(@NonNull String packageName);
@@ -30,6 +40,13 @@ public interface JavaModule extends Module {
      */
     List<String> getAllClasses();
 
+    /**
+     * @return the index of the class names in this module and its libraries, this should be
+     * preferred over {@link #getAllClasses()} when searching for classes
+     */
+    @NonNull
+    ClassNameIndex getClassIndex();
+
     /**
      * @return The resources directory of the project. Note that
      * this is different from android's res directory
@@ -20,4 +20,10 @@ public interface CacheHolder {
     public <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue);
 
     public <K, V> void put(CacheKey<K, V> key, Cache<K, V> value);
+
+    /**
+     * @return the cache associated with this key that is persisted on disk, the cache
+     * is only loaded the first time it is queried
+     */
+    public PersistentCache getPersistentCache(CacheKey<?, ?> key);
 }
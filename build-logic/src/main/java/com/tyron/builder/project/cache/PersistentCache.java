@@ -0,0 +1,245 @@
+package com.tyron.builder.project.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A content addressed cache that is stored on the build directory of a module so it
+ * survives restarts of the application.
+ *
+ * Each entry maps an input file to the output files that were produced from it, along with
+ * the hash of the input contents and a fingerprint of the environment (classpath, min sdk, etc.)
+ * it was compiled against. An entry is only considered up to date if both of them match and
+ * all of its outputs still exist. An entry may also carry a value describing the input, which
+ * is stored as json and only deserialized the first time it is requested.
+ *
+ * The backing file is only read the first time the cache is queried.
+ */
+public class PersistentCache {
+
+    private static final Gson GSON = new GsonBuilder().create();
+
+    private static class Entry {
+        String hash;
+        String fingerprint;
+        List<String> outputs;
+        JsonElement data;
+
+        transient Object value;
+    }
+
+    private final File mFile;
+    private Map<String, Entry> mEntries;
+    private boolean mModified;
+
+    public PersistentCache(File file) {
+        mFile = file;
+    }
+
+    /**
+     * @return whether the outputs of this input can be reused, the contents of the input
+     * are only hashed if an entry with the same fingerprint exists
+     */
+    public synchronized boolean isUpToDate(@NonNull File input, @NonNull String fingerprint) {
+        Entry entry = getEntries().get(input.getAbsolutePath());
+        if (entry == null || !fingerprint.equals(entry.fingerprint)) {
+            return false;
+        }
+        for (String output : entry.outputs) {
+            if (!new File(output).exists()) {
+                return false;
+            }
+        }
+        try {
+            return hash(input).equals(entry.hash);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @NonNull
+    public synchronized List<File> getOutputs(@NonNull File input) {
+        Entry entry = getEntries().get(input.getAbsolutePath());
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        List<File> outputs = new ArrayList<>(entry.outputs.size());
+        for (String output : entry.outputs) {
+            outputs.add(new File(output));
+        }
+        return outputs;
+    }
+
+    /**
+     * @return all the input files that currently have an entry in this cache
+     */
+    @NonNull
+    public synchronized Set<File> getInputs() {
+        Set<File> inputs = new HashSet<>();
+        for (String path : getEntries().keySet()) {
+            inputs.add(new File(path));
+        }
+        return inputs;
+    }
+
+    /**
+     * @return the value stored with this input, or null if there is none
+     */
+    @Nullable
+    public synchronized <T> T getData(@NonNull File input, @NonNull Class<T> type) {
+        Entry entry = getEntries().get(input.getAbsolutePath());
+        if (entry == null || entry.data == null) {
+            return null;
+        }
+        if (!type.isInstance(entry.value)) {
+            try {
+                entry.value = GSON.fromJson(entry.data, type);
+            } catch (JsonParseException e) {
+                return null;
+            }
+        }
+        return type.cast(entry.value);
+    }
+
+    public synchronized void put(@NonNull File input, @NonNull String fingerprint,
+                                 @NonNull Collection<File> outputs) {
+        put(input, fingerprint, outputs, null);
+    }
+
+    public synchronized void put(@NonNull File input, @NonNull String fingerprint,
+                                 @NonNull Collection<File> outputs, @Nullable Object data) {
+        Entry entry = new Entry();
+        try {
+            entry.hash = hash(input);
+        } catch (IOException e) {
+            // the input can't be read, don't cache it
+            remove(input);
+            return;
+        }
+        entry.fingerprint = fingerprint;
+        entry.outputs = new ArrayList<>(outputs.size());
+        for (File output : outputs) {
+            entry.outputs.add(output.getAbsolutePath());
+        }
+        if (data != null) {
+            entry.data = GSON.toJsonTree(data);
+            entry.value = data;
+        }
+        getEntries().put(input.getAbsolutePath(), entry);
+        mModified = true;
+    }
+
+    public synchronized void remove(@NonNull File input) {
+        if (getEntries().remove(input.getAbsolutePath()) != null) {
+            mModified = true;
+        }
+    }
+
+    public synchronized void clear() {
+        mEntries = new HashMap<>();
+        mModified = false;
+        FileUtils.deleteQuietly(mFile);
+    }
+
+    /**
+     * Writes the entries of this cache to disk, does nothing if nothing has changed
+     * since it was loaded.
+     */
+    public synchronized void save() throws IOException {
+        if (!mModified || mEntries == null) {
+            return;
+        }
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + parent);
+        }
+        File temp = new File(mFile.getAbsolutePath() + ".tmp");
+        try (Writer writer = Files.newWriter(temp, StandardCharsets.UTF_8)) {
+            GSON.toJson(mEntries, writer);
+        }
+        FileUtils.deleteQuietly(mFile);
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Unable to write cache file " + mFile);
+        }
+        mModified = false;
+    }
+
+    private Map<String, Entry> getEntries() {
+        if (mEntries == null) {
+            mEntries = load();
+        }
+        return mEntries;
+    }
+
+    private Map<String, Entry> load() {
+        if (!mFile.exists()) {
+            return new HashMap<>();
+        }
+        try (Reader reader = Files.newReader(mFile, StandardCharsets.UTF_8)) {
+            Map<String, Entry> entries = GSON.fromJson(reader,
+                    new TypeToken<HashMap<String, Entry>>(){}.getType());
+            if (entries != null) {
+                return entries;
+            }
+        } catch (IOException | JsonParseException e) {
+            // the cache is corrupted, start over
+            FileUtils.deleteQuietly(mFile);
+        }
+        return new HashMap<>();
+    }
+
+    /**
+     * @return the hex encoded hash of the contents of this file
+     */
+    public static String hash(File file) throws IOException {
+        return Files.asByteSource(file).hash(Hashing.sha256()).toString();
+    }
+
+    /**
+     * Creates a fingerprint of the given files and extra values, the files are identified by
+     * their path, length and modified time so this is cheap enough to be called on every build
+     * even with large libraries on the classpath.
+     */
+    public static String fingerprint(Collection<File> files, @Nullable Object... extras) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (File file : files) {
+            if (file == null) {
+                continue;
+            }
+            hasher.putString(file.getAbsolutePath(), StandardCharsets.UTF_8);
+            hasher.putLong(file.length());
+            hasher.putLong(file.lastModified());
+        }
+        if (extras != null) {
+            for (Object extra : extras) {
+                hasher.putString(String.valueOf(extra), StandardCharsets.UTF_8);
+            }
+        }
+        return hasher.hash().toString();
+    }
+}
@@ -0,0 +1,187 @@
+package com.tyron.builder.project.cache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.tyron.builder.BuildModule;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A content addressed directory of build outputs that is shared by every project on the device,
+ * used by the caches of dexed libraries, compiled library resources and jar class indexes.
+ *
+ * Entries are named by the caller, usually after the hash of their inputs. They are created in
+ * a temporary location and then moved to their final name so a partially written entry is never
+ * visible, even when two builds produce the same entry at the same time.
+ *
+ * Hashing large inputs is expensive, the hash of a file is reused as long as its length and
+ * modified time stays the same and the hash of a directory as long as none of its files have
+ * been added, removed or modified.
+ */
+public class SharedCache {
+
+    private static class HashEntry {
+        final String fingerprint;
+        final String hash;
+
+        HashEntry(String fingerprint, String hash) {
+            this.fingerprint = fingerprint;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * @return the directory named {@code name} in the cache directory of the application,
+     * or in the temp directory if the application has not been initialized, e.g. in tests
+     */
+    @NonNull
+    public static File getDefaultDirectory(@NonNull String name) {
+        if (BuildModule.getContext() != null) {
+            return new File(BuildModule.getContext().getCacheDir(), name);
+        }
+        return new File(System.getProperty("java.io.tmpdir"), name);
+    }
+
+    private final File mDirectory;
+    private final Map<String, HashEntry> mHashes = new ConcurrentHashMap<>();
+
+    public SharedCache(@NonNull File directory) {
+        mDirectory = directory;
+    }
+
+    @NonNull
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * @return the file of the entry with this name, it may not exist yet. Null if the cache
+     * directory could not be created.
+     */
+    @Nullable
+    public File getEntry(@NonNull String name) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            return null;
+        }
+        return new File(mDirectory, name);
+    }
+
+    /**
+     * Creates a temporary file in the cache to write an entry to before it is committed
+     */
+    @NonNull
+    public File createTempFile(@NonNull String prefix, @NonNull String suffix)
+            throws IOException {
+        return File.createTempFile(prefix, suffix, getTempRoot());
+    }
+
+    /**
+     * Creates a temporary directory in the cache to write an entry to before it is committed
+     */
+    @NonNull
+    public File createTempDirectory(@NonNull String prefix) throws IOException {
+        return Files.createTempDirectory(getTempRoot().toPath(), prefix).toFile();
+    }
+
+    private File getTempRoot() throws IOException {
+        File temp = new File(mDirectory, "tmp");
+        if (!temp.exists() && !temp.mkdirs()) {
+            throw new IOException("Unable to create temp directory " + temp);
+        }
+        return temp;
+    }
+
+    /**
+     * Moves the temporary file or directory to the entry. Another build may have created the
+     * same entry in the mean time, both have the same contents so either one is kept.
+     */
+    public void commit(@NonNull File temp, @NonNull File entry) throws IOException {
+        if (!temp.renameTo(entry)) {
+            FileUtils.deleteQuietly(temp);
+            if (!entry.exists()) {
+                throw new IOException("Unable to move " + temp + " to " + entry);
+            }
+        }
+    }
+
+    /**
+     * @return the hash of the contents of this file
+     */
+    @NonNull
+    public String hash(@NonNull File file) throws IOException {
+        String fingerprint = file.length() + ":" + file.lastModified();
+        HashEntry entry = mHashes.get(file.getAbsolutePath());
+        if (entry != null && entry.fingerprint.equals(fingerprint)) {
+            return entry.hash;
+        }
+        String hash = PersistentCache.hash(file);
+        mHashes.put(file.getAbsolutePath(), new HashEntry(fingerprint, hash));
+        return hash;
+    }
+
+    /**
+     * @return the hash of the relative paths and contents of every file in this directory
+     */
+    @NonNull
+    public String hashDirectory(@NonNull File directory) throws IOException {
+        List<File> files = new ArrayList<>(FileUtils.listFiles(directory, null, true));
+        Collections.sort(files);
+        String fingerprint = PersistentCache.fingerprint(files);
+        HashEntry entry = mHashes.get(directory.getAbsolutePath());
+        if (entry != null && entry.fingerprint.equals(fingerprint)) {
+            return entry.hash;
+        }
+
+        Hasher hasher = Hashing.sha256().newHasher();
+        int prefix = directory.getAbsolutePath().length();
+        for (File file : files) {
+            hasher.putString(file.getAbsolutePath().substring(prefix), StandardCharsets.UTF_8);
+            hasher.putString(PersistentCache.hash(file), StandardCharsets.UTF_8);
+        }
+        String hash = hasher.hash().toString();
+        mHashes.put(directory.getAbsolutePath(), new HashEntry(fingerprint, hash));
+        return hash;
+    }
+
+    /**
+     * @return whether the output is a link or a copy of the cached file. Copies are compared
+     * by their stored hash so the contents are only read again when either file changes.
+     */
+    public boolean isLinked(@NonNull File cached, @NonNull File output) {
+        if (!output.exists()) {
+            return false;
+        }
+        try {
+            return Files.isSameFile(cached.toPath(), output.toPath()) ||
+                    (cached.length() == output.length() && hash(cached).equals(hash(output)));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Hard links the file from the cache to the output, falls back to copying if the file
+     * system does not support links.
+     */
+    public static void link(@NonNull File cached, @NonNull File output) throws IOException {
+        Files.deleteIfExists(output.toPath());
+        try {
+            Files.createLink(output.toPath(), cached.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(cached.toPath(), output.toPath());
+        }
+    }
+}
@@ -16,8 +16,8 @@ import org.apache.commons.io.filefilter.TrueFileFilter;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 
@@ -79,8 +79,8 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
     }
 
     @Override
-    public List<String> getAllClasses() {
-        List<String> classes = super.getAllClasses();
+    protected Collection<String> getSourceClasses() {
+        Collection<String> classes = super.getSourceClasses();
         classes.addAll(mKotlinFiles.keySet());
         return classes;
     }
@@ -4,6 +4,7 @@ import android.util.Log;
 
 import com.tyron.build.BuildConfig;
 import com.tyron.builder.project.api.FileManager;
+import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
 
@@ -37,7 +38,9 @@ public class FileManagerImpl implements FileManager {
 
     @Override
     public void setSnapshotContent(File file, String content) {
-        mSnapshots.computeIfPresent(file, (f, c) -> content);
+        if (mSnapshots.computeIfPresent(file, (f, c) -> content) != null) {
+            Cache.onFileChanged(file.toPath());
+        }
     }
 
     @Override
@@ -54,6 +57,7 @@ public class FileManagerImpl implements FileManager {
                 }
             }
             mSnapshots.remove(file);
+            Cache.onFileChanged(file.toPath());
         }
     }
 
@@ -6,6 +6,8 @@ import androidx.annotation.Nullable;
 import com.google.common.collect.ImmutableList;
 import com.tyron.builder.BuildModule;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.index.ClassNameIndex;
+import com.tyron.builder.project.index.PackageIndex;
 import com.tyron.common.util.StringSearch;
 
 import org.apache.commons.io.FileUtils;
@@ -15,34 +17,30 @@ import org.apache.commons.io.filefilter.TrueFileFilter;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.zip.ZipException;
 
 public class JavaModuleImpl extends ModuleImpl implements JavaModule {
 
-    // Map of fully qualified names and the jar they are contained in
-    private final Map<String, File> mClassFiles;
-    private final Map<String, File> mJavaFiles;
+    private final ClassNameIndex mClassIndex;
+    private final PackageIndex mJavaFiles;
     private final Set<File> mLibraries;
 
     public JavaModuleImpl(File root) {
         super(root);
-        mJavaFiles = new HashMap<>();
-        mClassFiles = new HashMap<>();
+        mJavaFiles = new PackageIndex();
+        mClassIndex = new ClassNameIndex(this::getSourceClasses);
         mLibraries = new HashSet<>();
     }
 
     @NonNull
     @Override
     public Map<String, File> getJavaFiles() {
-        return mJavaFiles;
+        return mJavaFiles.getFiles();
     }
 
     @Nullable
@@ -68,15 +66,32 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         } else {
             className = packageName + "." + javaFile.getName().replace(".java", "");
         }
-        mJavaFiles.put(className, javaFile);
+        mJavaFiles.put(packageName == null ? "" : packageName, className, javaFile);
+    }
+
+    @NonNull
+    @Override
+    public List<File> getJavaFilesInPackage(@NonNull String packageName) {
+        return mJavaFiles.getFilesInPackage(packageName);
     }
 
     @Override
     public List<String> getAllClasses() {
-        List<String> classes = new ArrayList<>();
-        classes.addAll(mJavaFiles.keySet());
-        classes.addAll(mClassFiles.keySet());
-        return classes;
+        return mClassIndex.getAllClassNames();
+    }
+
+    @NonNull
+    @Override
+    public ClassNameIndex getClassIndex() {
+        return mClassIndex;
+    }
+
+    /**
+     * @return the fully qualified names of the classes declared in the source files
+     * of this module
+     */
+    protected Collection<String> getSourceClasses() {
+        return new ArrayList<>(mJavaFiles.getFiles().keySet());
     }
 
     @Override
@@ -103,27 +118,7 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         if (file == null) {
             return;
         }
-        try (JarFile jar = new JarFile(file)) {
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-
-                if (!entry.getName().endsWith(".class")) {
-                    continue;
-                }
-
-                // We only want top level classes, if it contains $ then
-                // its an inner class, we ignore it
-                if (entry.getName().contains("$")) {
-                    continue;
-                }
-
-                String packageName = entry.getName().replace("/", ".")
-                        .substring(0, entry.getName().length() - ".class".length());
-
-                mClassFiles.put(packageName, file);
-            }
-        }
+        mClassIndex.addJar(file);
     }
 
     @NonNull
@@ -189,6 +184,7 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
             ).forEachRemaining(this::addJavaFile);
         }
 
+        Set<File> classpath = new HashSet<>();
         File[] libraryDirectories = new File(getBuildDirectory(), "libs")
                 .listFiles(File::isDirectory);
         if (libraryDirectories != null) {
@@ -196,20 +192,27 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
                 File check = new File(directory, "classes.jar");
                 if (check.exists()) {
                     addLibrary(check);
+                    classpath.add(check);
                 }
             }
         }
 
         try {
             putJar(BuildModule.getAndroidJar());
+            classpath.add(BuildModule.getAndroidJar());
         } catch (IOException e) {
             // ignored
         }
+
+        // libraries that have been removed since the last index
+        mLibraries.retainAll(classpath);
+        mClassIndex.retainJars(classpath);
     }
 
     @Override
     public void clear() {
         mJavaFiles.clear();
         mLibraries.clear();
+        mClassIndex.clear();
     }
 }
\ No newline at end of file
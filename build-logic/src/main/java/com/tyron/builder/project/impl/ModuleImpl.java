@@ -5,6 +5,7 @@ import androidx.annotation.Nullable;
 import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.cache.PersistentCache;
 import com.tyron.common.util.Cache;
 
 import org.jetbrains.annotations.NotNull;
@@ -162,4 +163,17 @@ public class ModuleImpl implements Module {
     public <K, V> void put(CacheKey<K, V> key, Cache<K, V> value) {
         mCacheMap.put(key, value);
     }
+
+    private final Map<String, PersistentCache> mPersistentCacheMap = new HashMap<>();
+
+    @Override
+    public synchronized PersistentCache getPersistentCache(CacheKey<?, ?> key) {
+        PersistentCache cache = mPersistentCacheMap.get(key.getName());
+        if (cache == null) {
+            File file = new File(getBuildDirectory(), "cache/" + key.getName() + ".json");
+            cache = new PersistentCache(file);
+            mPersistentCacheMap.put(key.getName(), cache);
+        }
+        return cache;
+    }
 }
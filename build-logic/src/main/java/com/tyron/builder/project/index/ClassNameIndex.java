@@ -0,0 +1,238 @@
+package com.tyron.builder.project.index;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * The fully qualified names of all the top level classes visible to a module, its source files
+ * and the jars on its class path.
+ *
+ * The classes of each jar are stored in a {@link JarClassIndex} which is only created once per
+ * jar, adding a library that has been indexed before only maps its index file. A jar that has
+ * been replaced since it was added, detected by its length and modified time, is indexed again.
+ * Source files change often so they are read from the module every time the index is queried.
+ */
+public class ClassNameIndex {
+
+    private final Supplier<Collection<String>> mSourceClasses;
+    private final Map<File, Entry> mJars = new LinkedHashMap<>();
+
+    /**
+     * @param sourceClasses returns the qualified names of the classes declared in the
+     *                      source files of the module
+     */
+    public ClassNameIndex(@NonNull Supplier<Collection<String>> sourceClasses) {
+        mSourceClasses = sourceClasses;
+    }
+
+    /**
+     * Adds the classes of this jar to the index, does nothing if it has been added before
+     * and has not changed since
+     */
+    public void addJar(@NonNull File jar) throws IOException {
+        long length = jar.length();
+        long lastModified = jar.lastModified();
+        synchronized (mJars) {
+            Entry entry = mJars.get(jar);
+            if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+                return;
+            }
+        }
+        JarClassIndex index = JarClassIndex.open(jar);
+        synchronized (mJars) {
+            mJars.put(jar, new Entry(index, length, lastModified));
+        }
+    }
+
+    public void removeJar(@NonNull File jar) {
+        synchronized (mJars) {
+            mJars.remove(jar);
+        }
+    }
+
+    /**
+     * Removes the jars that are not in the given collection, called after the class path
+     * of the module has been computed again so removed libraries are no longer suggested
+     */
+    public void retainJars(@NonNull Collection<File> jars) {
+        synchronized (mJars) {
+            mJars.keySet().retainAll(new HashSet<>(jars));
+        }
+    }
+
+    /**
+     * @return the jars currently in this index
+     */
+    @NonNull
+    public Set<File> getJarFiles() {
+        synchronized (mJars) {
+            return new LinkedHashSet<>(mJars.keySet());
+        }
+    }
+
+    public void clear() {
+        synchronized (mJars) {
+            mJars.clear();
+        }
+    }
+
+    private List<JarClassIndex> getJars() {
+        synchronized (mJars) {
+            List<JarClassIndex> jars = new ArrayList<>(mJars.size());
+            for (Entry entry : mJars.values()) {
+                jars.add(entry.index);
+            }
+            return jars;
+        }
+    }
+
+    /**
+     * @return the qualified names of the classes whose simple name starts with the query,
+     * ignoring case, or matches it by camel humps. e.g. {@code ArrLi} matches {@code ArrayList}
+     */
+    @NonNull
+    public List<String> findBySimpleName(@NonNull String query) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String name : mSourceClasses.get()) {
+            if (matchesSimpleName(query, JarClassIndex.getSimpleName(name))) {
+                result.add(name);
+            }
+        }
+        for (JarClassIndex jar : getJars()) {
+            jar.findBySimpleName(query, result);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * @return the qualified names of the classes with exactly this simple name
+     */
+    @NonNull
+    public List<String> findBySimpleNameExact(@NonNull String simpleName) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String name : mSourceClasses.get()) {
+            if (JarClassIndex.getSimpleName(name).equals(simpleName)) {
+                result.add(name);
+            }
+        }
+        List<String> candidates = new ArrayList<>();
+        for (JarClassIndex jar : getJars()) {
+            jar.findBySimpleNamePrefix(simpleName, candidates);
+        }
+        for (String candidate : candidates) {
+            if (JarClassIndex.getSimpleName(candidate).equals(simpleName)) {
+                result.add(candidate);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * @return the qualified names that starts with the given prefix, e.g. {@code java.util.}
+     */
+    @NonNull
+    public List<String> findByQualifiedPrefix(@NonNull String prefix) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String name : mSourceClasses.get()) {
+            if (name.startsWith(prefix)) {
+                result.add(name);
+            }
+        }
+        for (JarClassIndex jar : getJars()) {
+            jar.findByQualifiedPrefix(prefix, result);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * @return every class name in this index, this decodes every name in the index so
+     * prefer using the other queries instead
+     */
+    @NonNull
+    public List<String> getAllClassNames() {
+        List<String> result = new ArrayList<>(mSourceClasses.get());
+        for (JarClassIndex jar : getJars()) {
+            for (int i = 0; i < jar.size(); i++) {
+                result.add(jar.getName(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return whether the simple name starts with the query ignoring case, or all the
+     * characters of the query can be found in order at the start of the words of the name
+     */
+    public static boolean matchesSimpleName(@NonNull String query, @NonNull String simpleName) {
+        if (query.isEmpty()) {
+            return true;
+        }
+        if (simpleName.regionMatches(true, 0, query, 0, query.length())) {
+            return true;
+        }
+        return matchesCamelHumps(query, 0, simpleName, 0);
+    }
+
+    private static boolean matchesCamelHumps(String query, int queryIndex,
+                                             String name, int nameIndex) {
+        if (queryIndex == query.length()) {
+            return true;
+        }
+        if (nameIndex >= name.length() ||
+                !equalsIgnoreCase(query.charAt(queryIndex), name.charAt(nameIndex))) {
+            return false;
+        }
+        // the next character either continues the current word or starts one of the next ones
+        if (matchesCamelHumps(query, queryIndex + 1, name, nameIndex + 1)) {
+            return true;
+        }
+        for (int i = nameIndex + 2; i < name.length(); i++) {
+            if (isWordStart(name, i) &&
+                    matchesCamelHumps(query, queryIndex + 1, name, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWordStart(String name, int index) {
+        char c = name.charAt(index);
+        char previous = name.charAt(index - 1);
+        if (previous == '_') {
+            return c != '_';
+        }
+        if (Character.isUpperCase(c)) {
+            return !Character.isUpperCase(previous) ||
+                    (index + 1 < name.length() && Character.isLowerCase(name.charAt(index + 1)));
+        }
+        return Character.isDigit(c) && !Character.isDigit(previous);
+    }
+
+    private static boolean equalsIgnoreCase(char a, char b) {
+        return a == b || Character.toLowerCase(a) == Character.toLowerCase(b);
+    }
+
+    private static class Entry {
+
+        private final JarClassIndex index;
+        private final long length;
+        private final long lastModified;
+
+        private Entry(JarClassIndex index, long length, long lastModified) {
+            this.index = index;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.tyron.builder.project.index;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.tyron.builder.project.cache.SharedCache;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * A sorted table of the fully qualified names of the top level classes inside a jar file.
+ *
+ * The table is written once per jar, keyed by the hash of its contents, and memory mapped
+ * afterwards so opening a project does not need to enumerate the entries of its libraries
+ * again. Names are decoded from the mapped file only when they are queried.
+ *
+ * File format:
+ * <pre>
+ *     int magic, int version, int count
+ *     int[count] offsets of the names, sorted by the qualified name
+ *     int[count] indices into the offsets, sorted by the lower case simple name
+ *     names, each one is an unsigned short length followed by its UTF-8 bytes
+ * </pre>
+ */
+public class JarClassIndex {
+
+    private static final int MAGIC = 0x4A434958;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    private static SharedCache sCache;
+
+    @VisibleForTesting
+    public static synchronized void setCacheDirectory(File directory) {
+        sCache = new SharedCache(directory);
+    }
+
+    private static synchronized SharedCache getCache() {
+        if (sCache == null) {
+            sCache = new SharedCache(SharedCache.getDefaultDirectory("class-index"));
+        }
+        return sCache;
+    }
+
+    /**
+     * Opens the index of this jar, it is created if it does not exist yet
+     */
+    @NonNull
+    public static JarClassIndex open(@NonNull File jar) throws IOException {
+        SharedCache cache = getCache();
+        File indexFile = cache.getEntry(cache.hash(jar) + ".idx");
+        if (indexFile == null) {
+            throw new IOException("Unable to create index directory " + cache.getDirectory());
+        }
+        if (indexFile.exists()) {
+            try {
+                return new JarClassIndex(jar, map(indexFile));
+            } catch (IOException e) {
+                // corrupted or written by an older version, create it again
+                FileUtils.deleteQuietly(indexFile);
+            }
+        }
+        write(readClassNames(jar), indexFile, cache);
+        return new JarClassIndex(jar, map(indexFile));
+    }
+
+    private static List<String> readClassNames(File file) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (JarFile jar = new JarFile(file)) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (!name.endsWith(".class")) {
+                    continue;
+                }
+
+                // We only want top level classes, if it contains $ then
+                // its an inner class, we ignore it
+                if (name.contains("$") || name.endsWith("package-info.class") ||
+                        name.endsWith("module-info.class")) {
+                    continue;
+                }
+                names.add(name.substring(0, name.length() - ".class".length())
+                        .replace('/', '.'));
+            }
+        }
+        return names;
+    }
+
+    private static void write(List<String> names, File indexFile, SharedCache cache)
+            throws IOException {
+        Collections.sort(names);
+        int count = names.size();
+
+        List<Integer> bySimpleName = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            bySimpleName.add(i);
+        }
+        List<String> lowerSimpleNames = new ArrayList<>(count);
+        for (String name : names) {
+            lowerSimpleNames.add(getSimpleName(name).toLowerCase(Locale.ROOT));
+        }
+        bySimpleName.sort((a, b) -> lowerSimpleNames.get(a).compareTo(lowerSimpleNames.get(b)));
+
+        // another project may be indexing the same jar at the same time
+        File temp = cache.createTempFile(indexFile.getName(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+
+            List<byte[]> encoded = new ArrayList<>(count);
+            int offset = HEADER_SIZE + count * 8;
+            for (String name : names) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                out.writeInt(offset);
+                offset += 2 + bytes.length;
+            }
+            for (int index : bySimpleName) {
+                out.writeInt(index);
+            }
+            for (byte[] bytes : encoded) {
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+        }
+        cache.commit(temp, indexFile);
+    }
+
+    private static ByteBuffer map(File indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC ||
+                    buffer.getInt(4) != VERSION) {
+                throw new IOException("Invalid index file " + indexFile);
+            }
+            int count = buffer.getInt(8);
+            if (count < 0 || HEADER_SIZE + (long) count * 8 > buffer.capacity()) {
+                throw new IOException("Invalid index file " + indexFile);
+            }
+            return buffer;
+        }
+    }
+
+    private final File mJar;
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+
+    private JarClassIndex(File jar, ByteBuffer buffer) {
+        mJar = jar;
+        mBuffer = buffer;
+        mCount = buffer.getInt(8);
+    }
+
+    public File getJar() {
+        return mJar;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @return the qualified name at this position, sorted by the qualified names
+     */
+    public String getName(int index) {
+        int offset = mBuffer.getInt(HEADER_SIZE + index * 4);
+        int length = mBuffer.getShort(offset) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        // the position of the shared buffer is never changed so it can be used by multiple threads
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(offset + 2);
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the qualified name at this position, sorted by the lower case simple names
+     */
+    private String getNameBySimpleName(int index) {
+        return getName(mBuffer.getInt(HEADER_SIZE + mCount * 4 + index * 4));
+    }
+
+    /**
+     * Adds the qualified names whose simple name starts with the given prefix, ignoring case
+     */
+    public void findBySimpleNamePrefix(@NonNull String prefix, @NonNull Collection<String> out) {
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            String simpleName = getSimpleName(getNameBySimpleName(mid)).toLowerCase(Locale.ROOT);
+            if (simpleName.compareTo(lowerPrefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < mCount; i++) {
+            String name = getNameBySimpleName(i);
+            if (!getSimpleName(name).toLowerCase(Locale.ROOT).startsWith(lowerPrefix)) {
+                break;
+            }
+            out.add(name);
+        }
+    }
+
+    /**
+     * Adds the qualified names whose simple name matches the query either by prefix or by
+     * camel humps, e.g. {@code ArrLi} matches {@code ArrayList}
+     */
+    public void findBySimpleName(@NonNull String query, @NonNull Collection<String> out) {
+        if (query.isEmpty()) {
+            return;
+        }
+        // camel hump matches always start with the same character as the query
+        List<String> candidates = new ArrayList<>();
+        findBySimpleNamePrefix(query.substring(0, 1), candidates);
+        for (String candidate : candidates) {
+            if (ClassNameIndex.matchesSimpleName(query, getSimpleName(candidate))) {
+                out.add(candidate);
+            }
+        }
+    }
+
+    /**
+     * Adds the qualified names that starts with the given prefix, e.g. {@code java.util.}
+     */
+    public void findByQualifiedPrefix(@NonNull String prefix, @NonNull Collection<String> out) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getName(mid).compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < mCount; i++) {
+            String name = getName(i);
+            if (!name.startsWith(prefix)) {
+                break;
+            }
+            out.add(name);
+        }
+    }
+
+    static String getSimpleName(String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+    }
+}
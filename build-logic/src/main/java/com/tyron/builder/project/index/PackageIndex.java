@@ -0,0 +1,89 @@
+package com.tyron.builder.project.index;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The java files of a module keyed by their fully qualified class name and grouped by their
+ * package. javac lists the source files of every package it resolves, looking them up here
+ * does not depend on the number of files in the module.
+ *
+ * The index is updated as files are added or removed so it never needs to be rebuilt.
+ */
+public class PackageIndex {
+
+    private final Map<String, File> mFiles = new ConcurrentHashMap<>();
+    private final Map<String, String> mPackages = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> mClassesByPackage = new ConcurrentHashMap<>();
+
+    /**
+     * @return an unmodifiable view of the files keyed by their fully qualified class name
+     */
+    @NonNull
+    public Map<String, File> getFiles() {
+        return Collections.unmodifiableMap(mFiles);
+    }
+
+    @Nullable
+    public File get(@NonNull String className) {
+        return mFiles.get(className);
+    }
+
+    public synchronized void put(@NonNull String packageName, @NonNull String className,
+                                 @NonNull File file) {
+        remove(className);
+        mFiles.put(className, file);
+        mPackages.put(className, packageName);
+        mClassesByPackage.computeIfAbsent(packageName, key -> ConcurrentHashMap.newKeySet())
+                .add(className);
+    }
+
+    public synchronized void remove(@NonNull String className) {
+        mFiles.remove(className);
+        String packageName = mPackages.remove(className);
+        if (packageName == null) {
+            return;
+        }
+        Set<String> classes = mClassesByPackage.get(packageName);
+        if (classes != null) {
+            classes.remove(className);
+            if (classes.isEmpty()) {
+                mClassesByPackage.remove(packageName);
+            }
+        }
+    }
+
+    /**
+     * @return the files whose package is exactly the given one, files of its sub packages
+     * are not included
+     */
+    @NonNull
+    public List<File> getFilesInPackage(@NonNull String packageName) {
+        Set<String> classes = mClassesByPackage.get(packageName);
+        if (classes == null) {
+            return Collections.emptyList();
+        }
+        List<File> files = new ArrayList<>(classes.size());
+        for (String className : classes) {
+            File file = mFiles.get(className);
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    public synchronized void clear() {
+        mFiles.clear();
+        mPackages.clear();
+        mClassesByPackage.clear();
+    }
+}
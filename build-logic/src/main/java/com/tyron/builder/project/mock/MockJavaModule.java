@@ -6,6 +6,8 @@ import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.impl.ModuleImpl;
+import com.tyron.builder.project.index.ClassNameIndex;
+import com.tyron.builder.project.index.PackageIndex;
 import com.tyron.common.util.StringSearch;
 
 import org.jetbrains.annotations.NotNull;
@@ -17,7 +19,6 @@ import org.jetbrains.kotlin.com.intellij.util.keyFMap.KeyFMap;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,7 +29,8 @@ import java.util.Map;
 public class MockJavaModule extends ModuleImpl implements JavaModule {
 
     private final KeyFMap mDataMap = KeyFMap.EMPTY_MAP;
-    private final Map<String, File> mJavaFiles = new HashMap<>();
+    private final PackageIndex mJavaFiles = new PackageIndex();
+    private final ClassNameIndex mClassIndex = new ClassNameIndex(() -> mJavaFiles.getFiles().keySet());
 
     private final FileManager mFileManager;
     private final File mRootDir;
@@ -43,7 +45,7 @@ public class MockJavaModule extends ModuleImpl implements JavaModule {
     @NonNull
     @Override
     public Map<String, File> getJavaFiles() {
-        return mJavaFiles;
+        return mJavaFiles.getFiles();
     }
 
     @Override
@@ -65,7 +67,13 @@ public class MockJavaModule extends ModuleImpl implements JavaModule {
         } else {
             className = packageName + "." + javaFile.getName().replace(".java", "");
         }
-        mJavaFiles.put(className, javaFile);
+        mJavaFiles.put(packageName == null ? "" : packageName, className, javaFile);
+    }
+
+    @NonNull
+    @Override
+    public List<File> getJavaFilesInPackage(@NonNull String packageName) {
+        return mJavaFiles.getFilesInPackage(packageName);
     }
 
     @Override
@@ -83,6 +91,12 @@ public class MockJavaModule extends ModuleImpl implements JavaModule {
         return Collections.emptyList();
     }
 
+    @NonNull
+    @Override
+    public ClassNameIndex getClassIndex() {
+        return mClassIndex;
+    }
+
     @NonNull
     @Override
     public File getResourcesDir() {
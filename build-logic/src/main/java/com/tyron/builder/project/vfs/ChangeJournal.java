@@ -0,0 +1,411 @@
+package com.tyron.builder.project.vfs;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.project.cache.PersistentCache;
+import com.tyron.common.util.Cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The single record of the changes made to the files of the opened project. The files are
+ * checked by a {@link FileWatcher} as soon as they change, consumers either subscribe to the
+ * changes or ask whether a file has changed since a point in the journal, so they never need
+ * to look at the file system themselves.
+ *
+ * A change is only recorded if the contents of a file are different, a file that is saved
+ * without modifications or only has its modification time updated is not reported.
+ */
+public class ChangeJournal {
+
+    private static final String TAG = ChangeJournal.class.getSimpleName();
+
+    /**
+     * Number of changes kept, a consumer that has not looked at the journal for longer than
+     * this has to assume that everything has changed
+     */
+    private static final int MAX_CHANGES = 4096;
+
+    public interface Listener {
+        /**
+         * Called on the thread of the watcher after the changes have been recorded
+         */
+        void onFilesChanged(@NonNull List<FileChange> changes);
+    }
+
+    private static class State {
+        final long length;
+        final long lastModified;
+        volatile String hash;
+
+        State(long length, long lastModified, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * A directory watched by a {@link FileWatcher}
+     */
+    private static class Root {
+        final Collection<File> excluded;
+        /**
+         * The last sync asked for by a consumer and the last one the watcher has caught up
+         * to, guarded by the root itself
+         */
+        long requested;
+        long synced;
+        boolean closed;
+
+        Root(Collection<File> excluded) {
+            this.excluded = excluded;
+        }
+    }
+
+    private static ChangeJournal sInstance;
+
+    public static synchronized ChangeJournal getInstance() {
+        if (sInstance == null) {
+            sInstance = new ChangeJournal();
+            ChangeJournal journal = sInstance;
+            // the files the journal doesn't see, such as generated sources, are checked by
+            // the caches themselves
+            Cache.setTracker(file -> journal.isTracked(file.toFile()));
+        }
+        return sInstance;
+    }
+
+    private final Map<File, State> mStates = new ConcurrentHashMap<>();
+    private final Map<File, Root> mRoots = new ConcurrentHashMap<>();
+    private final Deque<FileChange> mChanges = new ArrayDeque<>();
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private long mSequence;
+    private long mOldestSequence;
+
+    public ChangeJournal() {
+        // the caches of the common module cannot depend on the journal, they follow it
+        // from here instead
+        addListener(changes -> {
+            for (FileChange change : changes) {
+                Cache.onFileChanged(change.getFile().toPath());
+            }
+        });
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @return whether the changes of this file are recorded by the journal, otherwise the
+     * caller has to check the file itself
+     */
+    public boolean isTracked(@NonNull File file) {
+        return getRoot(file) != null;
+    }
+
+    @Nullable
+    private Root getRoot(File file) {
+        for (Map.Entry<File, Root> root : mRoots.entrySet()) {
+            if (isAncestor(root.getKey(), file)) {
+                for (File excluded : root.getValue().excluded) {
+                    if (isAncestor(excluded, file)) {
+                        return null;
+                    }
+                }
+                return root.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits until the watcher of the file has recorded the changes made before this call.
+     * Changes are only recorded a moment after they are made, a build that starts right after
+     * a file has been modified by another app would not see it otherwise.
+     *
+     * @return whether the journal has caught up, false if the file is not tracked or the
+     * watcher did not catch up in time. The caller has to check the files itself then.
+     */
+    public boolean awaitChanges(@NonNull File file, long timeoutMs) {
+        Root root = getRoot(file);
+        if (root == null) {
+            return false;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (root) {
+            long request = ++root.requested;
+            // wakes up a watcher that is polling
+            root.notifyAll();
+            try {
+                while (root.synced < request && !root.closed) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    root.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return !root.closed;
+        }
+    }
+
+    /**
+     * @return the sequence number of the last recorded change
+     */
+    public synchronized long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * @return the changes recorded after the given sequence number, or null if some of them
+     * are no longer kept and the caller has to assume that every file has changed
+     */
+    @Nullable
+    public synchronized List<FileChange> getChangesSince(long sequence) {
+        if (sequence < mOldestSequence) {
+            return null;
+        }
+        List<FileChange> changes = new ArrayList<>();
+        Iterator<FileChange> iterator = mChanges.descendingIterator();
+        while (iterator.hasNext()) {
+            FileChange change = iterator.next();
+            if (change.getSequence() <= sequence) {
+                break;
+            }
+            changes.add(change);
+        }
+        Collections.reverse(changes);
+        return changes;
+    }
+
+    /**
+     * @return whether the file has changed after the given sequence number. Files that are
+     * not tracked are always considered as changed.
+     */
+    public synchronized boolean isModifiedSince(@NonNull File file, long sequence) {
+        if (!isTracked(file) || sequence < mOldestSequence) {
+            return true;
+        }
+        Iterator<FileChange> iterator = mChanges.descendingIterator();
+        while (iterator.hasNext()) {
+            FileChange change = iterator.next();
+            if (change.getSequence() <= sequence) {
+                break;
+            }
+            if (change.getFile().equals(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the hash of the contents of the file as last seen by the journal, or null if the
+     * file is not tracked or does not exist
+     */
+    @Nullable
+    public String getHash(@NonNull File file) {
+        State state = mStates.get(file);
+        if (state == null) {
+            return null;
+        }
+        if (state.hash == null) {
+            // files found by the initial scan are only hashed when asked for
+            state.hash = hash(file);
+        }
+        return state.hash;
+    }
+
+    /**
+     * @param excluded the directories under the root that are not watched
+     */
+    void addRoot(@NonNull File root, @NonNull Collection<File> excluded) {
+        mRoots.put(root, new Root(excluded));
+    }
+
+    /**
+     * Stops tracking the files under the root while keeping their states, used when some
+     * of its directories cannot be watched
+     */
+    void untrackRoot(@NonNull File root) {
+        Root removed = mRoots.remove(root);
+        if (removed != null) {
+            synchronized (removed) {
+                removed.closed = true;
+                removed.notifyAll();
+            }
+        }
+    }
+
+    void removeRoot(@NonNull File root) {
+        untrackRoot(root);
+        mStates.keySet().removeIf(file -> isAncestor(root, file));
+    }
+
+    /**
+     * @return the last sync asked for on the root, the watcher reports it through
+     * {@link #synced(File, long)} once it has recorded the changes made until now
+     */
+    long getSyncRequest(@NonNull File root) {
+        Root tracked = mRoots.get(root);
+        if (tracked == null) {
+            return 0;
+        }
+        synchronized (tracked) {
+            return tracked.requested;
+        }
+    }
+
+    void synced(@NonNull File root, long request) {
+        Root tracked = mRoots.get(root);
+        if (tracked == null) {
+            return;
+        }
+        synchronized (tracked) {
+            if (request > tracked.synced) {
+                tracked.synced = request;
+                tracked.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until a sync is asked for on the root or the timeout elapses
+     */
+    void awaitSyncRequest(@NonNull File root, long timeoutMs) throws InterruptedException {
+        Root tracked = mRoots.get(root);
+        if (tracked == null) {
+            Thread.sleep(timeoutMs);
+            return;
+        }
+        synchronized (tracked) {
+            if (tracked.requested <= tracked.synced && !tracked.closed) {
+                tracked.wait(timeoutMs);
+            }
+        }
+    }
+
+    /**
+     * Remembers the current state of a file without reporting it as a change, used when the
+     * files are scanned for the first time
+     */
+    void scanned(@NonNull File file) {
+        mStates.put(file, new State(file.length(), file.lastModified(), null));
+    }
+
+    /**
+     * @return the files under the directory that are known to the journal
+     */
+    List<File> getFiles(@NonNull File directory) {
+        List<File> files = new ArrayList<>();
+        for (File file : mStates.keySet()) {
+            if (isAncestor(directory, file)) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Checks the given files and records the ones whose contents have changed. A path that
+     * no longer exists may have been a directory, all the files under it are deleted as well.
+     */
+    public void update(@NonNull Collection<File> files) {
+        List<FileChange> changes = new ArrayList<>();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                continue;
+            }
+            if (!file.exists()) {
+                if (mStates.containsKey(file)) {
+                    deleted(file, changes);
+                } else {
+                    for (File child : getFiles(file)) {
+                        deleted(child, changes);
+                    }
+                }
+                continue;
+            }
+
+            long length = file.length();
+            long lastModified = file.lastModified();
+            State previous = mStates.get(file);
+            if (previous != null && previous.length == length &&
+                    previous.lastModified == lastModified) {
+                continue;
+            }
+            String hash = hash(file);
+            mStates.put(file, new State(length, lastModified, hash));
+            if (previous != null && hash != null && hash.equals(previous.hash)) {
+                // only touched
+                continue;
+            }
+            changes.add(record(file, previous == null ? FileChange.Kind.CREATED
+                    : FileChange.Kind.MODIFIED, hash));
+        }
+
+        if (!changes.isEmpty()) {
+            for (Listener listener : mListeners) {
+                try {
+                    listener.onFilesChanged(Collections.unmodifiableList(changes));
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Listener failed to handle " + changes.size() + " changes", e);
+                }
+            }
+        }
+    }
+
+    private void deleted(File file, List<FileChange> changes) {
+        if (mStates.remove(file) != null) {
+            changes.add(record(file, FileChange.Kind.DELETED, null));
+        }
+    }
+
+    private synchronized FileChange record(File file, FileChange.Kind kind, String hash) {
+        FileChange change = new FileChange(file, kind, hash, ++mSequence);
+        mChanges.addLast(change);
+        while (mChanges.size() > MAX_CHANGES) {
+            mOldestSequence = mChanges.removeFirst().getSequence();
+        }
+        return change;
+    }
+
+    @Nullable
+    private static String hash(File file) {
+        try {
+            return PersistentCache.hash(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean isAncestor(File ancestor, File file) {
+        String parent = ancestor.getAbsolutePath();
+        String path = file.getAbsolutePath();
+        return path.startsWith(parent) && (path.length() == parent.length() ||
+                path.charAt(parent.length()) == File.separatorChar);
+    }
+}
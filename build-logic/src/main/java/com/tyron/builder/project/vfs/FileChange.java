@@ -0,0 +1,62 @@
+package com.tyron.builder.project.vfs;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+
+/**
+ * A change to a single file recorded by the {@link ChangeJournal}
+ */
+public class FileChange {
+
+    public enum Kind {
+        CREATED,
+        MODIFIED,
+        DELETED
+    }
+
+    private final File mFile;
+    private final Kind mKind;
+    private final String mHash;
+    private final long mSequence;
+
+    public FileChange(@NonNull File file, @NonNull Kind kind, @Nullable String hash,
+                      long sequence) {
+        mFile = file;
+        mKind = kind;
+        mHash = hash;
+        mSequence = sequence;
+    }
+
+    @NonNull
+    public File getFile() {
+        return mFile;
+    }
+
+    @NonNull
+    public Kind getKind() {
+        return mKind;
+    }
+
+    /**
+     * @return the hash of the new contents of the file, null if it has been deleted
+     */
+    @Nullable
+    public String getHash() {
+        return mHash;
+    }
+
+    /**
+     * @return the position of this change in the journal, later changes have larger numbers
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "FileChange[" + mKind + " " + mFile + " #" + mSequence + "]";
+    }
+}
@@ -0,0 +1,264 @@
+package com.tyron.builder.project.vfs;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the files of a directory and records their changes on a {@link ChangeJournal}.
+ *
+ * A {@link WatchService} is used when the platform supports it, otherwise the directory is
+ * scanned periodically. Either way the files are only looked at from the thread of the
+ * watcher.
+ *
+ * The journal only tracks the directory once it has been scanned and every directory under
+ * it is watched. If a directory cannot be watched the files are no longer tracked and the
+ * consumers check them themselves.
+ */
+public class FileWatcher implements Closeable {
+
+    private static final String TAG = FileWatcher.class.getSimpleName();
+
+    /**
+     * Time between two scans when the directory is polled
+     */
+    private static final long POLL_INTERVAL_MS = 2000;
+
+    /**
+     * Time to wait for more events before recording them, saving a file usually produces
+     * a few events in a row
+     */
+    private static final long BATCH_DELAY_MS = 50;
+
+    /**
+     * Time the watch service is waited for before checking whether a consumer has asked the
+     * journal to catch up
+     */
+    private static final long SYNC_INTERVAL_MS = 100;
+
+    private final File mRoot;
+    private final Set<File> mExcluded;
+    private final ChangeJournal mJournal;
+    private final Map<WatchKey, Path> mKeys = new HashMap<>();
+
+    private WatchService mWatchService;
+    private Thread mThread;
+    private volatile boolean mClosed;
+    /**
+     * Whether a directory could not be registered, only used from the thread of the watcher
+     */
+    private boolean mUnwatched;
+
+    /**
+     * @param excluded directories that are not watched, such as the build directory whose
+     *                 files are written by the build itself
+     */
+    public FileWatcher(@NonNull File root, @NonNull Collection<File> excluded,
+                       @NonNull ChangeJournal journal) {
+        mRoot = root;
+        mExcluded = new LinkedHashSet<>(excluded);
+        mJournal = journal;
+    }
+
+    public synchronized void start() {
+        if (mThread != null) {
+            throw new IllegalStateException("Watcher is already started");
+        }
+        Runnable loop;
+        try {
+            mWatchService = FileSystems.getDefault().newWatchService();
+            loop = this::watch;
+        } catch (IOException | UnsupportedOperationException e) {
+            Log.w(TAG, "Watch service is not available, polling " + mRoot, e);
+            loop = this::poll;
+        }
+        mThread = new Thread(loop, "FileWatcher-" + mRoot.getName());
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * @return whether the files are watched by the platform instead of being polled
+     */
+    public boolean isNative() {
+        return mWatchService != null;
+    }
+
+    private void watch() {
+        for (File file : scan(mRoot, true)) {
+            mJournal.scanned(file);
+        }
+        if (mUnwatched) {
+            Log.w(TAG, "Some directories of " + mRoot + " cannot be watched, not tracking it");
+        } else {
+            mJournal.addRoot(mRoot, Collections.unmodifiableSet(mExcluded));
+        }
+        try {
+            while (!mClosed) {
+                long request = mJournal.getSyncRequest(mRoot);
+                WatchKey key = mWatchService.poll(SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    // the events of the changes made before the request have been handled
+                    mJournal.synced(mRoot, request);
+                    continue;
+                }
+                Set<File> changed = new LinkedHashSet<>();
+                boolean overflow = false;
+                while (key != null) {
+                    overflow |= handle(key, changed);
+                    key = mWatchService.poll(BATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+                }
+                if (overflow) {
+                    // some events were lost, compare everything with the journal
+                    changed.addAll(scan(mRoot, false));
+                    changed.addAll(mJournal.getFiles(mRoot));
+                }
+                mJournal.update(changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * @return whether events have been lost
+     */
+    private boolean handle(WatchKey key, Set<File> changed) {
+        Path directory = mKeys.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+            File file = directory.resolve((Path) event.context()).toFile();
+            if (isExcluded(file)) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && file.isDirectory()) {
+                // files may have been added before the directory is registered
+                changed.addAll(scan(file, true));
+            } else {
+                changed.add(file);
+            }
+        }
+        if (!key.reset()) {
+            mKeys.remove(key);
+        }
+        return overflow;
+    }
+
+    private void poll() {
+        for (File file : scan(mRoot, false)) {
+            mJournal.scanned(file);
+        }
+        mJournal.addRoot(mRoot, Collections.unmodifiableSet(mExcluded));
+        try {
+            while (!mClosed) {
+                // a consumer asking the journal to catch up does not wait for the next scan
+                mJournal.awaitSyncRequest(mRoot, POLL_INTERVAL_MS);
+                long request = mJournal.getSyncRequest(mRoot);
+                Set<File> files = new LinkedHashSet<>(scan(mRoot, false));
+                // the ones that are gone are deleted
+                files.addAll(mJournal.getFiles(mRoot));
+                mJournal.update(files);
+                mJournal.synced(mRoot, request);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    /**
+     * @param register whether the directories found are registered to the watch service
+     * @return the files under the directory
+     */
+    private List<File> scan(File directory, boolean register) {
+        List<File> files = new ArrayList<>();
+        List<File> directories = new ArrayList<>();
+        directories.add(directory);
+        while (!directories.isEmpty()) {
+            File current = directories.remove(directories.size() - 1);
+            if (register) {
+                register(current);
+            }
+            File[] children = current.listFiles();
+            if (children == null) {
+                continue;
+            }
+            for (File child : children) {
+                if (isExcluded(child)) {
+                    continue;
+                }
+                if (child.isDirectory()) {
+                    directories.add(child);
+                } else {
+                    files.add(child);
+                }
+            }
+        }
+        return files;
+    }
+
+    private void register(File directory) {
+        if (mWatchService == null) {
+            return;
+        }
+        try {
+            Path path = directory.toPath();
+            WatchKey key = path.register(mWatchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            mKeys.put(key, path);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to watch " + directory, e);
+            // changes made under the directory would be missed
+            mUnwatched = true;
+            mJournal.untrackRoot(mRoot);
+        }
+    }
+
+    private boolean isExcluded(File file) {
+        return mExcluded.contains(file);
+    }
+
+    @Override
+    public synchronized void close() {
+        mClosed = true;
+        if (mThread != null) {
+            mThread.interrupt();
+        }
+        if (mWatchService != null) {
+            try {
+                mWatchService.close();
+            } catch (IOException e) {
+                // ignored
+            }
+        }
+        mJournal.removeRoot(mRoot);
+    }
+}
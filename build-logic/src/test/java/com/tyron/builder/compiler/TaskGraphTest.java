@@ -0,0 +1,112 @@
+package com.tyron.builder.compiler;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.api.Module;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+public class TaskGraphTest {
+
+    @Test
+    public void testIndependentTasks() {
+        TaskGraph graph = new TaskGraph(Arrays.asList(
+                new FakeTask(files("src/manifest"), files("bin/manifest")),
+                new FakeTask(files("google-services.json"), files("res/values")),
+                new FakeTask(files("res", "bin/manifest"), files("bin/res"))));
+
+        assertThat(graph.getDependencies(0)).isEmpty();
+        assertThat(graph.getDependencies(1)).isEmpty();
+        assertThat(graph.getDependencies(2)).containsExactly(0, 1);
+        assertThat(graph.getDependents(0)).containsExactly(2);
+    }
+
+    @Test
+    public void testUndeclaredTaskIsBarrier() {
+        TaskGraph graph = new TaskGraph(Arrays.asList(
+                new FakeTask(null, null),
+                new FakeTask(files("a"), files("b")),
+                new FakeTask(files("c"), files("d")),
+                new FakeTask(null, null),
+                new FakeTask(files("e"), files("f"))));
+
+        assertThat(graph.getDependencies(1)).containsExactly(0);
+        assertThat(graph.getDependencies(2)).containsExactly(0);
+        assertThat(graph.getDependencies(3)).containsExactly(0, 1, 2);
+        assertThat(graph.getDependencies(4)).containsExactly(0, 3);
+    }
+
+    @Test
+    public void testWriteAfterRead() {
+        TaskGraph graph = new TaskGraph(Arrays.asList(
+                new FakeTask(files("gen"), files("bin/classes")),
+                new FakeTask(files("res"), files("gen/R.java"))));
+
+        assertThat(graph.getDependencies(1)).containsExactly(0);
+    }
+
+    @Test
+    public void testTaskRewritingAnOutput() {
+        // logger injection rewrites the merged manifest that aapt2 reads
+        TaskGraph graph = new TaskGraph(Arrays.asList(
+                new FakeTask(files("src/manifest"), files("bin/manifest")),
+                new FakeTask(files("src/java", "bin/manifest"),
+                        files("src/java", "bin/manifest")),
+                new FakeTask(files("res", "bin/manifest"), files("bin/res"))));
+
+        assertThat(graph.getDependencies(1)).containsExactly(0);
+        assertThat(graph.getDependencies(2)).containsExactly(0, 1);
+    }
+
+    private static Collection<File> files(String... paths) {
+        File[] files = new File[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            files[i] = new File("/project/build", paths[i]);
+        }
+        return Arrays.asList(files);
+    }
+
+    private static class FakeTask extends Task<Module> {
+
+        private final Collection<File> mInputs;
+        private final Collection<File> mOutputs;
+
+        FakeTask(Collection<File> inputs, Collection<File> outputs) {
+            super(null, ILogger.EMPTY);
+            mInputs = inputs;
+            mOutputs = outputs;
+        }
+
+        @Override
+        public Collection<File> getInputs() {
+            return mInputs;
+        }
+
+        @Override
+        public Collection<File> getOutputs() {
+            return mOutputs;
+        }
+
+        @Override
+        public String getName() {
+            return "FakeTask";
+        }
+
+        @Override
+        public void prepare(BuildType type) throws IOException {
+
+        }
+
+        @Override
+        public void run() throws IOException, CompilationFailedException {
+
+        }
+    }
+}
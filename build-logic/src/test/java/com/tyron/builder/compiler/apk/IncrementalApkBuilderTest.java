@@ -0,0 +1,159 @@
+package com.tyron.builder.compiler.apk;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.common.util.RawZipFile;
+import com.tyron.common.util.RawZipWriter;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class IncrementalApkBuilderTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testIncrementalBuild() throws Exception {
+        File res = createZip("generated.apk.res", true, "AndroidManifest.xml",
+                "resources.arsc", "res/layout/main.xml");
+        File jar = createZip("classes.jar", false, "com/test/Main.class",
+                "META-INF/MANIFEST.MF", "META-INF/services/com.test.Service", "okhttp.properties");
+        File dex = mFolder.newFile("classes.dex");
+        FileUtils.writeStringToFile(dex, "dex 1", StandardCharsets.UTF_8);
+        File jni = mFolder.newFolder("jni", "arm64-v8a");
+        FileUtils.writeStringToFile(new File(jni, "libtest.so"), "native",
+                StandardCharsets.UTF_8);
+
+        File apk = new File(mFolder.getRoot(), "generated.apk");
+        IncrementalApkBuilder builder = build(apk, res, jar, dex);
+        assertThat(builder.getCompressedCount()).isEqualTo(2);
+        assertThat(readEntries(apk)).containsExactly("AndroidManifest.xml", "resources.arsc",
+                "res/layout/main.xml", "classes.dex", "META-INF/services/com.test.Service",
+                "okhttp.properties", "lib/arm64-v8a/libtest.so").inOrder();
+        assertThat(read(apk, "classes.dex")).isEqualTo("dex 1");
+        assertAligned(apk, "resources.arsc");
+
+        // nothing changed
+        builder = build(apk, res, jar, dex);
+        assertThat(builder.getCompressedCount()).isEqualTo(0);
+        assertThat(builder.getCopiedCount()).isEqualTo(7);
+
+        // only touched
+        assertThat(dex.setLastModified(dex.lastModified() + 10_000)).isTrue();
+        builder = build(apk, res, jar, dex);
+        assertThat(builder.getCompressedCount()).isEqualTo(0);
+
+        FileUtils.writeStringToFile(dex, "dex 2", StandardCharsets.UTF_8);
+        builder = build(apk, res, jar, dex);
+        assertThat(builder.getCompressedCount()).isEqualTo(1);
+        assertThat(read(apk, "classes.dex")).isEqualTo("dex 2");
+        assertThat(read(apk, "lib/arm64-v8a/libtest.so")).isEqualTo("native");
+        assertThat(read(apk, "res/layout/main.xml")).isEqualTo("res/layout/main.xml");
+    }
+
+    @Test
+    public void testDuplicateFiles() throws Exception {
+        File first = createZip("first.jar", false, "config.properties");
+        File second = createZip("second.jar", false, "config.properties");
+
+        IncrementalApkBuilder builder =
+                new IncrementalApkBuilder(new File(mFolder.getRoot(), "generated.apk"));
+        builder.addResourcesFromJar(first);
+        assertThrows(CompilationFailedException.class, () -> builder.addResourcesFromJar(second));
+    }
+
+    @Test
+    public void testJavaResources() {
+        assertThat(IncrementalApkBuilder.isJavaResource("okhttp3/publicsuffixes.gz")).isTrue();
+        assertThat(IncrementalApkBuilder.isJavaResource("META-INF/app.kotlin_module")).isTrue();
+        assertThat(IncrementalApkBuilder.isJavaResource("META-INF/MANIFEST.MF")).isFalse();
+        assertThat(IncrementalApkBuilder.isJavaResource("META-INF/CERT.RSA")).isFalse();
+        assertThat(IncrementalApkBuilder.isJavaResource("com/test/Main.java")).isFalse();
+        assertThat(IncrementalApkBuilder.isJavaResource("com/.svn/entries")).isFalse();
+    }
+
+    private IncrementalApkBuilder build(File apk, File res, File jar, File dex)
+            throws Exception {
+        IncrementalApkBuilder builder = new IncrementalApkBuilder(apk);
+        builder.addZip(res);
+        builder.addFile(dex, "classes.dex");
+        builder.addResourcesFromJar(jar);
+        builder.addNativeLibraries(new File(mFolder.getRoot(), "jni"));
+        builder.build();
+        return builder;
+    }
+
+    /**
+     * Creates a zip whose entries contain their own names
+     */
+    private File createZip(String name, boolean stored, String... entries) throws IOException {
+        File file = new File(mFolder.getRoot(), name);
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            for (String entry : entries) {
+                byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+                ZipEntry zipEntry = new ZipEntry(entry);
+                if (stored) {
+                    CRC32 crc = new CRC32();
+                    crc.update(bytes);
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(bytes.length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                zip.putNextEntry(zipEntry);
+                zip.write(bytes);
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static List<String> readEntries(File apk) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(apk)) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+
+    private static String read(File apk, String name) throws IOException {
+        try (ZipFile zip = new ZipFile(apk);
+             InputStream input = zip.getInputStream(zip.getEntry(name))) {
+            return IOUtils.toString(input, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void assertAligned(File apk, String name) throws IOException {
+        try (RawZipFile zip = new RawZipFile(apk)) {
+            RawZipFile.Entry entry = zip.getEntry(name);
+            assertThat(entry.method).isEqualTo(ZipEntry.STORED);
+            byte[] data = FileUtils.readFileToByteArray(apk);
+            int nameLength = (data[(int) entry.localHeaderOffset + 26] & 0xff) |
+                    (data[(int) entry.localHeaderOffset + 27] & 0xff) << 8;
+            int extraLength = (data[(int) entry.localHeaderOffset + 28] & 0xff) |
+                    (data[(int) entry.localHeaderOffset + 29] & 0xff) << 8;
+            long dataOffset = entry.localHeaderOffset + 30 + nameLength + extraLength;
+            assertThat(dataOffset % RawZipWriter.ALIGNMENT).isEqualTo(0);
+        }
+    }
+}
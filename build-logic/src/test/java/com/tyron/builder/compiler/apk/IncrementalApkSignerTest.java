@@ -0,0 +1,126 @@
+package com.tyron.builder.compiler.apk;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.apksig.ApkVerifier;
+import com.tyron.builder.compiler.ApkSigner;
+import com.tyron.common.TestUtil;
+import com.tyron.common.util.RawZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class IncrementalApkSignerTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private IncrementalApkSigner mSigner;
+
+    @Before
+    public void setup() throws Exception {
+        File resourcesDir = TestUtil.getResourcesDirectory();
+        ApkSigner.setTestCertFile(new File(resourcesDir, "apksigner/testkey.x509.pem"));
+        ApkSigner.setTestKeyFile(new File(resourcesDir, "apksigner/testkey.pk8"));
+        mSigner = new IncrementalApkSigner(ApkSigner.getTestSignerConfigs(), 21);
+    }
+
+    @Test
+    public void testIncrementalSigning() throws Exception {
+        File res = mFolder.newFile("generated.apk.res");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(res))) {
+            zip.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+            zip.write(createBinaryManifest());
+            zip.putNextEntry(new ZipEntry("res/layout/main.xml"));
+            zip.write("layout".getBytes(StandardCharsets.UTF_8));
+        }
+        File dex = mFolder.newFile("classes.dex");
+        FileUtils.writeStringToFile(dex, "dex 1", StandardCharsets.UTF_8);
+
+        File unsigned = new File(mFolder.getRoot(), "generated.apk");
+        File signed = new File(mFolder.getRoot(), "signed.apk");
+        pack(unsigned, res, dex);
+        mSigner.sign(unsigned, signed);
+        assertThat(mSigner.getDigestedCount()).isEqualTo(3);
+        assertVerified(signed);
+
+        mSigner.sign(unsigned, signed);
+        assertThat(mSigner.getDigestedCount()).isEqualTo(0);
+        assertVerified(signed);
+
+        FileUtils.writeStringToFile(dex, "dex 2", StandardCharsets.UTF_8);
+        pack(unsigned, res, dex);
+        mSigner.sign(unsigned, signed);
+        assertThat(mSigner.getDigestedCount()).isEqualTo(1);
+        assertVerified(signed);
+
+        // an entry that was removed is no longer listed in the manifest
+        IncrementalApkBuilder builder = new IncrementalApkBuilder(unsigned);
+        builder.addFile(dex, "classes.dex");
+        builder.build();
+        mSigner.sign(unsigned, signed);
+        assertThat(mSigner.getDigestedCount()).isEqualTo(0);
+        try (RawZipFile zip = new RawZipFile(signed)) {
+            assertThat(zip.getEntry("res/layout/main.xml")).isNull();
+            assertThat(zip.getEntry("META-INF/MANIFEST.MF")).isNotNull();
+        }
+    }
+
+    private static void pack(File apk, File res, File dex) throws Exception {
+        IncrementalApkBuilder builder = new IncrementalApkBuilder(apk);
+        builder.addZip(res);
+        builder.addFile(dex, "classes.dex");
+        builder.build();
+    }
+
+    private static void assertVerified(File apk) throws Exception {
+        ApkVerifier.Result result = new ApkVerifier.Builder(apk)
+                .setMinCheckedPlatformVersion(21)
+                .setMaxCheckedPlatformVersion(30)
+                .build()
+                .verify();
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(result.isVerifiedUsingV1Scheme()).isTrue();
+        assertThat(result.isVerifiedUsingV2Scheme()).isTrue();
+    }
+
+    /**
+     * The verifier reads the manifest of the APK, this is an empty {@code <manifest/>} element
+     * in the binary xml format
+     */
+    private static byte[] createBinaryManifest() {
+        byte[] name = "manifest".getBytes(StandardCharsets.UTF_8);
+        int stringsSize = 2 + name.length + 1;
+        stringsSize += (4 - stringsSize % 4) % 4;
+        int poolSize = 28 + 4 + stringsSize;
+        ByteBuffer buffer = ByteBuffer.allocate(8 + poolSize + 36 + 24)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        // xml chunk
+        buffer.putShort((short) 0x0003).putShort((short) 8).putInt(buffer.capacity());
+        // utf-8 string pool with a single string
+        buffer.putShort((short) 0x0001).putShort((short) 28).putInt(poolSize)
+                .putInt(1).putInt(0).putInt(0x100).putInt(28 + 4).putInt(0)
+                .putInt(0)
+                .put((byte) name.length).put((byte) name.length).put(name).put((byte) 0);
+        buffer.position(8 + poolSize);
+        // start and end of the element
+        buffer.putShort((short) 0x0102).putShort((short) 16).putInt(36).putInt(1).putInt(-1)
+                .putInt(-1).putInt(0).putShort((short) 20).putShort((short) 20)
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0)
+                .putShort((short) 0);
+        buffer.putShort((short) 0x0103).putShort((short) 16).putInt(24).putInt(1).putInt(-1)
+                .putInt(-1).putInt(0);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,106 @@
+package com.tyron.builder.compiler.dex;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.r8.DiagnosticsHandler;
+import com.tyron.builder.log.ILogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class LibraryDexCacheTest {
+
+    private static final DiagnosticsHandler HANDLER = new DiagnosticsHandler() {
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private LibraryDexCache mCache;
+    private final List<String> mDexed = new ArrayList<>();
+
+    /**
+     * Copies the contents of the jar instead of running D8
+     */
+    private final LibraryDexCache.Dexer mDexer = (lib, classpath, libraryFiles, minSdk,
+                                                  diagnosticsHandler, output) -> {
+        synchronized (mDexed) {
+            mDexed.add(lib.getParentFile().getName());
+        }
+        try {
+            FileUtils.writeStringToFile(new File(output, "classes.dex"),
+                    FileUtils.readFileToString(lib, StandardCharsets.UTF_8) + minSdk,
+                    StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    };
+
+    @Before
+    public void setup() throws Exception {
+        mCache = new LibraryDexCache(mFolder.newFolder("cache"), mDexer);
+    }
+
+    @Test
+    public void testLibrariesAreSharedBetweenProjects() throws Exception {
+        File first = createLibrary("first", "appcompat", "classes");
+        File material = createLibrary("first", "material", "material classes");
+        dex(Arrays.asList(first, material), 21);
+        assertThat(mDexed).containsExactly("appcompat", "material");
+        assertThat(readDex(first)).isEqualTo("classes21");
+
+        // the same library in another project is linked from the cache
+        mDexed.clear();
+        File second = createLibrary("second", "appcompat", "classes");
+        dex(Collections.singletonList(second), 21);
+        assertThat(mDexed).isEmpty();
+        assertThat(readDex(second)).isEqualTo("classes21");
+    }
+
+    @Test
+    public void testChangedLibraryIsDexedAgain() throws Exception {
+        File first = createLibrary("first", "appcompat", "classes");
+        dex(Collections.singletonList(first), 21);
+
+        mDexed.clear();
+        File updated = createLibrary("second", "appcompat", "updated classes");
+        dex(Collections.singletonList(updated), 21);
+        assertThat(mDexed).containsExactly("appcompat");
+        assertThat(readDex(updated)).isEqualTo("updated classes21");
+
+        // dex files depend on the min sdk
+        mDexed.clear();
+        File other = createLibrary("third", "appcompat", "classes");
+        dex(Collections.singletonList(other), 26);
+        assertThat(mDexed).containsExactly("appcompat");
+        assertThat(readDex(other)).isEqualTo("classes26");
+    }
+
+    private void dex(List<File> libraries, int minSdk) throws Exception {
+        mCache.ensureDexedLibraries(libraries, Collections.emptyList(), minSdk, HANDLER,
+                ILogger.EMPTY);
+    }
+
+    private File createLibrary(String project, String name, String contents)
+            throws Exception {
+        File jar = new File(mFolder.getRoot(), project + "/build/libs/" + name + "/classes.jar");
+        FileUtils.writeStringToFile(jar, contents, StandardCharsets.UTF_8);
+        return jar;
+    }
+
+    private static String readDex(File jar) throws Exception {
+        return FileUtils.readFileToString(new File(jar.getParentFile(), "classes.dex"),
+                StandardCharsets.UTF_8);
+    }
+}
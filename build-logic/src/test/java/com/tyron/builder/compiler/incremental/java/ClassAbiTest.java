@@ -0,0 +1,69 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+public class ClassAbiTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testMethodBodyDoesNotChangeAbi() throws Exception {
+        ClassAbi first = compile("public class Test { public int get() { return 1; } }");
+        ClassAbi second = compile("public class Test { public int get() { return 2; } " +
+                "private void unused() {} }");
+
+        assertThat(first.getAbi()).isEqualTo(second.getAbi());
+    }
+
+    @Test
+    public void testPublicMethodChangesAbi() throws Exception {
+        ClassAbi first = compile("public class Test { public int get() { return 1; } }");
+        ClassAbi second = compile("public class Test { public long get() { return 1; } }");
+
+        assertThat(first.getAbi()).isNotEqualTo(second.getAbi());
+    }
+
+    @Test
+    public void testConstants() throws Exception {
+        ClassAbi first = compile("public class Test { public static final int A = 1; }");
+        ClassAbi second = compile("public class Test { public static final int A = 2; }");
+
+        assertThat(first.getAbi()).isEqualTo(second.getAbi());
+        assertThat(first.getConstants()).isNotEqualTo(second.getConstants());
+    }
+
+    @Test
+    public void testReferences() throws Exception {
+        ClassAbi abi = compile("public class Test { void run() { " +
+                "new java.util.ArrayList<String>().add(\"\"); } }");
+
+        assertThat(abi.getName()).isEqualTo("Test");
+        assertThat(abi.getReferences()).contains("java/util/ArrayList");
+        assertThat(abi.getReferences()).doesNotContain("Test");
+    }
+
+    private ClassAbi compile(String contents) throws Exception {
+        File directory = mFolder.newFolder();
+        File source = new File(directory, "Test.java");
+        FileUtils.writeStringToFile(source, contents, StandardCharsets.UTF_8);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int result = compiler.run(null, null, null, source.getAbsolutePath());
+        assertThat(result).isEqualTo(0);
+
+        File classFile = new File(directory, "Test.class");
+        return ClassAbi.read(FileUtils.readFileToByteArray(classFile));
+    }
+}
@@ -0,0 +1,72 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+public class JavaDependencyIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testSurvivesReload() throws Exception {
+        File directory = mFolder.newFolder("src");
+        File library = write(directory, "Library", "public class Library { }");
+        File main = write(directory, "Main", "public class Main { Library library; }");
+        compile(library, main);
+
+        File indexFile = new File(mFolder.getRoot(), "cache/javaDependencies.json");
+        JavaDependencyIndex index = new JavaDependencyIndex(indexFile);
+        assertThat(index.put(library, Collections.singletonList(
+                new File(directory, "Library.class")))).isNull();
+        index.put(main, Collections.singletonList(new File(directory, "Main.class")));
+        index.save();
+
+        JavaDependencyIndex reloaded = new JavaDependencyIndex(indexFile);
+        assertThat(reloaded.getSources()).containsExactly(library, main);
+        assertThat(reloaded.getDependents(Collections.singletonList("Library")))
+                .containsExactly(main);
+
+        JavaDependencyIndex.Entry entry = reloaded.get(library);
+        assertThat(entry.getClasses()).containsExactly("Library");
+        assertThat(entry.getOutputs()).containsExactly(new File(directory, "Library.class"));
+    }
+
+    @Test
+    public void testUnknownSource() throws Exception {
+        File directory = mFolder.newFolder("src");
+        File main = write(directory, "Main", "public class Main { }");
+
+        JavaDependencyIndex index = new JavaDependencyIndex(new File(mFolder.getRoot(),
+                "javaDependencies.json"));
+        assertThat(index.get(main)).isNull();
+        assertThat(index.remove(main)).isNull();
+        assertThat(index.getSources()).isEmpty();
+    }
+
+    private static File write(File directory, String name, String contents) throws Exception {
+        File file = new File(directory, name + ".java");
+        FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static void compile(File... sources) {
+        String[] arguments = new String[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            arguments[i] = sources[i].getAbsolutePath();
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertThat(compiler.run(null, null, null, arguments)).isEqualTo(0);
+    }
+}
@@ -0,0 +1,165 @@
+package com.tyron.builder.compiler.resource;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.common.TestUtil;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(RobolectricTestRunner.class)
+public class Aapt2DaemonTest {
+
+    /**
+     * Stands in for aapt2, it follows the protocol of {@code aapt2 daemon}. A crash command
+     * exits the first time it is run and succeeds once the given marker file exists. A sleep
+     * command takes a few seconds to finish.
+     */
+    private static final String STAND_IN = "#!/bin/sh\n" +
+            "[ \"$1\" = \"daemon\" ] || exit 1\n" +
+            "echo Ready\n" +
+            "command=\"\"\n" +
+            "argument=\"\"\n" +
+            "while IFS= read -r line; do\n" +
+            "  if [ -z \"$line\" ]; then\n" +
+            "    case \"$command\" in\n" +
+            "      compile) echo \"$argument: warn: stand-in\" >&2; echo Done ;;\n" +
+            "      crash) if [ -f \"$argument\" ]; then echo Done; " +
+            "else touch \"$argument\"; exit 3; fi ;;\n" +
+            "      sleep) echo sleeping; sleep 3; echo Done ;;\n" +
+            "      *) echo \"error: unknown command $command\" >&2; echo Error; echo Done ;;\n" +
+            "    esac\n" +
+            "    command=\"\"\n" +
+            "    argument=\"\"\n" +
+            "  elif [ -z \"$command\" ]; then\n" +
+            "    command=\"$line\"\n" +
+            "  elif [ -z \"$argument\" ]; then\n" +
+            "    argument=\"$line\"\n" +
+            "  fi\n" +
+            "done\n";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Aapt2Daemon mDaemon;
+
+    @Before
+    public void setup() throws IOException {
+        Assume.assumeFalse(TestUtil.isWindows());
+
+        File binary = mFolder.newFile("aapt2");
+        FileUtils.writeStringToFile(binary, STAND_IN, StandardCharsets.UTF_8);
+        assertThat(binary.setExecutable(true)).isTrue();
+        mDaemon = Aapt2Daemon.getInstance(binary);
+    }
+
+    @After
+    public void tearDown() {
+        if (mDaemon != null) {
+            mDaemon.close();
+        }
+    }
+
+    @Test
+    public void testCommands() throws IOException {
+        List<String> streamed = new ArrayList<>();
+        Aapt2Daemon.Result result = mDaemon.compile(
+                Collections.singletonList("strings.xml"), streamed::add);
+        assertThat(result.isSuccessful()).isTrue();
+        assertThat(result.getDiagnostics()).containsExactly("strings.xml: warn: stand-in");
+        assertThat(streamed).isEqualTo(result.getDiagnostics());
+
+        result = mDaemon.link(Collections.emptyList(), null);
+        assertThat(result.isSuccessful()).isFalse();
+        assertThat(result.getLog()).contains("unknown command link");
+
+        // the same process is used for every command
+        assertThat(mDaemon.getStartCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRestartOnCrash() throws IOException {
+        File marker = new File(mFolder.getRoot(), "crashed");
+        Aapt2Daemon.Result result = mDaemon.execute("crash",
+                Collections.singletonList(marker.getAbsolutePath()), null);
+        assertThat(result.isSuccessful()).isTrue();
+        assertThat(marker.exists()).isTrue();
+        assertThat(mDaemon.getStartCount()).isEqualTo(2);
+
+        // still usable after the restart
+        assertThat(mDaemon.compile(Collections.singletonList("a.xml"), null).isSuccessful())
+                .isTrue();
+    }
+
+    @Test
+    public void testUnsupportedDaemonIsNotStartedAgain() throws IOException {
+        File binary = mFolder.newFile("old-aapt2");
+        FileUtils.writeStringToFile(binary, "#!/bin/sh\necho \"unknown command $1\" >&2\n" +
+                "exit 1\n", StandardCharsets.UTF_8);
+        assertThat(binary.setExecutable(true)).isTrue();
+        Aapt2Daemon daemon = Aapt2Daemon.getInstance(binary);
+        try {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    daemon.compile(Collections.singletonList("a.xml"), null);
+                    throw new AssertionError("Expected the daemon to fail");
+                } catch (IOException expected) {
+                    assertThat(daemon.isSupported()).isFalse();
+                }
+            }
+            // the first failed start is remembered
+            assertThat(daemon.getStartCount()).isEqualTo(1);
+        } finally {
+            daemon.close();
+        }
+    }
+
+    @Test
+    public void testWarningsAreClassifiedByLevel() {
+        assertThat(Aapt2Daemon.isWarning("res/values/strings.xml:3: warn: unused")).isTrue();
+        assertThat(Aapt2Daemon.isWarning("warn: no resources")).isTrue();
+        assertThat(Aapt2Daemon.isWarning("res/layout/warning.xml:2: error: bad")).isFalse();
+        assertThat(Aapt2Daemon.isWarning("res/values/warnings.xml: note: merged")).isFalse();
+    }
+
+    @Test
+    public void testInterruptedCommandDiscardsProcess() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                mDaemon.execute("sleep", Collections.emptyList(), line -> running.countDown());
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        thread.start();
+        assertThat(running.await(30, TimeUnit.SECONDS)).isTrue();
+        thread.interrupt();
+        thread.join(TimeUnit.SECONDS.toMillis(30));
+        assertThat(failure.get()).isInstanceOf(IOException.class);
+
+        // the output of the interrupted command must not be read as the output of this one
+        Aapt2Daemon.Result result = mDaemon.compile(Collections.singletonList("b.xml"), null);
+        assertThat(result.isSuccessful()).isTrue();
+        assertThat(result.getDiagnostics()).containsExactly("b.xml: warn: stand-in");
+        assertThat(mDaemon.getStartCount()).isEqualTo(2);
+    }
+}
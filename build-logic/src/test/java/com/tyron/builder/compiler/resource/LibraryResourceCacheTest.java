@@ -0,0 +1,107 @@
+package com.tyron.builder.compiler.resource;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.builder.log.ILogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class LibraryResourceCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private LibraryResourceCache mCache;
+    private File mOutput;
+    private final List<String> mCompiled = new ArrayList<>();
+
+    /**
+     * Writes the names of the resource files instead of running aapt2
+     */
+    private final LibraryResourceCache.Compiler mCompiler = (res, output) -> {
+        synchronized (mCompiled) {
+            mCompiled.add(res.getParentFile().getName());
+        }
+        FileUtils.writeStringToFile(output, String.join(",", res.list()),
+                StandardCharsets.UTF_8);
+    };
+
+    @Before
+    public void setup() throws Exception {
+        mCache = new LibraryResourceCache(mFolder.newFolder("cache"));
+        mOutput = mFolder.newFolder("output");
+    }
+
+    @Test
+    public void testCachedLibraries() throws Exception {
+        File appcompat = createLibrary("appcompat", "values.xml");
+        File material = createLibrary("material", "values.xml");
+        List<File> libraries = Arrays.asList(appcompat, material);
+
+        mCache.ensureCompiledLibraries(libraries, mOutput, "aapt2", mCompiler, ILogger.EMPTY);
+        assertThat(mCompiled).containsExactly("appcompat", "material");
+        assertThat(new File(mOutput, "appcompat.zip").exists()).isTrue();
+
+        // the same libraries in another project are not compiled again
+        File otherOutput = mFolder.newFolder("other");
+        mCompiled.clear();
+        mCache.ensureCompiledLibraries(libraries, otherOutput, "aapt2", mCompiler,
+                ILogger.EMPTY);
+        assertThat(mCompiled).isEmpty();
+        assertThat(FileUtils.readFileToString(new File(otherOutput, "material.zip"),
+                StandardCharsets.UTF_8)).isEqualTo("values.xml");
+
+        // only touched
+        File values = new File(appcompat.getParentFile(), "res/values.xml");
+        assertThat(values.setLastModified(values.lastModified() + 10_000)).isTrue();
+        mCache.ensureCompiledLibraries(libraries, mOutput, "aapt2", mCompiler, ILogger.EMPTY);
+        assertThat(mCompiled).isEmpty();
+
+        // a new version of aapt2
+        mCache.ensureCompiledLibraries(libraries, mOutput, "aapt2-new", mCompiler,
+                ILogger.EMPTY);
+        assertThat(mCompiled).containsExactly("appcompat", "material");
+    }
+
+    @Test
+    public void testModifiedLibrary() throws Exception {
+        File appcompat = createLibrary("appcompat", "values.xml");
+        List<File> libraries = Collections.singletonList(appcompat);
+        mCache.ensureCompiledLibraries(libraries, mOutput, "aapt2", mCompiler, ILogger.EMPTY);
+
+        FileUtils.writeStringToFile(new File(appcompat.getParentFile(), "res/colors.xml"),
+                "<resources/>", StandardCharsets.UTF_8);
+        mCompiled.clear();
+        mCache.ensureCompiledLibraries(libraries, mOutput, "aapt2", mCompiler, ILogger.EMPTY);
+        assertThat(mCompiled).containsExactly("appcompat");
+        assertThat(FileUtils.readFileToString(new File(mOutput, "appcompat.zip"),
+                StandardCharsets.UTF_8)).contains("colors.xml");
+
+        // the archive of a library that is no longer used is removed
+        mCache.ensureCompiledLibraries(Collections.emptyList(), mOutput, "aapt2", mCompiler,
+                ILogger.EMPTY);
+        assertThat(new File(mOutput, "appcompat.zip").exists()).isFalse();
+    }
+
+    private File createLibrary(String name, String... resources) throws Exception {
+        File library = mFolder.newFolder(name);
+        for (String resource : resources) {
+            FileUtils.writeStringToFile(new File(library, "res/" + resource), "<resources/>",
+                    StandardCharsets.UTF_8);
+        }
+        File jar = new File(library, "classes.jar");
+        assertThat(jar.createNewFile()).isTrue();
+        return jar;
+    }
+}
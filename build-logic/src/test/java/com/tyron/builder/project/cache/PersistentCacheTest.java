@@ -0,0 +1,75 @@
+package com.tyron.builder.project.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+public class PersistentCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testSurvivesReload() throws Exception {
+        File cacheFile = new File(mFolder.getRoot(), "cache/test.json");
+        File input = mFolder.newFile("Test.java");
+        File output = mFolder.newFile("Test.class");
+        FileUtils.writeStringToFile(input, "class Test {}", StandardCharsets.UTF_8);
+
+        PersistentCache cache = new PersistentCache(cacheFile);
+        cache.put(input, "fingerprint", Collections.singletonList(output));
+        cache.save();
+
+        PersistentCache reloaded = new PersistentCache(cacheFile);
+        assertThat(reloaded.isUpToDate(input, "fingerprint")).isTrue();
+        assertThat(reloaded.getOutputs(input)).containsExactly(output);
+
+        // a different classpath invalidates the entry
+        assertThat(reloaded.isUpToDate(input, "other")).isFalse();
+    }
+
+    @Test
+    public void testContentChangeInvalidates() throws Exception {
+        File input = mFolder.newFile("Test.java");
+        File output = mFolder.newFile("Test.class");
+        FileUtils.writeStringToFile(input, "class Test {}", StandardCharsets.UTF_8);
+
+        PersistentCache cache = new PersistentCache(new File(mFolder.getRoot(), "test.json"));
+        cache.put(input, "fingerprint", Collections.singletonList(output));
+
+        FileUtils.writeStringToFile(input, "class Test { int a; }", StandardCharsets.UTF_8);
+        assertThat(cache.isUpToDate(input, "fingerprint")).isFalse();
+
+        FileUtils.writeStringToFile(input, "class Test {}", StandardCharsets.UTF_8);
+        assertThat(cache.isUpToDate(input, "fingerprint")).isTrue();
+
+        FileUtils.delete(output);
+        assertThat(cache.isUpToDate(input, "fingerprint")).isFalse();
+    }
+
+    @Test
+    public void testData() throws Exception {
+        File cacheFile = new File(mFolder.getRoot(), "cache/test.json");
+        File input = mFolder.newFile("Test.java");
+        FileUtils.writeStringToFile(input, "class Test {}", StandardCharsets.UTF_8);
+
+        PersistentCache cache = new PersistentCache(cacheFile);
+        cache.put(input, "fingerprint", Collections.emptyList(),
+                Collections.singletonMap("class", "Test"));
+        cache.save();
+
+        PersistentCache reloaded = new PersistentCache(cacheFile);
+        assertThat(reloaded.getData(input, Map.class)).containsExactly("class", "Test");
+
+        reloaded.put(input, "fingerprint", Collections.emptyList());
+        assertThat(reloaded.getData(input, Map.class)).isNull();
+    }
+}
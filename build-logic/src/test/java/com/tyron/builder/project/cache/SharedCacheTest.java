@@ -0,0 +1,75 @@
+package com.tyron.builder.project.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class SharedCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testCommit() throws Exception {
+        SharedCache cache = new SharedCache(new File(mFolder.getRoot(), "cache"));
+        File entry = cache.getEntry("entry");
+        assertThat(entry).isNotNull();
+
+        // two builds producing the same directory entry at the same time
+        File first = cache.createTempDirectory("entry");
+        FileUtils.writeStringToFile(new File(first, "classes.dex"), "dex",
+                StandardCharsets.UTF_8);
+        File second = cache.createTempDirectory("entry");
+        FileUtils.writeStringToFile(new File(second, "classes.dex"), "dex",
+                StandardCharsets.UTF_8);
+        cache.commit(first, entry);
+        cache.commit(second, entry);
+
+        assertThat(FileUtils.readFileToString(new File(entry, "classes.dex"),
+                StandardCharsets.UTF_8)).isEqualTo("dex");
+        assertThat(first.exists()).isFalse();
+        assertThat(second.exists()).isFalse();
+    }
+
+    @Test
+    public void testHashDirectory() throws Exception {
+        SharedCache cache = new SharedCache(new File(mFolder.getRoot(), "cache"));
+        File res = mFolder.newFolder("res");
+        File values = new File(res, "values/strings.xml");
+        FileUtils.writeStringToFile(values, "<resources/>", StandardCharsets.UTF_8);
+        String hash = cache.hashDirectory(res);
+        assertThat(cache.hashDirectory(res)).isEqualTo(hash);
+
+        FileUtils.writeStringToFile(new File(res, "values/colors.xml"), "<resources/>",
+                StandardCharsets.UTF_8);
+        assertThat(cache.hashDirectory(res)).isNotEqualTo(hash);
+    }
+
+    @Test
+    public void testIsLinked() throws Exception {
+        SharedCache cache = new SharedCache(new File(mFolder.getRoot(), "cache"));
+        File cached = cache.getEntry("resources.zip");
+        FileUtils.writeStringToFile(cached, "compiled", StandardCharsets.UTF_8);
+
+        File output = new File(mFolder.getRoot(), "output.zip");
+        assertThat(cache.isLinked(cached, output)).isFalse();
+        SharedCache.link(cached, output);
+        assertThat(cache.isLinked(cached, output)).isTrue();
+
+        // copies are compared by their contents
+        Files.delete(output.toPath());
+        Files.copy(cached.toPath(), output.toPath());
+        assertThat(cache.isLinked(cached, output)).isTrue();
+
+        FileUtils.writeStringToFile(output, "modified", StandardCharsets.UTF_8);
+        output.setLastModified(output.lastModified() + 2000);
+        assertThat(cache.isLinked(cached, output)).isFalse();
+    }
+}
@@ -0,0 +1,122 @@
+package com.tyron.builder.project.index;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class ClassNameIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<String> mSourceClasses = new ArrayList<>();
+    private ClassNameIndex mIndex;
+
+    @Before
+    public void setup() throws Exception {
+        JarClassIndex.setCacheDirectory(mFolder.newFolder("index"));
+
+        File jar = mFolder.newFile("classes.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String name : Arrays.asList("java/util/ArrayList.class",
+                    "java/util/ArrayList$Itr.class",
+                    "java/util/List.class",
+                    "java/util/LinkedList.class",
+                    "java/lang/String.class",
+                    "java/lang/StringBuilder.class",
+                    "java/lang/package-info.class")) {
+                out.putNextEntry(new JarEntry(name));
+                out.closeEntry();
+            }
+        }
+
+        mSourceClasses.add("com.example.MainActivity");
+        mIndex = new ClassNameIndex(() -> mSourceClasses);
+        mIndex.addJar(jar);
+    }
+
+    @Test
+    public void testPrefix() {
+        assertThat(mIndex.findBySimpleName("str"))
+                .containsExactly("java.lang.String", "java.lang.StringBuilder");
+        assertThat(mIndex.findBySimpleName("Main"))
+                .containsExactly("com.example.MainActivity");
+    }
+
+    @Test
+    public void testCamelHumps() {
+        assertThat(mIndex.findBySimpleName("ALi")).containsExactly("java.util.ArrayList");
+        assertThat(mIndex.findBySimpleName("SB")).containsExactly("java.lang.StringBuilder");
+        assertThat(mIndex.findBySimpleName("MA")).containsExactly("com.example.MainActivity");
+        assertThat(mIndex.findBySimpleName("Ay")).isEmpty();
+    }
+
+    @Test
+    public void testQualifiedPrefix() {
+        assertThat(mIndex.findByQualifiedPrefix("java.util."))
+                .containsExactly("java.util.ArrayList", "java.util.LinkedList",
+                        "java.util.List");
+    }
+
+    @Test
+    public void testExact() {
+        assertThat(mIndex.findBySimpleNameExact("List")).containsExactly("java.util.List");
+    }
+
+    @Test
+    public void testIndexIsReused() throws Exception {
+        File jar = mFolder.getRoot().toPath().resolve("classes.jar").toFile();
+        ClassNameIndex other = new ClassNameIndex(ArrayList::new);
+        other.addJar(jar);
+
+        assertThat(other.getAllClassNames()).hasSize(5);
+        File[] indexFiles = new File(mFolder.getRoot(), "index")
+                .listFiles(file -> file.getName().endsWith(".idx"));
+        assertThat(indexFiles).hasLength(1);
+    }
+
+    @Test
+    public void testChangedJarIsIndexedAgain() throws Exception {
+        File jar = new File(mFolder.getRoot(), "classes.jar");
+        long lastModified = jar.lastModified();
+        writeJar(jar, "java/util/List.class", "java/util/Map.class");
+        jar.setLastModified(lastModified + 2000);
+        mIndex.addJar(jar);
+
+        assertThat(mIndex.findByQualifiedPrefix("java.")).containsExactly(
+                "java.util.List", "java.util.Map");
+    }
+
+    @Test
+    public void testRetainJars() throws Exception {
+        File other = mFolder.newFile("other.jar");
+        writeJar(other, "com/example/Library.class");
+        mIndex.addJar(other);
+        assertThat(mIndex.findBySimpleNameExact("Library"))
+                .containsExactly("com.example.Library");
+
+        mIndex.retainJars(Arrays.asList(other));
+        assertThat(mIndex.getJarFiles()).containsExactly(other);
+        assertThat(mIndex.findBySimpleNameExact("String")).isEmpty();
+    }
+
+    private static void writeJar(File jar, String... entries) throws Exception {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String name : entries) {
+                out.putNextEntry(new JarEntry(name));
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.tyron.builder.project.index;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class PackageIndexTest {
+
+    @Test
+    public void testPackages() {
+        PackageIndex index = new PackageIndex();
+        File main = new File("com/example/MainActivity.java");
+        File utils = new File("com/example/util/Utils.java");
+        index.put("com.example", "com.example.MainActivity", main);
+        index.put("com.example.util", "com.example.util.Utils", utils);
+
+        assertThat(index.getFilesInPackage("com.example")).containsExactly(main);
+        assertThat(index.getFilesInPackage("com.example.util")).containsExactly(utils);
+        assertThat(index.getFilesInPackage("com")).isEmpty();
+
+        // the package of a file changed
+        File moved = new File("com/example/other/MainActivity.java");
+        index.put("com.example.other", "com.example.MainActivity", moved);
+        assertThat(index.getFilesInPackage("com.example")).isEmpty();
+        assertThat(index.getFilesInPackage("com.example.other")).containsExactly(moved);
+
+        index.remove("com.example.util.Utils");
+        assertThat(index.getFilesInPackage("com.example.util")).isEmpty();
+        assertThat(index.getFiles()).containsExactly("com.example.MainActivity", moved);
+    }
+
+    @Test
+    public void testLargeIndex() {
+        List<String> packages = new ArrayList<>();
+        PackageIndex index = createIndex(50_000, packages);
+        assertThat(packages).hasSize(2_500);
+        for (String packageName : packages) {
+            assertThat(index.getFilesInPackage(packageName)).hasSize(20);
+        }
+        assertThat(scan(index.getFiles(), packages.get(0))).isEqualTo(20);
+    }
+
+    /**
+     * Compares looking up a package against scanning all the files of the module, which is
+     * what {@code SourceFileManager.list} used to do. The lookup should take about the same
+     * time no matter how many files the module has. Run with -Dindex.benchmark=true
+     */
+    @Test
+    public void benchmarkLookup() {
+        assumeTrue(Boolean.getBoolean("index.benchmark"));
+
+        long[] small = benchmark(1_000);
+        long[] large = benchmark(50_000);
+        System.out.println("1,000 files: lookup " + small[0] + " ns, scan " + small[1] + " ns");
+        System.out.println("50,000 files: lookup " + large[0] + " ns, scan " + large[1] + " ns");
+    }
+
+    /**
+     * @return an index of the given number of files, about 20 files per package like
+     * a typical project
+     */
+    private static PackageIndex createIndex(int fileCount, List<String> packages) {
+        PackageIndex index = new PackageIndex();
+        for (int i = 0; i < fileCount; i++) {
+            String packageName = "com.example.package" + (i / 20);
+            if (i % 20 == 0) {
+                packages.add(packageName);
+            }
+            String className = packageName + ".Class" + i;
+            index.put(packageName, className, new File(className.replace('.', '/') + ".java"));
+        }
+        return index;
+    }
+
+    /**
+     * @return the average time of a lookup and of a scan of all the files, in nanoseconds
+     */
+    private static long[] benchmark(int fileCount) {
+        List<String> packages = new ArrayList<>();
+        PackageIndex index = createIndex(fileCount, packages);
+
+        long scanStart = System.nanoTime();
+        long scanned = scan(index.getFiles(), packages.get(0));
+        long scanElapsed = System.nanoTime() - scanStart;
+
+        int lookups = 20_000;
+        int found = 0;
+        // warm up
+        for (int i = 0; i < lookups; i++) {
+            found += index.getFilesInPackage(packages.get(i % packages.size())).size();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            found += index.getFilesInPackage(packages.get(i % packages.size())).size();
+        }
+        long elapsed = (System.nanoTime() - start) / lookups;
+        // keeps the loops from being optimized away
+        assertThat(found).isEqualTo(lookups * 2 * 20);
+        assertThat(scanned).isEqualTo(20);
+        return new long[]{elapsed, scanElapsed};
+    }
+
+    private static long scan(Map<String, File> files, String packageName) {
+        long count = 0;
+        for (String name : files.keySet()) {
+            if (name.substring(0, name.lastIndexOf('.')).equals(packageName)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,73 @@
+package com.tyron.builder.project.vfs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ChangeJournalTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testChanges() throws Exception {
+        File root = mFolder.newFolder("project");
+        File file = new File(root, "src/Main.java");
+        FileUtils.writeStringToFile(file, "class Main {}", StandardCharsets.UTF_8);
+
+        ChangeJournal journal = new ChangeJournal();
+        List<FileChange> reported = new ArrayList<>();
+        journal.addListener(reported::addAll);
+        File build = new File(root, "build");
+        journal.addRoot(root, Collections.singleton(build));
+        journal.scanned(file);
+        long start = journal.getSequence();
+
+        assertThat(journal.isTracked(file)).isTrue();
+        assertThat(journal.isTracked(mFolder.getRoot())).isFalse();
+        // generated files are not watched
+        assertThat(journal.isTracked(new File(build, "gen/R.java"))).isFalse();
+        assertThat(journal.isModifiedSince(file, start)).isFalse();
+
+        // only touched, the contents are the same. Scanned files are hashed when asked for,
+        // a touched file that was never hashed is reported as modified
+        assertThat(journal.getHash(file)).isNotNull();
+        assertThat(file.setLastModified(file.lastModified() - 10_000)).isTrue();
+        journal.update(Collections.singletonList(file));
+        assertThat(journal.getSequence()).isEqualTo(start);
+
+        FileUtils.writeStringToFile(file, "class Main { int a; }", StandardCharsets.UTF_8);
+        File created = new File(root, "src/Other.java");
+        FileUtils.writeStringToFile(created, "class Other {}", StandardCharsets.UTF_8);
+        journal.update(Arrays.asList(file, created));
+
+        assertThat(journal.isModifiedSince(file, start)).isTrue();
+        List<FileChange> changes = journal.getChangesSince(start);
+        assertThat(changes).hasSize(2);
+        assertThat(changes.get(0).getKind()).isEqualTo(FileChange.Kind.MODIFIED);
+        assertThat(changes.get(1).getKind()).isEqualTo(FileChange.Kind.CREATED);
+        assertThat(changes.get(1).getHash()).isEqualTo(journal.getHash(created));
+        assertThat(reported).isEqualTo(changes);
+
+        // deleting the directory deletes the files under it
+        long beforeDelete = journal.getSequence();
+        FileUtils.deleteDirectory(new File(root, "src"));
+        journal.update(Collections.singletonList(new File(root, "src")));
+        changes = journal.getChangesSince(beforeDelete);
+        assertThat(changes).hasSize(2);
+        for (FileChange change : changes) {
+            assertThat(change.getKind()).isEqualTo(FileChange.Kind.DELETED);
+        }
+        assertThat(journal.getHash(file)).isNull();
+    }
+}
@@ -0,0 +1,78 @@
+package com.tyron.builder.project.vfs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.builder.compiler.BuildType;
+import com.tyron.builder.compiler.incremental.java.IncrementalJavaTask;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.common.TestUtil;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class FileWatcherTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MockAndroidModule mModule;
+    private File mFile;
+    private FileWatcher mWatcher;
+
+    @Before
+    public void setup() throws Exception {
+        File resources = TestUtil.getResourcesDirectory();
+        File root = mFolder.newFolder("project");
+        mModule = new MockAndroidModule(new File(root, "app"), new MockFileManager(root));
+        mModule.setLambdaStubsJarFile(new File(resources, "bootstraps/core-lambda-stubs.jar"));
+        mModule.setBootstrapFile(new File(resources, "bootstraps/rt.jar"));
+
+        mFile = new File(mModule.getJavaDirectory(), "com/test/Main.java");
+        FileUtils.writeStringToFile(mFile, "package com.test;\n\npublic class Main {\n}\n",
+                StandardCharsets.UTF_8);
+        mModule.addJavaFile(mFile);
+
+        mWatcher = new FileWatcher(root, Collections.singleton(mModule.getBuildDirectory()),
+                ChangeJournal.getInstance());
+        mWatcher.start();
+    }
+
+    @After
+    public void tearDown() {
+        mWatcher.close();
+    }
+
+    @Test
+    public void testExternalModificationIsCompiled() throws Exception {
+        assertThat(build()).containsExactly(mFile);
+        assertThat(ChangeJournal.getInstance().awaitChanges(mFile, 10_000)).isTrue();
+        assertThat(build()).isEmpty();
+
+        // modified by another app, the build starts before the watcher has recorded it
+        FileUtils.writeStringToFile(mFile, "package com.test;\n\npublic class Main {\n" +
+                "    int field;\n}\n", StandardCharsets.UTF_8);
+        assertThat(build()).containsExactly(mFile);
+        assertThat(build()).isEmpty();
+    }
+
+    private List<File> build() throws Exception {
+        IncrementalJavaTask task = new IncrementalJavaTask(mModule, ILogger.STD_OUT);
+        task.prepare(BuildType.DEBUG);
+        task.run();
+        return task.getCompiledFiles();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *    CodeEditor - the awesome code editor for Android
+ *    Copyright (C) 2020-2021  Rosemoe
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ *
+ *     Please contact Rosemoe by email 2073412493@qq.com if you need
+ *     additional information or have any questions
+ */
+package io.github.rosemoe.sora.interfaces;
+
+import io.github.rosemoe.sora.text.TextAnalyzeResult;
+import io.github.rosemoe.sora.text.TextAnalyzer;
+
+/**
+ * A {@link CodeAnalyzer} that also has an expensive analysis such as compiling the file to
+ * find errors. It is run in the background after the user stops typing so it never delays the
+ * highlighting done by {@link CodeAnalyzer#analyze}.
+ *
+ * @param <T> Type of the result of the background analysis
+ * @see TextAnalyzer
+ */
+public interface BackgroundAnalyzer<T> extends CodeAnalyzer {
+
+    /**
+     * Called on a background thread with a snapshot of the text.
+     * The analysis is cancelled when the text is modified again, implementations should call
+     * {@code ProgressManager.checkCanceled()} frequently.
+     *
+     * @param content The text that was highlighted
+     * @return Result of the analysis, passed to {@link #applyBackgroundResult}
+     */
+    T analyzeInBackground(CharSequence content);
+
+    /**
+     * Applies the latest result of {@link #analyzeInBackground(CharSequence)} to newly
+     * computed spans, e.g. marking problem regions.
+     * Called on the analysis thread after {@link CodeAnalyzer#analyze}, the result may be older
+     * than the spans if the text has been modified since then.
+     *
+     * @param result Result of the background analysis
+     * @param colors The spans that are about to be published
+     */
+    void applyBackgroundResult(T result, TextAnalyzeResult colors);
+
+}
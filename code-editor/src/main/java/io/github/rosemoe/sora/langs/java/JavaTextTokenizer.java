@@ -447,6 +447,21 @@ public class JavaTextTokenizer {
         bufferLen = src.length();
     }
 
+    /**
+     * Continue tokenizing from the given index of the current source.
+     * Line and column are not calculated correctly afterwards.
+     *
+     * @param index The start of the next token
+     */
+    public void seek(int index) {
+        this.index = index;
+        offset = index;
+        length = 0;
+        line = 0;
+        column = 0;
+        currToken = Tokens.WHITESPACE;
+    }
+
     protected static String[] sKeywords;
 
     protected static void doStaticInit() {
@@ -0,0 +1,546 @@
+/*
+ *    CodeEditor - the awesome code editor for Android
+ *    Copyright (C) 2020-2021  Rosemoe
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ *
+ *     Please contact Rosemoe by email 2073412493@qq.com if you need
+ *     additional information or have any questions
+ */
+package io.github.rosemoe.sora.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import io.github.rosemoe.sora.data.BlockLine;
+import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.widget.EditorColorScheme;
+
+/**
+ * Highlights text by lexing only the lines that changed since the previous analysis.
+ *
+ * The spans and code blocks of every line are kept along with the state of the lexer at the
+ * start of the line. On the next analysis, the unmodified lines at the start and at the end of
+ * the text are found by comparing them with the previous text. Lexing restarts from the closest
+ * line before the first modified line that starts with a token and stops as soon as it reaches
+ * one of the unmodified lines at the end with the same state as before. The spans of the other
+ * lines are reused so the cost of an edit depends on the size of the edit, not the size of the
+ * text.
+ *
+ * The reused spans are shared between results, {@link TextAnalyzeResult} copies them before
+ * they are modified.
+ *
+ * @param <S> State of the lexer at the start of a token, it must implement equals
+ * @author Rose
+ */
+public class IncrementalLexer<S> {
+
+    /**
+     * A lexer that can start at the beginning of any line given its state there
+     */
+    public interface Lexer<S> {
+
+        /**
+         * @return The state at the start of the text
+         */
+        S getInitialState();
+
+        /**
+         * Called during {@link #lex} when the token that is about to be reported starts a line.
+         * Lexers that skip some characters may report the start of the line as a token so
+         * that the line can be lexed again from its start.
+         *
+         * @return The state before that token, or null if lexing can not restart there
+         */
+        S getState();
+
+        /**
+         * Lex the text starting at the given offset.
+         * {@link Session#nextToken(int)} must be called before processing every token, stop
+         * as soon as it returns false.
+         *
+         * @param text    The whole text
+         * @param offset  Start of the line to start from
+         * @param state   State of the lexer at that offset
+         * @param session Destination of the spans and blocks
+         */
+        void lex(CharSequence text, int offset, S state, Session session);
+
+    }
+
+    private static final int BLOCK_START = 1;
+    private static final int BLOCK_END = 2;
+    private static final int BLOCK_END_TO_BOTTOM = 3;
+    private static final int[] NO_BLOCKS = new int[0];
+
+    private final Lexer<S> mLexer;
+    private List<Line<S>> mLines = new ArrayList<>();
+    private int[] mLineStarts = new int[0];
+    private int mMaxSwitch;
+
+    public IncrementalLexer(Lexer<S> lexer) {
+        mLexer = lexer;
+    }
+
+    /**
+     * Discard the saved lines, the next analysis lexes the whole text
+     */
+    public void reset() {
+        mLines = new ArrayList<>();
+    }
+
+    /**
+     * @return The suppress switch computed from the blocks of the last analysis
+     * @see TextAnalyzeResult#setSuppressSwitch(int)
+     */
+    public int getMaxSwitch() {
+        return mMaxSwitch;
+    }
+
+    /**
+     * Analyze the text and fill the spans and blocks of the result.
+     * The result is determined afterwards unless the analysis is interrupted by the delegate.
+     *
+     * @return Whether the analysis completed
+     */
+    public synchronized boolean analyze(CharSequence text, TextAnalyzeResult result,
+                                        TextAnalyzer.AnalyzeThread.Delegate delegate) {
+        int lineCount = computeLineStarts(text);
+        List<Line<S>> oldLines = mLines;
+        int oldCount = oldLines.size();
+
+        int min = Math.min(oldCount, lineCount);
+        int prefix = 0;
+        while (prefix < min && lineEquals(oldLines.get(prefix), text, prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < min - prefix &&
+                lineEquals(oldLines.get(oldCount - 1 - suffix), text, lineCount - 1 - suffix)) {
+            suffix++;
+        }
+
+        List<Line<S>> lines;
+        if (prefix == oldCount && oldCount == lineCount) {
+            lines = oldLines;
+        } else {
+            // the start of a modified line may continue a token from the previous line, so
+            // start from an unmodified line where the lexer had not read the modified text yet
+            int changeStart = mLineStarts[prefix] - 1;
+            int start = prefix - 1;
+            while (start > 0 && !(oldLines.get(start).checkpoint &&
+                    mLineStarts[start] + oldLines.get(start).lookahead <= changeStart)) {
+                start--;
+            }
+            start = Math.max(start, 0);
+
+            Session session = new Session(this, text, lineCount, oldLines, oldCount - lineCount,
+                    lineCount - suffix, delegate);
+            S state = start == 0 ? mLexer.getInitialState() : oldLines.get(start).state;
+            Span startSpan = start == 0 ? null : oldLines.get(start).startSpan;
+            session.mReadEnd = start == 0 ? 0 : mLineStarts[start] + oldLines.get(start).lookahead;
+            session.startLine(start, true, state, startSpan);
+            try {
+                mLexer.lex(text, mLineStarts[start], state, session);
+            } catch (RuntimeException e) {
+                reset();
+                throw e;
+            }
+            if (session.mCanceled) {
+                return false;
+            }
+            session.finish();
+
+            int resync = session.mResyncLine;
+            lines = new ArrayList<>(lineCount);
+            lines.addAll(oldLines.subList(0, start));
+            lines.addAll(session.<S>getLines());
+            if (resync != -1) {
+                addUnmodifiedLines(lines, oldLines, resync, oldCount - lineCount, session.mReadEnd);
+            }
+        }
+        mLines = lines;
+
+        List<List<Span>> spanMap = result.mSpanMap;
+        spanMap.clear();
+        for (Line<S> line : lines) {
+            spanMap.add(line.spans);
+        }
+        result.mLast = null;
+        result.determined = true;
+        computeBlocks(result);
+        return true;
+    }
+
+    /**
+     * Add the saved lines after the line where lexing stopped. The lexer may have read further
+     * than before, the lines before that position are copied to remember it.
+     */
+    private void addUnmodifiedLines(List<Line<S>> lines, List<Line<S>> oldLines, int start,
+                                    int oldLineDelta, int readEnd) {
+        int line = start;
+        for (; line + oldLineDelta < oldLines.size(); line++) {
+            Line<S> old = oldLines.get(line + oldLineDelta);
+            int lineStart = mLineStarts[line];
+            if (lineStart + old.lookahead >= readEnd) {
+                break;
+            }
+            lines.add(new Line<>(old.text, old.checkpoint, old.state, old.startSpan, old.spans,
+                    old.blocks, readEnd - lineStart));
+        }
+        lines.addAll(oldLines.subList(line + oldLineDelta, oldLines.size()));
+    }
+
+    /**
+     * Fills {@link #mLineStarts} with the offset of the start of each line, followed by the
+     * length of the text plus one
+     *
+     * @return The number of lines
+     */
+    private int computeLineStarts(CharSequence text) {
+        int length = text.length();
+        int count = 0;
+        int[] starts = mLineStarts;
+        for (int i = 0; i <= length; i++) {
+            if (i == 0 || text.charAt(i - 1) == '\n') {
+                if (count + 1 >= starts.length) {
+                    starts = Arrays.copyOf(starts, Math.max(64, starts.length * 2));
+                }
+                starts[count++] = i;
+            }
+        }
+        starts[count] = length + 1;
+        mLineStarts = starts;
+        return count;
+    }
+
+    private boolean lineEquals(Line<S> line, CharSequence text, int index) {
+        int start = mLineStarts[index];
+        int end = mLineStarts[index + 1] - 1;
+        String oldText = line.text;
+        if (oldText.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < oldText.length(); i++) {
+            if (oldText.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void computeBlocks(TextAnalyzeResult result) {
+        List<BlockLine> stack = new ArrayList<>();
+        int maxSwitch = 1, currSwitch = 0;
+        for (int i = 0; i < mLines.size(); i++) {
+            int[] blocks = mLines.get(i).blocks;
+            for (int j = 0; j < blocks.length; j += 3) {
+                int line = i + blocks[j + 1];
+                int column = blocks[j + 2];
+                if (blocks[j] == BLOCK_START) {
+                    if (stack.isEmpty()) {
+                        if (currSwitch > maxSwitch) {
+                            maxSwitch = currSwitch;
+                        }
+                        currSwitch = 0;
+                    }
+                    currSwitch++;
+                    BlockLine block = result.obtainNewBlock();
+                    block.startLine = line;
+                    block.startColumn = column;
+                    block.toBottomOfEndLine = false;
+                    stack.add(block);
+                } else if (!stack.isEmpty()) {
+                    BlockLine block = stack.remove(stack.size() - 1);
+                    block.endLine = line;
+                    block.endColumn = column;
+                    block.toBottomOfEndLine = blocks[j] == BLOCK_END_TO_BOTTOM;
+                    if (block.startLine != block.endLine) {
+                        result.addBlockLine(block);
+                    }
+                }
+            }
+        }
+        if (stack.isEmpty()) {
+            if (currSwitch > maxSwitch) {
+                maxSwitch = currSwitch;
+            }
+        }
+        mMaxSwitch = maxSwitch;
+    }
+
+    private static class Line<S> {
+        final String text;
+        /**
+         * Whether a token starts at the start of this line, the lexer can only restart
+         * from these lines
+         */
+        final boolean checkpoint;
+        final S state;
+        /**
+         * The last span of the previous line, it continues at the start of this line
+         */
+        final Span startSpan;
+        final List<Span> spans;
+        /**
+         * Triples of block type, line relative to this line and column
+         */
+        final int[] blocks;
+        /**
+         * End of the text read by the lexer before this line, relative to the start of the line
+         */
+        final int lookahead;
+
+        Line(String text, boolean checkpoint, S state, Span startSpan, List<Span> spans,
+             int[] blocks, int lookahead) {
+            this.text = text;
+            this.checkpoint = checkpoint;
+            this.state = state;
+            this.startSpan = startSpan;
+            this.spans = spans;
+            this.blocks = blocks;
+            this.lookahead = lookahead;
+        }
+    }
+
+    /**
+     * Receives the tokens of a {@link Lexer}. Spans and blocks are added to the line of the
+     * current token.
+     */
+    public static final class Session {
+
+        private final IncrementalLexer<?> mOwner;
+        private final CharSequence mText;
+        private final int mLineCount;
+        private final List<? extends Line<?>> mOldLines;
+        private final int mOldLineDelta;
+        private final int mUnmodifiedStart;
+        private final TextAnalyzer.AnalyzeThread.Delegate mDelegate;
+        private final List<Line<Object>> mLines = new ArrayList<>();
+
+        private int mLine = -1;
+        private int mColumn;
+        private boolean mCheckpoint;
+        private Object mState;
+        private Span mStartSpan;
+        private Span mLast;
+        private List<Span> mSpans;
+        private boolean mOnlyStartSpan;
+        private int[] mBlocks = new int[12];
+        private int mBlockCount;
+        private int mReadEnd;
+        private int mLookahead;
+
+        private boolean mCanceled;
+        private int mResyncLine = -1;
+
+        private Session(IncrementalLexer<?> owner, CharSequence text, int lineCount,
+                        List<? extends Line<?>> oldLines, int oldLineDelta, int unmodifiedStart,
+                        TextAnalyzer.AnalyzeThread.Delegate delegate) {
+            mOwner = owner;
+            mText = text;
+            mLineCount = lineCount;
+            mOldLines = oldLines;
+            mOldLineDelta = oldLineDelta;
+            mUnmodifiedStart = unmodifiedStart;
+            mDelegate = delegate;
+        }
+
+        /**
+         * Must be called before processing a token
+         *
+         * @param offset Start offset of the token in the text
+         * @return Whether the lexer should continue, false if the remaining lines are
+         * unchanged or the analysis is interrupted
+         */
+        public boolean nextToken(int offset) {
+            if (mDelegate != null && !mDelegate.shouldAnalyze()) {
+                mCanceled = true;
+                return false;
+            }
+            int[] lineStarts = mOwner.mLineStarts;
+            while (mLine + 1 < mLineCount && offset >= lineStarts[mLine + 1]) {
+                endLine();
+                int line = mLine + 1;
+                Object state = offset == lineStarts[line] ? mOwner.mLexer.getState() : null;
+                boolean checkpoint = state != null;
+                if (checkpoint && line >= mUnmodifiedStart) {
+                    Line<?> old = mOldLines.get(line + mOldLineDelta);
+                    if (old.checkpoint && Objects.equals(old.state, state) &&
+                            sameSpan(old.startSpan, mLast)) {
+                        mResyncLine = line;
+                        return false;
+                    }
+                }
+                startLine(line, checkpoint, state, mLast);
+            }
+            mColumn = offset - lineStarts[mLine];
+            return true;
+        }
+
+        /**
+         * Report that the lexer has read the text up to the given offset, exclusive. Lexers
+         * that look ahead after the end of their tokens must call this before
+         * {@link #nextToken(int)}, so lines are lexed again when the text they depend on changes.
+         */
+        public void setReadEnd(int end) {
+            if (end > mReadEnd) {
+                mReadEnd = end;
+            }
+        }
+
+        /**
+         * @return Line of the current token
+         */
+        public int getLine() {
+            return mLine;
+        }
+
+        /**
+         * @return Column of the current token
+         */
+        public int getColumn() {
+            return mColumn;
+        }
+
+        /**
+         * Add a span at the current token if its color is different from the last span
+         *
+         * @see TextAnalyzeResult#addIfNeeded(int, int, int)
+         */
+        public Span addIfNeeded(int colorId) {
+            return addIfNeeded(mColumn, colorId);
+        }
+
+        /**
+         * Add a span at the given column of the current line if its color is different from
+         * the last span
+         */
+        public Span addIfNeeded(int column, int colorId) {
+            if (mLast != null && mLast.colorId == colorId) {
+                return mLast;
+            }
+            return add(Span.obtain(column, colorId));
+        }
+
+        /**
+         * @see TextAnalyzeResult#addIfNeeded(int, Span)
+         */
+        public void addIfNeeded(Span span) {
+            if (mLast != null && mLast.colorId == span.colorId) {
+                return;
+            }
+            add(span);
+        }
+
+        /**
+         * Add a span to the current line, spans must be added in order
+         */
+        public Span add(Span span) {
+            if (mOnlyStartSpan && span.column == 0) {
+                mSpans.clear();
+            }
+            mOnlyStartSpan = false;
+            mSpans.add(span);
+            mLast = span;
+            return span;
+        }
+
+        /**
+         * Start a code block at the given position
+         */
+        public void startBlock(int line, int column) {
+            addBlock(BLOCK_START, line, column);
+        }
+
+        /**
+         * End the last code block that has been started at the given position
+         *
+         * @param toBottomOfEndLine See {@link BlockLine#toBottomOfEndLine}
+         */
+        public void endBlock(int line, int column, boolean toBottomOfEndLine) {
+            addBlock(toBottomOfEndLine ? BLOCK_END_TO_BOTTOM : BLOCK_END, line, column);
+        }
+
+        private void addBlock(int type, int line, int column) {
+            if (mBlockCount + 3 > mBlocks.length) {
+                mBlocks = Arrays.copyOf(mBlocks, mBlocks.length * 2);
+            }
+            mBlocks[mBlockCount++] = type;
+            mBlocks[mBlockCount++] = line - mLine;
+            mBlocks[mBlockCount++] = column;
+        }
+
+        private void startLine(int line, boolean checkpoint, Object state, Span startSpan) {
+            mLine = line;
+            mCheckpoint = checkpoint;
+            mState = state;
+            mStartSpan = startSpan;
+            mLookahead = mReadEnd - mOwner.mLineStarts[line];
+            mSpans = new TextAnalyzeResult.SharedSpans();
+            Span extended = startSpan == null ?
+                    Span.obtain(0, EditorColorScheme.TEXT_NORMAL) : startSpan.copy().setColumn(0);
+            mSpans.add(extended);
+            mOnlyStartSpan = true;
+            if (mLast == null) {
+                mLast = startSpan;
+            }
+            mBlockCount = 0;
+        }
+
+        private void endLine() {
+            int[] lineStarts = mOwner.mLineStarts;
+            String text;
+            if (mLine + mOldLineDelta >= 0 && mLine + mOldLineDelta < mOldLines.size() &&
+                    mLine >= mUnmodifiedStart) {
+                text = mOldLines.get(mLine + mOldLineDelta).text;
+            } else {
+                text = mText.subSequence(lineStarts[mLine], lineStarts[mLine + 1] - 1).toString();
+            }
+            int[] blocks = mBlockCount == 0 ? NO_BLOCKS : Arrays.copyOf(mBlocks, mBlockCount);
+            mLines.add(new Line<>(text, mCheckpoint, mState, mStartSpan, mSpans, blocks,
+                    mLookahead));
+        }
+
+        @SuppressWarnings("unchecked")
+        private <S> List<Line<S>> getLines() {
+            return (List<Line<S>>) (List<?>) mLines;
+        }
+
+        /**
+         * Called after the lexer reached the end of the text
+         */
+        private void finish() {
+            if (mResyncLine != -1) {
+                return;
+            }
+            endLine();
+            while (mLine + 1 < mLineCount) {
+                startLine(mLine + 1, false, null, mLast);
+                endLine();
+            }
+        }
+
+        private static boolean sameSpan(Span a, Span b) {
+            if (a == null || b == null) {
+                return a == b;
+            }
+            return a.colorId == b.colorId && a.underlineColor == b.underlineColor;
+        }
+    }
+}
@@ -74,6 +74,9 @@ public class SpanRecycler {
                         List<List<Span>> spanMap = taskQueue.take();
                         int count = 0;
                         for (List<Span> spans : spanMap) {
+                            if (spans instanceof TextAnalyzeResult.SharedSpans) {
+                                continue;
+                            }
                             int size = spans.size();
                             for (int i = 0; i < size; i++) {
                                 spans.remove(size - 1 - i).recycle();
@@ -87,7 +87,7 @@ public class TextAnalyzeResult {
     public Span add(int spanLine, Span span) {
         int mapLine = mSpanMap.size() - 1;
         if (spanLine == mapLine) {
-            mSpanMap.get(spanLine).add(span);
+            getLineSpansForUpdate(spanLine).add(span);
         } else if (spanLine > mapLine) {
             Span extendedSpan = mLast;
             if (extendedSpan == null) {
@@ -225,6 +225,37 @@ public class TextAnalyzeResult {
         return mSpanMap;
     }
 
+    /**
+     * Get the spans of the line so they can be modified.
+     * Spans shared with an {@link IncrementalLexer} are copied first.
+     *
+     * @param line The line of the spans
+     */
+    public List<Span> getLineSpansForUpdate(int line) {
+        List<Span> spans = mSpanMap.get(line);
+        if (spans instanceof SharedSpans) {
+            List<Span> copy = new ArrayList<>(spans.size() + 2);
+            for (Span span : spans) {
+                copy.add(span.copy());
+            }
+            mSpanMap.set(line, copy);
+            return copy;
+        }
+        return spans;
+    }
+
+    /**
+     * Copies the shared spans of the lines in the given range, they are going to be modified
+     * by {@link SpanMapUpdater}
+     *
+     * @see #getLineSpansForUpdate(int)
+     */
+    public void detachLines(int startLine, int endLine) {
+        for (int line = Math.max(0, startLine); line <= endLine && line < mSpanMap.size(); line++) {
+            getLineSpansForUpdate(line);
+        }
+    }
+
     /**
      * Leave extra information for your language object
      */
@@ -250,7 +281,7 @@ public class TextAnalyzeResult {
         for (int line = startLine; line <= endLine; line++) {
             int start = (line == startLine ? startColumn : 0);
             int end = (line == endLine ? endColumn : Integer.MAX_VALUE);
-            List<Span> spans = mSpanMap.get(line);
+            List<Span> spans = getLineSpansForUpdate(line);
             int increment;
             for (int i = 0; i < spans.size(); i += increment) {
                 Span span = spans.get(i);
@@ -296,4 +327,16 @@ public class TextAnalyzeResult {
         }
     }
 
+    /**
+     * Spans of a line that are also kept by an {@link IncrementalLexer} to be reused by the
+     * next result, they must not be modified nor recycled
+     */
+    static final class SharedSpans extends ArrayList<Span> {
+
+        SharedSpans() {
+            super(4);
+        }
+
+    }
+
 }
@@ -24,8 +24,18 @@ package io.github.rosemoe.sora.text;
 
 import android.util.Log;
 
+import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.progress.ProgressIndicator;
+import com.tyron.completion.progress.ProgressManager;
+
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import io.github.rosemoe.sora.interfaces.BackgroundAnalyzer;
 import io.github.rosemoe.sora.interfaces.CodeAnalyzer;
 import io.github.rosemoe.sora.data.BlockLine;
 import io.github.rosemoe.sora.data.ObjectAllocator;
@@ -34,11 +44,23 @@ import io.github.rosemoe.sora.data.Span;
 /**
  * This is a manager of analyzing text
  *
+ * Analysis runs in two stages. The {@link CodeAnalyzer} computes the spans on every
+ * modification and its result is published right away. If it is also a
+ * {@link BackgroundAnalyzer}, its expensive analysis is scheduled once the text stops changing
+ * and is cancelled by the next modification. When it completes, the spans are computed again
+ * with its result applied.
+ *
  * @author Rose
  */
 public class TextAnalyzer {
 
+    /**
+     * Time in milliseconds to wait after the last modification before running the background analysis
+     */
+    private static final long BACKGROUND_ANALYSIS_DELAY = 500;
+
     private static int sThreadId = 0;
+    private static ScheduledExecutorService sBackgroundExecutor;
     public final RecycleObjContainer mObjContainer = new RecycleObjContainer();
     private final Object mLock = new Object();
     /**
@@ -49,6 +71,11 @@ public class TextAnalyzer {
     private Callback mCallback;
     private AnalyzeThread mThread;
     private final CodeAnalyzer mCodeAnalyzer;
+    private final AtomicBoolean mBackgroundRequested = new AtomicBoolean();
+    private volatile Object mBackgroundResult;
+    private ScheduledFuture<?> mBackgroundFuture;
+    private ProgressIndicator mBackgroundIndicator;
+    private Content mContent;
     /**
      * Create a new manager for the given codeAnalyzer
      *
@@ -68,6 +95,17 @@ public class TextAnalyzer {
         return sThreadId;
     }
 
+    private synchronized static ScheduledExecutorService getBackgroundExecutor() {
+        if (sBackgroundExecutor == null) {
+            sBackgroundExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "BackgroundAnalyzeDaemon");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sBackgroundExecutor;
+    }
+
     /**
      * Set callback of analysis
      *
@@ -81,6 +119,10 @@ public class TextAnalyzer {
      * Stop the text analyzer
      */
     public void shutdown() {
+        synchronized (this) {
+            cancelBackgroundAnalysis();
+            mContent = null;
+        }
         final AnalyzeThread thread = mThread;
         if (thread != null && thread.isAlive()) {
             thread.interrupt();
@@ -101,6 +143,13 @@ public class TextAnalyzer {
      * @param origin The source text
      */
     public synchronized void analyze(Content origin) {
+        cancelBackgroundAnalysis();
+        mBackgroundRequested.set(true);
+        restart(origin);
+    }
+
+    private synchronized void restart(Content origin) {
+        mContent = origin;
         AnalyzeThread thread = this.mThread;
         if (thread == null || !thread.isAlive()) {
             Log.d("TextAnalyzer", "Starting a new thread for analyzing");
@@ -116,6 +165,64 @@ public class TextAnalyzer {
         }
     }
 
+    private synchronized void cancelBackgroundAnalysis() {
+        if (mBackgroundIndicator != null) {
+            mBackgroundIndicator.cancel();
+            mBackgroundIndicator = null;
+        }
+        if (mBackgroundFuture != null) {
+            mBackgroundFuture.cancel(false);
+            mBackgroundFuture = null;
+        }
+    }
+
+    private synchronized void scheduleBackgroundAnalysis(CharSequence content) {
+        if (!(mCodeAnalyzer instanceof BackgroundAnalyzer)) {
+            return;
+        }
+        cancelBackgroundAnalysis();
+        ProgressIndicator indicator = new ProgressIndicator();
+        mBackgroundIndicator = indicator;
+        mBackgroundFuture = getBackgroundExecutor().schedule(() ->
+                runBackgroundAnalysis(content, indicator), BACKGROUND_ANALYSIS_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    private void runBackgroundAnalysis(CharSequence content, ProgressIndicator indicator) {
+        BackgroundAnalyzer<?> analyzer = (BackgroundAnalyzer<?>) mCodeAnalyzer;
+        try {
+            ProgressManager.getInstance().runProcess(() -> {
+                Object result = analyzer.analyzeInBackground(content);
+                indicator.checkCanceled();
+                mBackgroundResult = result;
+            }, indicator);
+        } catch (ProcessCanceledException e) {
+            return;
+        } catch (Throwable e) {
+            Log.w("TextAnalyzer", "Background analysis failed", e);
+            return;
+        }
+        synchronized (this) {
+            if (indicator.isCanceled() || mContent == null) {
+                // the text has been modified, the next pass will apply the result
+                return;
+            }
+            restart(mContent);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void applyBackgroundResult(TextAnalyzeResult colors) {
+        Object result = mBackgroundResult;
+        if (result == null || !colors.determined || !(mCodeAnalyzer instanceof BackgroundAnalyzer)) {
+            return;
+        }
+        try {
+            ((BackgroundAnalyzer<Object>) mCodeAnalyzer).applyBackgroundResult(result, colors);
+        } catch (RuntimeException e) {
+            Log.w("TextAnalyzer", "Unable to apply the result of the background analysis", e);
+        }
+    }
+
     /**
      * Get analysis result
      *
@@ -195,9 +302,10 @@ public class TextAnalyzer {
                     TextAnalyzeResult colors = new TextAnalyzeResult();
                     Delegate d = new Delegate();
                     mOpStartTime = System.currentTimeMillis();
+                    StringBuilder c;
                     do {
                         waiting = false;
-                        StringBuilder c = content.toStringBuilder();
+                        c = content.toStringBuilder();
                         codeAnalyzer.analyze(c, colors, d);
                         if (waiting) {
                             colors.mSpanMap.clear();
@@ -210,6 +318,7 @@ public class TextAnalyzer {
                         }
                     } while (waiting);
 
+                    applyBackgroundResult(colors);
                     mObjContainer.blockLines = mResult.mBlocks;
                     mObjContainer.spanMap = mResult.mSpanMap;
                     mResult = colors;
@@ -221,6 +330,10 @@ public class TextAnalyzer {
                         e.printStackTrace();
                     }
 
+                    if (mBackgroundRequested.getAndSet(false)) {
+                        scheduleBackgroundAnalysis(c);
+                    }
+
                     try {
                         synchronized (lock) {
                             lock.wait();
@@ -4974,6 +4974,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
     public void afterInsert(Content content, int startLine, int startColumn, int endLine, int endColumn, CharSequence insertedContent) {
         // Update spans
         if (isSpanMapPrepared(true, endLine - startLine)) {
+            mSpanner.getResult().detachLines(startLine, startLine);
             if (startLine == endLine) {
                 SpanMapUpdater.shiftSpansOnSingleLineInsert(mSpanner.getResult().getSpanMap(), startLine, startColumn, endColumn);
             } else {
@@ -5037,6 +5038,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
     @Override
     public void afterDelete(Content content, int startLine, int startColumn, int endLine, int endColumn, CharSequence deletedContent) {
         if (isSpanMapPrepared(false, endLine - startLine)) {
+            mSpanner.getResult().detachLines(startLine, endLine);
             if (startLine == endLine) {
                 SpanMapUpdater.shiftSpansOnSingleLineDelete(mSpanner.getResult().getSpanMap(), startLine, startColumn, endColumn);
             } else {
@@ -0,0 +1,200 @@
+package io.github.rosemoe.sora.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import io.github.rosemoe.sora.data.BlockLine;
+import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.widget.EditorColorScheme;
+
+public class IncrementalLexerTest {
+
+    private static final String TEXT = "class Main {\n" +
+            "    /* a comment\n" +
+            "       on two lines */\n" +
+            "    void run() {\n" +
+            "        call(1, 2);\n" +
+            "    }\n" +
+            "}\n";
+
+    @Test
+    public void testUnmodifiedTextIsReused() {
+        IncrementalLexer<Integer> lexer = new IncrementalLexer<>(new ToyLexer());
+        TextAnalyzeResult first = new TextAnalyzeResult();
+        assertTrue(lexer.analyze(TEXT, first, null));
+        TextAnalyzeResult second = new TextAnalyzeResult();
+        assertTrue(lexer.analyze(TEXT, second, null));
+
+        for (int i = 0; i < first.getSpanMap().size(); i++) {
+            // the same span lists are shared between the results
+            assertTrue(first.getSpanMap().get(i) == second.getSpanMap().get(i));
+        }
+        assertEquals(describe(analyzeFully(TEXT)), describe(second));
+    }
+
+    @Test
+    public void testOpeningComment() {
+        IncrementalLexer<Integer> lexer = new IncrementalLexer<>(new ToyLexer());
+        lexer.analyze(TEXT, new TextAnalyzeResult(), null);
+
+        // every line after the start of the comment becomes a comment
+        String edited = TEXT.replace("void run", "/* void run");
+        TextAnalyzeResult result = new TextAnalyzeResult();
+        assertTrue(lexer.analyze(edited, result, null));
+        assertEquals(describe(analyzeFully(edited)), describe(result));
+
+        // and back
+        result = new TextAnalyzeResult();
+        assertTrue(lexer.analyze(TEXT, result, null));
+        assertEquals(describe(analyzeFully(TEXT)), describe(result));
+    }
+
+    @Test
+    public void testRandomEdits() {
+        String[] insertions = {"/*", "*/", "{", "}", "\n", "class", " ", "x", "\n}\n"};
+        Random random = new Random(7);
+        IncrementalLexer<Integer> lexer = new IncrementalLexer<>(new ToyLexer());
+        StringBuilder text = new StringBuilder(TEXT);
+        for (int i = 0; i < 500; i++) {
+            int position = random.nextInt(text.length() + 1);
+            if (random.nextInt(3) == 0 && position < text.length()) {
+                text.delete(position, Math.min(text.length(),
+                        position + 1 + random.nextInt(4)));
+            } else {
+                text.insert(position, insertions[random.nextInt(insertions.length)]);
+            }
+
+            TextAnalyzeResult result = new TextAnalyzeResult();
+            assertTrue(lexer.analyze(text, result, null));
+            assertEquals("After edit " + i + " of:\n" + text,
+                    describe(analyzeFully(text)), describe(result));
+        }
+    }
+
+    private static TextAnalyzeResult analyzeFully(CharSequence text) {
+        TextAnalyzeResult result = new TextAnalyzeResult();
+        new IncrementalLexer<>(new ToyLexer()).analyze(text, result, null);
+        return result;
+    }
+
+    private static String describe(TextAnalyzeResult result) {
+        StringBuilder builder = new StringBuilder();
+        List<List<Span>> spanMap = result.getSpanMap();
+        for (int line = 0; line < spanMap.size(); line++) {
+            builder.append(line).append(':');
+            for (Span span : spanMap.get(line)) {
+                builder.append(' ').append(span.column).append('=').append(span.colorId);
+            }
+            builder.append('\n');
+        }
+        for (BlockLine block : result.getBlocks()) {
+            builder.append("block ").append(block.startLine).append(',')
+                    .append(block.startColumn).append(" - ").append(block.endLine).append(',')
+                    .append(block.endColumn).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Lexes keywords, identifiers, braces and block comments. The state is whether the lexer
+     * is inside a comment, comments report a token at the start of each of their lines.
+     */
+    private static class ToyLexer implements IncrementalLexer.Lexer<Integer> {
+
+        private static final int NORMAL = 0;
+        private static final int IN_COMMENT = 1;
+
+        private int mState;
+
+        @Override
+        public Integer getInitialState() {
+            return NORMAL;
+        }
+
+        @Override
+        public Integer getState() {
+            return mState;
+        }
+
+        @Override
+        public void lex(CharSequence text, int offset, Integer state,
+                        IncrementalLexer.Session session) {
+            mState = state;
+            int length = text.length();
+            int i = offset;
+            while (i < length) {
+                char c = text.charAt(i);
+                if (mState == IN_COMMENT) {
+                    if (c == '\n') {
+                        i++;
+                        continue;
+                    }
+                    if (!session.nextToken(i)) {
+                        return;
+                    }
+                    session.addIfNeeded(EditorColorScheme.COMMENT);
+                    while (i < length && text.charAt(i) != '\n') {
+                        if (startsWith(text, i, "*/")) {
+                            i += 2;
+                            mState = NORMAL;
+                            break;
+                        }
+                        i++;
+                    }
+                    continue;
+                }
+                if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                }
+                if (!session.nextToken(i)) {
+                    return;
+                }
+                if (startsWith(text, i, "/*")) {
+                    session.addIfNeeded(EditorColorScheme.COMMENT);
+                    mState = IN_COMMENT;
+                    i += 2;
+                } else if (Character.isLetter(c)) {
+                    int start = i;
+                    while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                        i++;
+                    }
+                    // the lexer reads one character after the identifier
+                    session.setReadEnd(Math.min(length, i + 1));
+                    boolean keyword = text.subSequence(start, i).toString().equals("class");
+                    session.addIfNeeded(keyword ? EditorColorScheme.KEYWORD :
+                            EditorColorScheme.IDENTIFIER_NAME);
+                } else if (c == '{') {
+                    session.addIfNeeded(EditorColorScheme.OPERATOR);
+                    session.startBlock(session.getLine(), session.getColumn());
+                    i++;
+                } else if (c == '}') {
+                    session.addIfNeeded(EditorColorScheme.OPERATOR);
+                    session.endBlock(session.getLine(), session.getColumn(), false);
+                    i++;
+                } else {
+                    session.addIfNeeded(Character.isDigit(c) ? EditorColorScheme.LITERAL :
+                            EditorColorScheme.OPERATOR);
+                    i++;
+                }
+            }
+        }
+
+        private static boolean startsWith(CharSequence text, int offset, String prefix) {
+            if (offset + prefix.length() > text.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (text.charAt(offset + i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -8,6 +8,7 @@ public class SharedPreferenceKeys {
     public static final String FONT_SIZE = "font_size";
     public static final String CLASSPATH = "classpath";
     public static final String KOTLIN_COMPLETIONS = "experimental_kotlin_completions";
+    public static final String KOTLIN_COMPILER_POOL_SIZE = "kotlinCompilerPoolSize";
     public static final String INSTALL_APK_DIRECTLY = "install_apk_directly";
     public static final String JAVA_COMPLETIONS_TARGET_VERSION = "javaCompletionsTargetVersion";
     public static final String JAVA_COMPLETIONS_SOURCE_VERSION = "javaCompletionsSourceVersion";
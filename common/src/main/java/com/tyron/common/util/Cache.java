@@ -1,17 +1,76 @@
 package com.tyron.common.util;
 
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.WeakHashMap;
 
-/** Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires. */
+/**
+ * Cache maps a file + an arbitrary key to a value. When the file is modified, all the mappings
+ * of the file expire.
+ *
+ * Lookups of tracked files do not touch the file system, the values of a file are removed
+ * when the file is reported through {@link #onFileChanged(Path)}. Files that nothing reports,
+ * such as generated sources, have their modification time checked on lookup. Files that can
+ * be modified by other tools can also be checked with {@link #invalidateModified()} once
+ * before they are looked up.
+ *
+ * The cache is bounded by the total weight of its values, the values of the least recently
+ * used file are evicted first.
+ */
 public class Cache<K, V> {
+
+    /**
+     * Computes the weight of a value, by default every value weighs 1.
+     */
+    public interface Weigher<K, V> {
+        int weigh(Path file, K key, V value);
+    }
+
+    /**
+     * Tells whether the changes of a file are reported through {@link #onFileChanged(Path)}
+     */
+    public interface Tracker {
+        boolean isTracked(Path file);
+    }
+
+    public static final long DEFAULT_MAX_WEIGHT = 50_000;
+
+    private static final Set<Cache<?, ?>> sCaches =
+            Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * Until a tracker is set no file is reported, so all of them are checked on lookup
+     */
+    private static volatile Tracker sTracker = file -> false;
+
+    public static void setTracker(Tracker tracker) {
+        sTracker = tracker;
+    }
+
+    /**
+     * Removes the values of the file from all the caches, called whenever the contents of
+     * the file have changed or the file has been deleted.
+     */
+    public static void onFileChanged(Path file) {
+        List<Cache<?, ?>> caches;
+        synchronized (sCaches) {
+            caches = new ArrayList<>(sCaches);
+        }
+        for (Cache<?, ?> cache : caches) {
+            cache.invalidate(file);
+        }
+    }
+
     public static class Key<K> {
         public final Path file;
         public final K key;
@@ -36,65 +95,218 @@ public class Cache<K, V> {
 
     private class Value {
         final V value;
-        final Instant created = Instant.now();
+        final int weight;
 
-        Value(V value) {
+        Value(V value, int weight) {
             this.value = value;
+            this.weight = weight;
         }
     }
 
-    private final Map<Key<K>, Value> map = new HashMap<>();
+    /**
+     * The values of a single file
+     */
+    private class Group {
+        final long modified;
+        final boolean tracked;
+        final Map<K, Value> values = new HashMap<>(2);
+        long weight;
+
+        Group(long modified, boolean tracked) {
+            this.modified = modified;
+            this.tracked = tracked;
+        }
+    }
+
+    private final Map<Path, Group> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxWeight;
+    private final Weigher<K, V> weigher;
+    private long weight;
+
+    private int hits;
+    private int misses;
+    private int evictions;
+    private int invalidations;
+
+    public Cache() {
+        this(DEFAULT_MAX_WEIGHT, (file, key, value) -> 1);
+    }
+
+    public Cache(long maxWeight, Weigher<K, V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        synchronized (sCaches) {
+            sCaches.add(this);
+        }
+    }
 
     public boolean has(Path file, K k) {
         return !needs(file, k);
     }
 
-    public void clear() {
+    public synchronized void clear() {
         map.clear();
+        weight = 0;
     }
 
-    public boolean needs(Path file, K k) {
-        // If key is not in map, it needs to be loaded
-        Key<K> key = new Key<>(file, k);
-        if (!map.containsKey(key)) return true;
-
-        // If key was loaded before file was last modified, it needs to be reloaded
-        Value value = map.get(key);
-        FileTime modified = null;
-        try {
-            modified = Files.getLastModifiedTime(file);
-        } catch (IOException e) {
-            modified = FileTime.from(Instant.now());
+    public synchronized boolean needs(Path file, K k) {
+        Group group = getGroup(file);
+        if (group != null && group.values.containsKey(k)) {
+            hits++;
+            return false;
         }
-        // TODO remove all keys associated with file when file changes
-        boolean before = value.created.isBefore(modified.toInstant());
-        return before;
+        misses++;
+        return true;
     }
 
     @SafeVarargs
-    public final void remove(Path file, K... keys) {
+    public final synchronized void remove(Path file, K... keys) {
+        Group group = map.get(file);
+        if (group == null) {
+            return;
+        }
         for (K k : keys) {
-            Key<K> key = new Key<>(file, k);
-            map.remove(key);
+            Value value = group.values.remove(k);
+            if (value != null) {
+                group.weight -= value.weight;
+                weight -= value.weight;
+            }
+        }
+        if (group.values.isEmpty()) {
+            map.remove(file);
         }
     }
 
-    public Set<Key<K>> getKeys() {
-        return map.keySet();
+    /**
+     * @return the values of the file, after removing them if the file is not tracked and has
+     * been modified since they were loaded. Like {@link #invalidateModified()}, the values
+     * of a deleted file are kept.
+     */
+    private Group getGroup(Path file) {
+        Group group = map.get(file);
+        if (group == null || group.tracked) {
+            return group;
+        }
+        long modified = file.toFile().lastModified();
+        if (modified != 0 && modified != group.modified) {
+            invalidate(file);
+            return null;
+        }
+        return group;
     }
 
-    public void load(Path file, K k, V v) {
-        // TODO limit total size of cache
-        Key<K> key = new Key<>(file, k);
-        Value value = new Value(v);
-        map.put(key, value);
+    /**
+     * Removes all the values of the file
+     */
+    public synchronized void invalidate(Path file) {
+        Group group = map.remove(file);
+        if (group != null) {
+            weight -= group.weight;
+            invalidations++;
+        }
+    }
+
+    /**
+     * Removes the values of the files that have been modified since their values were loaded.
+     * Files that no longer exist are kept so the caller can still clean up after them.
+     */
+    public synchronized void invalidateModified() {
+        Iterator<Map.Entry<Path, Group>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Group> entry = iterator.next();
+            long modified = entry.getKey().toFile().lastModified();
+            if (modified != 0 && modified != entry.getValue().modified) {
+                iterator.remove();
+                weight -= entry.getValue().weight;
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * @return a snapshot of the keys in this cache
+     */
+    public synchronized Set<Key<K>> getKeys() {
+        Set<Key<K>> keys = new HashSet<>();
+        for (Map.Entry<Path, Group> entry : map.entrySet()) {
+            for (K k : entry.getValue().values.keySet()) {
+                keys.add(new Key<>(entry.getKey(), k));
+            }
+        }
+        return keys;
+    }
+
+    public synchronized void load(Path file, K k, V v) {
+        Group group = map.get(file);
+        if (group == null) {
+            group = new Group(file.toFile().lastModified(), sTracker.isTracked(file));
+            map.put(file, group);
+        }
+        Value value = new Value(v, weigher.weigh(file, k, v));
+        Value previous = group.values.put(k, value);
+        if (previous != null) {
+            group.weight -= previous.weight;
+            weight -= previous.weight;
+        }
+        group.weight += value.weight;
+        weight += value.weight;
+
+        // the file that was just loaded is the most recently used one and is always kept
+        Iterator<Group> iterator = map.values().iterator();
+        while (weight > maxWeight && map.size() > 1) {
+            Group eldest = iterator.next();
+            iterator.remove();
+            weight -= eldest.weight;
+            evictions++;
+        }
+    }
+
+    /**
+     * @return the value of the key, or null if it is not in the cache
+     */
+    public synchronized V getIfPresent(Path file, K k) {
+        Group group = getGroup(file);
+        Value value = group == null ? null : group.values.get(k);
+        if (value == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return value.value;
     }
 
-    public V get(Path file, K k) {
-        Key<K> key = new Key<>(file, k);
-        if (!map.containsKey(key)) {
-            throw new IllegalArgumentException(k + " is not in map " + map);
+    public synchronized V get(Path file, K k) {
+        Group group = map.get(file);
+        if (group == null || !group.values.containsKey(k)) {
+            throw new IllegalArgumentException(k + " is not in cache for " + file);
         }
-        return (V) map.get(key).value;
+        return group.values.get(k).value;
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    public synchronized int getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized int getInvalidationCount() {
+        return invalidations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ENGLISH,
+                "Cache[files=%d, weight=%d, hits=%d, misses=%d, evictions=%d, invalidations=%d]",
+                map.size(), weight, hits, misses, evictions, invalidations);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,296 @@
+package com.tyron.common.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a zip file and gives access to the compressed data of its
+ * entries, so they can be copied to another archive without inflating and deflating them again.
+ *
+ * Zip64 archives are not supported.
+ */
+public class RawZipFile implements Closeable {
+
+    public static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    public static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    public static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+    public static final int LOCAL_HEADER_SIZE = 30;
+    public static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    public static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+    public static final int FLAG_ENCRYPTED = 1;
+    public static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    public static final int FLAG_UTF8 = 1 << 11;
+
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    public static class Entry {
+        public final String name;
+        public final int flags;
+        public final int method;
+        public final long crc;
+        public final long compressedSize;
+        public final long size;
+        public final long localHeaderOffset;
+
+        Entry(String name, int flags, int method, long crc, long compressedSize, long size,
+              long localHeaderOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    private final File mFile;
+    private final FileChannel mChannel;
+    private final Map<String, Entry> mEntries;
+    private long mDirectoryOffset;
+    private long mDirectorySize;
+
+    public RawZipFile(@NonNull File file) throws IOException {
+        mFile = file;
+        mChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            mEntries = readCentralDirectory();
+        } catch (IOException | RuntimeException e) {
+            mChannel.close();
+            throw e;
+        }
+    }
+
+    @NonNull
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return the entries in the order they appear in the central directory
+     */
+    @NonNull
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(mEntries.values()));
+    }
+
+    @Nullable
+    public Entry getEntry(@NonNull String name) {
+        return mEntries.get(name);
+    }
+
+    public long getCentralDirectoryOffset() {
+        return mDirectoryOffset;
+    }
+
+    public long getCentralDirectorySize() {
+        return mDirectorySize;
+    }
+
+    /**
+     * @return a stream of the uncompressed contents of the entry
+     */
+    @NonNull
+    public InputStream getInputStream(@NonNull Entry entry) throws IOException {
+        InputStream input = new EntryInputStream(getDataOffset(entry), entry.compressedSize);
+        switch (entry.method) {
+            case ZipEntry.STORED:
+                return input;
+            case ZipEntry.DEFLATED:
+                // inflaters are pooled, each one holds native memory
+                return new InflaterInputStream(input, ZipArchiver.obtainInflater(),
+                        BUFFER_SIZE) {
+                    private boolean mClosed;
+
+                    @Override
+                    public void close() throws IOException {
+                        if (mClosed) {
+                            return;
+                        }
+                        mClosed = true;
+                        super.close();
+                        ZipArchiver.releaseInflater(inf);
+                    }
+                };
+            default:
+                throw new ZipException("Unsupported compression method " + entry.method +
+                        " of " + entry.name);
+        }
+    }
+
+    /**
+     * Copies the compressed data of the entry to the given channel as is
+     */
+    public void transferRaw(@NonNull Entry entry, @NonNull WritableByteChannel target)
+            throws IOException {
+        long position = getDataOffset(entry);
+        long remaining = entry.compressedSize;
+        while (remaining > 0) {
+            long transferred = mChannel.transferTo(position, remaining, target);
+            if (transferred <= 0) {
+                throw new ZipException("Unexpected end of " + mFile + " in " + entry.name);
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    private long getDataOffset(Entry entry) throws IOException {
+        ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.name + " in " + mFile);
+        }
+        int nameLength = header.getShort(26) & 0xffff;
+        int extraLength = header.getShort(28) & 0xffff;
+        return entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    private Map<String, Entry> readCentralDirectory() throws IOException {
+        long size = mChannel.size();
+        if (size < END_OF_CENTRAL_DIRECTORY_SIZE) {
+            throw new ZipException(mFile + " is not a zip file");
+        }
+
+        // the end of central directory record is followed by a comment of unknown length
+        int tailSize = (int) Math.min(size, MAX_COMMENT_SIZE + END_OF_CENTRAL_DIRECTORY_SIZE);
+        ByteBuffer tail = read(size - tailSize, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd == -1) {
+            throw new ZipException("End of central directory not found in " + mFile);
+        }
+        int count = tail.getShort(eocd + 10) & 0xffff;
+        long directorySize = tail.getInt(eocd + 12) & 0xffffffffL;
+        long directoryOffset = tail.getInt(eocd + 16) & 0xffffffffL;
+        if (count == 0xffff || directoryOffset == 0xffffffffL) {
+            throw new ZipException("Zip64 is not supported: " + mFile);
+        }
+        if (directoryOffset + directorySize > size) {
+            throw new ZipException("Invalid central directory in " + mFile);
+        }
+
+        mDirectoryOffset = directoryOffset;
+        mDirectorySize = directorySize;
+
+        ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        Map<String, Entry> entries = new LinkedHashMap<>(count);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (directory.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry in " + mFile);
+            }
+            int flags = directory.getShort(position + 8) & 0xffff;
+            int method = directory.getShort(position + 10) & 0xffff;
+            long crc = directory.getInt(position + 16) & 0xffffffffL;
+            long compressedSize = directory.getInt(position + 20) & 0xffffffffL;
+            long uncompressedSize = directory.getInt(position + 24) & 0xffffffffL;
+            int nameLength = directory.getShort(position + 28) & 0xffff;
+            int extraLength = directory.getShort(position + 30) & 0xffff;
+            int commentLength = directory.getShort(position + 32) & 0xffff;
+            long localHeaderOffset = directory.getInt(position + 42) & 0xffffffffL;
+            if (compressedSize == 0xffffffffL || uncompressedSize == 0xffffffffL ||
+                    localHeaderOffset == 0xffffffffL) {
+                throw new ZipException("Zip64 is not supported: " + mFile);
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+            directory.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            entries.put(name, new Entry(name, flags, method, crc, compressedSize,
+                    uncompressedSize, localHeaderOffset));
+
+            position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            int read = mChannel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new ZipException("Unexpected end of " + mFile);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    /**
+     * Reads a region of the file without changing the position of the channel, so entries
+     * can be read while others are being transferred
+     */
+    private class EntryInputStream extends InputStream {
+
+        private long mPosition;
+        private long mRemaining;
+
+        EntryInputStream(long position, long length) {
+            mPosition = position;
+            mRemaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int length = (int) Math.min(len, mRemaining);
+            int read = mChannel.read(ByteBuffer.wrap(b, off, length), mPosition);
+            if (read < 0) {
+                throw new ZipException("Unexpected end of " + mFile);
+            }
+            mPosition += read;
+            mRemaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, mRemaining);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.tyron.common.util;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip file whose entries are either copied as is from another archive, transferred
+ * from a file, or deflated. The sizes and checksum of every entry are written in its local
+ * header, no data descriptors are used. Stored entries are aligned to {@link #ALIGNMENT} bytes
+ * like zipalign does, so they can be memory mapped from an installed APK.
+ *
+ * Zip64 archives are not supported.
+ */
+public class RawZipWriter implements Closeable {
+
+    public static final int ALIGNMENT = 4;
+
+    /**
+     * Entries written without a time use a fixed one so the output only depends on the
+     * inputs, 1981-01-01 00:00 in MS-DOS format
+     */
+    private static final int FIXED_TIME = ((1 << 9) | (1 << 5) | 1) << 16;
+
+    private static final int VERSION = 20;
+    private static final int ALIGNMENT_EXTRA_ID = 0xd935;
+    private static final long MAX_SIZE = 0xffffffffL;
+
+    private static class Record {
+        final byte[] name;
+        final int flags;
+        final int method;
+        final int time;
+        long crc;
+        long compressedSize;
+        long size;
+        final long offset;
+
+        Record(byte[] name, int flags, int method, int time, long offset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.time = time;
+            this.offset = offset;
+        }
+    }
+
+    private final FileChannel mChannel;
+    private final List<Record> mRecords = new ArrayList<>();
+    private final byte[] mBuffer = new byte[64 * 1024];
+    private final Deflater mDeflater;
+
+    public RawZipWriter(@NonNull File file, int compressionLevel) throws IOException {
+        mChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        mDeflater = new Deflater(compressionLevel, true);
+    }
+
+    /**
+     * Copies the entry from the given archive without decompressing it
+     */
+    public void writeRaw(@NonNull String name, @NonNull RawZipFile source,
+                         @NonNull RawZipFile.Entry entry) throws IOException {
+        if ((entry.flags & RawZipFile.FLAG_ENCRYPTED) != 0) {
+            throw new ZipException("Encrypted entries are not supported: " + entry.name);
+        }
+        Record record = startEntry(name, entry.method, FIXED_TIME);
+        record.crc = entry.crc;
+        record.compressedSize = entry.compressedSize;
+        record.size = entry.size;
+        writeLocalHeader(record);
+        source.transferRaw(entry, mChannel);
+    }
+
+    /**
+     * Deflates the contents of the file to a new entry
+     */
+    public void writeDeflated(@NonNull String name, @NonNull File file) throws IOException {
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            writeDeflated(name, input, FIXED_TIME);
+        }
+    }
+
+    /**
+     * Deflates the contents of the file to a new entry with the given modification time
+     */
+    public void writeDeflated(@NonNull String name, @NonNull File file, long time)
+            throws IOException {
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            writeDeflated(name, input, toDosTime(time));
+        }
+    }
+
+    public void writeDeflated(@NonNull String name, @NonNull byte[] data) throws IOException {
+        writeDeflated(name, new ByteArrayInputStream(data), FIXED_TIME);
+    }
+
+    /**
+     * Writes an entry whose contents have already been deflated
+     *
+     * @param crc  the checksum of the uncompressed contents
+     * @param size the size of the uncompressed contents
+     */
+    public void writeDeflated(@NonNull String name, long time, long crc, long size,
+                              @NonNull byte[] deflated) throws IOException {
+        if (size > MAX_SIZE) {
+            throw new ZipException("Zip64 is not supported: " + name);
+        }
+        Record record = startEntry(name, ZipEntry.DEFLATED, toDosTime(time));
+        record.crc = crc;
+        record.compressedSize = deflated.length;
+        record.size = size;
+        writeLocalHeader(record);
+        writeFully(ByteBuffer.wrap(deflated));
+    }
+
+    /**
+     * Transfers the file to a stored entry without copying it through the heap
+     *
+     * @param crc  the checksum of the contents of the file
+     * @param size the size of the file when the checksum was computed
+     */
+    public void writeStored(@NonNull String name, @NonNull File file, long time, long crc,
+                            long size) throws IOException {
+        if (size > MAX_SIZE) {
+            throw new ZipException("Zip64 is not supported: " + name);
+        }
+        Record record = startEntry(name, ZipEntry.STORED, toDosTime(time));
+        record.crc = crc;
+        record.compressedSize = size;
+        record.size = size;
+        writeLocalHeader(record);
+        try (FileChannel input = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < size) {
+                long transferred = input.transferTo(position, size - position, mChannel);
+                if (transferred <= 0) {
+                    throw new IOException(file + " was modified while zipping");
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    /**
+     * @param name the name of the directory, ending with a slash
+     */
+    public void writeDirectory(@NonNull String name, long time) throws IOException {
+        writeLocalHeader(startEntry(name, ZipEntry.STORED, toDosTime(time)));
+    }
+
+    private void writeDeflated(String name, InputStream input, int time) throws IOException {
+        Record record = startEntry(name, ZipEntry.DEFLATED, time);
+        // the header is written again once the sizes are known
+        writeLocalHeader(record);
+        long dataOffset = mChannel.position();
+
+        CRC32 crc = new CRC32();
+        mDeflater.reset();
+        OutputStream output = new DeflaterOutputStream(Channels.newOutputStream(mChannel),
+                mDeflater, mBuffer.length);
+        int read;
+        while ((read = input.read(mBuffer)) != -1) {
+            crc.update(mBuffer, 0, read);
+            output.write(mBuffer, 0, read);
+        }
+        // finishes the deflater without closing the channel
+        ((DeflaterOutputStream) output).finish();
+        output.flush();
+
+        record.crc = crc.getValue();
+        record.size = mDeflater.getBytesRead();
+        record.compressedSize = mChannel.position() - dataOffset;
+        if (record.size > MAX_SIZE || record.compressedSize > MAX_SIZE) {
+            throw new ZipException("Zip64 is not supported: " + name);
+        }
+        long end = mChannel.position();
+        mChannel.position(record.offset);
+        writeLocalHeader(record);
+        mChannel.position(end);
+    }
+
+    private Record startEntry(String name, int method, int time) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int flags = isAscii(nameBytes) ? 0 : RawZipFile.FLAG_UTF8;
+        long offset = mChannel.position();
+        if (offset > MAX_SIZE) {
+            throw new ZipException("Zip64 is not supported: " + name);
+        }
+        Record record = new Record(nameBytes, flags, method, time, offset);
+        mRecords.add(record);
+        return record;
+    }
+
+    private void writeLocalHeader(Record record) throws IOException {
+        int padding = 0;
+        if (record.method == ZipEntry.STORED) {
+            long dataOffset = record.offset + RawZipFile.LOCAL_HEADER_SIZE + record.name.length;
+            // the extra field itself takes 6 bytes
+            padding = (int) ((ALIGNMENT - (dataOffset + 6) % ALIGNMENT) % ALIGNMENT);
+        }
+        int extraLength = record.method == ZipEntry.STORED ? 6 + padding : 0;
+
+        ByteBuffer header = ByteBuffer.allocate(RawZipFile.LOCAL_HEADER_SIZE +
+                record.name.length + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(RawZipFile.LOCAL_HEADER_SIGNATURE);
+        putCommonFields(header, record);
+        header.putShort((short) extraLength);
+        header.put(record.name);
+        if (extraLength > 0) {
+            header.putShort((short) ALIGNMENT_EXTRA_ID);
+            header.putShort((short) (2 + padding));
+            header.putShort((short) ALIGNMENT);
+            header.put(new byte[padding]);
+        }
+        header.flip();
+        writeFully(header);
+    }
+
+    /**
+     * The fields from the version needed to extract up to the length of the name, which
+     * are the same in the local header and the central directory
+     */
+    private static void putCommonFields(ByteBuffer buffer, Record record) {
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) record.flags);
+        buffer.putShort((short) record.method);
+        buffer.putInt(record.time);
+        buffer.putInt((int) record.crc);
+        buffer.putInt((int) record.compressedSize);
+        buffer.putInt((int) record.size);
+        buffer.putShort((short) record.name.length);
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long directoryOffset = mChannel.position();
+        for (Record record : mRecords) {
+            ByteBuffer header = ByteBuffer.allocate(RawZipFile.CENTRAL_DIRECTORY_HEADER_SIZE +
+                    record.name.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(RawZipFile.CENTRAL_DIRECTORY_SIGNATURE);
+            header.putShort((short) VERSION);
+            putCommonFields(header, record);
+            // extra, comment, disk number, internal and external attributes
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putInt(0);
+            header.putInt((int) record.offset);
+            header.put(record.name);
+            header.flip();
+            writeFully(header);
+        }
+        long directorySize = mChannel.position() - directoryOffset;
+        if (mRecords.size() >= 0xffff || mChannel.position() > MAX_SIZE) {
+            throw new ZipException("Zip64 is not supported");
+        }
+
+        ByteBuffer eocd = ByteBuffer.allocate(RawZipFile.END_OF_CENTRAL_DIRECTORY_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        eocd.putInt(RawZipFile.END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        eocd.putShort((short) 0);
+        eocd.putShort((short) 0);
+        eocd.putShort((short) mRecords.size());
+        eocd.putShort((short) mRecords.size());
+        eocd.putInt((int) directorySize);
+        eocd.putInt((int) directoryOffset);
+        eocd.putShort((short) 0);
+        eocd.flip();
+        writeFully(eocd);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            mChannel.write(buffer);
+        }
+    }
+
+    private static boolean isAscii(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the time and date in MS-DOS format, the time in the low 16 bits
+     */
+    private static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            // the earliest date that can be represented, 1980-01-01
+            return (1 << 21) | (1 << 16);
+        }
+        return ((year - 1980) << 25) |
+                ((calendar.get(Calendar.MONTH) + 1) << 21) |
+                (calendar.get(Calendar.DAY_OF_MONTH) << 16) |
+                (calendar.get(Calendar.HOUR_OF_DAY) << 11) |
+                (calendar.get(Calendar.MINUTE) << 5) |
+                (calendar.get(Calendar.SECOND) >> 1);
+    }
+
+    /**
+     * Writes the central directory and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writeCentralDirectory();
+        } finally {
+            mDeflater.end();
+            mChannel.close();
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package com.tyron.common.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Creates and extracts zip files using more than one core. Entries are independent of each
+ * other, so they are deflated and inflated in parallel and only written to the archive in order.
+ * Stored entries are transferred between the files without copying them through the heap.
+ *
+ * Deflaters and inflaters hold native memory, they are pooled instead of being created for
+ * every entry. Zip64 archives are not supported.
+ */
+public class ZipArchiver {
+
+    private static final int THREADS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int MAX_POOLED = THREADS * 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Files larger than this are deflated on the writing thread instead of being held in
+     * memory until their turn to be written comes
+     */
+    private static final long STREAM_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Files that are already compressed, deflating them again only costs time
+     */
+    private static final Set<String> STORED_EXTENSIONS = new HashSet<>(Arrays.asList("jpg",
+            "jpeg", "png", "gif", "webp", "wav", "mp2", "mp3", "ogg", "aac", "mpg", "mpeg", "mid",
+            "midi", "mp4", "m4a", "m4v", "3gp", "3gpp", "amr", "wma", "wmv", "webm", "mkv", "zip",
+            "jar", "apk", "aab", "gz", "xz", "7z"));
+
+    public interface FailureListener {
+        /**
+         * Called when an entry could not be extracted, the other entries are still extracted
+         */
+        void onFailure(@NonNull String name, @NonNull IOException e);
+    }
+
+    private static final Queue<Deflater> sDeflaters = new ConcurrentLinkedQueue<>();
+    private static final Queue<Inflater> sInflaters = new ConcurrentLinkedQueue<>();
+
+    static Deflater obtainDeflater() {
+        Deflater deflater = sDeflaters.poll();
+        if (deflater == null) {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        return deflater;
+    }
+
+    static void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        if (sDeflaters.size() < MAX_POOLED) {
+            sDeflaters.offer(deflater);
+        } else {
+            deflater.end();
+        }
+    }
+
+    static Inflater obtainInflater() {
+        Inflater inflater = sInflaters.poll();
+        if (inflater == null) {
+            return new Inflater(true);
+        }
+        return inflater;
+    }
+
+    static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (sInflaters.size() < MAX_POOLED) {
+            sInflaters.offer(inflater);
+        } else {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Zips every file inside the directory, the names of the entries are relative to it.
+     * Directories are not added as separate entries.
+     */
+    public static void zipDirectory(@NonNull File directory, @NonNull File output)
+            throws IOException {
+        try (Writer writer = new Writer(output)) {
+            addFiles(writer, directory, "");
+        }
+    }
+
+    private static void addFiles(Writer writer, File directory, String prefix)
+            throws IOException {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                addFiles(writer, child, prefix + child.getName() + "/");
+            } else {
+                writer.addFile(prefix + child.getName(), child, child.lastModified());
+            }
+        }
+    }
+
+    /**
+     * Extracts the zip file to the destination directory, entries are inflated in parallel.
+     * The extraction stops at the first entry that cannot be extracted.
+     *
+     * @param overwrite whether files that already exist in the destination are replaced
+     */
+    public static void unzip(@NonNull File zip, @NonNull File destination, boolean overwrite)
+            throws IOException {
+        unzip(zip, destination, overwrite, null);
+    }
+
+    /**
+     * Extracts the zip file to the destination directory, entries are inflated in parallel
+     *
+     * @param overwrite whether files that already exist in the destination are replaced
+     * @param listener  if not null, entries that cannot be extracted are reported to it and
+     *                  skipped instead of stopping the extraction
+     */
+    public static void unzip(@NonNull File zip, @NonNull File destination, boolean overwrite,
+                             @Nullable FailureListener listener) throws IOException {
+        createDirectory(destination);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try (RawZipFile zipFile = new RawZipFile(zip)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (RawZipFile.Entry entry : zipFile.getEntries()) {
+                if (THREADS == 1) {
+                    // handing the entries to another thread only adds overhead
+                    extract(zipFile, entry, destination, overwrite, listener);
+                    continue;
+                }
+                futures.add(executor.submit(() -> {
+                    extract(zipFile, entry, destination, overwrite, listener);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                getResult(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts a zip that can only be read as a stream, such as an asset. The entries are
+     * inflated one after the other. The extraction stops at the first entry that cannot be
+     * extracted.
+     *
+     * @param overwrite whether files that already exist in the destination are replaced
+     */
+    public static void unzip(@NonNull InputStream stream, @NonNull File destination,
+                             boolean overwrite) throws IOException {
+        unzip(stream, destination, overwrite, null);
+    }
+
+    /**
+     * Extracts a zip that can only be read as a stream, such as an asset. The entries are
+     * inflated one after the other.
+     *
+     * @param overwrite whether files that already exist in the destination are replaced
+     * @param listener  if not null, entries that cannot be written are reported to it and
+     *                  skipped instead of stopping the extraction. A stream that cannot be
+     *                  read still stops it.
+     */
+    public static void unzip(@NonNull InputStream stream, @NonNull File destination,
+                             boolean overwrite, @Nullable FailureListener listener)
+            throws IOException {
+        createDirectory(destination);
+        ZipInputStream input = new ZipInputStream(stream);
+        ZipEntry entry;
+        while ((entry = input.getNextEntry()) != null) {
+            try {
+                File target = resolve(destination, entry.getName());
+                if (entry.isDirectory()) {
+                    createDirectory(target);
+                    continue;
+                }
+                if (!overwrite && target.exists()) {
+                    continue;
+                }
+                createDirectory(target.getParentFile());
+                Files.copy(input, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                if (listener == null) {
+                    throw e;
+                }
+                listener.onFailure(entry.getName(), e);
+            }
+        }
+    }
+
+    private static void extract(RawZipFile zipFile, RawZipFile.Entry entry, File destination,
+                                boolean overwrite, @Nullable FailureListener listener)
+            throws IOException {
+        try {
+            File target = resolve(destination, entry.name);
+            if (entry.isDirectory()) {
+                createDirectory(target);
+                return;
+            }
+            if (!overwrite && target.exists()) {
+                return;
+            }
+            extract(zipFile, entry, target);
+        } catch (IOException e) {
+            if (listener == null) {
+                throw e;
+            }
+            listener.onFailure(entry.name, e);
+        }
+    }
+
+    private static void extract(RawZipFile zipFile, RawZipFile.Entry entry, File target)
+            throws IOException {
+        createDirectory(target.getParentFile());
+        if (entry.method == ZipEntry.STORED) {
+            try (FileChannel output = FileChannel.open(target.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                zipFile.transferRaw(entry, output);
+            }
+            return;
+        }
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            Files.copy(input, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Entries must not be extracted outside of the destination directory
+     */
+    private static File resolve(File destination, String name) throws IOException {
+        File target = new File(destination, name);
+        String root = destination.getCanonicalPath() + File.separator;
+        if (!target.getCanonicalPath().startsWith(root)) {
+            throw new ZipException("Entry " + name + " is outside of " + destination);
+        }
+        return target;
+    }
+
+    private static void createDirectory(File directory) throws IOException {
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs() &&
+                !directory.isDirectory()) {
+            throw new IOException("Failed to create directory " + directory);
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    /**
+     * Writes a zip file whose entries are compressed in parallel. Entries are written in the
+     * order they were added, at most a few of them are kept in memory at a time. Files larger
+     * than {@link #STREAM_THRESHOLD} are deflated while they are written instead, so the memory
+     * used does not depend on the size of the files.
+     */
+    public static class Writer implements Closeable {
+
+        private static class PendingEntry {
+            String name;
+            int method;
+            long time;
+            long crc;
+            long size;
+            /**
+             * The deflated contents, or null if the contents are read from the file
+             */
+            byte[] data;
+            File file;
+        }
+
+        private final RawZipWriter mZip;
+        private final ExecutorService mExecutor = Executors.newFixedThreadPool(THREADS);
+        private final Deque<Future<PendingEntry>> mPending = new ArrayDeque<>();
+
+        public Writer(@NonNull File output) throws IOException {
+            mZip = new RawZipWriter(output, Deflater.DEFAULT_COMPRESSION);
+        }
+
+        /**
+         * @param name the name of the directory, ending with a slash
+         */
+        public void addDirectory(@NonNull String name, long time) throws IOException {
+            PendingEntry entry = createEntry(name, ZipEntry.STORED, time);
+            submit(() -> entry);
+        }
+
+        /**
+         * Adds the file to the archive, files that are already compressed are stored as is
+         */
+        public void addFile(@NonNull String name, @NonNull File file, long time)
+                throws IOException {
+            if (isCompressed(name)) {
+                PendingEntry entry = createEntry(name, ZipEntry.STORED, time);
+                entry.file = file;
+                submit(() -> checksum(entry));
+            } else if (file.length() > STREAM_THRESHOLD) {
+                PendingEntry entry = createEntry(name, ZipEntry.DEFLATED, time);
+                entry.file = file;
+                submit(() -> entry);
+            } else {
+                PendingEntry entry = createEntry(name, ZipEntry.DEFLATED, time);
+                submit(() -> deflate(entry, file));
+            }
+        }
+
+        private void submit(java.util.concurrent.Callable<PendingEntry> task)
+                throws IOException {
+            mPending.add(mExecutor.submit(task));
+            while (mPending.size() > THREADS * 2) {
+                write(getResult(mPending.poll()));
+            }
+        }
+
+        private static PendingEntry checksum(PendingEntry entry) throws IOException {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long size = 0;
+            try (InputStream input = Files.newInputStream(entry.file.toPath())) {
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                    size += read;
+                }
+            }
+            entry.crc = crc.getValue();
+            entry.size = size;
+            return entry;
+        }
+
+        private static PendingEntry deflate(PendingEntry entry, File file) throws IOException {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] output = new byte[BUFFER_SIZE];
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            Deflater deflater = obtainDeflater();
+            try (InputStream input = Files.newInputStream(file.toPath())) {
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                    deflater.setInput(buffer, 0, read);
+                    while (!deflater.needsInput()) {
+                        data.write(output, 0, deflater.deflate(output));
+                    }
+                }
+                deflater.finish();
+                while (!deflater.finished()) {
+                    data.write(output, 0, deflater.deflate(output));
+                }
+                entry.size = deflater.getBytesRead();
+            } finally {
+                releaseDeflater(deflater);
+            }
+            entry.crc = crc.getValue();
+            entry.data = data.toByteArray();
+            return entry;
+        }
+
+        private void write(PendingEntry entry) throws IOException {
+            if (entry.data != null) {
+                mZip.writeDeflated(entry.name, entry.time, entry.crc, entry.size, entry.data);
+            } else if (entry.file == null) {
+                mZip.writeDirectory(entry.name, entry.time);
+            } else if (entry.method == ZipEntry.STORED) {
+                mZip.writeStored(entry.name, entry.file, entry.time, entry.crc, entry.size);
+            } else {
+                mZip.writeDeflated(entry.name, entry.file, entry.time);
+            }
+        }
+
+        /**
+         * Writes the remaining entries and the central directory
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                while (!mPending.isEmpty()) {
+                    write(getResult(mPending.poll()));
+                }
+            } finally {
+                mExecutor.shutdownNow();
+                mZip.close();
+            }
+        }
+
+        private static PendingEntry createEntry(String name, int method, long time) {
+            PendingEntry entry = new PendingEntry();
+            entry.name = name;
+            entry.method = method;
+            entry.time = time;
+            return entry;
+        }
+
+        private static boolean isCompressed(String name) {
+            int dot = name.lastIndexOf('.');
+            return dot != -1 && STORED_EXTENSIONS.contains(
+                    name.substring(dot + 1).toLowerCase(Locale.ROOT));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.tyron.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class CacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testFileChanged() {
+        Cache<String, String> cache = new Cache<>();
+        Path file = Paths.get("Main.java");
+        Path other = Paths.get("Other.java");
+        cache.load(file, "class", "Main.class");
+        cache.load(file, "dex", "Main.dex");
+        cache.load(other, "class", "Other.class");
+
+        assertEquals("Main.class", cache.get(file, "class"));
+        assertTrue(cache.has(file, "dex"));
+
+        // all the values of the file are removed
+        Cache.onFileChanged(file);
+        assertTrue(cache.needs(file, "class"));
+        assertTrue(cache.needs(file, "dex"));
+        assertFalse(cache.needs(other, "class"));
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testEviction() {
+        Cache<Void, Integer> cache = new Cache<>(10, (file, key, value) -> value);
+        Path first = Paths.get("First.java");
+        Path second = Paths.get("Second.java");
+        Path third = Paths.get("Third.java");
+        cache.load(first, null, 4);
+        cache.load(second, null, 4);
+        assertEquals(8, cache.getWeight());
+
+        // the first file is used again so the second one is the least recently used
+        assertTrue(cache.has(first, null));
+        cache.load(third, null, 4);
+        assertNull(cache.getIfPresent(second, null));
+        assertEquals(Integer.valueOf(4), cache.getIfPresent(first, null));
+        assertEquals(8, cache.getWeight());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testInvalidateModified() throws Exception {
+        Cache<String, String> cache = new Cache<>();
+        File file = mFolder.newFile("R.txt");
+        File deleted = mFolder.newFile("Deleted.txt");
+        cache.load(file.toPath(), "symbols", "R.java");
+        cache.load(deleted.toPath(), "symbols", "Deleted.java");
+
+        assertTrue(file.setLastModified(file.lastModified() - 10_000));
+        assertTrue(deleted.delete());
+        cache.invalidateModified();
+
+        assertTrue(cache.needs(file.toPath(), "symbols"));
+        // kept so the caller can delete its outputs
+        assertFalse(cache.needs(deleted.toPath(), "symbols"));
+    }
+
+    @Test
+    public void testUntrackedFileIsChecked() throws Exception {
+        File generated = mFolder.newFile("R.java");
+        File source = mFolder.newFile("Main.java");
+        Cache.setTracker(file -> file.equals(source.toPath()));
+        try {
+            Cache<String, String> cache = new Cache<>();
+            cache.load(generated.toPath(), "parse", "R");
+            cache.load(source.toPath(), "parse", "Main");
+            assertTrue(generated.setLastModified(generated.lastModified() - 10_000));
+            assertTrue(source.setLastModified(source.lastModified() - 10_000));
+
+            // nothing reports the generated file, so its modification time is checked
+            assertTrue(cache.needs(generated.toPath(), "parse"));
+            assertEquals("Main", cache.getIfPresent(source.toPath(), "parse"));
+            Cache.onFileChanged(source.toPath());
+            assertNull(cache.getIfPresent(source.toPath(), "parse"));
+        } finally {
+            Cache.setTracker(file -> false);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.tyron.common.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+public class ZipArchiverTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testZipDirectory() throws Exception {
+        File directory = mFolder.newFolder("module");
+        byte[] manifest = "<manifest package=\"com.example\"/>".getBytes(StandardCharsets.UTF_8);
+        byte[] icon = randomBytes(1, 10_000);
+        write(new File(directory, "manifest/AndroidManifest.xml"), manifest);
+        write(new File(directory, "res/drawable/icon.png"), icon);
+        write(new File(directory, "dex/classes.dex"), new byte[0]);
+        write(new File(directory, "assets/notes.txt"), manifest);
+
+        File zip = new File(mFolder.getRoot(), "module.zip");
+        ZipArchiver.zipDirectory(directory, zip);
+
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            assertEquals(4, zipFile.size());
+            assertNull(zipFile.getEntry("res/"));
+            ZipEntry entry = zipFile.getEntry("manifest/AndroidManifest.xml");
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            assertArrayEquals(manifest, read(zipFile.getInputStream(entry)));
+
+            // already compressed files are stored
+            entry = zipFile.getEntry("res/drawable/icon.png");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertArrayEquals(icon, read(zipFile.getInputStream(entry)));
+
+            assertEquals(0, zipFile.getEntry("dex/classes.dex").getSize());
+            assertNotNull(zipFile.getEntry("assets/notes.txt"));
+        }
+    }
+
+    @Test
+    public void testUnzip() throws Exception {
+        File zip = new File(mFolder.getRoot(), "input.zip");
+        byte[] deflated = "class Main {}".getBytes(StandardCharsets.UTF_8);
+        byte[] stored = randomBytes(2, 100_000);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("src/"));
+            out.putNextEntry(new ZipEntry("src/Main.java"));
+            out.write(deflated);
+            putStored(out, "lib/native.so", stored);
+        }
+
+        File output = new File(mFolder.getRoot(), "output");
+        ZipArchiver.unzip(zip, output, true);
+        assertArrayEquals(deflated, Files.readAllBytes(new File(output, "src/Main.java").toPath()));
+        assertArrayEquals(stored, Files.readAllBytes(new File(output, "lib/native.so").toPath()));
+
+        // existing files are only replaced when asked to
+        File main = new File(output, "src/Main.java");
+        write(main, new byte[]{1});
+        ZipArchiver.unzip(zip, output, false);
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes(main.toPath()));
+        try (InputStream stream = new FileInputStream(zip)) {
+            ZipArchiver.unzip(stream, output, false);
+        }
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes(main.toPath()));
+        try (InputStream stream = new FileInputStream(zip)) {
+            ZipArchiver.unzip(stream, output, true);
+        }
+        assertArrayEquals(deflated, Files.readAllBytes(main.toPath()));
+    }
+
+    @Test
+    public void testFailedEntriesAreSkipped() throws Exception {
+        File zip = new File(mFolder.getRoot(), "input.zip");
+        byte[] contents = "class Main {}".getBytes(StandardCharsets.UTF_8);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("../evil.txt"));
+            out.write(1);
+            out.putNextEntry(new ZipEntry("src/Main.java"));
+            out.write(contents);
+        }
+
+        List<String> failed = new ArrayList<>();
+        File output = new File(mFolder.getRoot(), "output");
+        ZipArchiver.unzip(zip, output, true, (name, e) -> failed.add(name));
+        assertEquals(Collections.singletonList("../evil.txt"), failed);
+        assertArrayEquals(contents, Files.readAllBytes(new File(output, "src/Main.java").toPath()));
+
+        failed.clear();
+        File streamOutput = new File(mFolder.getRoot(), "stream");
+        try (InputStream stream = new FileInputStream(zip)) {
+            ZipArchiver.unzip(stream, streamOutput, true, (name, e) -> failed.add(name));
+        }
+        assertEquals(Collections.singletonList("../evil.txt"), failed);
+        assertArrayEquals(contents,
+                Files.readAllBytes(new File(streamOutput, "src/Main.java").toPath()));
+        assertFalse(new File(mFolder.getRoot(), "evil.txt").exists());
+    }
+
+    @Test
+    public void testEntriesOutsideOfDestination() throws Exception {
+        File zip = new File(mFolder.getRoot(), "evil.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("../evil.txt"));
+            out.write(1);
+        }
+        File output = new File(mFolder.getRoot(), "output");
+        try {
+            ZipArchiver.unzip(zip, output, true);
+            fail("Entries outside of the destination must not be extracted");
+        } catch (ZipException expected) {
+        }
+        assertFalse(new File(mFolder.getRoot(), "evil.txt").exists());
+    }
+
+    @Test
+    public void testWriterKeepsOrder() throws Exception {
+        File zip = new File(mFolder.getRoot(), "classes.jar");
+        File source = mFolder.newFile("Main.class");
+        write(source, randomBytes(3, 1_000));
+        try (ZipArchiver.Writer writer = new ZipArchiver.Writer(zip)) {
+            writer.addDirectory("com/", source.lastModified());
+            for (int i = 0; i < 100; i++) {
+                writer.addFile("com/Class" + i + ".class", source, source.lastModified());
+            }
+            writer.addFile("assets/été.txt", source, source.lastModified());
+        }
+
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(zip))) {
+            assertEquals("com/", input.getNextEntry().getName());
+            for (int i = 0; i < 100; i++) {
+                ZipEntry entry = input.getNextEntry();
+                assertEquals("com/Class" + i + ".class", entry.getName());
+                assertArrayEquals(Files.readAllBytes(source.toPath()), read(input));
+                // the time is stored with a precision of two seconds
+                assertTrue(Math.abs(entry.getTime() - source.lastModified()) <= 2000);
+            }
+            // names that are not ascii are flagged as utf-8
+            assertEquals("assets/été.txt", input.getNextEntry().getName());
+        }
+    }
+
+    @Test
+    public void testLargeFilesAreStreamed() throws Exception {
+        File zip = new File(mFolder.getRoot(), "large.zip");
+        File small = mFolder.newFile("small.txt");
+        write(small, "small".getBytes(StandardCharsets.UTF_8));
+        // larger than the threshold, deflated while it is written
+        File large = mFolder.newFile("large.txt");
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random(6);
+        while (builder.length() < 3 * 1024 * 1024) {
+            builder.append(random.nextInt(1000)).append('\n');
+        }
+        byte[] contents = builder.toString().getBytes(StandardCharsets.UTF_8);
+        write(large, contents);
+
+        try (ZipArchiver.Writer writer = new ZipArchiver.Writer(zip)) {
+            writer.addFile("a.txt", small, small.lastModified());
+            writer.addFile("b.txt", large, large.lastModified());
+            writer.addFile("c.txt", small, small.lastModified());
+        }
+
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            ZipEntry entry = zipFile.getEntry("b.txt");
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            assertEquals(contents.length, entry.getSize());
+            assertArrayEquals(contents, read(zipFile.getInputStream(entry)));
+            assertArrayEquals("small".getBytes(StandardCharsets.UTF_8),
+                    read(zipFile.getInputStream(zipFile.getEntry("c.txt"))));
+        }
+        // the sizes must be in the local headers as well
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(zip))) {
+            assertEquals("a.txt", input.getNextEntry().getName());
+            assertEquals("b.txt", input.getNextEntry().getName());
+            assertArrayEquals(contents, read(input));
+            assertEquals("c.txt", input.getNextEntry().getName());
+        }
+    }
+
+    /**
+     * Compares the archiver with the java.util.zip streams that were used before on a
+     * directory about the size of a large AAR. Run with -Dzip.benchmark=true
+     */
+    @Test
+    public void benchmarkArchiver() throws Exception {
+        assumeTrue(Boolean.getBoolean("zip.benchmark"));
+
+        File directory = mFolder.newFolder("aar");
+        Random random = new Random(4);
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 2_000; i++) {
+            // compressible files such as xml and class files
+            source.setLength(0);
+            while (source.length() < 8 * 1024) {
+                source.append("<attr name=\"attribute").append(random.nextInt(500))
+                        .append("\" format=\"reference\"/>\n");
+            }
+            write(new File(directory, "res/values" + (i % 40) + "/file" + i + ".xml"),
+                    source.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        for (int i = 0; i < 200; i++) {
+            write(new File(directory, "res/drawable/image" + i + ".png"),
+                    randomBytes(i, 50 * 1024));
+        }
+        write(new File(directory, "classes.jar"), randomBytes(5, 4 * 1024 * 1024));
+
+        File oldZip = new File(mFolder.getRoot(), "old.zip");
+        File newZip = new File(mFolder.getRoot(), "new.zip");
+        long oldZipTime = Long.MAX_VALUE;
+        long newZipTime = Long.MAX_VALUE;
+        long oldUnzipTime = Long.MAX_VALUE;
+        long newUnzipTime = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            zipWithStreams(directory, oldZip);
+            oldZipTime = Math.min(oldZipTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            ZipArchiver.zipDirectory(directory, newZip);
+            newZipTime = Math.min(newZipTime, System.nanoTime() - start);
+
+            File oldOutput = new File(mFolder.getRoot(), "old" + i);
+            start = System.nanoTime();
+            unzipWithStreams(newZip, oldOutput);
+            oldUnzipTime = Math.min(oldUnzipTime, System.nanoTime() - start);
+
+            File newOutput = new File(mFolder.getRoot(), "new" + i);
+            start = System.nanoTime();
+            ZipArchiver.unzip(newZip, newOutput, true);
+            newUnzipTime = Math.min(newUnzipTime, System.nanoTime() - start);
+        }
+
+        System.out.println("zip: streams " + oldZipTime / 1_000_000 + " ms (" +
+                oldZip.length() / 1024 + " KB), archiver " + newZipTime / 1_000_000 + " ms (" +
+                newZip.length() / 1024 + " KB)");
+        System.out.println("unzip: streams " + oldUnzipTime / 1_000_000 + " ms, archiver " +
+                newUnzipTime / 1_000_000 + " ms");
+        try (ZipFile zipFile = new ZipFile(newZip)) {
+            assertEquals(2_201, zipFile.size());
+        }
+    }
+
+    private static void zipWithStreams(File directory, File zip) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            Files.walk(directory.toPath()).filter(Files::isRegularFile).sorted().forEach(file -> {
+                try {
+                    out.putNextEntry(new ZipEntry(directory.toPath().relativize(file)
+                            .toString()));
+                    Files.copy(file, out);
+                    out.closeEntry();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+    }
+
+    private static void unzipWithStreams(File zip, File directory) throws IOException {
+        byte[] buffer = new byte[1024];
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                File file = new File(directory, entry.getName());
+                file.getParentFile().mkdirs();
+                try (FileOutputStream output = new FileOutputStream(file)) {
+                    int read;
+                    while ((read = input.read(buffer)) > 0) {
+                        output.write(buffer, 0, read);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void putStored(ZipOutputStream out, String name, byte[] data)
+            throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(data);
+    }
+
+    private static byte[] randomBytes(long seed, int size) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), bytes);
+    }
+
+    private static byte[] read(InputStream input) throws IOException {
+        byte[] buffer = new byte[8192];
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
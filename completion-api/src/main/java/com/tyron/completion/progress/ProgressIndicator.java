@@ -0,0 +1,28 @@
+package com.tyron.completion.progress;
+
+/**
+ * Cancellation state of a single process, see
+ * {@link ProgressManager#runProcess(Runnable, ProgressIndicator)}
+ */
+public class ProgressIndicator {
+
+    private volatile boolean mCanceled;
+
+    /**
+     * Requests the process to stop, this can be called from any thread. The process stops
+     * at its next call to {@link ProgressManager#checkCanceled()}
+     */
+    public void cancel() {
+        mCanceled = true;
+    }
+
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    public void checkCanceled() throws ProcessCanceledException {
+        if (mCanceled) {
+            throw new ProcessCanceledException();
+        }
+    }
+}
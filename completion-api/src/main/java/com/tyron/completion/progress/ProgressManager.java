@@ -7,6 +7,8 @@ public class ProgressManager {
     private volatile boolean mIsCanceled;
     private volatile boolean mIsRunning;
 
+    private final ThreadLocal<ProgressIndicator> mCurrentIndicator = new ThreadLocal<>();
+
     public static ProgressManager getInstance() {
         if (sInstance == null) {
             sInstance = new ProgressManager();
@@ -30,14 +32,49 @@ public class ProgressManager {
         return mIsCanceled;
     }
 
+    /**
+     * Runs the process on the current thread, calls to {@link #checkCanceled()} made by the
+     * process only check the given indicator instead of the global cancellation state
+     * used by completions.
+     */
+    public void runProcess(Runnable process, ProgressIndicator indicator) {
+        ProgressIndicator previous = mCurrentIndicator.get();
+        mCurrentIndicator.set(indicator);
+        try {
+            process.run();
+        } finally {
+            if (previous == null) {
+                mCurrentIndicator.remove();
+            } else {
+                mCurrentIndicator.set(previous);
+            }
+        }
+    }
+
+    /**
+     * @return the indicator of the process running on the current thread, or null if the
+     * current thread is not running a process started by
+     * {@link #runProcess(Runnable, ProgressIndicator)}
+     */
+    public ProgressIndicator getProgressIndicator() {
+        return mCurrentIndicator.get();
+    }
+
     public static void checkCanceled() throws ProcessCanceledException {
         getInstance().doCheckCancelled();
     }
 
-    public synchronized void doCheckCancelled() throws ProcessCanceledException {
-        if (mIsCanceled) {
-            mIsCanceled = false;
-            throw new ProcessCanceledException();
+    public void doCheckCancelled() throws ProcessCanceledException {
+        ProgressIndicator indicator = mCurrentIndicator.get();
+        if (indicator != null) {
+            indicator.checkCanceled();
+            return;
+        }
+        synchronized (this) {
+            if (mIsCanceled) {
+                mIsCanceled = false;
+                throw new ProcessCanceledException();
+            }
         }
     }
 }
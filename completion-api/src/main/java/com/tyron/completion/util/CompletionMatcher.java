@@ -0,0 +1,233 @@
+package com.tyron.completion.util;
+
+import com.tyron.completion.model.CompletionItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matches and ranks completion candidates against the partial identifier typed by the user.
+ *
+ * A candidate matches if the pattern is a prefix of it, if the characters of the pattern
+ * are at the start of its words (camel humps, e.g. {@code gSV} matches {@code getSystemService})
+ * or if the pattern is a subsequence of it that starts at a word. Each candidate is scored once,
+ * so ranking a list does not compute anything on every comparison.
+ *
+ * Instances are not thread safe, the buffers used for ranking are reused between calls.
+ */
+public class CompletionMatcher {
+
+    /**
+     * The score of a candidate that does not match the pattern
+     */
+    public static final int NO_MATCH = -1;
+
+    private static final int EXACT = 6;
+    private static final int EXACT_IGNORE_CASE = 5;
+    private static final int PREFIX = 4;
+    private static final int PREFIX_IGNORE_CASE = 3;
+    private static final int CAMEL_HUMPS = 2;
+    private static final int SUBSEQUENCE = 1;
+    private static final int MAX_SCORE = (EXACT + 1) * 1000;
+
+    private final String mPattern;
+    private long[] mKeys = new long[0];
+
+    public CompletionMatcher(String pattern) {
+        mPattern = pattern;
+    }
+
+    public String getPattern() {
+        return mPattern;
+    }
+
+    public boolean matches(CharSequence name) {
+        return score(name, name.length()) != NO_MATCH;
+    }
+
+    public int score(CharSequence name) {
+        return score(name, name.length());
+    }
+
+    /**
+     * Scores the first {@code length} characters of the name, higher is better. Shorter names
+     * are preferred among names that matched the same way.
+     *
+     * @return the score or {@link #NO_MATCH} if the name does not match
+     */
+    public int score(CharSequence name, int length) {
+        int patternLength = mPattern.length();
+        if (patternLength == 0) {
+            return tier(0, length);
+        }
+        if (length < patternLength) {
+            return NO_MATCH;
+        }
+        if (startsWith(name, false)) {
+            return tier(length == patternLength ? EXACT : PREFIX, length);
+        }
+        if (startsWith(name, true)) {
+            return tier(length == patternLength ? EXACT_IGNORE_CASE : PREFIX_IGNORE_CASE, length);
+        }
+        if (matchesCamelHumps(name, length)) {
+            return tier(CAMEL_HUMPS, length);
+        }
+        int gaps = subsequenceGaps(name, length);
+        if (gaps >= 0) {
+            return Math.max(0, tier(SUBSEQUENCE, length) - Math.min(gaps, 100));
+        }
+        return NO_MATCH;
+    }
+
+    private static int tier(int tier, int length) {
+        return tier * 1000 + (100 - Math.min(length, 100));
+    }
+
+    /**
+     * Sorts the items by how well their label matches the pattern, items with the same score
+     * keep their original order. Items that don't match are placed last.
+     *
+     * @param limit the maximum number of items to return
+     */
+    public List<CompletionItem> rank(List<CompletionItem> items, int limit) {
+        int size = sort(items);
+        int count = Math.min(size, limit);
+        List<CompletionItem> ranked = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ranked.add(items.get((int) mKeys[i]));
+        }
+        return ranked;
+    }
+
+    public List<CompletionItem> rank(List<CompletionItem> items) {
+        return rank(items, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Same as {@link #rank(List)} but items that don't match the pattern are removed
+     */
+    public List<CompletionItem> rankMatching(List<CompletionItem> items) {
+        int size = sort(items);
+        List<CompletionItem> ranked = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if ((int) (mKeys[i] >>> 32) > MAX_SCORE) {
+                break;
+            }
+            ranked.add(items.get((int) mKeys[i]));
+        }
+        return ranked;
+    }
+
+    /**
+     * Fills {@link #mKeys} with the positions of the items sorted by their score
+     *
+     * @return the number of items
+     */
+    private int sort(List<CompletionItem> items) {
+        int size = items.size();
+        if (mKeys.length < size) {
+            mKeys = new long[Math.max(size, mKeys.length * 2)];
+        }
+        for (int i = 0; i < size; i++) {
+            String label = items.get(i).label;
+            int score = NO_MATCH;
+            if (label != null) {
+                int end = label.indexOf('(');
+                score = score(label, end == -1 ? label.length() : end);
+            }
+            // higher scores first, then the original position so the order is stable
+            mKeys[i] = ((long) (MAX_SCORE - score) << 32) | i;
+        }
+        Arrays.sort(mKeys, 0, size);
+        return size;
+    }
+
+    private boolean startsWith(CharSequence name, boolean ignoreCase) {
+        for (int i = 0; i < mPattern.length(); i++) {
+            char a = mPattern.charAt(i);
+            char b = name.charAt(i);
+            if (a != b && (!ignoreCase || !equalsIgnoreCase(a, b))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Greedily matches each character of the pattern either with the next character of the
+     * current word or with the start of one of the following words. Upper case characters
+     * in the pattern can only match the start of a word.
+     */
+    private boolean matchesCamelHumps(CharSequence name, int length) {
+        if (!equalsIgnoreCase(mPattern.charAt(0), name.charAt(0))) {
+            return false;
+        }
+        int nameIndex = 1;
+        for (int i = 1; i < mPattern.length(); i++) {
+            char c = mPattern.charAt(i);
+            if (nameIndex < length && equalsIgnoreCase(c, name.charAt(nameIndex)) &&
+                    (!Character.isUpperCase(c) || isWordStart(name, nameIndex, length))) {
+                nameIndex++;
+                continue;
+            }
+            int next = nameIndex;
+            while (next < length &&
+                    !(isWordStart(name, next, length) && equalsIgnoreCase(c, name.charAt(next)))) {
+                next++;
+            }
+            if (next >= length) {
+                return false;
+            }
+            nameIndex = next + 1;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of skipped characters if the pattern is a subsequence of the name that
+     * starts at the beginning of a word, or -1 if it is not
+     */
+    private int subsequenceGaps(CharSequence name, int length) {
+        int start = -1;
+        for (int i = 0; i < length; i++) {
+            if (isWordStart(name, i, length) && equalsIgnoreCase(mPattern.charAt(0), name.charAt(i))) {
+                start = i;
+                break;
+            }
+        }
+        if (start == -1) {
+            return -1;
+        }
+        int patternIndex = 1;
+        int gaps = start;
+        for (int i = start + 1; i < length && patternIndex < mPattern.length(); i++) {
+            if (equalsIgnoreCase(mPattern.charAt(patternIndex), name.charAt(i))) {
+                patternIndex++;
+            } else {
+                gaps++;
+            }
+        }
+        return patternIndex == mPattern.length() ? gaps : -1;
+    }
+
+    private static boolean isWordStart(CharSequence name, int index, int length) {
+        if (index == 0) {
+            return true;
+        }
+        char c = name.charAt(index);
+        char previous = name.charAt(index - 1);
+        if (previous == '_') {
+            return c != '_';
+        }
+        if (Character.isUpperCase(c)) {
+            return !Character.isUpperCase(previous) ||
+                    (index + 1 < length && Character.isLowerCase(name.charAt(index + 1)));
+        }
+        return Character.isDigit(c) && !Character.isDigit(previous);
+    }
+
+    private static boolean equalsIgnoreCase(char a, char b) {
+        return a == b || Character.toLowerCase(a) == Character.toLowerCase(b);
+    }
+}
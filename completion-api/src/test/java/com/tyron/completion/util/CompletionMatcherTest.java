@@ -0,0 +1,76 @@
+package com.tyron.completion.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.completion.model.CompletionItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CompletionMatcherTest {
+
+    @Test
+    public void testMatches() {
+        CompletionMatcher matcher = new CompletionMatcher("gSS");
+        assertTrue(matcher.matches("getSystemService"));
+        assertFalse(matcher.matches("getString"));
+
+        matcher = new CompletionMatcher("get");
+        assertTrue(matcher.matches("getContext"));
+        assertTrue(matcher.matches("GetContext"));
+        assertFalse(matcher.matches("toString"));
+
+        matcher = new CompletionMatcher("setVis");
+        assertTrue(matcher.matches("setVisibility"));
+
+        matcher = new CompletionMatcher("string");
+        // subsequence starting at a word
+        assertTrue(matcher.matches("toString"));
+        assertFalse(matcher.matches("xyz"));
+    }
+
+    @Test
+    public void testRank() {
+        List<CompletionItem> items = new ArrayList<>();
+        for (String label : Arrays.asList("toString()", "getSystemService(String)", "get()",
+                "getContext()", "xyz", "getContext(int)")) {
+            items.add(new CompletionItem(label));
+        }
+
+        List<String> labels = new ArrayList<>();
+        for (CompletionItem item : new CompletionMatcher("get").rank(items)) {
+            labels.add(item.label);
+        }
+        // the overloads keep their original order and the items that don't match are last
+        assertEquals(Arrays.asList("get()", "getContext()", "getContext(int)",
+                "getSystemService(String)", "toString()", "xyz"), labels);
+    }
+
+    @Test
+    public void testRankLimit() {
+        List<CompletionItem> items = new ArrayList<>();
+        for (String label : Arrays.asList("a", "ab", "abc")) {
+            items.add(new CompletionItem(label));
+        }
+        List<CompletionItem> ranked = new CompletionMatcher("a").rank(items, 2);
+        assertEquals(2, ranked.size());
+        assertEquals("a", ranked.get(0).label);
+    }
+
+    @Test
+    public void testRankMatching() {
+        List<CompletionItem> items = new ArrayList<>();
+        for (String label : Arrays.asList("setText(String)", "getText()", "setTextSize(float)")) {
+            items.add(new CompletionItem(label));
+        }
+        List<CompletionItem> ranked = new CompletionMatcher("setT").rankMatching(items);
+        assertEquals(2, ranked.size());
+        assertEquals("setText(String)", ranked.get(0).label);
+        assertEquals("setTextSize(float)", ranked.get(1).label);
+    }
+}
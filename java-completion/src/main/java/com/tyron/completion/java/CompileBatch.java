@@ -40,11 +40,31 @@ public class CompileBatch implements AutoCloseable {
     static final int MAX_COMPLETION_ITEMS = 50;
 
     public final JavaCompilerService parent;
+    /**
+     * The compiler that owns the context of this batch, it can only be reused by another
+     * batch once {@link #borrow} has been closed.
+     */
+    public final ReusableCompiler compiler;
     public final ReusableCompiler.Borrow borrow;
     /**
      * Indicates the task that requested the compilation is finished with it.
      */
     public boolean closed;
+    /**
+     * The thread that is using this batch and the number of tasks it has open on it, javac
+     * trees are not thread safe so a batch is only used by one thread at a time.
+     */
+    Thread owner;
+    int holds;
+    /**
+     * The diagnostics reported while compiling this batch
+     */
+    public final List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+    /**
+     * Whether the files loaded from the source path are compiled from their skeletons,
+     * see {@link SkeletonFileManager}
+     */
+    public final boolean skeletons;
 
     public final JavacTask task;
     public final Trees trees;
@@ -52,9 +72,17 @@ public class CompileBatch implements AutoCloseable {
     public final Types types;
     public final List<CompilationUnitTree> roots;
 
-    public CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
+    public CompileBatch(JavaCompilerService parent, ReusableCompiler compiler,
+                        Collection<? extends JavaFileObject> files) {
+        this(parent, compiler, files, false);
+    }
+
+    public CompileBatch(JavaCompilerService parent, ReusableCompiler compiler,
+                        Collection<? extends JavaFileObject> files, boolean skeletons) {
         this.parent = parent;
-        this.borrow = batchTask(parent, files);
+        this.compiler = compiler;
+        this.skeletons = skeletons;
+        this.borrow = batchTask(parent, compiler, files);
         this.task = borrow.task;
         this.trees = Trees.instance(borrow.task);
         this.elements = borrow.task.getElements();
@@ -85,7 +113,7 @@ public class CompileBatch implements AutoCloseable {
         JavaModule module = parent.getCurrentModule();
         // Check for "class not found errors" that refer to package private classes
         Set<Path> addFiles = new HashSet<>();
-        for (Diagnostic<? extends JavaFileObject> err : parent.getDiagnostics()) {
+        for (Diagnostic<? extends JavaFileObject> err : diagnostics) {
             if (!err.getCode().equals("compiler.err.cant.resolve.location")) {
                 continue;
             }
@@ -156,12 +184,13 @@ public class CompileBatch implements AutoCloseable {
         closed = true;
     }
 
-    private static ReusableCompiler.Borrow batchTask(JavaCompilerService parent, Collection<?
-            extends JavaFileObject> sources) {
-        parent.clearDiagnostics();
+    private ReusableCompiler.Borrow batchTask(JavaCompilerService parent,
+                                              ReusableCompiler compiler,
+                                              Collection<? extends JavaFileObject> sources) {
         List<String> options = options(parent.classPath, parent.addExports);
-        return parent.compiler.getTask(parent.mSourceFileManager, parent::addDiagnostic, options,
-                Collections.emptyList(), sources);
+        // the diagnostics are published by the parent once the batch has been compiled
+        return compiler.getTask(parent.getFileManager(compiler, skeletons), diagnostics::add,
+                options, Collections.emptyList(), sources);
     }
 
     /**
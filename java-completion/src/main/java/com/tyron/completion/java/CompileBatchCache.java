@@ -0,0 +1,324 @@
+package com.tyron.completion.java;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.openjdk.javax.tools.Diagnostic;
+import org.openjdk.javax.tools.JavaFileObject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the most recently used {@link CompileBatch}es alive so switching between files does not
+ * require analyzing them again.
+ *
+ * Batches are keyed by the set of files they were compiled with, a cached batch is only reused
+ * if the contents of all of its files are still the same. Each batch holds its own javac context,
+ * so the cache is bounded by an estimate of the memory used by the batches, the least recently
+ * used batch is evicted first.
+ */
+public class CompileBatchCache {
+
+    private static final String TAG = CompileBatchCache.class.getSimpleName();
+
+    /**
+     * The maximum number of batches kept, regardless of the available memory
+     */
+    private static final int MAX_ENTRIES = 4;
+
+    /**
+     * Rough estimate of the memory used by a javac context before any file has been compiled,
+     * most of it is the symbols loaded from the class path.
+     */
+    private static final long CONTEXT_WEIGHT = 24L * 1024 * 1024;
+
+    /**
+     * Rough estimate of the memory used by the trees and symbols of a single
+     * character of source code.
+     */
+    private static final long CHARACTER_WEIGHT = 64;
+
+    private static class Key {
+        final Set<URI> files;
+        final boolean skeletons;
+
+        Key(Set<URI> files, boolean skeletons) {
+            this.files = files;
+            this.skeletons = skeletons;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return skeletons == key.skeletons && files.equals(key.files);
+        }
+
+        @Override
+        public int hashCode() {
+            return files.hashCode() * 31 + (skeletons ? 1 : 0);
+        }
+    }
+
+    private static class Entry {
+        final CompileBatch batch;
+        final Map<URI, Long> modified;
+        final Map<URI, Integer> contents;
+        final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+        final long weight;
+
+        Entry(CompileBatch batch, Map<URI, Long> modified, Map<URI, Integer> contents,
+              List<Diagnostic<? extends JavaFileObject>> diagnostics, long weight) {
+            this.batch = batch;
+            this.modified = modified;
+            this.contents = contents;
+            this.diagnostics = diagnostics;
+            this.weight = weight;
+        }
+    }
+
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long mMemoryBudget;
+    private long mWeight;
+
+    private int mHits;
+    private int mMisses;
+    private int mEvictions;
+
+    public CompileBatchCache() {
+        this(Runtime.getRuntime().maxMemory() / 3);
+    }
+
+    public CompileBatchCache(long memoryBudget) {
+        mMemoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return the batch compiled from the same files with the same contents, or null if there is
+     * none. Batches whose files have changed are removed from the cache and have to be closed
+     * by the caller.
+     */
+    @Nullable
+    public CompileBatch get(@NonNull Collection<? extends JavaFileObject> sources,
+                            @NonNull List<CompileBatch> stale) {
+        return get(sources, false, stale);
+    }
+
+    /**
+     * @param skeletons whether the batch has to be compiled with the skeletons of the files
+     *                  that are not part of the sources, see {@link SkeletonFileManager}
+     */
+    @Nullable
+    public synchronized CompileBatch get(@NonNull Collection<? extends JavaFileObject> sources,
+                                         boolean skeletons,
+                                         @NonNull List<CompileBatch> stale) {
+        Key key = key(sources, skeletons);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            mMisses++;
+            return null;
+        }
+        if (!isUpToDate(entry, sources)) {
+            mMisses++;
+            mEntries.remove(key);
+            mWeight -= entry.weight;
+            stale.add(entry.batch);
+            return null;
+        }
+        mHits++;
+        return entry.batch;
+    }
+
+    /**
+     * @return the diagnostics that were reported when the batch was compiled
+     */
+    @NonNull
+    public synchronized List<Diagnostic<? extends JavaFileObject>> getDiagnostics(
+            @NonNull Collection<? extends JavaFileObject> sources) {
+        Entry entry = mEntries.get(key(sources, false));
+        if (entry == null) {
+            return new ArrayList<>();
+        }
+        return entry.diagnostics;
+    }
+
+    /**
+     * Adds a newly compiled batch to the cache.
+     *
+     * @return the batches that were evicted to make room for it, they have to be closed by
+     * the caller
+     */
+    @NonNull
+    public synchronized List<CompileBatch> put(
+            @NonNull Collection<? extends JavaFileObject> sources,
+            @NonNull CompileBatch batch,
+            @NonNull List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        Map<URI, Long> modified = new HashMap<>();
+        Map<URI, Integer> contents = new HashMap<>();
+        long weight = CONTEXT_WEIGHT;
+        for (JavaFileObject source : sources) {
+            modified.put(source.toUri(), source.getLastModified());
+            CharSequence content = getContent(source);
+            if (content != null) {
+                contents.put(source.toUri(), content.toString().hashCode());
+                weight += content.length() * CHARACTER_WEIGHT;
+            }
+        }
+
+        List<CompileBatch> evicted = new ArrayList<>();
+        Entry previous = mEntries.put(key(sources, batch.skeletons), new Entry(batch, modified, contents,
+                new ArrayList<>(diagnostics), weight));
+        if (previous != null) {
+            mWeight -= previous.weight;
+            if (previous.batch != batch) {
+                evicted.add(previous.batch);
+            }
+        }
+        mWeight += weight;
+
+        // the most recently used entry is always kept
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while ((mWeight > mMemoryBudget || mEntries.size() > MAX_ENTRIES) &&
+                mEntries.size() > 1 && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest.batch == batch || !eldest.batch.closed) {
+                // still being used by someone else
+                continue;
+            }
+            iterator.remove();
+            mWeight -= eldest.weight;
+            mEvictions++;
+            evicted.add(eldest.batch);
+        }
+        return evicted;
+    }
+
+    /**
+     * Removes the least recently used batch that is not being used so its compiler can be
+     * given to another compilation.
+     *
+     * @return the removed batch which has to be closed by the caller, or null if all the
+     * cached batches are in use
+     */
+    @Nullable
+    public synchronized CompileBatch evictIdle() {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest.batch.closed) {
+                iterator.remove();
+                mWeight -= eldest.weight;
+                mEvictions++;
+                return eldest.batch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether none of the cached batches are being used
+     */
+    public synchronized boolean isIdle() {
+        for (Entry entry : mEntries.values()) {
+            if (!entry.batch.closed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all the batches from the cache
+     *
+     * @return the batches that were removed, they have to be closed by the caller
+     */
+    @NonNull
+    public synchronized List<CompileBatch> clear() {
+        List<CompileBatch> batches = new ArrayList<>();
+        for (Entry entry : mEntries.values()) {
+            batches.add(entry.batch);
+        }
+        mEntries.clear();
+        mWeight = 0;
+        return batches;
+    }
+
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictions;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ENGLISH,
+                "CompileBatchCache[entries=%d, weight=%d KB, hits=%d, misses=%d, evictions=%d]",
+                mEntries.size(), mWeight / 1024, mHits, mMisses, mEvictions);
+    }
+
+    private static Key key(Collection<? extends JavaFileObject> sources, boolean skeletons) {
+        Set<URI> files = new HashSet<>();
+        for (JavaFileObject source : sources) {
+            files.add(source.toUri());
+        }
+        return new Key(files, skeletons);
+    }
+
+    /**
+     * Checks the modified time of the files first, the contents are only compared if it changed
+     * since a file may be saved or reopened without any modifications.
+     */
+    private static boolean isUpToDate(Entry entry, Collection<? extends JavaFileObject> sources) {
+        for (JavaFileObject source : sources) {
+            Long modified = entry.modified.get(source.toUri());
+            if (modified != null && modified == source.getLastModified()) {
+                continue;
+            }
+            Integer cached = entry.contents.get(source.toUri());
+            CharSequence content = getContent(source);
+            if (cached == null || content == null || cached != content.toString().hashCode()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private static CharSequence getContent(JavaFileObject source) {
+        try {
+            return source.getCharContent(true);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + source.toUri(), e);
+            return null;
+        }
+    }
+}
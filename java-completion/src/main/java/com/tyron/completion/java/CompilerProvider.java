@@ -18,6 +18,22 @@ public interface CompilerProvider {
     
     List<String> publicTopLevelTypes();
 
+    /**
+     * @return the qualified names of the top level types whose simple name starts with the
+     * partial name or matches it by camel humps
+     */
+    List<String> publicTopLevelTypesMatching(String partial);
+
+    /**
+     * @return the qualified names of the top level types that starts with the given prefix
+     */
+    List<String> publicTopLevelTypesWithPrefix(String prefix);
+
+    /**
+     * @return the qualified names of the top level types with exactly this simple name
+     */
+    List<String> publicTopLevelTypesNamed(String simpleName);
+
     List<String> packagePrivateTopLevelTypes(String packageName);
 
     Iterable<Path> search(String query);
@@ -4,18 +4,21 @@ import android.annotation.SuppressLint;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.common.collect.ImmutableList;
 import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.index.ClassNameIndex;
 import com.tyron.common.util.Cache;
 import com.tyron.common.util.StringSearch;
 import com.tyron.completion.java.provider.CompletionEngine;
 
 import org.openjdk.javax.tools.Diagnostic;
 import org.openjdk.javax.tools.DiagnosticListener;
+import org.openjdk.javax.tools.JavaFileManager;
 import org.openjdk.javax.tools.JavaFileObject;
 import org.openjdk.javax.tools.StandardLocation;
 import org.openjdk.source.tree.CompilationUnitTree;
@@ -30,31 +33,69 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class JavaCompilerService implements CompilerProvider {
 
     private DiagnosticListener<? super JavaFileObject> mDiagnosticListener;
+    /**
+     * The file manager used for lookups outside of a compilation, each pooled compiler has its
+     * own file manager since javac configures it and fills its caches on every task.
+     */
     public final SourceFileManager mSourceFileManager;
 
-    private final List<Diagnostic<? extends JavaFileObject>> diagnostics =
-            new ArrayList<>();
+    /**
+     * Guards the diagnostics that were published last, so the listener receives the
+     * diagnostics of one batch at a time
+     */
+    private final Object mPublishLock = new Object();
+    private volatile List<Diagnostic<? extends JavaFileObject>> diagnostics =
+            Collections.emptyList();
+    private CompileBatch mPublished;
 
     private final Project mProject;
     private JavaModule mCurrentModule;
     public final Set<File> classPath, docPath;
     public final Set<String> addExports;
-    public final ReusableCompiler compiler = new ReusableCompiler();
     private final Docs docs;
 
+    /**
+     * Guards the compile cache and the pool of compilers. It is only held while a batch is
+     * looked up or stored, javac runs without it so a diagnostics compile does not block
+     * hovers, code actions or completions that need a different batch.
+     */
     public final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mAvailable = mLock.newCondition();
+
+    /**
+     * Rough amount of heap used by a javac context after it has analyzed a few files
+     */
+    private static final long COMPILER_MEMORY = 64L * 1024 * 1024;
+
+    /**
+     * The maximum number of javac contexts that exist at the same time
+     */
+    private static final int MAX_COMPILERS = 4;
+
+    /**
+     * @return the number of compilers that fits the maximum heap size, at least two so a read
+     * only query can run while another file is being compiled
+     */
+    public static int getDefaultPoolSize() {
+        long memory = Runtime.getRuntime().maxMemory() / COMPILER_MEMORY;
+        return (int) Math.max(2, Math.min(MAX_COMPILERS, memory));
+    }
 
     public JavaCompilerService(Project project, Set<File> classPath, Set<File> docPath, Set<String> addExports) {
         mProject = project;
@@ -63,61 +104,174 @@ public class JavaCompilerService implements CompilerProvider {
         this.addExports = Collections.unmodifiableSet(addExports);
         this.mSourceFileManager = new SourceFileManager(project);
         this.docs = new Docs(project, docPath);
+        this.mPoolSize = getDefaultPoolSize();
+        this.mSkeletonCache = new SkeletonCache(project);
     }
 
     public Project getProject() {
         return mProject;
     }
 
-    public CompileBatch cachedCompile;
-    private final Map<JavaFileObject, Long> cachedModified = new HashMap<>();
+    private final CompileBatchCache mCompileCache = new CompileBatchCache();
+    private final SkeletonCache mSkeletonCache;
+    /**
+     * Compilers whose context is not used by any of the cached batches
+     */
+    private final List<ReusableCompiler> mIdleCompilers = new ArrayList<>();
+    /**
+     * The file managers of each compiler, the first one reads the files on the source path and
+     * the second one gives javac their skeletons instead, see {@link SkeletonFileManager}
+     */
+    private final Map<ReusableCompiler, JavaFileManager[]> mFileManagers =
+            new IdentityHashMap<>();
+    /**
+     * Batches that are used by a task
+     */
+    private final Set<CompileBatch> mInUse = Collections.newSetFromMap(new IdentityHashMap<>());
+    /**
+     * Batches that have been removed from the cache while they were still in use, they are
+     * released once their last task is closed
+     */
+    private final Set<CompileBatch> mRetired = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final int mPoolSize;
+    private int mCompilerCount;
+    /**
+     * The declarations of the source files found by the {@link JavaIndexer}
+     */
+    private final Map<File, JavaIndexer.Declarations> mDeclarations = new ConcurrentHashMap<>();
 
     public void setCurrentModule(@NonNull JavaModule module) {
-        mSourceFileManager.setCurrentModule(module);
-        mCurrentModule = module;
+        mLock.lock();
+        try {
+            mSourceFileManager.setCurrentModule(module);
+            for (JavaFileManager[] fileManagers : mFileManagers.values()) {
+                ((SourceFileManager) fileManagers[0]).setCurrentModule(module);
+            }
+            mCurrentModule = module;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public CompileBatchCache getCompileCache() {
+        return mCompileCache;
+    }
+
+    public SkeletonCache getSkeletonCache() {
+        return mSkeletonCache;
     }
+
     /**
-     * Checks whether this list has been compiled before
+     * Borrows a compiler from the pool, creating one if the pool is not full. Otherwise the
+     * least recently used batch that is not in use gives up its compiler.
      *
-     * @param sources list of java files to compile
-     * @return true if there's a valid cache for it, false otherwise
+     * @return the compiler or null if all of them are in use, must be called with
+     * {@link #mLock} held
      */
-    private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedModified.size() != sources.size()) {
-            return true;
+    private ReusableCompiler obtainCompiler() {
+        if (!mIdleCompilers.isEmpty()) {
+            return mIdleCompilers.remove(mIdleCompilers.size() - 1);
         }
-        for (JavaFileObject f : sources) {
-            if (!cachedModified.containsKey(f)) {
-                return true;
+        if (mCompilerCount < mPoolSize) {
+            return createCompiler();
+        }
+        CompileBatch idle = mCompileCache.evictIdle();
+        if (idle != null) {
+            release(idle, false);
+            if (!mIdleCompilers.isEmpty()) {
+                return mIdleCompilers.remove(mIdleCompilers.size() - 1);
             }
-            Long cached = cachedModified.get(f);
-            if (cached == null) {
-                return true;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a compiler along with its own file managers, must be called with {@link #mLock}
+     * held. The pool may temporarily hold more compilers than its size, the extra ones are
+     * discarded once they are released.
+     */
+    private ReusableCompiler createCompiler() {
+        ReusableCompiler compiler = new ReusableCompiler();
+        SourceFileManager fileManager = new SourceFileManager(mProject);
+        fileManager.setCurrentModule(mCurrentModule);
+        mFileManagers.put(compiler, new JavaFileManager[]{fileManager,
+                new SkeletonFileManager(fileManager, mSkeletonCache)});
+        mCompilerCount++;
+        return compiler;
+    }
+
+    /**
+     * Removes the compiler from the pool, must be called with {@link #mLock} held
+     */
+    private void discard(ReusableCompiler compiler) {
+        mCompilerCount--;
+        JavaFileManager[] fileManagers = mFileManagers.remove(compiler);
+        if (fileManagers != null) {
+            try {
+                fileManagers[0].close();
+            } catch (IOException e) {
+                Log.w("JavaCompilerService", "Unable to close the file manager", e);
             }
-            if (f.getLastModified() != cached) {
+        }
+        mAvailable.signalAll();
+    }
+
+    /**
+     * @return the file manager that the tasks of this compiler use
+     */
+    JavaFileManager getFileManager(ReusableCompiler compiler, boolean skeletons) {
+        mLock.lock();
+        try {
+            JavaFileManager[] fileManagers = mFileManagers.get(compiler);
+            return fileManagers[skeletons ? 1 : 0];
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * @return whether the current thread is using a batch, such a thread must not wait for
+     * another batch or compiler since the thread it waits for may be waiting for its batch.
+     * Must be called with {@link #mLock} held.
+     */
+    private boolean isHoldingBatch() {
+        for (CompileBatch batch : mInUse) {
+            if (batch.owner == Thread.currentThread()) {
                 return true;
             }
         }
         return false;
     }
 
-    private void loadCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedCompile != null) {
-            if (!cachedCompile.closed) {
-                throw new RuntimeException("Compiler is still in-use!");
-            }
-            cachedCompile.borrow.close();
+    /**
+     * Closes the context of this batch and makes its compiler available to new batches.
+     * A batch that is still used by a task is released when the task is closed.
+     *
+     * @param evict whether the symbols loaded by the context should be dropped as well,
+     *              used when the batch is removed to reduce the memory usage
+     */
+    private void release(CompileBatch batch, boolean evict) {
+        if (!batch.closed) {
+            mRetired.add(batch);
+            return;
+        }
+        batch.borrow.close();
+        if (mCompilerCount > mPoolSize) {
+            discard(batch.compiler);
+            return;
         }
-        cachedCompile = doCompile(sources);
-        cachedModified.clear();
-        for (JavaFileObject f : sources) {
-            cachedModified.put(f, f.getLastModified());
+        if (evict) {
+            batch.compiler.evict();
         }
+        mIdleCompilers.add(batch.compiler);
+        mAvailable.signalAll();
     }
 
-    private CompileBatch doCompile(Collection<? extends JavaFileObject> sources) {
+    private CompileBatch doCompile(ReusableCompiler compiler,
+                                   Collection<? extends JavaFileObject> sources,
+                                   boolean skeletons) {
         if (sources.isEmpty()) throw new RuntimeException("empty sources");
-        CompileBatch firstAttempt = new CompileBatch(this, sources);
+        CompileBatch firstAttempt = new CompileBatch(this, compiler, sources, skeletons);
         Set<Path> addFiles = firstAttempt.needsAdditionalSources();
         if (addFiles.isEmpty()) return firstAttempt;
         // If the compiler needs additional source files that contain package-private files
@@ -127,48 +281,157 @@ public class JavaCompilerService implements CompilerProvider {
         firstAttempt.borrow.close();
         List<JavaFileObject> moreSources = new ArrayList<>(sources);
         for (Path add : addFiles) {
-            moreSources.add(new SourceFileObject(add, mCurrentModule));
+            JavaFileObject source = new SourceFileObject(add, mCurrentModule);
+            moreSources.add(skeletons ? mSkeletonCache.get(source) : source);
         }
-        return new CompileBatch(this, moreSources);
+        return new CompileBatch(this, firstAttempt.compiler, moreSources, skeletons);
     }
 
     /**
-     * Creates a compile batch only if it has not been compiled before
+     * Creates a compile batch only if it has not been compiled before. A cached batch that
+     * is being used by another thread is waited for, a new batch is compiled outside of the
+     * lock on a compiler borrowed from the pool.
      *
      * @param sources Files to compile
+     * @param skeletons Whether the other files javac needs are compiled from their skeletons
      * @return CompileBatch for this compilation
      */
-    private CompileBatch compileBatch(Collection<? extends JavaFileObject> sources) {
+    private CompileBatch compileBatch(Collection<? extends JavaFileObject> sources,
+                                      boolean skeletons) {
+        CompileBatch cached = null;
+        ReusableCompiler compiler = null;
+        mLock.lock();
+        try {
+            while (true) {
+                List<CompileBatch> stale = new ArrayList<>();
+                CompileBatch batch = mCompileCache.get(sources, skeletons, stale);
+                for (CompileBatch staleBatch : stale) {
+                    release(staleBatch, false);
+                }
 
-        if (needsCompile(sources)) {
-            loadCompile(sources);
-        } else {
-            Log.d("JavaCompilerService", "Using cached compile");
+                if (batch != null) {
+                    if (batch.closed || batch.owner == Thread.currentThread()) {
+                        Log.d("JavaCompilerService", "Using cached compile");
+                        acquire(batch);
+                        cached = batch;
+                        break;
+                    }
+                    if (isHoldingBatch()) {
+                        // compile another copy instead of waiting for the thread that uses it
+                        compiler = createCompiler();
+                        break;
+                    }
+                } else {
+                    compiler = obtainCompiler();
+                    if (compiler == null && isHoldingBatch()) {
+                        compiler = createCompiler();
+                    }
+                    if (compiler != null) {
+                        break;
+                    }
+                }
+                mAvailable.awaitUninterruptibly();
+            }
+        } finally {
+            mLock.unlock();
+        }
+        if (cached != null) {
+            publish(cached);
+            return cached;
         }
-        return cachedCompile;
 
-    }
-    
-    public void clearDiagnostics() {
-        diagnostics.clear();
-        if (mDiagnosticListener != null) {
-            mDiagnosticListener.report(null);
+        CompileBatch batch = null;
+        try {
+            batch = doCompile(compiler, sources, skeletons);
+        } finally {
+            mLock.lock();
+            try {
+                if (batch == null) {
+                    // the context may be in a broken state, do not give it back to the pool
+                    discard(compiler);
+                } else {
+                    acquire(batch);
+                    for (CompileBatch evicted : mCompileCache.put(sources, batch,
+                            batch.diagnostics)) {
+                        release(evicted, true);
+                    }
+                    Log.d("JavaCompilerService", mCompileCache.toString());
+                }
+            } finally {
+                mLock.unlock();
+            }
         }
+        publish(batch);
+        return batch;
+    }
+
+    /**
+     * Marks the batch as used by the current thread, must be called with {@link #mLock} held
+     */
+    private void acquire(CompileBatch batch) {
+        batch.owner = Thread.currentThread();
+        batch.holds++;
+        batch.closed = false;
+        mInUse.add(batch);
     }
 
-    public void addDiagnostic(Diagnostic<? extends JavaFileObject> diagnostic) {
-        diagnostics.add(diagnostic);
-        if (mDiagnosticListener != null) {
-            mDiagnosticListener.report(diagnostic);
+    /**
+     * Makes the diagnostics of a batch that has finished compiling available through
+     * {@link #getDiagnostics()} and reports them to the listener. The diagnostics of batches
+     * compiled from skeletons are not accurate and are never published.
+     */
+    private void publish(CompileBatch batch) {
+        if (batch.skeletons) {
+            return;
+        }
+        synchronized (mPublishLock) {
+            if (mPublished == batch) {
+                return;
+            }
+            mPublished = batch;
+            List<Diagnostic<? extends JavaFileObject>> published =
+                    ImmutableList.copyOf(batch.diagnostics);
+            diagnostics = published;
+            if (mDiagnosticListener != null) {
+                mDiagnosticListener.report(null);
+                for (Diagnostic<? extends JavaFileObject> diagnostic : published) {
+                    mDiagnosticListener.report(diagnostic);
+                }
+            }
         }
     }
 
+    /**
+     * Called when a task that uses the batch is closed, the batch can be used by other
+     * threads once all the tasks of its thread are closed.
+     */
+    private void close(CompileBatch batch) {
+        mLock.lock();
+        try {
+            if (batch.holds == 0 || --batch.holds > 0) {
+                return;
+            }
+            batch.owner = null;
+            batch.close();
+            mInUse.remove(batch);
+            if (mRetired.remove(batch)) {
+                release(batch, true);
+            }
+            mAvailable.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+    
     public void setDiagnosticListener(DiagnosticListener<? super JavaFileObject> listener) {
         mDiagnosticListener = listener;
     }
 
+    /**
+     * @return the diagnostics of the batch that was published last, see {@link #publish}
+     */
     public List<Diagnostic<? extends JavaFileObject>> getDiagnostics() {
-        return ImmutableList.copyOf(diagnostics);
+        return diagnostics;
     }
 
     @Override
@@ -189,9 +452,55 @@ public class JavaCompilerService implements CompilerProvider {
         return classes;
     }
 
+    @Override
+    public List<String> publicTopLevelTypesMatching(String partial) {
+        return queryClassIndexes(index -> index.findBySimpleName(partial));
+    }
+
+    @Override
+    public List<String> publicTopLevelTypesWithPrefix(String prefix) {
+        return queryClassIndexes(index -> index.findByQualifiedPrefix(prefix));
+    }
+
+    @Override
+    public List<String> publicTopLevelTypesNamed(String simpleName) {
+        return queryClassIndexes(index -> index.findBySimpleNameExact(simpleName));
+    }
+
+    /**
+     * Runs the query on the class index of the current module and its dependencies
+     */
+    private List<String> queryClassIndexes(Function<ClassNameIndex, List<String>> query) {
+        Set<String> classes = new LinkedHashSet<>(query.apply(mCurrentModule.getClassIndex()));
+        for (Module module : mProject.getDependencies(mCurrentModule)) {
+            if (module instanceof JavaModule) {
+                classes.addAll(query.apply(((JavaModule) module).getClassIndex()));
+            }
+        }
+        return new ArrayList<>(classes);
+    }
+
+    /**
+     * Sets the declarations of a source file, or removes them if they are null
+     */
+    public void setDeclarations(@NonNull File file,
+                                @Nullable JavaIndexer.Declarations declarations) {
+        if (declarations == null) {
+            mDeclarations.remove(file);
+        } else {
+            mDeclarations.put(file, declarations);
+        }
+    }
+
     @Override
     public List<String> packagePrivateTopLevelTypes(String packageName) {
-        return Collections.emptyList();
+        Set<String> classes = new LinkedHashSet<>();
+        for (JavaIndexer.Declarations declarations : mDeclarations.values()) {
+            if (declarations.getPackageName().equals(packageName)) {
+                classes.addAll(declarations.getClasses());
+            }
+        }
+        return new ArrayList<>(classes);
     }
 
     @Override
@@ -260,22 +569,26 @@ public class JavaCompilerService implements CompilerProvider {
     private static final Cache<String, Boolean> cacheContainsWord = new Cache<>();
 
     private boolean containsWord(Path file, String word) {
-        if (cacheContainsWord.needs(file, word)) {
-            cacheContainsWord.load(file, word, StringSearch.containsWord(file, word));
+        Boolean contains = cacheContainsWord.getIfPresent(file, word);
+        if (contains == null) {
+            contains = StringSearch.containsWord(file, word);
+            cacheContainsWord.load(file, word, contains);
         }
-        return cacheContainsWord.get(file, word);
+        return contains;
     }
 
-    private static final Cache<Void, List<String>> cacheContainsType = new Cache<>();
+    private static final Cache<Void, List<String>> cacheContainsType =
+            new Cache<>(Cache.DEFAULT_MAX_WEIGHT, (file, key, types) -> 1 + types.size());
 
     private boolean containsType(Path file, String className) {
-        if (cacheContainsType.needs(file, null)) {
+        List<String> types = cacheContainsType.getIfPresent(file, null);
+        if (types == null) {
             CompilationUnitTree root = parse(file).root;
-            List<String> types = new ArrayList<>();
+            types = new ArrayList<>();
             new FindTypeDeclarations().scan(root, types);
             cacheContainsType.load(file, null, types);
         }
-        return cacheContainsType.get(file, null).contains(className);
+        return types.contains(className);
     }
 
 
@@ -301,9 +614,10 @@ public class JavaCompilerService implements CompilerProvider {
     private Path findPublicTypeDeclaration(String className) {
         JavaFileObject source;
         try {
-            source =
-                    mSourceFileManager.getJavaFileForInput(
-                            StandardLocation.SOURCE_PATH, className, JavaFileObject.Kind.SOURCE);
+            synchronized (mSourceFileManager) {
+                source = mSourceFileManager.getJavaFileForInput(
+                        StandardLocation.SOURCE_PATH, className, JavaFileObject.Kind.SOURCE);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -317,8 +631,10 @@ public class JavaCompilerService implements CompilerProvider {
     public Optional<JavaFileObject> findPublicTypeDeclarationInJdk(String className) {
         JavaFileObject source;
         try {
-            source = mSourceFileManager.getJavaFileForInput(
-                    StandardLocation.PLATFORM_CLASS_PATH, className, JavaFileObject.Kind.CLASS);
+            synchronized (mSourceFileManager) {
+                source = mSourceFileManager.getJavaFileForInput(
+                        StandardLocation.PLATFORM_CLASS_PATH, className, JavaFileObject.Kind.CLASS);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -335,14 +651,22 @@ public class JavaCompilerService implements CompilerProvider {
         return null;
     }
 
-    private final Cache<String, ParseTask> parseCache = new Cache<>();
+    /**
+     * The maximum number of parsed files kept, each of them holds the whole tree of the file
+     */
+    private static final int MAX_CACHED_PARSES = 64;
+
+    private final Cache<String, ParseTask> parseCache =
+            new Cache<>(MAX_CACHED_PARSES, (file, key, task) -> 1);
 
     private ParseTask cachedParse(Path file) {
-        if (parseCache.needs(file, file.toFile().getName())) {
+        ParseTask task = parseCache.getIfPresent(file, file.toFile().getName());
+        if (task == null) {
             Parser parser = Parser.parseFile(mProject, file);
-            parseCache.load(file, file.toFile().getName(), new ParseTask(parser.task, parser.root));
+            task = new ParseTask(parser.task, parser.root);
+            parseCache.load(file, file.toFile().getName(), task);
         }
-        return parseCache.get(file, file.toFile().getName());
+        return task;
     }
 
     private ParseTask cachedParse(JavaFileObject file) {
@@ -352,13 +676,15 @@ public class JavaCompilerService implements CompilerProvider {
                     .substring(4, file.toUri().toString().lastIndexOf("!"));
 
             Path parsedPath = new File(URI.create(path)).toPath();
-            if (parseCache.needs(parsedPath, file.getName())) {
+            ParseTask task = parseCache.getIfPresent(parsedPath, file.getName());
+            if (task == null) {
                 Parser parser = Parser.parseJavaFileObject(mProject, file);
-                parseCache.load(parsedPath, file.getName(), new ParseTask(parser.task, parser.root));
+                task = new ParseTask(parser.task, parser.root);
+                parseCache.load(parsedPath, file.getName(), task);
             } else {
                 Log.d("JavaCompilerService", "Using cached parse for " + file.getName());
             }
-            return parseCache.get(parsedPath, file.getName());
+            return task;
         } else if (file instanceof SourceFileObject) {
             return cachedParse(((SourceFileObject) file).mFile);
         }
@@ -420,28 +746,65 @@ public class JavaCompilerService implements CompilerProvider {
      */
     @Override
     public CompileTask compile(Collection<? extends JavaFileObject> sources) {
-        mLock.lock();
-        CompileBatch compile = compileBatch(sources);
-        return new CompileTask(compile.task, compile.roots, diagnostics, this::close);
+        return compile(sources, false);
+    }
+
+    /**
+     * Compiles a file for completion. Only the given file is fully attributed, the other
+     * files that javac needs are compiled from their skeletons which only contain the
+     * declarations, so the time it takes does not depend on how large they are.
+     *
+     * The diagnostics of the returned task are not accurate and should not be shown.
+     *
+     * @param file the file being completed
+     * @return a CompileTask for this compilation
+     */
+    public CompileTask compileForCompletion(JavaFileObject file) {
+        return compile(Collections.singletonList(file), true);
+    }
+
+    private CompileTask compile(Collection<? extends JavaFileObject> sources,
+                                boolean skeletons) {
+        CompileBatch compile = compileBatch(sources, skeletons);
+        return new CompileTask(compile.task, compile.roots, compile.diagnostics,
+                () -> close(compile));
     }
 
+    /**
+     * Closes the batches that are still used by the current thread, called after a task
+     * failed before it could be closed
+     */
     public void close() {
-        if (cachedCompile != null && !cachedCompile.closed) {
-            cachedCompile.close();
-        }
-        if (mLock.isHeldByCurrentThread() && mLock.isLocked()) {
+        List<CompileBatch> owned = new ArrayList<>();
+        mLock.lock();
+        try {
+            for (CompileBatch batch : mInUse) {
+                if (batch.owner == Thread.currentThread()) {
+                    owned.add(batch);
+                }
+            }
+            for (CompileBatch batch : owned) {
+                batch.holds = 1;
+                close(batch);
+            }
+        } finally {
             mLock.unlock();
         }
     }
 
+    /**
+     * @return whether a compilation could start without waiting for another one to finish
+     */
     public boolean isReady() {
         if (CompletionEngine.isIndexing()) {
             return false;
         }
-        if (cachedCompile == null) {
-            return true;
+        mLock.lock();
+        try {
+            return mInUse.size() < mPoolSize;
+        } finally {
+            mLock.unlock();
         }
-        return cachedCompile.closed;
     }
 
     public JavaModule getCurrentModule() {
@@ -8,20 +8,18 @@ import com.tyron.builder.project.api.Module;
 import com.tyron.completion.CompletionProvider;
 import com.tyron.completion.index.CompilerService;
 import com.tyron.completion.java.model.CachedCompletion;
-import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
 import com.tyron.completion.progress.ProcessCanceledException;
 import com.tyron.completion.progress.ProgressManager;
+import com.tyron.completion.util.CompletionMatcher;
 
 import java.io.File;
-import java.util.List;
-import java.util.stream.Collectors;
-
-import me.xdrop.fuzzywuzzy.FuzzySearch;
 
 public class JavaCompletionProvider extends CompletionProvider {
 
     private CachedCompletion mCachedCompletion;
+    private String mCachedContents;
+    private long mCachedIndex;
 
     public JavaCompletionProvider() {
 
@@ -40,30 +38,28 @@ public class JavaCompletionProvider extends CompletionProvider {
         }
         ProgressManager.checkCanceled();
 
-        if (isIncrementalCompletion(mCachedCompletion, file, prefix, line, column)) {
-            String partialIdentifier = partialIdentifier(prefix, prefix.length());
-            List<CompletionItem> narrowedList =
-                    mCachedCompletion.getCompletionList().items.stream().filter(item -> {
-                String label = item.label;
-                if (label.contains("(")) {
-                    label = label.substring(0, label.indexOf('('));
-                }
-                if (label.length() < partialIdentifier.length()) {
-                    return false;
-                }
-                return FuzzySearch.partialRatio(label, partialIdentifier) > 90;
-            }).collect(Collectors.toList());
+        String partialIdentifier = partialIdentifier(contents, (int) index);
+        if (isIncrementalCompletion(mCachedCompletion, file, contents, partialIdentifier, line,
+                index)) {
+            // the user is still typing the same identifier, narrow down the previous result
+            // instead of compiling the file again
             CompletionList completionList = new CompletionList();
-            completionList.items = narrowedList;
+            completionList.items = new CompletionMatcher(partialIdentifier)
+                    .rankMatching(mCachedCompletion.getCompletionList().items);
             return completionList;
         }
 
         CompletionList complete = complete(project, (JavaModule) module, file, contents, index);
-        String newPrefix = prefix;
-        if (prefix.contains(".")) {
-            newPrefix = partialIdentifier(prefix, prefix.length());
+        if (complete.items.isEmpty()) {
+            // the completion may have failed, don't keep narrowing an empty result
+            mCachedCompletion = null;
+            mCachedContents = null;
+        } else {
+            mCachedCompletion = new CachedCompletion(file, line, column, partialIdentifier,
+                    complete);
+            mCachedContents = contents;
+            mCachedIndex = index;
         }
-        mCachedCompletion = new CachedCompletion(file, line, column, newPrefix, complete);
         return complete;
     }
 
@@ -87,6 +83,7 @@ public class JavaCompletionProvider extends CompletionProvider {
     }
 
     private String partialIdentifier(String contents, int end) {
+        end = Math.min(end, contents.length());
         int start = end;
         while (start > 0 && Character.isJavaIdentifierPart(contents.charAt(start - 1))) {
             start--;
@@ -94,20 +91,15 @@ public class JavaCompletionProvider extends CompletionProvider {
         return contents.substring(start, end);
     }
 
-
+    /**
+     * The previous result can be reused if the only change since then is that the identifier
+     * at the cursor got longer. Anything else, such as deleting characters, moving to another
+     * identifier or editing other parts of the file requires a full completion.
+     */
     private boolean isIncrementalCompletion(CachedCompletion cachedCompletion, File file,
-                                            String prefix, int line, int column) {
-        prefix = partialIdentifier(prefix, prefix.length());
-
-        if (line == -1) {
-            return false;
-        }
-
-        if (column == -1) {
-            return false;
-        }
-
-        if (cachedCompletion == null) {
+                                            String contents, String partialIdentifier,
+                                            int line, long index) {
+        if (cachedCompletion == null || mCachedContents == null) {
             return false;
         }
 
@@ -115,7 +107,7 @@ public class JavaCompletionProvider extends CompletionProvider {
             return false;
         }
 
-        if (prefix.endsWith(".")) {
+        if (cachedCompletion.getCompletionList().isIncomplete) {
             return false;
         }
 
@@ -123,18 +115,21 @@ public class JavaCompletionProvider extends CompletionProvider {
             return false;
         }
 
-        if (cachedCompletion.getColumn() > column) {
-            return false;
-        }
-
-        if (!prefix.startsWith(cachedCompletion.getPrefix())) {
+        String cachedPrefix = cachedCompletion.getPrefix();
+        if (!partialIdentifier.startsWith(cachedPrefix)) {
             return false;
         }
 
-        if (prefix.length() - cachedCompletion.getPrefix().length() != column - cachedCompletion.getColumn()) {
+        int typed = partialIdentifier.length() - cachedPrefix.length();
+        if (index - mCachedIndex != typed ||
+                contents.length() - mCachedContents.length() != typed) {
             return false;
         }
 
-        return true;
+        int identifierStart = (int) mCachedIndex - cachedPrefix.length();
+        int cachedEnd = (int) mCachedIndex;
+        return contents.regionMatches(0, mCachedContents, 0, identifierStart) &&
+                contents.regionMatches((int) index, mCachedContents, cachedEnd,
+                        mCachedContents.length() - cachedEnd);
     }
 }
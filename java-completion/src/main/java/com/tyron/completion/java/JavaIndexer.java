@@ -0,0 +1,219 @@
+package com.tyron.completion.java;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.cache.PersistentCache;
+
+import org.openjdk.source.tree.ClassTree;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.tree.Tree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Indexes the java files of a module when its project is opened.
+ *
+ * The files are first parsed in parallel to find their package and the top level classes they
+ * declare, which are given to the {@link JavaCompilerService} to complete the classes of the
+ * same package. The files are then compiled in chunks of files from the same packages to warm
+ * up the compiler before the first completion.
+ *
+ * The declarations are stored in a {@link PersistentCache} on the build directory of the
+ * module, files whose contents have not changed since the project was last opened are not
+ * parsed or compiled again.
+ */
+public class JavaIndexer {
+
+    private static final String TAG = JavaIndexer.class.getSimpleName();
+
+    /**
+     * Number of files attributed by a single compilation
+     */
+    private static final int CHUNK_SIZE = 64;
+
+    public interface ProgressListener {
+        void onProgress(String message, int progress, int max);
+    }
+
+    /**
+     * The package of a java file and the qualified names of the top level classes it declares
+     */
+    public static class Declarations {
+        private String packageName;
+        private List<String> classes;
+
+        public Declarations(@NonNull String packageName, @NonNull List<String> classes) {
+            this.packageName = packageName;
+            this.classes = classes;
+        }
+
+        @NonNull
+        public String getPackageName() {
+            return packageName;
+        }
+
+        @NonNull
+        public List<String> getClasses() {
+            return classes;
+        }
+    }
+
+    private final Project mProject;
+    private final JavaModule mModule;
+    private final JavaCompilerService mService;
+    private final PersistentCache mCache;
+
+    public JavaIndexer(Project project, JavaModule module, JavaCompilerService service) {
+        mProject = project;
+        mModule = module;
+        mService = service;
+        mCache = new PersistentCache(new File(module.getBuildDirectory(), "cache/javaIndex.json"));
+    }
+
+    /**
+     * Indexes the files that have changed since the last time and saves the result.
+     *
+     * @return the files that were indexed
+     */
+    @NonNull
+    public List<File> index(@NonNull ProgressListener listener)
+            throws IOException, InterruptedException {
+        Collection<File> files = mModule.getJavaFiles().values();
+        // files that have been deleted
+        Set<File> deleted = mCache.getInputs();
+        for (File file : files) {
+            deleted.remove(file.getAbsoluteFile());
+        }
+        for (File file : deleted) {
+            mCache.remove(file);
+            mService.setDeclarations(file, null);
+        }
+
+        // the files are attributed against the class path, they are all compiled again
+        // when it changes
+        List<File> classPath = new ArrayList<>(mModule.getLibraries());
+        classPath.add(CompletionModule.getAndroidJar());
+        String fingerprint = PersistentCache.fingerprint(classPath);
+
+        List<File> modified = new ArrayList<>();
+        for (File file : files) {
+            Declarations declarations = mCache.isUpToDate(file, fingerprint)
+                    ? mCache.getData(file, Declarations.class) : null;
+            if (declarations == null) {
+                modified.add(file);
+            } else {
+                mService.setDeclarations(file, declarations);
+            }
+        }
+        Log.d(TAG, "Indexing " + modified.size() + " of " + files.size() + " files");
+
+        try {
+            if (!modified.isEmpty()) {
+                Map<File, Declarations> declarations = parse(modified, listener);
+                for (Map.Entry<File, Declarations> entry : declarations.entrySet()) {
+                    mService.setDeclarations(entry.getKey(), entry.getValue());
+                }
+                compile(declarations, fingerprint, listener);
+            }
+        } finally {
+            mCache.save();
+        }
+        return modified;
+    }
+
+    /**
+     * @return the declarations of each file that could be parsed
+     */
+    private Map<File, Declarations> parse(List<File> files, ProgressListener listener)
+            throws InterruptedException {
+        Map<File, Declarations> declarations = new HashMap<>();
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Declarations>> futures = new ArrayList<>(files.size());
+            for (File file : files) {
+                futures.add(executor.submit(() -> parse(file)));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                listener.onProgress("Parsing", i, files.size());
+                try {
+                    declarations.put(files.get(i), futures.get(i).get());
+                } catch (ExecutionException e) {
+                    // a file that cannot be parsed is indexed again on the next open
+                    Log.w(TAG, "Unable to parse " + files.get(i), e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return declarations;
+    }
+
+    private Declarations parse(File file) {
+        Parser parser = Parser.parseUncached(mProject, new SourceFileObject(file.toPath(), mModule));
+        CompilationUnitTree root = parser.root;
+        String packageName = root.getPackageName() == null ? "" :
+                root.getPackageName().toString();
+        List<String> classes = new ArrayList<>();
+        for (Tree declaration : root.getTypeDecls()) {
+            if (declaration instanceof ClassTree) {
+                String name = ((ClassTree) declaration).getSimpleName().toString();
+                classes.add(packageName.isEmpty() ? name : packageName + "." + name);
+            }
+        }
+        return new Declarations(packageName, classes);
+    }
+
+    /**
+     * Compiles the files grouped by their packages, package private classes are usually
+     * referenced from the same package so javac rarely needs to add more sources to a chunk
+     */
+    private void compile(Map<File, Declarations> declarations, String fingerprint,
+                         ProgressListener listener) {
+        List<File> sorted = new ArrayList<>(declarations.keySet());
+        sorted.sort(Comparator.comparing((File file) -> declarations.get(file).getPackageName())
+                .thenComparing(File::getName));
+
+        for (int start = 0; start < sorted.size(); start += CHUNK_SIZE) {
+            listener.onProgress("Compiling", start, sorted.size());
+            List<File> chunk = sorted.subList(start, Math.min(sorted.size(), start + CHUNK_SIZE));
+            warmUp(chunk);
+            for (File file : chunk) {
+                mCache.put(file, fingerprint, Collections.emptyList(), declarations.get(file));
+            }
+        }
+    }
+
+    /**
+     * Compiles the files and throws away the result. The compiler loads the classes that the
+     * files use from the class path while doing so, they stay in the symbol table of its
+     * reusable context and the last batches stay in the compile cache, so the first
+     * completions after the project is opened do not have to do it.
+     */
+    private void warmUp(List<File> files) {
+        Path[] paths = new Path[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            paths[i] = files.get(i).toPath();
+        }
+        mService.compile(paths).close();
+    }
+}
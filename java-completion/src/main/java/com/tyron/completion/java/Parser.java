@@ -103,6 +103,14 @@ public class Parser {
         return cachedParse;
     }
 
+    /**
+     * Parses the file without replacing the cached parse so it can be called from
+     * multiple threads at the same time
+     */
+    public static Parser parseUncached(Project project, JavaFileObject file) {
+        return new Parser(project, file);
+    }
+
     public Set<Name> packagePrivateClasses() {
         Set<Name> result = new HashSet<>();
         for (Tree t : root.getTypeDecls()) {
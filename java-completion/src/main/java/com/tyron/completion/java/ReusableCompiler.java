@@ -1,5 +1,8 @@
 package com.tyron.completion.java;
 
+import com.tyron.completion.progress.ProgressIndicator;
+import com.tyron.completion.progress.ProgressManager;
+
 import org.openjdk.javax.tools.Diagnostic;
 import org.openjdk.javax.tools.DiagnosticListener;
 import org.openjdk.javax.tools.JavaFileManager;
@@ -59,9 +62,17 @@ public class ReusableCompiler {
     private static final Logger LOG = Logger.getLogger("main");
     private static final JavacTool systemProvider = JavacTool.create();
 
+    /**
+     * Number of tasks a context is reused for. Every class that javac completes stays in the
+     * symbol table of the context, so it is dropped after a while instead of keeping every class
+     * it has ever seen for the rest of the session.
+     */
+    private static final int MAX_CONTEXT_USES = 100;
+
     private List<String> currentOptions = new ArrayList<>();
     private ReusableContext currentContext;
     private boolean checkedOut;
+    private int contextUses;
 
     /**
      * Creates a new task as if by JavaCompiler and runs the provided worker with it. The
@@ -97,7 +108,12 @@ public class ReusableCompiler {
             currentOptions.clear();
             currentOptions.addAll(opts);
             currentContext = new ReusableContext(opts);
+            contextUses = 0;
+        } else if (currentContext == null || contextUses >= MAX_CONTEXT_USES) {
+            currentContext = new ReusableContext(opts);
+            contextUses = 0;
         }
+        contextUses++;
         JavacTaskImpl task =
 			(JavacTaskImpl)
 			systemProvider.getTask(
@@ -107,6 +123,16 @@ public class ReusableCompiler {
         return new Borrow(task, currentContext);
     }
 
+    /**
+     * Drops the context of this compiler, the next task starts with a new one
+     */
+    public void evict() {
+        if (checkedOut) {
+            throw new RuntimeException("Compiler is still in-use!");
+        }
+        currentContext = null;
+    }
+
     public class Borrow implements AutoCloseable {
         final JavacTask task;
         boolean closed;
@@ -171,13 +197,24 @@ public class ReusableCompiler {
         @Override
         @DefinedBy(DefinedBy.Api.COMPILER_TREE)
         public void finished(TaskEvent e) {
-            // do nothing
+            checkCanceled();
         }
 
         @Override
         @DefinedBy(DefinedBy.Api.COMPILER_TREE)
         public void started(TaskEvent e) {
-            // do nothing
+            checkCanceled();
+        }
+
+        /**
+         * Stops the compilation between files if it runs as a cancelable background process,
+         * the context is not reused afterwards since the borrow is never closed.
+         */
+        private void checkCanceled() {
+            ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+            if (indicator != null) {
+                indicator.checkCanceled();
+            }
         }
 
         <T> void drop(Key<T> k) {
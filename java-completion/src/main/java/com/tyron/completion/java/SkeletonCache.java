@@ -0,0 +1,137 @@
+package com.tyron.completion.java;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.completion.java.provider.PruneMethodBodies;
+
+import org.openjdk.javax.tools.JavaFileObject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Creates the signature only skeletons of the files that are compiled alongside the file
+ * being completed. A skeleton has the bodies of all of its methods removed so javac only
+ * enters and attributes the declarations of the file, the positions of the declarations are
+ * kept the same so diagnostics and trees still point to the right place.
+ *
+ * Skeletons are cached by the hash of the contents of the file they were created from.
+ */
+public class SkeletonCache {
+
+    private static final String TAG = SkeletonCache.class.getSimpleName();
+
+    /**
+     * The maximum number of skeletons kept, they are about as large as the file itself
+     */
+    private static final int MAX_ENTRIES = 512;
+
+    private static class Entry {
+        final int length;
+        final int hash;
+        final String skeleton;
+
+        Entry(int length, int hash, String skeleton) {
+            this.length = length;
+            this.hash = hash;
+            this.skeleton = skeleton;
+        }
+    }
+
+    private final Project mProject;
+    private final Map<URI, Entry> mEntries = new LinkedHashMap<URI, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<URI, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private int mHits;
+    private int mMisses;
+
+    public SkeletonCache(Project project) {
+        mProject = project;
+    }
+
+    /**
+     * @return the skeleton of the given source, or the source itself if it cannot be read
+     * or parsed
+     */
+    @NonNull
+    public JavaFileObject get(@NonNull JavaFileObject source) {
+        if (source.getKind() != JavaFileObject.Kind.SOURCE ||
+                !"file".equals(source.toUri().getScheme())) {
+            return source;
+        }
+        CharSequence content;
+        try {
+            content = source.getCharContent(true);
+        } catch (IOException e) {
+            return source;
+        }
+        if (content == null) {
+            return source;
+        }
+
+        int hash = content.toString().hashCode();
+        String skeleton;
+        synchronized (this) {
+            Entry entry = mEntries.get(source.toUri());
+            if (entry != null && entry.length == content.length() && entry.hash == hash) {
+                mHits++;
+                skeleton = entry.skeleton;
+            } else {
+                mMisses++;
+                skeleton = null;
+            }
+        }
+
+        if (skeleton == null) {
+            // parsing is done outside of the lock so other compilations are not blocked
+            try {
+                skeleton = createSkeleton(source);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Unable to create the skeleton of " + source.toUri(), e);
+                return source;
+            }
+            synchronized (this) {
+                mEntries.put(source.toUri(), new Entry(content.length(), hash, skeleton));
+            }
+        }
+        return new SourceFileObject(Paths.get(source.toUri()), skeleton,
+                Instant.ofEpochMilli(source.getLastModified()));
+    }
+
+    private String createSkeleton(JavaFileObject source) {
+        Parser parser = Parser.parseUncached(mProject, source);
+        // there is no cursor, remove the body of every method
+        return new PruneMethodBodies(parser.task).scan(parser.root, -1L).toString();
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return "SkeletonCache[entries=" + mEntries.size() + ", hits=" + mHits + ", misses=" +
+                mMisses + "]";
+    }
+}
@@ -0,0 +1,51 @@
+package com.tyron.completion.java;
+
+import org.openjdk.javax.tools.ForwardingJavaFileManager;
+import org.openjdk.javax.tools.JavaFileManager;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.javax.tools.StandardLocation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A file manager that gives javac the skeletons of the files on the source path instead of
+ * the files themselves. The classes that javac loads from source while compiling a file for
+ * completion are then entered without their method bodies.
+ */
+public class SkeletonFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+
+    private final SkeletonCache mSkeletons;
+
+    public SkeletonFileManager(JavaFileManager fileManager, SkeletonCache skeletons) {
+        super(fileManager);
+        mSkeletons = skeletons;
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(Location location, String packageName,
+                                         Set<JavaFileObject.Kind> kinds, boolean recurse)
+            throws IOException {
+        Iterable<JavaFileObject> files = super.list(location, packageName, kinds, recurse);
+        if (location != StandardLocation.SOURCE_PATH) {
+            return files;
+        }
+        List<JavaFileObject> skeletons = new ArrayList<>();
+        for (JavaFileObject file : files) {
+            skeletons.add(mSkeletons.get(file));
+        }
+        return skeletons;
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForInput(Location location, String className,
+                                              JavaFileObject.Kind kind) throws IOException {
+        JavaFileObject file = super.getJavaFileForInput(location, className, kind);
+        if (file == null || location != StandardLocation.SOURCE_PATH) {
+            return file;
+        }
+        return mSkeletons.get(file);
+    }
+}
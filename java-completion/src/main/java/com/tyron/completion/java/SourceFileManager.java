@@ -20,7 +20,6 @@ import org.openjdk.tools.javac.api.JavacTool;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
@@ -125,18 +124,6 @@ public class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFil
 	    if (!(module instanceof JavaModule)) {
 	        return Collections.emptyList();
         }
-	    JavaModule javaModule = (JavaModule) module;
-
-	    List<File> list = new ArrayList<>();
-        for (String file : javaModule.getJavaFiles().keySet()) {
-            String name = file;
-            if (file.endsWith(".")) {
-                name = file.substring(0, file.length() - 1);
-            }
-            if (name.substring(0, name.lastIndexOf(".")).equals(packageName) || name.equals(packageName)) {
-                list.add(javaModule.getJavaFiles().get(file));
-            }
-        }
-        return list;
+	    return ((JavaModule) module).getJavaFilesInPackage(packageName);
     }
 }
@@ -266,12 +266,11 @@ public class CodeActionProvider {
                 case "compiler.err.cant.resolve.location":
                     CharSequence simpleName = diagnostic.getArgs()[1].toString();
                     TreeMap<String, Rewrite> allImports = new TreeMap<>();
-                    for (String qualifiedName : mCompiler.publicTopLevelTypes()) {
-                        if (qualifiedName.endsWith("." + simpleName)) {
-                            String title = "Import " + qualifiedName;
-                            Rewrite addImport = new AddImport(file.toFile(), qualifiedName);
-                            allImports.put(title, addImport);
-                        }
+                    for (String qualifiedName :
+                            mCompiler.publicTopLevelTypesNamed(simpleName.toString())) {
+                        String title = "Import " + qualifiedName;
+                        Rewrite addImport = new AddImport(file.toFile(), qualifiedName);
+                        allImports.put(title, addImport);
                     }
                     return allImports;
                 case "compiler.err.doesnt.exist":
@@ -282,18 +281,15 @@ public class CodeActionProvider {
                         searchName = searchName.substring(0, searchName.indexOf('.'));
                     }
                     allImports = new TreeMap<>();
-                    for (String qualifiedName : mCompiler.publicTopLevelTypes()) {
-
-                        if (qualifiedName.endsWith("." + searchName)) {
-                            if (isField) {
-                                qualifiedName = qualifiedName.substring(0,
-                                        qualifiedName.lastIndexOf('.'));
-                                qualifiedName += simpleName;
-                            }
-                            String title = "Import " + qualifiedName;
-                            Rewrite addImport = new AddImport(file.toFile(), qualifiedName);
-                            allImports.put(title, addImport);
+                    for (String qualifiedName : mCompiler.publicTopLevelTypesNamed(searchName)) {
+                        if (isField) {
+                            qualifiedName = qualifiedName.substring(0,
+                                    qualifiedName.lastIndexOf('.'));
+                            qualifiedName += simpleName;
                         }
+                        String title = "Import " + qualifiedName;
+                        Rewrite addImport = new AddImport(file.toFile(), qualifiedName);
+                        allImports.put(title, addImport);
                     }
                     return allImports;
                 case "compiler.err.unreported.exception.need.to.catch.or.throw":
@@ -17,7 +17,6 @@ import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.completion.java.CompileTask;
 import com.tyron.completion.java.JavaCompilerService;
-import com.tyron.completion.java.model.CachedCompletion;
 import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
 
@@ -45,8 +44,6 @@ public class CompletionEngine {
     private final DiagnosticListener<? super JavaFileObject> mInternalListener;
     private final HashSet<Object> mCachedPaths;
 
-    private CachedCompletion cachedCompletion;
-
     public static volatile CompletionEngine Instance = null;
 
     public static synchronized CompletionEngine getInstance() {
@@ -143,14 +140,14 @@ public class CompletionEngine {
 //        }
     }
 
-    public synchronized CompletionList complete(Project project,
-                                                JavaModule module,
-                                                File file,
-                                                String contents,
-                                                String prefix,
-                                                int line,
-                                                int column,
-                                                long index) throws InterruptedException {
+    public CompletionList complete(Project project,
+                                   JavaModule module,
+                                   File file,
+                                   String contents,
+                                   String prefix,
+                                   int line,
+                                   int column,
+                                   long index) throws InterruptedException {
 //        if (mIndexing) {
 //            return CompletionList.EMPTY;
 //        }
@@ -160,11 +157,11 @@ public class CompletionEngine {
     }
 
     @NonNull
-    public synchronized CompletionList complete(Project project,
-                                                JavaModule module,
-                                                File file,
-                                                String contents,
-                                                long cursor) throws InterruptedException {
+    public CompletionList complete(Project project,
+                                   JavaModule module,
+                                   File file,
+                                   String contents,
+                                   long cursor) throws InterruptedException {
         // Do not request for completion if we're indexing
 //        if (mIndexing) {
 //            return CompletionList.EMPTY;
@@ -34,6 +34,7 @@ import com.tyron.completion.java.util.ElementUtil;
 import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
 import com.tyron.completion.model.DrawableKind;
+import com.tyron.completion.util.CompletionMatcher;
 
 import java.io.File;
 import java.nio.file.Path;
@@ -41,7 +42,6 @@ import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -49,7 +49,6 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 import org.openjdk.javax.lang.model.element.Element;
 import org.openjdk.javax.lang.model.element.ElementKind;
@@ -66,7 +65,6 @@ import org.openjdk.javax.lang.model.type.TypeMirror;
 import org.openjdk.javax.lang.model.type.TypeVariable;
 import org.openjdk.javax.lang.model.util.Types;
 
-import me.xdrop.fuzzywuzzy.FuzzySearch;
 
 /**
  * Main entry point for getting completions
@@ -89,8 +87,7 @@ public class CompletionProvider {
             "int", "long", "float", "double", "var"};
     //private final JavaParser parser;
     private final JavaCompilerService compiler;
-
-    private static final int MAX_COMPLETION_ITEMS = 50;
+    private CompletionMatcher mMatcher;
 
     public CompletionProvider(JavaCompilerService compiler) {
         this.compiler = compiler;
@@ -111,27 +108,32 @@ public class CompletionProvider {
         }
         String partial = partialIdentifier(contents.toString(), (int) index);
         CompletionList list = compileAndComplete(file, contents.toString(), partial, index);
-        list.items = list.items.stream().sorted(Comparator.<CompletionItem>comparingInt(it -> {
-            String label = it.label;
-            if (label.contains("(")) {
-                label = label.substring(0, label.indexOf('('));
-            }
-            if (label.length() != partial.length()) {
-                return FuzzySearch.ratio(label, partial);
-            } else {
-                return FuzzySearch.partialRatio(label, partial);
-            }
-        }).reversed()).collect(Collectors.toList());
+        list.items = matcher(partial).rank(list.items);
         return list;
     }
 
+    /**
+     * @return the matcher for this partial identifier, the same instance is used
+     * throughout a completion request
+     */
+    private CompletionMatcher matcher(String partial) {
+        if (mMatcher == null || !mMatcher.getPattern().equals(partial)) {
+            mMatcher = new CompletionMatcher(partial);
+        }
+        return mMatcher;
+    }
+
+    private boolean matchesPartial(CharSequence candidate, String partial) {
+        return matcher(partial).matches(candidate);
+    }
+
     public CompletionList compileAndComplete(File file, String contents, String partial,
                                              long cursor) {
         SourceFileObject source = new SourceFileObject(file.toPath(), contents, Instant.now());
         boolean endsWithParen = endsWithParen(contents, (int) cursor);
 
         checkCanceled();
-        try (CompileTask task = compiler.compile(Collections.singletonList(source))) {
+        try (CompileTask task = compiler.compileForCompletion(source)) {
             TreePath path = new FindCompletionsAt(task.task).scan(task.root(), cursor);
             switch (path.getLeaf().getKind()) {
                 case IDENTIFIER:
@@ -225,7 +227,7 @@ public class CompletionProvider {
             keywords = METHOD_BODY_KEYWORDS;
         }
         for (String k : keywords) {
-            if (StringSearch.matchesPartialName(k, partial)) {
+            if (matchesPartial(k, partial)) {
                 list.items.add(keyword(k));
             }
         }
@@ -264,6 +266,8 @@ public class CompletionProvider {
         if (partial.length() > 0 && Character.isUpperCase(partial.charAt(0))) {
             addClassNames(path.getCompilationUnit(), partial, list);
         }
+        // class names are only added once the user starts typing one
+        list.isIncomplete = partial.isEmpty();
         addStaticImports(task, path.getCompilationUnit(), partial, endsWithParen, list);
         addKeywords(path, partial, list);
         return list;
@@ -347,7 +351,7 @@ public class CompletionProvider {
         HashMap<String, List<ExecutableElement>> methods = new HashMap<>();
         for (Element member : task.task.getElements().getAllMembers(typeElement)) {
             if (member.getKind() == ElementKind.CONSTRUCTOR) continue;
-            if (!StringSearch.matchesPartialName(member.getSimpleName(), partial) && !partial.endsWith("."))
+            if (!matchesPartial(member.getSimpleName(), partial) && !partial.endsWith("."))
                 continue;
             if (!trees.isAccessible(scope, member, type)) continue;
             if (isStatic != member.getModifiers().contains(Modifier.STATIC)) continue;
@@ -363,15 +367,15 @@ public class CompletionProvider {
         }
 
         if (isStatic) {
-            if (StringSearch.matchesPartialName("class", partial)) {
+            if (matchesPartial("class", partial)) {
                 list.add(keyword("class"));
             }
         }
         if (isStatic && isEnclosingClass(type, scope)) {
-            if (StringSearch.matchesPartialName("this", partial)) {
+            if (matchesPartial("this", partial)) {
                 list.add(keyword("this"));
             }
-            if (StringSearch.matchesPartialName("super", partial)) {
+            if (matchesPartial("super", partial)) {
                 list.add(keyword("super"));
             }
         }
@@ -390,12 +394,16 @@ public class CompletionProvider {
         Set<CompletionItem> list = new HashSet<>();
         Scope scope = trees.getScope(path);
 
-        Predicate<CharSequence> filter = p1 -> {
-            String label = p1.toString();
-            if (label.contains("(")) {
-                label = label.substring(0, label.indexOf('('));
+        CompletionMatcher matcher = matcher(partial);
+        Predicate<CharSequence> filter = label -> {
+            int end = label.length();
+            for (int i = 0; i < label.length(); i++) {
+                if (label.charAt(i) == '(') {
+                    end = i;
+                    break;
+                }
             }
-            return FuzzySearch.partialRatio(label, partial) > 90;
+            return matcher.score(label, end) != CompletionMatcher.NO_MATCH;
         };
 
         if (path.getParentPath().getLeaf().getKind() == Tree.Kind.METHOD_INVOCATION) {
@@ -528,7 +536,7 @@ public class CompletionProvider {
                     DeclaredType type = (DeclaredType) var.asType();
                     Element classElement = type.asElement();
 
-                    if (StringSearch.matchesPartialName(classElement.getSimpleName().toString(),
+                    if (matchesPartial(classElement.getSimpleName().toString(),
                             partial)) {
                         CompletionItem item = new CompletionItem();
 
@@ -569,7 +577,7 @@ public class CompletionProvider {
             for (Element member : type.getEnclosedElements()) {
                 if (!member.getModifiers().contains(Modifier.STATIC)) continue;
                 if (!memberMatchesImport(id.getIdentifier(), member)) continue;
-                if (!StringSearch.matchesPartialName(member.getSimpleName(), partial)) continue;
+                if (!matchesPartial(member.getSimpleName(), partial)) continue;
                 if (member.getKind() == ElementKind.METHOD) {
                     methods.clear();
                     putMethod((ExecutableElement) member, methods);
@@ -607,8 +615,7 @@ public class CompletionProvider {
     }
 
     private boolean importMatchesPartial(Name staticImport, String partial) {
-        return staticImport.contentEquals("*") || StringSearch.matchesPartialName(staticImport,
-                partial);
+        return staticImport.contentEquals("*") || matchesPartial(staticImport, partial);
     }
 
     private boolean memberMatchesImport(Name staticImport, Element member) {
@@ -620,20 +627,18 @@ public class CompletionProvider {
 
         Set<String> names = new HashSet<>();
         CompletionList list = new CompletionList();
-        for (String className : compiler.publicTopLevelTypes()) {
-            if (className.startsWith(path)) {
-                int start = path.lastIndexOf('.');
-                int end = className.indexOf('.', path.length());
-                if (end == -1) end = className.length();
-                String segment = className.substring(start + 1, end);
-                if (names.contains(segment)) continue;
-                names.add(segment);
-                boolean isClass = end == path.length();
-                if (isClass) {
-                    list.items.add(classItem(className));
-                } else {
-                    list.items.add(packageItem(segment));
-                }
+        for (String className : compiler.publicTopLevelTypesWithPrefix(path)) {
+            int start = path.lastIndexOf('.');
+            int end = className.indexOf('.', path.length());
+            if (end == -1) end = className.length();
+            String segment = className.substring(start + 1, end);
+            if (names.contains(segment)) continue;
+            names.add(segment);
+            boolean isClass = end == path.length();
+            if (isClass) {
+                list.items.add(classItem(className));
+            } else {
+                list.items.add(packageItem(segment));
             }
         }
         return list;
@@ -697,7 +702,7 @@ public class CompletionProvider {
         TypeElement typeElement = (TypeElement) type.asElement();
         List<CompletionItem> list = new ArrayList<>();
         for (Element member : task.task.getElements().getAllMembers(typeElement)) {
-            if (!StringSearch.matchesPartialName(member.getSimpleName(), partial)) continue;
+            if (!matchesPartial(member.getSimpleName(), partial)) continue;
             if (member.getKind() != ElementKind.METHOD) continue;
             if (!trees.isAccessible(scope, member, type)) continue;
             if (!isStatic && member.getModifiers().contains(Modifier.STATIC)) continue;
@@ -716,7 +721,7 @@ public class CompletionProvider {
         }
 
         CompletionList comp = new CompletionList();
-        comp.isIncomplete = !(list.size() > MAX_COMPLETION_ITEMS);
+        comp.isIncomplete = false;
         comp.items = list;
         return comp;
     }
@@ -736,7 +741,7 @@ public class CompletionProvider {
         List<CompletionItem> list = new ArrayList<>();
         for (Element member : task.task.getElements().getAllMembers(element)) {
             if (member.getKind() != ElementKind.ENUM_CONSTANT) continue;
-            if (!StringSearch.matchesPartialName(member.getSimpleName(), partial)) continue;
+            if (!matchesPartial(member.getSimpleName(), partial)) continue;
             list.add(item(member));
         }
 
@@ -753,12 +758,11 @@ public class CompletionProvider {
         String packageName = Objects.toString(root.getPackageName(), "");
         Set<String> uniques = new HashSet<>();
         for (String className : compiler.packagePrivateTopLevelTypes(packageName)) {
-            if (!StringSearch.matchesPartialName(className, partial)) continue;
+            if (!matchesPartial(className, partial)) continue;
             list.items.add(classItem(className));
             uniques.add(className);
         }
-        for (String className : compiler.publicTopLevelTypes()) {
-            if (FuzzySearch.partialRatio(className, partial) < 90) continue;
+        for (String className : compiler.publicTopLevelTypesMatching(partial)) {
             if (uniques.contains(className)) continue;
             list.items.add(classItem(className));
             uniques.add(className);
@@ -0,0 +1,129 @@
+package com.tyron.completion.java;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.tyron.completion.TestUtil.resolveBasePath;
+
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class CompileBatchCacheTest {
+
+    private static final int FILE_COUNT = 6;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<File> mFiles = new ArrayList<>();
+    private JavaCompilerService mService;
+    private CompileBatchCache mCache;
+
+    @Before
+    public void setup() throws IOException {
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs.jar"));
+
+        File root = mFolder.newFolder("project");
+        Project project = new Project(root);
+        AndroidModule module = new MockAndroidModule(new File(root, "app"),
+                new MockFileManager(root));
+        for (int i = 0; i < FILE_COUNT; i++) {
+            File file = write(root, "Class" + i, "public class Class" + i + " {\n" +
+                    "    int field = " + i + ";\n" +
+                    "}");
+            mFiles.add(file);
+            module.addJavaFile(file);
+        }
+
+        mService = new JavaCompilerService(project, Collections.emptySet(),
+                Collections.emptySet(), Collections.emptySet());
+        mService.setCurrentModule(module);
+        mCache = mService.getCompileCache();
+    }
+
+    @Test
+    public void testSameFileIsReused() {
+        compile(mFiles.get(0));
+        int misses = mCache.getMissCount();
+        int hits = mCache.getHitCount();
+
+        compile(mFiles.get(0));
+        assertThat(mCache.getHitCount()).isEqualTo(hits + 1);
+        assertThat(mCache.getMissCount()).isEqualTo(misses);
+
+        // switching between files keeps both of them
+        compile(mFiles.get(1));
+        compile(mFiles.get(0));
+        assertThat(mCache.getHitCount()).isEqualTo(hits + 2);
+        assertThat(mCache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testModifiedFileIsCompiledAgain() throws IOException {
+        File file = mFiles.get(0);
+        compile(file);
+
+        // saved without any modifications
+        assertThat(file.setLastModified(file.lastModified() + 2000)).isTrue();
+        int hits = mCache.getHitCount();
+        compile(file);
+        assertThat(mCache.getHitCount()).isEqualTo(hits + 1);
+
+        Files.write(file.toPath(), ("package com.test;\n\npublic class Class0 {\n" +
+                "    String field = \"changed\";\n}\n").getBytes(StandardCharsets.UTF_8));
+        assertThat(file.setLastModified(file.lastModified() + 4000)).isTrue();
+        int misses = mCache.getMissCount();
+        try (CompileTask task = mService.compile(file.toPath())) {
+            assertThat(task.root().toString()).contains("changed");
+        }
+        assertThat(mCache.getMissCount()).isEqualTo(misses + 1);
+        assertThat(mCache.getHitCount()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedBatchIsEvicted() {
+        for (File file : mFiles) {
+            compile(file);
+        }
+        assertThat(mCache.size()).isAtMost(4);
+        assertThat(mCache.getEvictionCount()).isAtLeast(FILE_COUNT - 4);
+
+        // the most recently used batch is still cached
+        int hits = mCache.getHitCount();
+        compile(mFiles.get(FILE_COUNT - 1));
+        assertThat(mCache.getHitCount()).isEqualTo(hits + 1);
+    }
+
+    private void compile(File file) {
+        try (CompileTask task = mService.compile(file.toPath())) {
+            assertThat(task.diagnostics).isEmpty();
+        }
+    }
+
+    private static File write(File root, String className, String contents)
+            throws IOException {
+        File file = new File(root, "app/src/main/java/com/test/" + className + ".java");
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), ("package com.test;\n\n" + contents + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,176 @@
+package com.tyron.completion.java;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.tyron.completion.TestUtil.resolveBasePath;
+
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.openjdk.javax.tools.Diagnostic;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class CompilerPoolTest {
+
+    private static final int FILE_COUNT = 6;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<File> mFiles = new ArrayList<>();
+    private File mBrokenFile;
+    private JavaCompilerService mService;
+
+    @Before
+    public void setup() throws IOException {
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs.jar"));
+
+        File root = mFolder.newFolder("project");
+        Project project = new Project(root);
+        AndroidModule module = new MockAndroidModule(new File(root, "app"),
+                new MockFileManager(root));
+        for (int i = 0; i < FILE_COUNT; i++) {
+            File file = write(root, "Class" + i, "public class Class" + i + " {\n" +
+                    "    int field = " + i + ";\n" +
+                    "    String method() { return String.valueOf(field); }\n" +
+                    "}");
+            mFiles.add(file);
+            module.addJavaFile(file);
+        }
+        mBrokenFile = write(root, "Broken", "public class Broken {\n" +
+                "    int field = \"not an int\";\n" +
+                "}");
+        module.addJavaFile(mBrokenFile);
+
+        mService = new JavaCompilerService(project, Collections.emptySet(),
+                Collections.emptySet(), Collections.emptySet());
+        mService.setCurrentModule(module);
+    }
+
+    @Test
+    public void testConcurrentCompilations() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(FILE_COUNT);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < FILE_COUNT * 4; i++) {
+                // every other compilation has an error, they must not end up in other batches
+                File file = i % 2 == 0 ? mFiles.get(i % FILE_COUNT) : mBrokenFile;
+                futures.add(executor.submit(() -> {
+                    try (CompileTask task = mService.compile(file.toPath())) {
+                        assertThat(task.roots).hasSize(1);
+                        for (Diagnostic<? extends JavaFileObject> diagnostic : task.diagnostics) {
+                            assertThat(diagnostic.getSource().toUri())
+                                    .isEqualTo(file.toURI());
+                        }
+                        assertThat(task.diagnostics.isEmpty()).isEqualTo(file != mBrokenFile);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Two threads that each hold a batch and then need the batch of the other one must not
+     * wait for each other
+     */
+    @Test
+    public void testNestedCompilationsDoNotDeadlock() throws Exception {
+        File first = mFiles.get(0);
+        File second = mFiles.get(1);
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> one = executor.submit(compileNested(first, second, barrier));
+            Future<?> two = executor.submit(compileNested(second, first, barrier));
+            one.get(2, TimeUnit.MINUTES);
+            two.get(2, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Callable<Void> compileNested(File held, File other, CyclicBarrier barrier) {
+        return () -> {
+            try (CompileTask task = mService.compile(held.toPath())) {
+                barrier.await(1, TimeUnit.MINUTES);
+                try (CompileTask nested = mService.compile(other.toPath())) {
+                    assertThat(nested.roots.get(0).getSourceFile().toUri())
+                            .isEqualTo(other.toURI());
+                }
+                assertThat(task.roots.get(0).getSourceFile().toUri()).isEqualTo(held.toURI());
+            }
+            return null;
+        };
+    }
+
+    @Test
+    public void testDiagnosticsArePublishedOncePerBatch() {
+        List<Diagnostic<? extends JavaFileObject>> reported = new ArrayList<>();
+        mService.setDiagnosticListener(diagnostic -> {
+            if (diagnostic == null) {
+                reported.clear();
+            } else {
+                reported.add(diagnostic);
+            }
+        });
+
+        try (CompileTask task = mService.compile(mBrokenFile.toPath())) {
+            assertThat(task.diagnostics).isNotEmpty();
+            assertThat(mService.getDiagnostics()).containsExactlyElementsIn(task.diagnostics);
+            assertThat(reported).containsExactlyElementsIn(task.diagnostics);
+        }
+
+        try (CompileTask task = mService.compile(mFiles.get(0).toPath())) {
+            assertThat(task.diagnostics).isEmpty();
+            assertThat(mService.getDiagnostics()).isEmpty();
+            assertThat(reported).isEmpty();
+        }
+
+        // the diagnostics of a compilation for completion are not accurate
+        SourceFileObject broken = new SourceFileObject(mBrokenFile.toPath());
+        try (CompileTask task = mService.compileForCompletion(broken)) {
+            assertThat(task.roots).hasSize(1);
+            assertThat(mService.getDiagnostics()).isEmpty();
+        }
+    }
+
+    private static File write(File root, String className, String contents)
+            throws IOException {
+        File file = new File(root, "app/src/main/java/com/test/" + className + ".java");
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), ("package com.test;\n\n" + contents + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
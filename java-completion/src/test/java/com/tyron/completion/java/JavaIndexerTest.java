@@ -0,0 +1,116 @@
+package com.tyron.completion.java;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.tyron.completion.TestUtil.resolveBasePath;
+
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class JavaIndexerTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Project mProject;
+    private AndroidModule mModule;
+    private JavaCompilerService mService;
+    private File mMain;
+    private File mOther;
+
+    @Before
+    public void setup() throws IOException {
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs.jar"));
+
+        File root = mFolder.newFolder("project");
+        mProject = new Project(root);
+        mModule = new MockAndroidModule(new File(root, "app"), new MockFileManager(root));
+        mMain = write(root, "com/test/Main", "package com.test;\n\npublic class Main {}\n");
+        mOther = write(root, "com/test/other/Other",
+                "package com.test.other;\n\npublic class Other {}\n");
+        mModule.addJavaFile(mMain);
+        mModule.addJavaFile(mOther);
+
+        mService = new JavaCompilerService(mProject, Collections.emptySet(),
+                Collections.emptySet(), Collections.emptySet());
+        mService.setCurrentModule(mModule);
+    }
+
+    @Test
+    public void testUnchangedFilesAreSkipped() throws Exception {
+        assertThat(index()).containsExactly(mMain, mOther);
+        assertThat(index()).isEmpty();
+        // the index is stored on the build directory and survives a restart
+        assertThat(new File(mModule.getBuildDirectory(), "cache/javaIndex.json").exists())
+                .isTrue();
+    }
+
+    @Test
+    public void testModifiedFilesAreIndexedAgain() throws Exception {
+        index();
+
+        // same length and modification time, only the contents tell that it has changed
+        long lastModified = mMain.lastModified();
+        Files.write(mMain.toPath(), "package com.test;\n\npublic class Nain {}\n"
+                .getBytes(StandardCharsets.UTF_8));
+        assertThat(mMain.setLastModified(lastModified)).isTrue();
+        assertThat(index()).containsExactly(mMain);
+
+        // a deleted file is forgotten, it is indexed again if it comes back
+        mModule.removeJavaFile("com.test.other.Other");
+        assertThat(index()).isEmpty();
+        mModule.addJavaFile(mOther);
+        assertThat(index()).containsExactly(mOther);
+    }
+
+    @Test
+    public void testDeclarationsAreKeptForCompletion() throws Exception {
+        index();
+        assertThat(mService.packagePrivateTopLevelTypes("com.test"))
+                .containsExactly("com.test.Main");
+        assertThat(mService.packagePrivateTopLevelTypes("com.test.other"))
+                .containsExactly("com.test.other.Other");
+
+        // after a restart the declarations are read back from the cache
+        mService = new JavaCompilerService(mProject, Collections.emptySet(),
+                Collections.emptySet(), Collections.emptySet());
+        mService.setCurrentModule(mModule);
+        assertThat(index()).isEmpty();
+        assertThat(mService.packagePrivateTopLevelTypes("com.test"))
+                .containsExactly("com.test.Main");
+
+        mModule.removeJavaFile("com.test.other.Other");
+        index();
+        assertThat(mService.packagePrivateTopLevelTypes("com.test.other")).isEmpty();
+    }
+
+    private List<File> index() throws Exception {
+        return new JavaIndexer(mProject, mModule, mService).index((message, progress, max) -> {
+        });
+    }
+
+    private static File write(File root, String className, String contents) throws IOException {
+        File file = new File(root, "app/src/main/java/" + className + ".java");
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,131 @@
+package com.tyron.completion.java;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.tyron.completion.TestUtil.resolveBasePath;
+
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.openjdk.javax.tools.Diagnostic;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+@RunWith(RobolectricTestRunner.class)
+public class SkeletonCacheTest {
+
+    private static final String HELPER = "public class Helper {\n" +
+            "    public String describe() {\n" +
+            "        int unused = \"not an int\";\n" +
+            "        return \"helper\";\n" +
+            "    }\n" +
+            "}";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mRoot;
+    private File mMain;
+    private File mHelper;
+    private JavaCompilerService mService;
+    private SkeletonCache mCache;
+
+    @Before
+    public void setup() throws IOException {
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs.jar"));
+
+        mRoot = mFolder.newFolder("project");
+        Project project = new Project(mRoot);
+        AndroidModule module = new MockAndroidModule(new File(mRoot, "app"),
+                new MockFileManager(mRoot));
+        mMain = write(mRoot, "Main", "public class Main {\n" +
+                "    String run() { return new Helper().describe(); }\n" +
+                "}");
+        mHelper = write(mRoot, "Helper", HELPER);
+        module.addJavaFile(mMain);
+        module.addJavaFile(mHelper);
+
+        mService = new JavaCompilerService(project, Collections.emptySet(),
+                Collections.emptySet(), Collections.emptySet());
+        mService.setCurrentModule(module);
+        mCache = mService.getSkeletonCache();
+    }
+
+    @Test
+    public void testSkeletonKeepsDeclarations() throws IOException {
+        String skeleton = mCache.get(new SourceFileObject(mHelper.toPath()))
+                .getCharContent(true).toString();
+        String contents = new String(Files.readAllBytes(mHelper.toPath()),
+                StandardCharsets.UTF_8);
+
+        // the declarations stay at the same positions
+        assertThat(skeleton).hasLength(contents.length());
+        assertThat(skeleton.indexOf("public String describe()"))
+                .isEqualTo(contents.indexOf("public String describe()"));
+        assertThat(skeleton).doesNotContain("not an int");
+        assertThat(skeleton).doesNotContain("return");
+    }
+
+    @Test
+    public void testSkeletonIsCachedByContent() throws IOException {
+        mCache.get(new SourceFileObject(mHelper.toPath()));
+        int hits = mCache.getHitCount();
+        int misses = mCache.getMissCount();
+
+        mCache.get(new SourceFileObject(mHelper.toPath()));
+        assertThat(mCache.getHitCount()).isEqualTo(hits + 1);
+        assertThat(mCache.getMissCount()).isEqualTo(misses);
+
+        write(mRoot, "Helper", HELPER.replace("\"helper\"", "\"changed\""));
+        mCache.get(new SourceFileObject(mHelper.toPath()));
+        assertThat(mCache.getHitCount()).isEqualTo(hits + 1);
+        assertThat(mCache.getMissCount()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    public void testOtherFilesAreCompiledFromSkeletons() {
+        int misses = mCache.getMissCount();
+        try (CompileTask task = mService.compileForCompletion(
+                new SourceFileObject(mMain.toPath()))) {
+            assertThat(task.roots).hasSize(1);
+            assertThat(task.roots.get(0).getSourceFile().toUri()).isEqualTo(mMain.toURI());
+            // the body of the helper is blanked out, the error in it is not seen
+            for (Diagnostic<? extends JavaFileObject> diagnostic : task.diagnostics) {
+                assertThat(diagnostic.getMessage(null)).doesNotContain("String");
+            }
+        }
+        assertThat(mCache.getMissCount()).isGreaterThan(misses);
+        misses = mCache.getMissCount();
+
+        // compiling it again does not create the skeleton again
+        try (CompileTask task = mService.compileForCompletion(
+                new SourceFileObject(mMain.toPath()))) {
+            assertThat(task.roots).hasSize(1);
+        }
+        assertThat(mCache.getMissCount()).isEqualTo(misses);
+    }
+
+    private static File write(File root, String className, String contents)
+            throws IOException {
+        File file = new File(root, "app/src/main/java/com/test/" + className + ".java");
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), ("package com.test;\n\n" + contents + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -1,6 +1,5 @@
 package com.tyron.kotlin_completion
 
-import com.tyron.kotlin_completion.compiler.CompletionKind
 import com.tyron.kotlin_completion.completion.findParent
 import com.tyron.kotlin_completion.position.Position.changedRegion
 import com.tyron.kotlin_completion.util.PsiUtils
@@ -40,10 +39,12 @@ fun parseAtPoint(
     )
 
     val padOffset = " ".repeat(offset)
+    // parsed by the environment that analyzed the file, so the scopes of its binding
+    // context can be used to analyze the result
     val recompile = classPath.compiler.createKtFile(
         padOffset + surroundingContent,
         Paths.get("dummy.virtual.kt"),
-        CompletionKind.DEFAULT
+        parse
     )
     return recompile.findElementAt(cursor)?.findParent<KtElement>()
 }
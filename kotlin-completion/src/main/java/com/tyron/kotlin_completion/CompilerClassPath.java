@@ -1,9 +1,11 @@
 package com.tyron.kotlin_completion;
 
 import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.common.SharedPreferenceKeys;
 import com.tyron.completion.java.CompletionModule;
 import com.tyron.kotlin_completion.classpath.ClassPathEntry;
 import com.tyron.kotlin_completion.classpath.DefaultClassPathResolver;
+import com.tyron.kotlin_completion.compiler.CompilationEnvironmentPool;
 import com.tyron.kotlin_completion.compiler.Compiler;
 import com.tyron.kotlin_completion.util.AsyncExecutor;
 
@@ -40,10 +42,21 @@ public class CompilerClassPath implements Closeable {
         mClassPath = project.getLibraries().stream().map(file -> new ClassPathEntry(file.toPath(), null)).collect(Collectors.toSet());
         mClassPath.add(new ClassPathEntry(CompletionModule.getAndroidJar().toPath(), null));
 
-        compiler = new Compiler(mJavaSourcePath, mClassPath.stream().map(ClassPathEntry::getCompiledJar).collect(Collectors.toSet()));
+        compiler = createCompiler();
         //compiler.updateConfiguration(mConfiguration);
     }
 
+    /**
+     * Creates a class path without libraries that compiles with the given compiler, used by
+     * tests that have no project to read the libraries from
+     */
+    CompilerClassPath(Compiler compiler) {
+        mProject = null;
+        mJavaSourcePath = new HashSet<>();
+        mClassPath = new HashSet<>();
+        this.compiler = compiler;
+    }
+
     private boolean refresh(boolean updateClassPath, boolean updateJavaSourcePath) {
         DefaultClassPathResolver resolver = new DefaultClassPathResolver(mProject.getLibraries());
         boolean refreshCompiler = updateJavaSourcePath;
@@ -69,13 +82,29 @@ public class CompilerClassPath implements Closeable {
 
         if (refreshCompiler) {
             compiler.close();
-            compiler = new Compiler(mJavaSourcePath, mClassPath.stream().map(ClassPathEntry::getCompiledJar).collect(Collectors.toSet()));
+            compiler = createCompiler();
             updateCompilerConfiguration();
         }
 
         return refreshCompiler;
     }
 
+    private Compiler createCompiler() {
+        int poolSize = CompilationEnvironmentPool.getDefaultSize();
+        String preference = CompletionModule.getPreferences()
+                .getString(SharedPreferenceKeys.KOTLIN_COMPILER_POOL_SIZE, null);
+        if (preference != null) {
+            try {
+                poolSize = Math.max(1, Integer.parseInt(preference));
+            } catch (NumberFormatException ignored) {
+                // fall back to the size that fits the device
+            }
+        }
+        return new Compiler(mJavaSourcePath, mClassPath.stream()
+                .map(ClassPathEntry::getCompiledJar)
+                .collect(Collectors.toSet()), poolSize);
+    }
+
     private void updateCompilerConfiguration() {
         //compiler.updateConfiguration(mConfiguration);
     }
@@ -88,6 +117,17 @@ public class CompilerClassPath implements Closeable {
         dest.addAll(added);
     }
 
+    /**
+     * @return the jars of the class path, including the android jar
+     */
+    public Set<File> getClassPathFiles() {
+        synchronized (mClassPath) {
+            return mClassPath.stream()
+                    .map(entry -> entry.getCompiledJar().toFile())
+                    .collect(Collectors.toSet());
+        }
+    }
+
     public Compiler getCompiler() {
         return compiler;
     }
@@ -2,6 +2,7 @@ package com.tyron.kotlin_completion;
 
 import android.util.Log;
 
+import com.tyron.kotlin_completion.compiler.CompilationEnvironment;
 import com.tyron.kotlin_completion.compiler.CompletionKind;
 import com.tyron.kotlin_completion.index.SymbolIndex;
 import com.tyron.kotlin_completion.util.AsyncExecutor;
@@ -9,11 +10,17 @@ import com.tyron.kotlin_completion.util.UtilKt;
 
 import org.apache.commons.io.FileUtils;
 import org.jetbrains.kotlin.com.intellij.lang.Language;
+import org.jetbrains.kotlin.com.intellij.psi.PsiElement;
+import org.jetbrains.kotlin.com.intellij.psi.PsiFile;
 import org.jetbrains.kotlin.container.ComponentProvider;
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptor;
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor;
 import org.jetbrains.kotlin.idea.KotlinLanguage;
+import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.psi.KtReferenceExpression;
 import org.jetbrains.kotlin.resolve.BindingContext;
+import org.jetbrains.kotlin.resolve.DescriptorToSourceUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -21,10 +28,17 @@ import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
@@ -38,7 +52,22 @@ public class SourcePath {
     private static final String TAG = "SourcePath";
 
     private final CompilerClassPath cp;
-    private final Map<URI, SourceFile> files = new HashMap<>();
+    private final Map<URI, SourceFile> files = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * The files whose declarations are referenced by each file, recorded when a file is
+     * compiled so that only its dependents are resolved again after it changes
+     */
+    private final Map<URI, Set<URI>> dependencies = new HashMap<>();
+
+    /**
+     * Bumped whenever a file is added, removed or parsed again, the files passed as the
+     * source path of a compilation are reused until it changes
+     */
+    private volatile long sourcesVersion;
+    private long allFilesVersion = -1;
+    private Set<KtFile> allFiles;
     private final ReentrantLock parsedDataWriteLock = new ReentrantLock();
     private final AsyncExecutor indexAsync = new AsyncExecutor();
     private final SymbolIndex index = new SymbolIndex();
@@ -73,6 +102,15 @@ public class SourcePath {
         private final String extension;
         private final CompletionKind kind = CompletionKind.DEFAULT;
 
+        private volatile long version;
+        private volatile long parsedVersion = -1;
+        private volatile long compiledVersion = -1;
+
+        private CompiledFile prepared;
+        private long preparedVersion = -1;
+        private long preparedCompiledVersion = -1;
+        private long preparedSourcesVersion = -1;
+
         public SourceFile(URI uri, String content, Language language, boolean isTemporary) {
             this(uri, content, Paths.get(uri), null, null, null, null, language, isTemporary);
         }
@@ -92,10 +130,30 @@ public class SourcePath {
             this.isTemporary = isTemporary;
 
             extension = ".kt";
+            version = versions.incrementAndGet();
         }
 
         public void put(String newContent) {
-            content = newContent;
+            if (!newContent.equals(content)) {
+                content = newContent;
+                version = versions.incrementAndGet();
+            }
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Forces the file to be resolved again on its next use, called when the declarations
+         * of a file it depends on may have changed
+         */
+        private void invalidate() {
+            compiledVersion = -1;
+        }
+
+        private boolean isCompiledUpToDate() {
+            return compiledFile != null && compiledVersion == version;
         }
 
         public void clean() {
@@ -103,15 +161,21 @@ public class SourcePath {
             compiledFile = null;
             compiledContext = null;
             compiledcontainer = null;
+            parsedVersion = -1;
+            compiledVersion = -1;
+            prepared = null;
         }
 
         public void parse() {
             Log.d(TAG, "Parsing file " + path);
+            long parsingVersion = version;
             parsed = cp.getCompiler().createKtFile(content, (path == null ? Paths.get("sourceFile.virtual" + extension) : path), kind);
+            parsedVersion = parsingVersion;
+            sourcesVersion = versions.incrementAndGet();
         }
 
         public void parseIfChanged() {
-            if (parsed == null || !content.equals(parsed.getText())) {
+            if (parsed == null || parsedVersion != version) {
                 Log.d(TAG, "Parse has changed, parsing.");
                 parse();
             }
@@ -135,24 +199,29 @@ public class SourcePath {
         }
 
         private void doCompileIfChanged() {
-            if (parsed == null || compiledFile == null || !parsed.getText().equals(compiledFile.getText())) {
-                doCompile();;
+            if (parsed == null || compiledFile == null || compiledVersion != parsedVersion) {
+                doCompile();
             }
         }
 
         private void doCompile() {
             if (this.path.toFile().getName().endsWith(".kt")) {
-                Pair<BindingContext, ComponentProvider> pair = cp.getCompiler().compileKtFile(parsed, allIncludingThis());
+                KtFile compiling = parsed;
+                long compilingVersion = parsedVersion;
+                Pair<BindingContext, ComponentProvider> pair = cp.getCompiler().compileKtFile(compiling, allIncludingThis());
                 parsedDataWriteLock.lock();
                 try {
                     compiledContext = pair.getFirst();
                     compiledcontainer = pair.getSecond();
-                    compiledFile = parsed;
+                    // the environment that analyzed the file may have parsed it again
+                    compiledFile = cp.getCompiler().getAnalyzedFile(compiling, pair.getSecond());
+                    compiledVersion = compilingVersion;
                 } finally {
                     parsedDataWriteLock.unlock();
                 }
+                updateDependencies(Collections.singleton(this), pair.getFirst());
             }
-            initializeIndexAsyncIfNeeded(compiledcontainer);
+            initializeIndexAsyncIfNeeded(compiledcontainer, Collections.singleton(this));
         }
         public CompiledFile prepareCompiledFile() {
             parseIfChanged();
@@ -160,8 +229,17 @@ public class SourcePath {
             return doPrepareCompiledFile();
         }
 
-        public CompiledFile doPrepareCompiledFile() {
-            return new CompiledFile(content, compiledFile, compiledContext, compiledcontainer, allIncludingThis(), cp);
+        public synchronized CompiledFile doPrepareCompiledFile() {
+            Collection<KtFile> sourcePath = allIncludingThis();
+            if (prepared == null || preparedVersion != version ||
+                    preparedCompiledVersion != compiledVersion ||
+                    preparedSourcesVersion != sourcesVersion) {
+                preparedVersion = version;
+                preparedCompiledVersion = compiledVersion;
+                preparedSourcesVersion = sourcesVersion;
+                prepared = new CompiledFile(content, compiledFile, compiledContext, compiledcontainer, sourcePath, cp);
+            }
+            return prepared;
         }
 
         private Collection<KtFile> allIncludingThis() {
@@ -189,6 +267,7 @@ public class SourcePath {
             sourceFile(file).put(content);
         } else {
             files.put(file.toURI(), new SourceFile(file.toURI(), content, KotlinLanguage.INSTANCE, temp));
+            sourcesVersion = versions.incrementAndGet();
         }
     }
 
@@ -202,27 +281,49 @@ public class SourcePath {
     }
 
     public void delete(File file) {
-        files.remove(file.toURI());
+        if (files.remove(file.toURI()) != null) {
+            sourcesVersion = versions.incrementAndGet();
+            invalidateDependents(file.toURI(), Collections.emptySet());
+            synchronized (dependencies) {
+                dependencies.remove(file.toURI());
+            }
+        }
     }
 
     public BindingContext compileFiles(Collection<File> all) {
         Set<SourceFile> sources = all.stream().map(o -> files.get(o.toURI())).collect(Collectors.toSet());
-        Set<SourceFile> allChanged = sources.stream().filter(it -> !it.content.equals(it.compiledFile.getText()))
+        Set<SourceFile> allChanged = sources.stream().filter(it -> !it.isCompiledUpToDate())
                 .collect(Collectors.toSet());
         BindingContext sourcesContext = compileAndUpdate(allChanged);
         return UtilKt.util(sourcesContext, sources, allChanged);
     }
 
-    private void initializeIndexAsyncIfNeeded(ComponentProvider container) {
+    private void initializeIndexAsyncIfNeeded(ComponentProvider container, Collection<SourceFile> changed) {
+        if (!indexEnabled || container == null) {
+            return;
+        }
+        // only the packages of the edited files are indexed again, library symbols
+        // are read from the index of each jar after the first compilation
+        Set<FqName> changedPackages = packagesOf(changed);
+        Set<FqName> allPackages = packagesOf(files.values());
         indexAsync.execute(() -> {
-            if (indexEnabled && !indexInitialized) {
-                ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
-                index.refresh(module, true);
+            ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
+            if (!indexInitialized) {
+                index.refreshLibraries(module, cp.getClassPathFiles());
+                index.refreshSources(module, allPackages, allPackages);
                 indexInitialized = true;
+            } else {
+                index.refreshSources(module, changedPackages, allPackages);
             }
         });
     }
 
+    private static Set<FqName> packagesOf(Collection<SourceFile> sourceFiles) {
+        return sourceFiles.stream()
+                .filter(it -> !it.isTemporary && it.parsed != null)
+                .map(it -> it.parsed.getPackageFqName())
+                .collect(Collectors.toSet());
+    }
 
     private BindingContext compileAndUpdate(Set<SourceFile> changed) {
         if (changed.isEmpty()) return null;
@@ -237,16 +338,18 @@ public class SourcePath {
             parsedDataWriteLock.lock();
             try {
                 if (f.parsed.equals(parsed)) {
-                    f.compiledFile = parsed;
+                    f.compiledFile = cp.getCompiler().getAnalyzedFile(parsed, pair.getSecond());
                     f.compiledContext = pair.getFirst();
                     f.compiledcontainer = pair.getSecond();
+                    f.compiledVersion = f.parsedVersion;
                 }
             } finally {
                 parsedDataWriteLock.unlock();
             }
         });
+        updateDependencies(changed, pair.getFirst());
 
-        initializeIndexAsyncIfNeeded(pair.getSecond());
+        initializeIndexAsyncIfNeeded(pair.getSecond(), changed);
         return pair.getFirst();
     }
 
@@ -274,13 +377,91 @@ public class SourcePath {
         }
         return files.get(file.toURI());
     }
+    /**
+     * Records the files whose declarations are referenced by the compiled files and marks the
+     * files that depend on them as out of date, they are compiled again when they are used next.
+     * The other files keep their compiled results.
+     */
+    private void updateDependencies(Collection<SourceFile> compiled, BindingContext context) {
+        Map<PsiFile, URI> uris = new IdentityHashMap<>();
+        for (SourceFile file : files.values()) {
+            if (file.parsed != null) {
+                uris.put(file.parsed, file.uri);
+            }
+            if (file.compiledFile != null) {
+                uris.put(file.compiledFile, file.uri);
+            }
+        }
+
+        Map<URI, Set<URI>> compiledDependencies = new HashMap<>();
+        for (SourceFile file : compiled) {
+            compiledDependencies.put(file.uri, new HashSet<>());
+        }
+        for (Map.Entry<KtReferenceExpression, DeclarationDescriptor> entry :
+                context.getSliceContents(BindingContext.REFERENCE_TARGET).entrySet()) {
+            Set<URI> fileDependencies = compiledDependencies.get(uris.get(
+                    CompilationEnvironment.getOriginalFile(entry.getKey().getContainingFile())));
+            if (fileDependencies == null) {
+                continue;
+            }
+            // declarations are found in the files as parsed by the environment that analyzed them
+            PsiElement declaration = DescriptorToSourceUtils.descriptorToDeclaration(entry.getValue());
+            URI target = declaration == null ? null : uris.get(
+                    CompilationEnvironment.getOriginalFile(declaration.getContainingFile()));
+            if (target != null) {
+                fileDependencies.add(target);
+            }
+        }
+
+        synchronized (dependencies) {
+            dependencies.putAll(compiledDependencies);
+        }
+        for (SourceFile file : compiled) {
+            invalidateDependents(file.uri, compiledDependencies.keySet());
+        }
+    }
+
+    private void invalidateDependents(URI changed, Set<URI> upToDate) {
+        List<URI> dependents = new ArrayList<>();
+        synchronized (dependencies) {
+            dependencies.forEach((uri, fileDependencies) -> {
+                if (!upToDate.contains(uri) && fileDependencies.contains(changed)) {
+                    dependents.add(uri);
+                }
+            });
+        }
+        for (URI uri : dependents) {
+            SourceFile dependent = files.get(uri);
+            if (dependent != null) {
+                dependent.invalidate();
+            }
+        }
+    }
+
     private Set<KtFile> all(boolean includeHidden) {
-        return files.values().stream()
+        // parsing only checks the version of each file, it does not compare their contents
+        for (SourceFile file : files.values()) {
+            if (includeHidden || !file.isTemporary) {
+                file.parseIfChanged();
+            }
+        }
+        if (!includeHidden) {
+            synchronized (this) {
+                if (allFiles == null || allFilesVersion != sourcesVersion) {
+                    allFilesVersion = sourcesVersion;
+                    allFiles = collectFiles(false);
+                }
+                return allFiles;
+            }
+        }
+        return collectFiles(true);
+    }
+
+    private Set<KtFile> collectFiles(boolean includeHidden) {
+        return Collections.unmodifiableSet(files.values().stream()
                 .filter(it -> includeHidden || !it.isTemporary)
-                .map(it -> {
-                    it.parseIfChanged();
-                    return it.parsed;
-                }).collect(Collectors.toSet());
+                .map(it -> it.parsed)
+                .collect(Collectors.toSet()));
     }
 
 }
@@ -7,7 +7,11 @@ import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
 import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
 import org.jetbrains.kotlin.cli.jvm.config.JvmContentRootsKt;
 import org.jetbrains.kotlin.com.intellij.openapi.Disposable;
+import org.jetbrains.kotlin.com.intellij.openapi.project.Project;
 import org.jetbrains.kotlin.com.intellij.openapi.util.Disposer;
+import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
+import org.jetbrains.kotlin.com.intellij.psi.PsiFile;
+import org.jetbrains.kotlin.com.intellij.psi.PsiFileFactory;
 import org.jetbrains.kotlin.config.ApiVersion;
 import org.jetbrains.kotlin.config.CommonConfigurationKeys;
 import org.jetbrains.kotlin.config.CompilerConfiguration;
@@ -24,17 +28,39 @@ import org.jetbrains.kotlin.psi.KtPsiFactory;
 import org.jetbrains.kotlin.resolve.BindingTraceContext;
 
 import java.io.Closeable;
+import java.lang.ref.WeakReference;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.stream.Collectors;
 
 import kotlin.Pair;
 
 public class CompilationEnvironment implements Closeable {
 
+    /**
+     * Set on the files that an environment parsed again from the file of another environment
+     */
+    private static final Key<WeakReference<PsiFile>> ORIGINAL_FILE =
+            Key.create("CompilationEnvironment.ORIGINAL_FILE");
+
+    /**
+     * @return the file that was parsed again by {@link #getLocalFile(PsiFile)}, or the given
+     * file if it was not
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends PsiFile> T getOriginalFile(T file) {
+        WeakReference<PsiFile> original = file.getUserData(ORIGINAL_FILE);
+        PsiFile originalFile = original == null ? null : original.get();
+        return originalFile == null ? file : (T) originalFile;
+    }
+
     private final Set<Path> mJavaSourcePath;
     private final Set<Path> mClassPath;
 
@@ -42,6 +68,12 @@ public class CompilationEnvironment implements Closeable {
     private final KotlinCoreEnvironment mEnvironment;
     private final KtPsiFactory mParser;
 
+    /**
+     * The files of other environments parsed by this one, a file is parsed again whenever its
+     * contents change so the copies are kept as long as the originals are in use
+     */
+    private final Map<PsiFile, PsiFile> mLocalFiles = new WeakHashMap<>();
+
     public CompilationEnvironment(Set<Path> javaSourcePath, Set<Path> classPath) {
         mJavaSourcePath = javaSourcePath;
         mClassPath = classPath;
@@ -72,6 +104,43 @@ public class CompilationEnvironment implements Closeable {
         return configuration;
     }
 
+    /**
+     * PSI elements are bound to the project that created them, an environment can only
+     * analyze the files created by its own project.
+     *
+     * @return the given file if it was created by this environment, otherwise the same file
+     * parsed by this environment
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends PsiFile> T getLocalFile(T file) {
+        Project project = getProject();
+        if (file.getProject() == project) {
+            return file;
+        }
+        synchronized (mLocalFiles) {
+            PsiFile local = mLocalFiles.get(file);
+            if (local == null) {
+                local = PsiFileFactory.getInstance(project).createFileFromText(file.getName(),
+                        file.getLanguage(), file.getText(), true, false);
+                local.putUserData(ORIGINAL_FILE, new WeakReference<>(file));
+                mLocalFiles.put(file, local);
+            }
+            return (T) local;
+        }
+    }
+
+    public <T extends PsiFile> List<T> getLocalFiles(Collection<? extends T> files) {
+        List<T> localFiles = new ArrayList<>(files.size());
+        for (T file : files) {
+            localFiles.add(getLocalFile(file));
+        }
+        return localFiles;
+    }
+
+    public Project getProject() {
+        return mEnvironment.getProject();
+    }
+
     public Pair<ComponentProvider, BindingTraceContext> createContainer(Collection<KtFile> sourcePath) {
         return CompilerKt.createContainer(mEnvironment, sourcePath);
     }
@@ -0,0 +1,208 @@
+package com.tyron.kotlin_completion.compiler;
+
+import org.jetbrains.kotlin.com.intellij.openapi.project.Project;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of {@link CompilationEnvironment}s. Every analysis leases an environment
+ * for as long as it runs, so completions, lint and indexing can be analyzed at the same time
+ * instead of waiting behind each other on a single compile lock.
+ *
+ * Environments are created lazily since each of them holds its own view of the class path,
+ * the first one is created eagerly and is used to parse files. The other environments parse
+ * the files they analyze again, see {@link CompilationEnvironment#getLocalFile}.
+ */
+public class CompilationEnvironmentPool implements Closeable {
+
+    /**
+     * Rough amount of heap used by an environment after it has analyzed a project
+     */
+    private static final long ENVIRONMENT_MEMORY = 128 * 1024 * 1024;
+
+    /**
+     * @return the pool size that fits the available processors and the maximum heap size,
+     * one processor is left for the UI thread
+     */
+    public static int getDefaultSize() {
+        Runtime runtime = Runtime.getRuntime();
+        int processors = runtime.availableProcessors() - 1;
+        long memory = runtime.maxMemory() / ENVIRONMENT_MEMORY;
+        return (int) Math.max(1, Math.min(processors, memory));
+    }
+
+    private final Set<Path> mJavaSourcePath;
+    private final Set<Path> mClassPath;
+    private final int mSize;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mAvailable = mLock.newCondition();
+    private final List<CompilationEnvironment> mEnvironments = new ArrayList<>();
+    private final Deque<CompilationEnvironment> mIdle = new ArrayDeque<>();
+    private final CompilationEnvironment mDefaultEnvironment;
+
+    private CompilerConfiguration mConfiguration;
+    private int mPending;
+    private boolean mClosed;
+
+    public CompilationEnvironmentPool(Set<Path> javaSourcePath, Set<Path> classPath, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1, got " + size);
+        }
+        mJavaSourcePath = javaSourcePath;
+        mClassPath = classPath;
+        mSize = size;
+
+        mDefaultEnvironment = new CompilationEnvironment(javaSourcePath, classPath);
+        mEnvironments.add(mDefaultEnvironment);
+        mIdle.add(mDefaultEnvironment);
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * The environment whose project is used to create the PSI files, it is also part of
+     * the pool and may be leased by an analysis.
+     */
+    public CompilationEnvironment getDefaultEnvironment() {
+        return mDefaultEnvironment;
+    }
+
+    /**
+     * Leases an environment, creating one if all of them are in use and the pool is not full.
+     * Otherwise blocks until another analysis releases its environment.
+     * The environment must be given back with {@link #release(CompilationEnvironment)}.
+     */
+    public CompilationEnvironment acquire() {
+        mLock.lock();
+        try {
+            while (true) {
+                if (mClosed) {
+                    throw new IllegalStateException("Compilation environment pool is closed");
+                }
+                // the most recently used environment has the warmest caches
+                CompilationEnvironment environment = mIdle.pollFirst();
+                if (environment != null) {
+                    return environment;
+                }
+                if (mEnvironments.size() + mPending < mSize) {
+                    mPending++;
+                    break;
+                }
+                mAvailable.awaitUninterruptibly();
+            }
+        } finally {
+            mLock.unlock();
+        }
+
+        // creating an environment takes a while, other analyses should not wait for it
+        CompilationEnvironment environment = null;
+        try {
+            environment = new CompilationEnvironment(mJavaSourcePath, mClassPath);
+        } finally {
+            mLock.lock();
+            try {
+                mPending--;
+                if (environment != null) {
+                    mEnvironments.add(environment);
+                    if (mConfiguration != null) {
+                        environment.updateConfiguration(mConfiguration);
+                    }
+                }
+                mAvailable.signalAll();
+            } finally {
+                mLock.unlock();
+            }
+        }
+        return environment;
+    }
+
+    /**
+     * Leases the environment whose project created the PSI elements of an earlier analysis,
+     * blocking until the analysis that is using it releases it.
+     *
+     * @return the environment, or null if the project is not one of this pool
+     */
+    public CompilationEnvironment acquire(Project project) {
+        mLock.lock();
+        try {
+            while (true) {
+                if (mClosed) {
+                    throw new IllegalStateException("Compilation environment pool is closed");
+                }
+                CompilationEnvironment environment = null;
+                for (CompilationEnvironment candidate : mEnvironments) {
+                    if (candidate.getProject() == project) {
+                        environment = candidate;
+                        break;
+                    }
+                }
+                if (environment == null) {
+                    return null;
+                }
+                if (mIdle.remove(environment)) {
+                    return environment;
+                }
+                mAvailable.awaitUninterruptibly();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public void release(CompilationEnvironment environment) {
+        mLock.lock();
+        try {
+            if (mClosed) {
+                environment.close();
+                return;
+            }
+            mIdle.addFirst(environment);
+            // some analyses wait for a specific environment
+            mAvailable.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public void updateConfiguration(CompilerConfiguration config) {
+        mLock.lock();
+        try {
+            mConfiguration = config;
+            for (CompilationEnvironment environment : mEnvironments) {
+                environment.updateConfiguration(config);
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the idle environments, the ones that are in use are closed once they are released
+     */
+    @Override
+    public void close() {
+        mLock.lock();
+        try {
+            mClosed = true;
+            for (CompilationEnvironment environment : mIdle) {
+                environment.close();
+            }
+            mIdle.clear();
+            mAvailable.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+}
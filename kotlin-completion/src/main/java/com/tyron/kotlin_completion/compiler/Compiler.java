@@ -31,27 +31,44 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.WeakHashMap;
 
 import kotlin.Pair;
 
 public class Compiler implements Closeable {
 
+    private static final String TAG = Compiler.class.getSimpleName();
+
     private final Set<Path> mJavaSourcePath;
     private final Set<Path> mClassPath;
 
-    private final CompilationEnvironment mDefaultCompileEnvironment;
+    private final CompilationEnvironmentPool mEnvironments;
     private final VirtualFileSystem mLocalFileSystem;
-    private final ReentrantLock mCompileLock = new ReentrantLock();
+
+    /**
+     * The environment that created each container, so the files analyzed by the container
+     * can be found again
+     */
+    private final Map<ComponentProvider, CompilationEnvironment> mContainers =
+            Collections.synchronizedMap(new WeakHashMap<>());
 
     private boolean closed = false;
 
 
     public Compiler(Set<Path> javaSourcePath, Set<Path> classPath) {
+        this(javaSourcePath, classPath, CompilationEnvironmentPool.getDefaultSize());
+    }
+
+    /**
+     * @param poolSize the maximum number of files or expressions that can be analyzed
+     *                 at the same time, each of them uses its own compilation environment
+     */
+    public Compiler(Set<Path> javaSourcePath, Set<Path> classPath, int poolSize) {
         mJavaSourcePath = javaSourcePath;
         mClassPath = classPath;
-        mDefaultCompileEnvironment = new CompilationEnvironment(mJavaSourcePath, mClassPath);
+        mEnvironments = new CompilationEnvironmentPool(mJavaSourcePath, mClassPath, poolSize);
         mLocalFileSystem = VirtualFileManager.getInstance().getFileSystem(StandardFileSystems.FILE_PROTOCOL);
 
         UtilKt.setIdeaIoUseFallback();
@@ -72,52 +89,87 @@ public class Compiler implements Closeable {
         return (KtFile) createPsiFile(content, file, KotlinLanguage.INSTANCE, kind);
     }
 
+    /**
+     * Parses the content with the environment that created the context file, so the result
+     * can be analyzed together with the analysis of that file
+     */
+    public KtFile createKtFile(String content, Path file, PsiFile context) {
+        assert !content.contains("\r");
+        return (KtFile) PsiFileFactory.getInstance(context.getProject())
+                .createFileFromText(file.toString(), KotlinLanguage.INSTANCE, content, true, false);
+    }
+
     public PsiJavaFile createJavaFile(String content, Path file, CompletionKind kind) {
         return (PsiJavaFile) createPsiFile(content, file, JavaLanguage.INSTANCE, kind);
     }
 
     public PsiFileFactory psiFileFactoryFor(CompletionKind kind) {
-        return PsiFileFactory.getInstance(mDefaultCompileEnvironment.getEnvironment().getProject());
+        return PsiFileFactory.getInstance(getDefaultCompileEnvironment().getEnvironment().getProject());
     }
 
     public Pair<BindingContext, ComponentProvider> compileKtFile(KtFile file, Collection<KtFile> sourcePath) {
         return compileKtFiles(Collections.singletonList(file), sourcePath, CompletionKind.DEFAULT);
     }
 
+    /**
+     * The files are analyzed by whichever environment is free, the binding context refers
+     * to the files as parsed by that environment. Use {@link #getAnalyzedFile} to find them.
+     */
     public Pair<BindingContext, ComponentProvider> compileKtFiles(Collection<? extends KtFile> files, Collection<KtFile> sourcePath, CompletionKind kind) {
-        mCompileLock.lock();
+        CompilationEnvironment environment = mEnvironments.acquire();
         try {
-            Pair<ComponentProvider, BindingTraceContext> pair = mDefaultCompileEnvironment.createContainer(sourcePath);
+            Pair<ComponentProvider, BindingTraceContext> pair = environment.createContainer(environment.getLocalFiles(sourcePath));
             ((LazyTopDownAnalyzer) pair.getFirst().resolve(LazyTopDownAnalyzer.class).getValue())
-                    .analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations, files, DataFlowInfo.Companion.getEMPTY(), null);
+                    .analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations, environment.getLocalFiles(files), DataFlowInfo.Companion.getEMPTY(), null);
+            mContainers.put(pair.getFirst(), environment);
             return new Pair<>(pair.getSecond().getBindingContext(), pair.getFirst());
         } finally {
-            mCompileLock.unlock();
+            mEnvironments.release(environment);
         }
     }
 
+    /**
+     * @return the file that the container has analyzed in place of the given one, the elements
+     * of the given file are not part of the binding context of another environment
+     */
+    public <T extends PsiFile> T getAnalyzedFile(T file, ComponentProvider container) {
+        CompilationEnvironment environment = mContainers.get(container);
+        return environment == null ? file : environment.getLocalFile(file);
+    }
+
     public CompilationEnvironment getDefaultCompileEnvironment() {
-        return mDefaultCompileEnvironment;
+        return mEnvironments.getDefaultEnvironment();
     }
 
     public Pair<BindingContext, ComponentProvider> compileJavaFiles(Collection<? extends PsiJavaFile> files, Collection<KtFile> sourcePath, CompletionKind kind) {
-        mCompileLock.lock();
+        CompilationEnvironment environment = mEnvironments.acquire();
         try {
-            Pair<ComponentProvider, BindingTraceContext> pair = mDefaultCompileEnvironment.createContainer(sourcePath);
+            Pair<ComponentProvider, BindingTraceContext> pair = environment.createContainer(environment.getLocalFiles(sourcePath));
             ((LazyTopDownAnalyzer) pair.getFirst().resolve(LazyTopDownAnalyzer.class).getValue())
                     .analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations,
-                            files, DataFlowInfo.Companion.getEMPTY(), null);
+                            environment.getLocalFiles(files), DataFlowInfo.Companion.getEMPTY(), null);
+            mContainers.put(pair.getFirst(), environment);
             return new Pair<>(pair.getSecond().getBindingContext(), pair.getFirst());
         } finally {
-            mCompileLock.unlock();
+            mEnvironments.release(environment);
         }
     }
 
+    /**
+     * The expression and the scope must come from the same environment, the expression is
+     * analyzed by the environment that created it. Parse it with
+     * {@link #createKtFile(String, Path, PsiFile)} using the analyzed file of the scope.
+     */
     public Pair<BindingContext, ComponentProvider> compileKtExpression(KtExpression expression, LexicalScope scopeWithImports, Collection<KtFile> sourcePath) {
         Log.d(null, "Compiling kt expression: " + expression.getText());
-        mCompileLock.lock();
+        CompilationEnvironment environment = mEnvironments.acquire(expression.getProject());
+        if (environment == null) {
+            // parsed by a compiler that has been replaced since
+            Log.w(TAG, "Expression was not parsed by this compiler, analyzing it with any environment");
+            environment = mEnvironments.acquire();
+        }
         try {
-            Pair<ComponentProvider, BindingTraceContext> pair = mDefaultCompileEnvironment.createContainer(sourcePath);
+            Pair<ComponentProvider, BindingTraceContext> pair = environment.createContainer(environment.getLocalFiles(sourcePath));
             ExpressionTypingServices incrementalCompiler = pair.getFirst().create(ExpressionTypingServices.class);
             incrementalCompiler.getTypeInfo(
                     scopeWithImports,
@@ -129,18 +181,18 @@ public class Compiler implements Closeable {
                     true);
             return new Pair<>(pair.getSecond().getBindingContext(), pair.getFirst());
         } finally {
-            mCompileLock.unlock();
+            mEnvironments.release(environment);
         }
     }
 
     public void updateConfiguration(CompilerConfiguration config) {
-        mDefaultCompileEnvironment.updateConfiguration(config);
+        mEnvironments.updateConfiguration(config);
     }
 
     @Override
     public void close()  {
         if (!closed) {
-            mDefaultCompileEnvironment.close();
+            mEnvironments.close();
             closed = true;
         } else {
             Log.w(null, "Compiler is already closed!");
@@ -1,130 +1,267 @@
 package com.tyron.kotlin_completion.index
 
 import android.util.Log
+import com.tyron.builder.BuildModule
+import com.tyron.builder.project.cache.PersistentCache
 import com.tyron.kotlin_completion.util.PsiUtils
-import org.jetbrains.exposed.sql.*
-import org.jetbrains.exposed.sql.transactions.transaction
+import org.apache.commons.io.FileUtils
 import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptorWithSource
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor
+import org.jetbrains.kotlin.load.java.sources.JavaSourceElement
+import org.jetbrains.kotlin.load.java.structure.impl.VirtualFileBoundJavaClass
+import org.jetbrains.kotlin.load.kotlin.JvmPackagePartSource
+import org.jetbrains.kotlin.load.kotlin.KotlinJvmBinarySourceElement
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter
 import org.jetbrains.kotlin.resolve.scopes.MemberScope
+import org.jetbrains.kotlin.resolve.source.PsiSourceElement
+import org.jetbrains.kotlin.serialization.deserialization.descriptors.DescriptorWithContainerSource
+import java.io.File
+import java.io.IOException
 import java.lang.IllegalStateException
 import java.time.Duration
 import java.time.Instant
-import kotlin.sequences.Sequence
+import java.util.jar.JarFile
 
 private const val MAX_FQNAME_LENGTH = 255
 private const val MAX_SHORT_NAME_LENGTH = 80
 
-private object Symbols : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH) references FqNames.fqName
-    val kind = integer("kind")
-    val visibility = integer("visibility")
-    val extensionReceiverType = varchar("extensionreceivertype", length = MAX_FQNAME_LENGTH).nullable()
+/**
+ * Bumped whenever the symbols written for a library change, so older tables are not reused
+ */
+private const val TABLE_VERSION = 1
 
-    override val primaryKey = PrimaryKey(fqName)
-}
+/**
+ * Index of the top level symbols of the libraries and the source files.
+ *
+ * Each jar on the classpath has its own [SymbolTable] in the cache directory, keyed by the
+ * fingerprint of the jar so it is only indexed the first time it is seen. Symbols of the
+ * source files are kept in memory per package and only the packages of the edited files
+ * are indexed again.
+ */
+class SymbolIndex(private val cacheDirectory: File = defaultCacheDirectory()) {
 
-private object FqNames : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH)
-    val shortName = varchar("shortname", length = MAX_SHORT_NAME_LENGTH)
+    @Volatile
+    private var libraries: List<SymbolTable> = emptyList()
 
-    override val primaryKey = PrimaryKey(fqName)
-}
-class SymbolIndex {
-    private val db = Database.connect("jdbc:h2:mem:symbolindex;DB_CLOSE_DELAY=-1", "org.h2.Driver")
+    @Volatile
+    private var sourcePackages: Map<FqName, List<SymbolTable.Entry>> = emptyMap()
 
-    var indexing: Boolean = false
+    @Volatile
+    private var sources: SymbolTable = SymbolTable.EMPTY
 
-    init {
-       transaction (db) {
-           SchemaUtils.create(Symbols, FqNames)
-       }
-    }
+    @Volatile
+    var indexing: Boolean = false
 
-    fun refresh(module: ModuleDescriptor, forced: Boolean = true) {
-        val started = System.currentTimeMillis()
-        Log.d("SymbolIndex", "Updating symbol index...");
+    /**
+     * Opens the symbol tables of the given jars, jars that have no table yet are indexed
+     * from the module and written to the cache directory.
+     */
+    fun refreshLibraries(module: ModuleDescriptor, classPath: Collection<File>) {
+        val started = Instant.now()
+        Log.d("SymbolIndex", "Updating library symbols...")
 
         indexing = true
         try {
-            transaction(db) {
-                if (forced) {
-                    Symbols.deleteAll()
-                }
-                for (descriptor in allDescriptors(module)) {
-                    val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
-                    val extensionReceiverFqn = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
-
-                    if (canStoreFqName(descriptorFqn) && (extensionReceiverFqn?.let { canStoreFqName(it) } != false)) {
-
-                        for (fqn in listOfNotNull(descriptorFqn, extensionReceiverFqn)) {
-                            FqNames.replace {
-                                it[fqName] = fqn.toString()
-                                it[shortName] = fqn.shortName().toString()
-                            }
-                        }
-
-
-                        Symbols.replace {
-                            it[fqName] = descriptorFqn.toString()
-                            it[kind] = descriptor.accept(ExtractSymbolKind, Unit).rawValue
-                            it[visibility] = descriptor.accept(ExtractSymbolVisibility, Unit).rawValue
-                            it[extensionReceiverType] = extensionReceiverFqn?.toString()
-                        }
-                    } else {
-                        Log.w("SymbolIndex",
-                            "Excluding symbol $descriptorFqn from index since its name is too long"
-                        );
+            val jars = classPath.filter { it.isFile }.distinct()
+            val tables = HashMap<File, SymbolTable>()
+            val missing = LinkedHashMap<File, File>()
+            for (jar in jars) {
+                val file = File(cacheDirectory,
+                    PersistentCache.fingerprint(listOf(jar), TABLE_VERSION) + ".idx")
+                if (file.exists()) {
+                    try {
+                        tables[jar] = SymbolTable.open(file)
+                        continue
+                    } catch (e: IOException) {
+                        // corrupted or written by an older version, index it again
+                        FileUtils.deleteQuietly(file)
                     }
                 }
+                missing[jar] = file
+            }
+
+            if (missing.isNotEmpty()) {
+                if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
+                    throw IOException("Unable to create index directory $cacheDirectory")
+                }
+                for ((jar, entries) in indexLibraries(module, missing.keys)) {
+                    val file = missing.getValue(jar)
+                    SymbolTable.write(entries, file)
+                    tables[jar] = SymbolTable.open(file)
+                }
+            }
+
+            libraries = jars.mapNotNull { tables[it] }
+            Log.d("SymbolIndex", "Indexed ${missing.size} of ${jars.size} libraries in " +
+                    Duration.between(started, Instant.now()).toMillis() + " ms")
+        } catch (e: Exception) {
+            Log.e("SymbolIndex", "Error while updating library symbols", e)
+        } finally {
+            indexing = false
+        }
+    }
 
-                indexing = false
+    /**
+     * Indexes the symbols declared in the source files of the given packages again.
+     *
+     * @param changed the packages of the files that have been edited
+     * @param all the packages of all the source files, symbols of the other packages are removed
+     */
+    fun refreshSources(module: ModuleDescriptor, changed: Collection<FqName>, all: Collection<FqName>) {
+        val started = Instant.now()
+        try {
+            val packages = HashMap(sourcePackages)
+            packages.keys.retainAll(all.toSet())
+            for (fqName in changed) {
+                if (fqName in all) {
+                    packages[fqName] = descriptorsOf(module, fqName)
+                        .filter(::isSource)
+                        .mapNotNull(::entryOf)
+                        .toList()
+                }
             }
+            sources = SymbolTable.create(packages.values.flatten())
+            sourcePackages = packages
         } catch (e: Exception) {
-            Log.e("SymbolIndex", "Error while updating symbol index", e);
+            Log.e("SymbolIndex", "Error while updating source symbols", e)
+        } finally {
+            Log.d("SymbolIndex", "Indexing ${changed.size} source packages took " +
+                    Duration.between(started, Instant.now()).toMillis() + " ms")
         }
     }
 
     fun query(prefix: String, receiverType: FqName? = null, limit: Int = 20): List<Symbol> {
         val start = Instant.now()
         try {
-            return transaction(db) {
-                (Symbols innerJoin FqNames)
-                    .select { FqNames.shortName.like("$prefix%") and (Symbols.extensionReceiverType eq receiverType?.toString()) }
-                    .limit(limit)
-                    .map {
-                        Symbol(
-                            fqName = FqName(it[Symbols.fqName]),
-                            kind = Symbol.Kind.fromRaw(it[Symbols.kind]),
-                            visibility = Symbol.Visibility.fromRaw(it[Symbols.visibility]),
-                            extensionReceiverType = it[Symbols.extensionReceiverType]?.let(::FqName)
-                        )
-                    }
+            val receiver = receiverType?.toString()
+            val entries = ArrayList<SymbolTable.Entry>()
+            sources.query(prefix, receiver, limit, entries)
+            for (library in libraries) {
+                if (entries.size >= limit) {
+                    break
+                }
+                library.query(prefix, receiver, limit, entries)
+            }
+            return entries.distinctBy { it.fqName }.map {
+                Symbol(
+                    fqName = FqName(it.fqName),
+                    kind = Symbol.Kind.fromRaw(it.kind),
+                    visibility = Symbol.Visibility.fromRaw(it.visibility),
+                    extensionReceiverType = it.receiverType?.let(::FqName)
+                )
             }
         } finally {
-            Log.d("SymbolIndex", "Query took " + Duration.between(start, Instant.now()).toMillis() + " ms")
+            Log.d("SymbolIndex", "Query took " + Duration.between(start, Instant.now()).toNanos() / 1000 + " us")
+        }
+    }
+
+    /**
+     * Walks the packages of the given jars once, the descriptors are attributed to the jar
+     * they are loaded from. Descriptors without a jar, such as the built-ins, belong to the
+     * first jar that contains their package.
+     */
+    private fun indexLibraries(module: ModuleDescriptor, jars: Collection<File>): Map<File, List<SymbolTable.Entry>> {
+        val entries = jars.associateWith { ArrayList<SymbolTable.Entry>() }
+        val byPath = jars.associateBy { it.absolutePath }
+        val packages = LinkedHashMap<FqName, MutableList<File>>()
+        for (jar in jars) {
+            for (fqName in packagesOf(jar)) {
+                packages.getOrPut(fqName) { ArrayList() }.add(jar)
+            }
+        }
+
+        for ((fqName, owners) in packages) {
+            val added = HashSet<String>()
+            for (descriptor in descriptorsOf(module, fqName)) {
+                val library = libraryOf(descriptor)
+                val jar = when {
+                    library != null -> byPath[File(library).absolutePath]
+                    isSource(descriptor) -> null
+                    else -> owners.first()
+                } ?: continue // declared in the sources or in a jar that is already indexed
+
+                val entry = entryOf(descriptor) ?: continue
+                if (added.add(entry.fqName + ":" + entry.receiverType)) {
+                    entries.getValue(jar).add(entry)
+                }
+            }
+        }
+        return entries
+    }
+
+    private fun entryOf(descriptor: DeclarationDescriptor): SymbolTable.Entry? {
+        val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
+        val extensionReceiverFqn = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
+
+        if (!canStoreFqName(descriptorFqn) || extensionReceiverFqn?.let { canStoreFqName(it) } == false) {
+            Log.w("SymbolIndex", "Excluding symbol $descriptorFqn from index since its name is too long")
+            return null
         }
+        return SymbolTable.Entry(
+            descriptorFqn.toString(),
+            descriptor.accept(ExtractSymbolKind, Unit).rawValue,
+            descriptor.accept(ExtractSymbolVisibility, Unit).rawValue,
+            extensionReceiverFqn?.toString()
+        )
     }
 
     private fun canStoreFqName(fqName: FqName) =
         fqName.toString().length <= MAX_FQNAME_LENGTH
                 && fqName.shortName().toString().length <= MAX_SHORT_NAME_LENGTH
 
-    private fun allDescriptors(module: ModuleDescriptor) : Sequence<DeclarationDescriptor> = allPackages(module)
-        .map(module::getPackage)
-        .flatMap {
-            try {
-                it.memberScope.getContributedDescriptors(DescriptorKindFilter.ALL, MemberScope.ALL_NAME_FILTER)
-            } catch (e: IllegalStateException) {
-                Log.w("SymbolIndex", "Couldn't query descriptors in package $it")
-                emptyList()
-            }
+    private fun descriptorsOf(module: ModuleDescriptor, fqName: FqName): Sequence<DeclarationDescriptor> =
+        try {
+            module.getPackage(fqName).memberScope
+                .getContributedDescriptors(DescriptorKindFilter.ALL, MemberScope.ALL_NAME_FILTER)
+                .asSequence()
+        } catch (e: IllegalStateException) {
+            Log.w("SymbolIndex", "Couldn't query descriptors in package $fqName")
+            emptySequence()
+        }
+
+    private fun packagesOf(jar: File): Set<FqName> = JarFile(jar).use { file ->
+        file.entries().asSequence()
+            .map { it.name }
+            .filter { it.endsWith(".class") || it.endsWith(".kotlin_builtins") }
+            .filter { !it.startsWith("META-INF/") && it.contains('/') }
+            .map { it.substringBeforeLast('/').replace('/', '.') }
+            .toSet()
+            .map(::FqName)
+            .toSet()
+    }
+
+    private fun isSource(descriptor: DeclarationDescriptor): Boolean {
+        val source = (descriptor as? DeclarationDescriptorWithSource)?.source
+        return source is PsiSourceElement && source.psi != null
+    }
+
+    /**
+     * @return the path of the jar this descriptor is loaded from, or null if it is not
+     * loaded from a jar
+     */
+    private fun libraryOf(descriptor: DeclarationDescriptor): String? {
+        val source = (descriptor as? DeclarationDescriptorWithSource)?.source
+        val binaryClass = when {
+            source is KotlinJvmBinarySourceElement -> source.binaryClass
+            descriptor is DescriptorWithContainerSource ->
+                (descriptor.containerSource as? JvmPackagePartSource)?.knownJvmBinaryClass
+            else -> null
         }
+        binaryClass?.containingLibrary?.let { return it }
+
+        val javaClass = (source as? JavaSourceElement)?.javaElement as? VirtualFileBoundJavaClass
+        val path = javaClass?.virtualFile?.path ?: return null
+        val separator = path.indexOf("!/")
+        return if (separator == -1) null else path.substring(0, separator)
+    }
+}
 
-    private fun allPackages(module: ModuleDescriptor, pkgName: FqName = FqName.ROOT) : Sequence<FqName> = module
-        .getSubPackagesOf(pkgName) { it.toString()  != "META-INF"}
-        .asSequence()
-        .flatMap { sequenceOf(it) + allPackages(module, it) }
-}
\ No newline at end of file
+private fun defaultCacheDirectory(): File {
+    val context = BuildModule.getContext()
+    if (context != null) {
+        return File(context.cacheDir, "kotlin-symbols")
+    }
+    return File(System.getProperty("java.io.tmpdir"), "kotlin-symbols")
+}
@@ -0,0 +1,237 @@
+package com.tyron.kotlin_completion.index;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A table of symbols sorted by their short name so they can be looked up by prefix with
+ * a binary search. Tables of libraries are written once and memory mapped afterwards, the
+ * records are only decoded when they are queried.
+ *
+ * File format:
+ * <pre>
+ *     int magic, int version, int count
+ *     int[count] offsets of the records, sorted by the short name and then the qualified name
+ *     records, each one is a byte kind, a byte visibility, the qualified name and the
+ *     qualified name of the extension receiver type
+ * </pre>
+ * Names are stored as a short length followed by its UTF-8 bytes, a length of -1 means
+ * that the symbol has no extension receiver.
+ */
+public class SymbolTable {
+
+    private static final int MAGIC = 0x4B53594D;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    public static final SymbolTable EMPTY = create(new ArrayList<>());
+
+    public static class Entry {
+
+        private final String mFqName;
+        private final String mShortName;
+        private final int mKind;
+        private final int mVisibility;
+        private final String mReceiverType;
+
+        public Entry(String fqName, int kind, int visibility, String receiverType) {
+            mFqName = fqName;
+            mShortName = shortNameOf(fqName);
+            mKind = kind;
+            mVisibility = visibility;
+            mReceiverType = receiverType;
+        }
+
+        public String getFqName() {
+            return mFqName;
+        }
+
+        public String getShortName() {
+            return mShortName;
+        }
+
+        public int getKind() {
+            return mKind;
+        }
+
+        public int getVisibility() {
+            return mVisibility;
+        }
+
+        public String getReceiverType() {
+            return mReceiverType;
+        }
+    }
+
+    private static final Comparator<Entry> ORDER = Comparator.comparing(Entry::getShortName)
+            .thenComparing(Entry::getFqName);
+
+    /**
+     * Creates a table that lives only in memory, used for the symbols of the source files
+     * which are re-indexed as they are edited
+     */
+    public static SymbolTable create(List<Entry> entries) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(entries, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new SymbolTable(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /**
+     * Writes the entries to the file, replacing it if it exists
+     */
+    public static void write(List<Entry> entries, File file) throws IOException {
+        // another project may be indexing the same jar at the same time
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            write(entries, out);
+        }
+        if (!temp.renameTo(file)) {
+            FileUtils.deleteQuietly(temp);
+            if (!file.exists()) {
+                throw new IOException("Unable to write symbol table " + file);
+            }
+        }
+    }
+
+    private static void write(List<Entry> entries, OutputStream stream) throws IOException {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(ORDER);
+        int count = sorted.size();
+
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(count);
+
+        List<byte[]> names = new ArrayList<>(count);
+        List<byte[]> receivers = new ArrayList<>(count);
+        int offset = HEADER_SIZE + count * 4;
+        for (Entry entry : sorted) {
+            byte[] name = entry.mFqName.getBytes(StandardCharsets.UTF_8);
+            byte[] receiver = entry.mReceiverType == null
+                    ? null
+                    : entry.mReceiverType.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            receivers.add(receiver);
+            out.writeInt(offset);
+            offset += 2 + 2 + name.length + 2 + (receiver == null ? 0 : receiver.length);
+        }
+        for (int i = 0; i < count; i++) {
+            Entry entry = sorted.get(i);
+            out.writeByte(entry.mKind);
+            out.writeByte(entry.mVisibility);
+            out.writeShort(names.get(i).length);
+            out.write(names.get(i));
+            byte[] receiver = receivers.get(i);
+            out.writeShort(receiver == null ? -1 : receiver.length);
+            if (receiver != null) {
+                out.write(receiver);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Memory maps a table written by {@link #write(List, File)}
+     *
+     * @throws IOException if the file is corrupted or written by another version
+     */
+    public static SymbolTable open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC ||
+                    buffer.getInt(4) != VERSION) {
+                throw new IOException("Invalid symbol table " + file);
+            }
+            int count = buffer.getInt(8);
+            if (count < 0 || HEADER_SIZE + (long) count * 4 > buffer.capacity()) {
+                throw new IOException("Invalid symbol table " + file);
+            }
+            return new SymbolTable(buffer);
+        }
+    }
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+
+    private SymbolTable(ByteBuffer buffer) {
+        mBuffer = buffer;
+        mCount = buffer.getInt(8);
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Adds the symbols whose short name starts with the given prefix and whose extension
+     * receiver type is equal to the given one, until the collection has {@code limit} items
+     */
+    public void query(String prefix, String receiverType, int limit, Collection<Entry> out) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (shortNameOf(readString(getOffset(mid) + 2)).compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < mCount && out.size() < limit; i++) {
+            int offset = getOffset(i);
+            String fqName = readString(offset + 2);
+            if (!shortNameOf(fqName).startsWith(prefix)) {
+                break;
+            }
+            int receiverOffset = offset + 2 + 2 + (mBuffer.getShort(offset + 2) & 0xFFFF);
+            String receiver = readString(receiverOffset);
+            if (!Objects.equals(receiver, receiverType)) {
+                continue;
+            }
+            out.add(new Entry(fqName, mBuffer.get(offset), mBuffer.get(offset + 1), receiver));
+        }
+    }
+
+    private int getOffset(int index) {
+        return mBuffer.getInt(HEADER_SIZE + index * 4);
+    }
+
+    private String readString(int offset) {
+        int length = mBuffer.getShort(offset);
+        if (length == -1) {
+            return null;
+        }
+        length &= 0xFFFF;
+        byte[] bytes = new byte[length];
+        // the position of the shared buffer is never changed so it can be used by multiple threads
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(offset + 2);
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String shortNameOf(String fqName) {
+        return fqName.substring(fqName.lastIndexOf('.') + 1);
+    }
+}
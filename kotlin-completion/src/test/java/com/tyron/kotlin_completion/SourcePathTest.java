@@ -0,0 +1,93 @@
+package com.tyron.kotlin_completion;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.tyron.kotlin_completion.compiler.Compiler;
+
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.BindingContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.Collections;
+
+@RunWith(RobolectricTestRunner.class)
+public class SourcePathTest {
+
+    private static final String A = "package test\n\nclass A {\n    fun value() = 1\n}\n";
+    private static final String B = "package test\n\nclass B {\n    fun run() = A().value()\n}\n";
+    private static final String C = "package test\n\nclass C {\n    fun run() = 2\n}\n";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Compiler mCompiler;
+    private SourcePath mSourcePath;
+    private File mA;
+    private File mB;
+    private File mC;
+
+    @Before
+    public void setup() {
+        mCompiler = new Compiler(Collections.emptySet(), Collections.emptySet(), 1);
+        mSourcePath = new SourcePath(new CompilerClassPath(mCompiler));
+        mA = new File(mFolder.getRoot(), "A.kt");
+        mB = new File(mFolder.getRoot(), "B.kt");
+        mC = new File(mFolder.getRoot(), "C.kt");
+        mSourcePath.put(mA, A, false);
+        mSourcePath.put(mB, B, false);
+        mSourcePath.put(mC, C, false);
+    }
+
+    @After
+    public void tearDown() {
+        mCompiler.close();
+    }
+
+    @Test
+    public void testUnchangedFileIsNotCompiledAgain() {
+        BindingContext a = compile(mA);
+        KtFile parsed = mSourcePath.currentVersion(mA).getParse();
+
+        // putting the same contents does not change the version of the file
+        mSourcePath.put(mA, A, false);
+        assertSame(a, compile(mA));
+        assertSame(parsed, mSourcePath.currentVersion(mA).getParse());
+    }
+
+    @Test
+    public void testOnlyDependentsAreCompiledAgain() {
+        BindingContext a = compile(mA);
+        BindingContext b = compile(mB);
+        BindingContext c = compile(mC);
+
+        mSourcePath.put(mA, A.replace("= 1", "= 3"), false);
+        assertNotSame(a, compile(mA));
+
+        // B references A, C does not
+        assertNotSame(b, compile(mB));
+        assertSame(c, compile(mC));
+    }
+
+    @Test
+    public void testDependentsOfDeletedFileAreCompiledAgain() {
+        compile(mA);
+        BindingContext b = compile(mB);
+        BindingContext c = compile(mC);
+
+        mSourcePath.delete(mA);
+        assertNotSame(b, compile(mB));
+        assertSame(c, compile(mC));
+    }
+
+    private BindingContext compile(File file) {
+        return mSourcePath.currentVersion(file).getCompile();
+    }
+}
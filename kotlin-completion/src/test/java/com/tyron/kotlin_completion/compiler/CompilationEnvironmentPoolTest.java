@@ -0,0 +1,99 @@
+package com.tyron.kotlin_completion.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.jetbrains.kotlin.com.intellij.psi.PsiFileFactory;
+import org.jetbrains.kotlin.idea.KotlinLanguage;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CompilationEnvironmentPoolTest {
+
+    private CompilationEnvironmentPool mPool;
+
+    @Before
+    public void setup() {
+        mPool = new CompilationEnvironmentPool(Collections.emptySet(), Collections.emptySet(), 2);
+    }
+
+    @After
+    public void tearDown() {
+        mPool.close();
+    }
+
+    @Test
+    public void testFilesAreParsedByTheAnalyzingEnvironment() {
+        CompilationEnvironment first = mPool.acquire();
+        CompilationEnvironment second = mPool.acquire();
+        try {
+            assertSame(mPool.getDefaultEnvironment(), first);
+            KtFile file = parse(first, "package test\n\nclass Main");
+            assertSame(file, first.getLocalFile(file));
+
+            KtFile local = second.getLocalFile(file);
+            assertNotSame(file, local);
+            assertSame(second.getProject(), local.getProject());
+            assertEquals(file.getText(), local.getText());
+            assertEquals(file.getName(), local.getName());
+            assertSame(file, CompilationEnvironment.getOriginalFile(local));
+            assertSame(file, CompilationEnvironment.getOriginalFile(file));
+
+            // parsed once for as long as the original is used
+            assertSame(local, second.getLocalFile(file));
+            KtFile edited = parse(first, "package test\n\nclass Main { val a = 1 }");
+            assertEquals(edited.getText(), second.getLocalFile(edited).getText());
+        } finally {
+            mPool.release(first);
+            mPool.release(second);
+        }
+    }
+
+    @Test
+    public void testAcquireEnvironmentOfProject() throws Exception {
+        CompilationEnvironment environment = mPool.acquire();
+        CountDownLatch waiting = new CountDownLatch(1);
+        AtomicReference<CompilationEnvironment> acquired = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            waiting.countDown();
+            acquired.set(mPool.acquire(environment.getProject()));
+        });
+        thread.start();
+        assertTrue(waiting.await(30, TimeUnit.SECONDS));
+
+        // another environment can be leased while the thread waits for the first one
+        CompilationEnvironment other = mPool.acquire();
+        assertNotSame(environment, other);
+        mPool.release(other);
+        thread.join(200);
+        assertNull(acquired.get());
+
+        mPool.release(environment);
+        thread.join(TimeUnit.SECONDS.toMillis(30));
+        assertSame(environment, acquired.get());
+        mPool.release(environment);
+
+        CompilationEnvironment foreign = new CompilationEnvironment(Collections.emptySet(),
+                Collections.emptySet());
+        try {
+            assertNull(mPool.acquire(foreign.getProject()));
+        } finally {
+            foreign.close();
+        }
+    }
+
+    private static KtFile parse(CompilationEnvironment environment, String text) {
+        return (KtFile) PsiFileFactory.getInstance(environment.getProject())
+                .createFileFromText("Main.kt", KotlinLanguage.INSTANCE, text, true, false);
+    }
+}
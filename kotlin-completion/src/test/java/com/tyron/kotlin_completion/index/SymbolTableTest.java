@@ -0,0 +1,67 @@
+package com.tyron.kotlin_completion.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SymbolTableTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static List<SymbolTable.Entry> entries() {
+        return Arrays.asList(
+                new SymbolTable.Entry("kotlin.collections.listOf", 2, 4, null),
+                new SymbolTable.Entry("kotlin.collections.List", 1, 4, null),
+                new SymbolTable.Entry("kotlin.collections.last", 2, 4, "kotlin.collections.List"),
+                new SymbolTable.Entry("kotlin.io.println", 2, 4, null),
+                new SymbolTable.Entry("java.util.ArrayList", 0, 4, null),
+                new SymbolTable.Entry("kotlin.collections.ArrayList", 0, 4, null));
+    }
+
+    @Test
+    public void testPrefix() throws Exception {
+        File file = mFolder.newFile("symbols.idx");
+        SymbolTable.write(entries(), file);
+        SymbolTable table = SymbolTable.open(file);
+        assertEquals(6, table.size());
+
+        List<SymbolTable.Entry> result = new ArrayList<>();
+        table.query("list", null, 20, result);
+        assertEquals(1, result.size());
+        assertEquals("kotlin.collections.listOf", result.get(0).getFqName());
+        assertEquals(2, result.get(0).getKind());
+        assertNull(result.get(0).getReceiverType());
+
+        result.clear();
+        table.query("ArrayList", null, 20, result);
+        assertEquals(2, result.size());
+        assertEquals("java.util.ArrayList", result.get(0).getFqName());
+        assertEquals("kotlin.collections.ArrayList", result.get(1).getFqName());
+
+        result.clear();
+        table.query("", null, 3, result);
+        assertEquals(3, result.size());
+    }
+
+    @Test
+    public void testReceiverType() {
+        SymbolTable table = SymbolTable.create(entries());
+
+        List<SymbolTable.Entry> result = new ArrayList<>();
+        table.query("la", null, 20, result);
+        assertEquals(0, result.size());
+
+        table.query("la", "kotlin.collections.List", 20, result);
+        assertEquals(1, result.size());
+        assertEquals("kotlin.collections.last", result.get(0).getFqName());
+    }
+}
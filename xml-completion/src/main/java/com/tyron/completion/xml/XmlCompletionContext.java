@@ -0,0 +1,236 @@
+package com.tyron.completion.xml;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * What is being typed at the cursor of an xml file. Only the text around the cursor is
+ * scanned, the file is not parsed.
+ */
+public class XmlCompletionContext {
+
+    public enum Kind {
+        /**
+         * The name of a start tag, after {@code <}
+         */
+        TAG,
+        /**
+         * The name of an end tag, after {@code </}
+         */
+        CLOSING_TAG,
+        /**
+         * The name of an attribute inside a start tag
+         */
+        ATTRIBUTE,
+        /**
+         * The value of an attribute, inside its quotes
+         */
+        ATTRIBUTE_VALUE,
+        NONE
+    }
+
+    private static final XmlCompletionContext NONE =
+            new XmlCompletionContext(Kind.NONE, "", null, null, null);
+
+    private final Kind mKind;
+    private final String mPrefix;
+    private final String mTag;
+    private final String mParentTag;
+    private final String mAttribute;
+
+    XmlCompletionContext(Kind kind, String prefix, String tag, String parentTag,
+                         String attribute) {
+        mKind = kind;
+        mPrefix = prefix;
+        mTag = tag;
+        mParentTag = parentTag;
+        mAttribute = attribute;
+    }
+
+    public Kind getKind() {
+        return mKind;
+    }
+
+    /**
+     * @return the part of the name or value that has been typed before the cursor
+     */
+    public String getPrefix() {
+        return mPrefix;
+    }
+
+    /**
+     * @return the name of the tag the cursor is in
+     */
+    @Nullable
+    public String getTag() {
+        return mTag;
+    }
+
+    /**
+     * @return the name of the element that contains the tag, or the element that is closed
+     * for {@link Kind#CLOSING_TAG}
+     */
+    @Nullable
+    public String getParentTag() {
+        return mParentTag;
+    }
+
+    /**
+     * @return the attribute whose value is being typed
+     */
+    @Nullable
+    public String getAttribute() {
+        return mAttribute;
+    }
+
+    public static XmlCompletionContext of(@NonNull CharSequence text, int offset) {
+        offset = Math.min(offset, text.length());
+        int start = offset - 1;
+        while (start >= 0) {
+            char c = text.charAt(start);
+            if (c == '<') {
+                break;
+            }
+            if (c == '>') {
+                return NONE;
+            }
+            start--;
+        }
+        if (start < 0) {
+            return NONE;
+        }
+
+        int i = start + 1;
+        if (i < offset && (text.charAt(i) == '!' || text.charAt(i) == '?')) {
+            // comments, declarations and processing instructions
+            return NONE;
+        }
+        boolean closing = i < offset && text.charAt(i) == '/';
+        if (closing) {
+            i++;
+        }
+        int nameStart = i;
+        while (i < offset && !isWhitespace(text.charAt(i)) && text.charAt(i) != '/') {
+            i++;
+        }
+        if (i == offset) {
+            String prefix = text.subSequence(nameStart, offset).toString();
+            String parent = findParentTag(text, start);
+            if (closing) {
+                return new XmlCompletionContext(Kind.CLOSING_TAG, prefix, null, parent, null);
+            }
+            return new XmlCompletionContext(Kind.TAG, prefix, null, parent, null);
+        }
+        if (closing) {
+            return NONE;
+        }
+        String tag = text.subSequence(nameStart, i).toString();
+
+        while (true) {
+            while (i < offset && isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            int attributeStart = i;
+            while (i < offset && !isWhitespace(text.charAt(i)) && text.charAt(i) != '=' &&
+                    text.charAt(i) != '/') {
+                i++;
+            }
+            if (i == offset) {
+                return new XmlCompletionContext(Kind.ATTRIBUTE,
+                        text.subSequence(attributeStart, offset).toString(), tag,
+                        findParentTag(text, start), null);
+            }
+            String attribute = text.subSequence(attributeStart, i).toString();
+            while (i < offset && (isWhitespace(text.charAt(i)) || text.charAt(i) == '=')) {
+                i++;
+            }
+            if (i == offset) {
+                return NONE;
+            }
+            char quote = text.charAt(i);
+            if (quote != '"' && quote != '\'') {
+                // self closing tag or malformed attribute
+                i++;
+                continue;
+            }
+            int valueStart = ++i;
+            while (i < offset && text.charAt(i) != quote) {
+                i++;
+            }
+            if (i == offset) {
+                return new XmlCompletionContext(Kind.ATTRIBUTE_VALUE,
+                        text.subSequence(valueStart, offset).toString(), tag,
+                        findParentTag(text, start), attribute);
+            }
+            // past the closing quote
+            i++;
+        }
+    }
+
+    /**
+     * Walks back from the tag at {@code end} and returns the name of the first start tag
+     * that has not been closed before it.
+     */
+    @Nullable
+    static String findParentTag(CharSequence text, int end) {
+        int depth = 0;
+        int i = end - 1;
+        while (i >= 0) {
+            if (text.charAt(i) != '>') {
+                i--;
+                continue;
+            }
+            int close = i;
+            if (close >= 2 && text.charAt(close - 1) == '-' && text.charAt(close - 2) == '-') {
+                // the tags inside a comment are skipped
+                i = indexOfCommentStart(text, close - 2) - 1;
+                continue;
+            }
+            int open = close - 1;
+            while (open >= 0 && text.charAt(open) != '<') {
+                open--;
+            }
+            if (open < 0) {
+                return null;
+            }
+            i = open - 1;
+
+            char first = open + 1 < close ? text.charAt(open + 1) : '>';
+            if (first == '!' || first == '?' || text.charAt(close - 1) == '/') {
+                // comments, declarations and self closing tags
+                continue;
+            }
+            if (first == '/') {
+                depth++;
+                continue;
+            }
+            if (depth > 0) {
+                depth--;
+                continue;
+            }
+            int nameEnd = open + 1;
+            while (nameEnd < close && !isWhitespace(text.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            return text.subSequence(open + 1, nameEnd).toString();
+        }
+        return null;
+    }
+
+    /**
+     * @return the position of the {@code <!--} that starts before {@code end}, or -1
+     */
+    private static int indexOfCommentStart(CharSequence text, int end) {
+        for (int i = end - 4; i >= 0; i--) {
+            if (text.charAt(i) == '<' && text.charAt(i + 1) == '!' &&
+                    text.charAt(i + 2) == '-' && text.charAt(i + 3) == '-') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+    }
+}
@@ -0,0 +1,270 @@
+package com.tyron.completion.xml;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.api.Module;
+import com.tyron.completion.CompletionProvider;
+import com.tyron.completion.model.CompletionItem;
+import com.tyron.completion.model.CompletionList;
+import com.tyron.completion.model.DrawableKind;
+import com.tyron.completion.progress.ProgressManager;
+import com.tyron.completion.util.CompletionMatcher;
+import com.tyron.completion.xml.index.XmlIndex;
+import com.tyron.completion.xml.index.XmlIndexManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Completes the tags, attributes and attribute values of android xml files from the
+ * {@link XmlIndex} of the module.
+ */
+public class XmlCompletionProvider extends CompletionProvider {
+
+    private static final String TAG = XmlCompletionProvider.class.getSimpleName();
+
+    private static final String VIEW = "View";
+    private static final String LAYOUT_SUFFIX = "_Layout";
+    private static final String MARGIN_LAYOUT = "ViewGroup_MarginLayout";
+
+    @Override
+    public String getFileExtension() {
+        return ".xml";
+    }
+
+    @Override
+    public CompletionList complete(Project project, Module module, File file, String contents,
+                                   String prefix, int line, int column, long index) {
+        if (!(module instanceof AndroidModule)) {
+            return CompletionList.EMPTY;
+        }
+        ProgressManager.checkCanceled();
+
+        AndroidModule androidModule = (AndroidModule) module;
+        XmlIndexManager manager = XmlIndexManager.getInstance();
+        XmlIndex libraryIndex;
+        try {
+            libraryIndex = manager.getIndex(androidModule.getBootstrapJarFile(),
+                    androidModule.getLibraries(),
+                    new File(module.getBuildDirectory(), "intermediate/xml-index"));
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to index the libraries of " + module.getRootFile(), e);
+            return CompletionList.EMPTY;
+        }
+        XmlIndex symbolIndex = manager.getSymbolIndex(
+                new File(module.getBuildDirectory(), "bin/res/R.txt"));
+
+        ProgressManager.checkCanceled();
+        return complete(Arrays.asList(libraryIndex, symbolIndex), contents, prefix,
+                (int) index);
+    }
+
+    /**
+     * @param prefix the text before the cursor that the editor replaces with the commit text
+     *               of the items
+     */
+    @VisibleForTesting
+    public static CompletionList complete(@NonNull List<XmlIndex> indexes,
+                                          @NonNull String contents, @NonNull String prefix,
+                                          int cursor) {
+        XmlCompletionContext context = XmlCompletionContext.of(contents, cursor);
+        String partial = context.getPrefix();
+        if (context.getKind() == XmlCompletionContext.Kind.ATTRIBUTE_VALUE) {
+            // each flag is completed on its own
+            partial = partial.substring(partial.lastIndexOf('|') + 1);
+        }
+        String lead = "";
+        if (prefix.endsWith(partial)) {
+            lead = prefix.substring(0, prefix.length() - partial.length());
+        }
+
+        List<CompletionItem> items;
+        switch (context.getKind()) {
+            case TAG:
+                items = completeTags(indexes, partial, lead);
+                break;
+            case CLOSING_TAG:
+                items = completeClosingTag(context, lead);
+                break;
+            case ATTRIBUTE:
+                items = completeAttributes(indexes, context, lead);
+                break;
+            case ATTRIBUTE_VALUE:
+                items = completeValues(indexes, context, partial, lead);
+                break;
+            default:
+                return CompletionList.EMPTY;
+        }
+
+        CompletionList list = new CompletionList();
+        list.items = new CompletionMatcher(partial).rankMatching(items);
+        return list;
+    }
+
+    private static List<CompletionItem> completeTags(List<XmlIndex> indexes, String partial,
+                                                     String lead) {
+        boolean qualified = partial.indexOf('.') != -1;
+        Map<String, CompletionItem> items = new LinkedHashMap<>();
+        for (XmlIndex index : indexes) {
+            for (String view : index.getViews()) {
+                if (items.containsKey(view)) {
+                    continue;
+                }
+                int dot = view.lastIndexOf('.');
+                String simpleName = view.substring(dot + 1);
+                String insert = XmlIndex.isImplicitPackage(view) ? simpleName : view;
+                CompletionItem item = createItem(qualified ? view : simpleName,
+                        view.substring(0, Math.max(dot, 0)), lead + insert, DrawableKind.Class);
+                items.put(view, item);
+            }
+        }
+        return new ArrayList<>(items.values());
+    }
+
+    private static List<CompletionItem> completeClosingTag(XmlCompletionContext context,
+                                                           String lead) {
+        String parent = context.getParentTag();
+        if (parent == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(createItem(parent, "End tag", lead + parent + ">",
+                DrawableKind.Class));
+    }
+
+    private static List<CompletionItem> completeAttributes(List<XmlIndex> indexes,
+                                                           XmlCompletionContext context,
+                                                           String lead) {
+        Set<String> styleables = new LinkedHashSet<>();
+        List<String> hierarchy = getHierarchy(indexes, context.getTag());
+        for (String view : hierarchy) {
+            styleables.add(getSimpleName(view));
+        }
+        if (hierarchy.isEmpty()) {
+            // the view is unknown, such as a custom view of the project
+            if (context.getTag() != null) {
+                styleables.add(getSimpleName(context.getTag()));
+            }
+            styleables.add(VIEW);
+        }
+        List<String> parentHierarchy = getHierarchy(indexes, context.getParentTag());
+        for (String view : parentHierarchy) {
+            styleables.add(getSimpleName(view) + LAYOUT_SUFFIX);
+        }
+        if (!parentHierarchy.isEmpty()) {
+            styleables.add(MARGIN_LAYOUT);
+        }
+
+        Set<String> attributes = new LinkedHashSet<>();
+        for (String styleable : styleables) {
+            for (XmlIndex index : indexes) {
+                attributes.addAll(index.getStyleableAttributes(styleable));
+            }
+        }
+
+        List<CompletionItem> items = new ArrayList<>(attributes.size());
+        for (String attribute : attributes) {
+            String commit = lead + attribute + "=\"\"";
+            CompletionItem item = createItem(attribute, "Attribute", commit, DrawableKind.Filed);
+            // between the quotes
+            item.cursorOffset = commit.length() - 1;
+            items.add(item);
+        }
+        return items;
+    }
+
+    private static List<CompletionItem> completeValues(List<XmlIndex> indexes,
+                                                       XmlCompletionContext context,
+                                                       String partial, String lead) {
+        List<CompletionItem> items = new ArrayList<>();
+        if (partial.startsWith("@")) {
+            int slash = partial.indexOf('/');
+            Set<String> seen = new LinkedHashSet<>();
+            for (XmlIndex index : indexes) {
+                if (slash == -1) {
+                    for (String type : index.getResourceTypes()) {
+                        String reference = "@" + type + "/";
+                        if (seen.add(reference)) {
+                            items.add(createItem(reference, "Resource type", lead + reference,
+                                    DrawableKind.Package));
+                        }
+                    }
+                    continue;
+                }
+                String type = partial.substring(1, slash);
+                if (type.startsWith("+")) {
+                    type = type.substring(1);
+                }
+                for (String name : index.getResources(type)) {
+                    String reference = partial.substring(0, slash + 1) + name;
+                    if (seen.add(reference)) {
+                        items.add(createItem(reference, type, lead + reference,
+                                DrawableKind.LocalVariable));
+                    }
+                }
+            }
+            return items;
+        }
+
+        String attribute = context.getAttribute();
+        if (attribute == null) {
+            return items;
+        }
+        Set<String> values = new LinkedHashSet<>();
+        int formats = 0;
+        for (XmlIndex index : indexes) {
+            values.addAll(index.getAttributeValues(attribute));
+            formats |= index.getAttributeFormats(attribute);
+        }
+        if ((formats & XmlIndex.FORMAT_BOOLEAN) != 0) {
+            values.add("true");
+            values.add("false");
+        }
+        for (String value : values) {
+            items.add(createItem(value, attribute, lead + value, DrawableKind.Keyword));
+        }
+        return items;
+    }
+
+    /**
+     * @return the fully qualified names of the view used by the tag and its super classes
+     */
+    private static List<String> getHierarchy(List<XmlIndex> indexes, String tag) {
+        if (tag == null) {
+            return Collections.emptyList();
+        }
+        for (XmlIndex index : indexes) {
+            String view = index.resolveView(tag);
+            if (view != null) {
+                return index.getViewHierarchy(view);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private static String getSimpleName(String name) {
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    private static CompletionItem createItem(String label, String detail, String commitText,
+                                             DrawableKind kind) {
+        CompletionItem item = new CompletionItem(label);
+        item.detail = detail;
+        item.commitText = commitText;
+        item.cursorOffset = commitText.length();
+        item.iconKind = kind;
+        return item;
+    }
+}
@@ -0,0 +1,154 @@
+package com.tyron.completion.xml.index;
+
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the header of a class file, its name, super class and fields. The methods and the
+ * attributes of the class are not read, which keeps scanning a whole android.jar cheap.
+ */
+public class ClassFileReader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_INTERFACE = 0x0200;
+    public static final int ACC_ABSTRACT = 0x0400;
+
+    public static class ClassInfo {
+        private final String mName;
+        private final String mSuperName;
+        private final int mAccess;
+        private final List<String> mFieldNames;
+        private final List<String> mFieldDescriptors;
+
+        ClassInfo(String name, String superName, int access, List<String> fieldNames,
+                  List<String> fieldDescriptors) {
+            mName = name;
+            mSuperName = superName;
+            mAccess = access;
+            mFieldNames = Collections.unmodifiableList(fieldNames);
+            mFieldDescriptors = Collections.unmodifiableList(fieldDescriptors);
+        }
+
+        /**
+         * @return the binary name of the class, e.g. {@code android/widget/TextView}
+         */
+        public String getName() {
+            return mName;
+        }
+
+        @Nullable
+        public String getSuperName() {
+            return mSuperName;
+        }
+
+        public int getAccess() {
+            return mAccess;
+        }
+
+        public List<String> getFieldNames() {
+            return mFieldNames;
+        }
+
+        public List<String> getFieldDescriptors() {
+            return mFieldDescriptors;
+        }
+    }
+
+    /**
+     * @param readFields whether the fields of the class are read as well
+     */
+    public static ClassInfo read(InputStream stream, boolean readFields) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        // minor and major version
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classes = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7: // Class
+                    classes[i] = in.readUnsignedShort();
+                    break;
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    in.skipBytes(2);
+                    break;
+                case 15: // MethodHandle
+                    in.skipBytes(3);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    in.skipBytes(4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    in.skipBytes(8);
+                    // takes two entries
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        int access = in.readUnsignedShort();
+        String name = utf8[classes[in.readUnsignedShort()]];
+        int superClass = in.readUnsignedShort();
+        String superName = superClass == 0 ? null : utf8[classes[superClass]];
+
+        List<String> fieldNames = new ArrayList<>();
+        List<String> fieldDescriptors = new ArrayList<>();
+        if (readFields) {
+            int interfaces = in.readUnsignedShort();
+            in.skipBytes(interfaces * 2);
+
+            int fields = in.readUnsignedShort();
+            for (int i = 0; i < fields; i++) {
+                in.readUnsignedShort();
+                fieldNames.add(utf8[in.readUnsignedShort()]);
+                fieldDescriptors.add(utf8[in.readUnsignedShort()]);
+                int attributes = in.readUnsignedShort();
+                for (int j = 0; j < attributes; j++) {
+                    in.readUnsignedShort();
+                    skipFully(in, in.readInt() & 0xFFFFFFFFL);
+                }
+            }
+        }
+        return new ClassInfo(name, superName, access, fieldNames, fieldDescriptors);
+    }
+
+    private static void skipFully(DataInputStream in, long count) throws IOException {
+        while (count > 0) {
+            int skipped = in.skipBytes((int) Math.min(count, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of class file");
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.tyron.completion.xml.index;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The views, attributes and resources that can be used in the xml files of a project.
+ *
+ * The index is immutable and keeps its contents in sorted arrays so lookups are binary
+ * searches and nothing has to be parsed while completing. It is created by an
+ * {@link XmlIndexBuilder} and written to a compact binary file so it is only built once for
+ * the same android.jar and libraries.
+ *
+ * Attributes are qualified with their namespace prefix, {@code android:text} for the attributes
+ * of the framework and {@code app:layout_constraintTop_toTopOf} for the others. Framework
+ * resource types are prefixed the same way, e.g. {@code android:drawable}.
+ */
+public class XmlIndex {
+
+    private static final int MAGIC = 0x584D4C49;
+    private static final int VERSION = 1;
+
+    public static final int FORMAT_REFERENCE = 1;
+    public static final int FORMAT_STRING = 1 << 1;
+    public static final int FORMAT_COLOR = 1 << 2;
+    public static final int FORMAT_DIMENSION = 1 << 3;
+    public static final int FORMAT_BOOLEAN = 1 << 4;
+    public static final int FORMAT_INTEGER = 1 << 5;
+    public static final int FORMAT_FLOAT = 1 << 6;
+    public static final int FORMAT_FRACTION = 1 << 7;
+    public static final int FORMAT_ENUM = 1 << 8;
+    public static final int FORMAT_FLAGS = 1 << 9;
+
+    public static final String ANDROID_NAMESPACE = "android";
+    public static final String APP_NAMESPACE = "app";
+
+    /**
+     * Packages whose views can be used without their package name
+     */
+    private static final String[] IMPLICIT_PACKAGES = {
+            "android.widget.", "android.view.", "android.webkit."
+    };
+
+    public static final XmlIndex EMPTY = new XmlIndex(new String[0], new int[0],
+            new boolean[0], new String[0], new String[0][], new String[0], new int[0],
+            new String[0][], new String[0], new String[0][]);
+
+    private final String[] mViews;
+    private final int[] mViewSupers;
+    private final boolean[] mViewAbstract;
+
+    private final String[] mStyleables;
+    private final String[][] mStyleableAttributes;
+
+    private final String[] mAttributes;
+    private final int[] mAttributeFormats;
+    private final String[][] mAttributeValues;
+
+    private final String[] mResourceTypes;
+    private final String[][] mResourceNames;
+
+    XmlIndex(String[] views, int[] viewSupers, boolean[] viewAbstract,
+             String[] styleables, String[][] styleableAttributes,
+             String[] attributes, int[] attributeFormats, String[][] attributeValues,
+             String[] resourceTypes, String[][] resourceNames) {
+        mViews = views;
+        mViewSupers = viewSupers;
+        mViewAbstract = viewAbstract;
+        mStyleables = styleables;
+        mStyleableAttributes = styleableAttributes;
+        mAttributes = attributes;
+        mAttributeFormats = attributeFormats;
+        mAttributeValues = attributeValues;
+        mResourceTypes = resourceTypes;
+        mResourceNames = resourceNames;
+    }
+
+    /**
+     * @return the fully qualified names of the views that can be used as a tag
+     */
+    public List<String> getViews() {
+        List<String> views = new ArrayList<>(mViews.length);
+        for (int i = 0; i < mViews.length; i++) {
+            if (!mViewAbstract[i]) {
+                views.add(mViews[i]);
+            }
+        }
+        return views;
+    }
+
+    /**
+     * @return the fully qualified name of the view used by the tag, or null if the view is not
+     * in this index
+     */
+    @Nullable
+    public String resolveView(@NonNull String tag) {
+        if (tag.indexOf('.') != -1) {
+            return Arrays.binarySearch(mViews, tag) >= 0 ? tag : null;
+        }
+        for (String implicitPackage : IMPLICIT_PACKAGES) {
+            String name = implicitPackage + tag;
+            if (Arrays.binarySearch(mViews, name) >= 0) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the super class of the view, or null if it is not a view
+     */
+    @Nullable
+    public String getSuperClass(@NonNull String view) {
+        int index = Arrays.binarySearch(mViews, view);
+        if (index < 0 || mViewSupers[index] == -1) {
+            return null;
+        }
+        return mViews[mViewSupers[index]];
+    }
+
+    /**
+     * @return the view and its super classes, starting with the view
+     */
+    public List<String> getViewHierarchy(@NonNull String view) {
+        List<String> hierarchy = new ArrayList<>();
+        for (String current = view; current != null; current = getSuperClass(current)) {
+            hierarchy.add(current);
+        }
+        return hierarchy;
+    }
+
+    /**
+     * @return whether the tag can be written without its package name
+     */
+    public static boolean isImplicitPackage(@NonNull String view) {
+        for (String implicitPackage : IMPLICIT_PACKAGES) {
+            if (view.startsWith(implicitPackage) &&
+                    view.indexOf('.', implicitPackage.length()) == -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the attributes of the declare-styleable, or an empty list if there is none
+     */
+    public List<String> getStyleableAttributes(@NonNull String styleable) {
+        int index = Arrays.binarySearch(mStyleables, styleable);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(mStyleableAttributes[index]);
+    }
+
+    /**
+     * @return the formats of the attribute, or 0 if they are not known
+     */
+    public int getAttributeFormats(@NonNull String attribute) {
+        int index = Arrays.binarySearch(mAttributes, attribute);
+        return index < 0 ? 0 : mAttributeFormats[index];
+    }
+
+    /**
+     * @return the enum or flag values of the attribute
+     */
+    public List<String> getAttributeValues(@NonNull String attribute) {
+        int index = Arrays.binarySearch(mAttributes, attribute);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(mAttributeValues[index]);
+    }
+
+    public List<String> getResourceTypes() {
+        return Arrays.asList(mResourceTypes);
+    }
+
+    /**
+     * @param type the type of resource, prefixed with {@code android:} for the resources of
+     *             the framework
+     */
+    public List<String> getResources(@NonNull String type) {
+        int index = Arrays.binarySearch(mResourceTypes, type);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(mResourceNames[index]);
+    }
+
+    public void write(@NonNull OutputStream stream) throws IOException {
+        StringTable strings = new StringTable();
+        strings.addAll(mViews);
+        strings.addAll(mStyleables);
+        for (String[] attributes : mStyleableAttributes) {
+            strings.addAll(attributes);
+        }
+        strings.addAll(mAttributes);
+        for (String[] values : mAttributeValues) {
+            strings.addAll(values);
+        }
+        strings.addAll(mResourceTypes);
+        for (String[] names : mResourceNames) {
+            strings.addAll(names);
+        }
+
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(strings.mStrings.size());
+        for (String string : strings.mStrings) {
+            out.writeUTF(string);
+        }
+
+        strings.write(out, mViews);
+        for (int i = 0; i < mViews.length; i++) {
+            out.writeInt(mViewSupers[i]);
+            out.writeBoolean(mViewAbstract[i]);
+        }
+        strings.write(out, mStyleables);
+        for (String[] attributes : mStyleableAttributes) {
+            strings.write(out, attributes);
+        }
+        strings.write(out, mAttributes);
+        for (int i = 0; i < mAttributes.length; i++) {
+            out.writeInt(mAttributeFormats[i]);
+            strings.write(out, mAttributeValues[i]);
+        }
+        strings.write(out, mResourceTypes);
+        for (String[] names : mResourceNames) {
+            strings.write(out, names);
+        }
+        out.flush();
+    }
+
+    public static XmlIndex read(@NonNull InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unsupported xml index");
+        }
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+
+        String[] views = readStrings(in, strings);
+        int[] viewSupers = new int[views.length];
+        boolean[] viewAbstract = new boolean[views.length];
+        for (int i = 0; i < views.length; i++) {
+            viewSupers[i] = in.readInt();
+            viewAbstract[i] = in.readBoolean();
+        }
+        String[] styleables = readStrings(in, strings);
+        String[][] styleableAttributes = new String[styleables.length][];
+        for (int i = 0; i < styleables.length; i++) {
+            styleableAttributes[i] = readStrings(in, strings);
+        }
+        String[] attributes = readStrings(in, strings);
+        int[] attributeFormats = new int[attributes.length];
+        String[][] attributeValues = new String[attributes.length][];
+        for (int i = 0; i < attributes.length; i++) {
+            attributeFormats[i] = in.readInt();
+            attributeValues[i] = readStrings(in, strings);
+        }
+        String[] resourceTypes = readStrings(in, strings);
+        String[][] resourceNames = new String[resourceTypes.length][];
+        for (int i = 0; i < resourceTypes.length; i++) {
+            resourceNames[i] = readStrings(in, strings);
+        }
+        return new XmlIndex(views, viewSupers, viewAbstract, styleables, styleableAttributes,
+                attributes, attributeFormats, attributeValues, resourceTypes, resourceNames);
+    }
+
+    private static String[] readStrings(DataInputStream in, String[] strings)
+            throws IOException {
+        String[] result = new String[in.readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = strings[in.readInt()];
+        }
+        return result;
+    }
+
+    /**
+     * Every string is written once, the sections refer to them by their position
+     */
+    private static class StringTable {
+        private final List<String> mStrings = new ArrayList<>();
+        private final Map<String, Integer> mIndexes = new HashMap<>();
+
+        void addAll(String[] strings) {
+            addAll(Arrays.asList(strings));
+        }
+
+        void addAll(Collection<String> strings) {
+            for (String string : strings) {
+                if (!mIndexes.containsKey(string)) {
+                    mIndexes.put(string, mStrings.size());
+                    mStrings.add(string);
+                }
+            }
+        }
+
+        void write(DataOutputStream out, String[] strings) throws IOException {
+            out.writeInt(strings.length);
+            for (String string : strings) {
+                out.writeInt(mIndexes.get(string));
+            }
+        }
+    }
+}
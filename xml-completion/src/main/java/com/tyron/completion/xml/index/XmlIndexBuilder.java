@@ -0,0 +1,438 @@
+package com.tyron.completion.xml.index;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.collect.Table;
+import com.tyron.builder.compiler.symbol.SymbolLoader;
+import com.tyron.builder.log.ILogger;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Collects the views, declare-styleables, attributes and resources of an android.jar and
+ * the libraries of a project into an {@link XmlIndex}.
+ */
+public class XmlIndexBuilder {
+
+    private static final String VIEW = "android.view.View";
+    private static final String R_PREFIX = "android/R$";
+    private static final String STYLEABLE = "styleable";
+
+    private static final Map<String, Integer> FORMATS = new HashMap<>();
+
+    static {
+        FORMATS.put("reference", XmlIndex.FORMAT_REFERENCE);
+        FORMATS.put("string", XmlIndex.FORMAT_STRING);
+        FORMATS.put("color", XmlIndex.FORMAT_COLOR);
+        FORMATS.put("dimension", XmlIndex.FORMAT_DIMENSION);
+        FORMATS.put("boolean", XmlIndex.FORMAT_BOOLEAN);
+        FORMATS.put("integer", XmlIndex.FORMAT_INTEGER);
+        FORMATS.put("float", XmlIndex.FORMAT_FLOAT);
+        FORMATS.put("fraction", XmlIndex.FORMAT_FRACTION);
+        FORMATS.put("enum", XmlIndex.FORMAT_ENUM);
+        FORMATS.put("flags", XmlIndex.FORMAT_FLAGS);
+    }
+
+    private final Map<String, String> mSuperClasses = new HashMap<>();
+    private final Set<String> mAbstractClasses = new HashSet<>();
+    private final Map<String, Set<String>> mStyleables = new TreeMap<>();
+    private final Map<String, Integer> mAttributeFormats = new TreeMap<>();
+    private final Map<String, Set<String>> mAttributeValues = new HashMap<>();
+    private final Map<String, Set<String>> mResources = new TreeMap<>();
+
+    /**
+     * Adds a class, the classes that do not extend {@code android.view.View} are left out
+     * when the index is built
+     *
+     * @param name      the fully qualified name of the class
+     * @param superName the fully qualified name of its super class
+     */
+    public XmlIndexBuilder addClass(@NonNull String name, @Nullable String superName,
+                                    boolean isAbstract) {
+        mSuperClasses.put(name, superName);
+        if (isAbstract) {
+            mAbstractClasses.add(name);
+        }
+        return this;
+    }
+
+    /**
+     * @param attributes the qualified names of the attributes
+     */
+    public XmlIndexBuilder addStyleable(@NonNull String name,
+                                        @NonNull Collection<String> attributes) {
+        getOrCreate(mStyleables, name).addAll(attributes);
+        return this;
+    }
+
+    /**
+     * @param formats the {@code XmlIndex.FORMAT_} flags of the attribute
+     * @param values  the enum or flag values of the attribute
+     */
+    public XmlIndexBuilder addAttribute(@NonNull String name, int formats,
+                                        @NonNull Collection<String> values) {
+        Integer previous = mAttributeFormats.get(name);
+        mAttributeFormats.put(name, previous == null ? formats : previous | formats);
+        getOrCreate(mAttributeValues, name).addAll(values);
+        return this;
+    }
+
+    /**
+     * @param type the type of the resource, prefixed with {@code android:} for the framework
+     */
+    public XmlIndexBuilder addResource(@NonNull String type, @NonNull String name) {
+        getOrCreate(mResources, type).add(name);
+        return this;
+    }
+
+    /**
+     * Adds the classes of the android.jar along with the declare-styleables and resources of
+     * its R class
+     */
+    public XmlIndexBuilder addFrameworkJar(@NonNull File jar) throws IOException {
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                if (!entryName.endsWith(".class")) {
+                    continue;
+                }
+                boolean resources = entryName.startsWith(R_PREFIX);
+                ClassFileReader.ClassInfo info;
+                try (InputStream stream = zipFile.getInputStream(entry)) {
+                    info = ClassFileReader.read(stream, resources);
+                }
+                if (resources) {
+                    addFrameworkResources(info);
+                } else {
+                    addClass(info);
+                }
+            }
+        }
+        return this;
+    }
+
+    private void addFrameworkResources(ClassFileReader.ClassInfo info) {
+        String type = info.getName().substring(R_PREFIX.length());
+        if (type.indexOf('$') != -1) {
+            return;
+        }
+        List<String> names = info.getFieldNames();
+        if (STYLEABLE.equals(type)) {
+            List<String> descriptors = info.getFieldDescriptors();
+            Set<String> styleables = new HashSet<>();
+            List<String> indexes = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                if ("[I".equals(descriptors.get(i))) {
+                    styleables.add(names.get(i));
+                } else {
+                    indexes.add(names.get(i));
+                }
+            }
+            addStyleables(styleables, indexes, true);
+            return;
+        }
+        for (String name : names) {
+            if ("style".equals(type)) {
+                // fields can't contain dots
+                name = name.replace('_', '.');
+            }
+            addResource(XmlIndex.ANDROID_NAMESPACE + ":" + type, name);
+        }
+    }
+
+    /**
+     * Adds the classes of a library jar
+     */
+    public XmlIndexBuilder addClasses(@NonNull File jar) throws IOException {
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.getName().endsWith(".class")) {
+                    continue;
+                }
+                try (InputStream stream = zipFile.getInputStream(entry)) {
+                    addClass(ClassFileReader.read(stream, false));
+                }
+            }
+        }
+        return this;
+    }
+
+    private void addClass(ClassFileReader.ClassInfo info) {
+        int access = info.getAccess();
+        if ((access & ClassFileReader.ACC_PUBLIC) == 0 ||
+                (access & ClassFileReader.ACC_INTERFACE) != 0 ||
+                info.getName().indexOf('$') != -1) {
+            return;
+        }
+        String superName = info.getSuperName();
+        addClass(info.getName().replace('/', '.'),
+                superName == null ? null : superName.replace('/', '.'),
+                (access & ClassFileReader.ACC_ABSTRACT) != 0);
+    }
+
+    /**
+     * Adds the resources and declare-styleables of an R.txt file as loaded by
+     * {@link SymbolLoader}
+     */
+    public XmlIndexBuilder addSymbols(@NonNull File symbolFile) throws IOException {
+        SymbolLoader loader = new SymbolLoader(symbolFile, ILogger.EMPTY);
+        loader.load();
+        Table<String, String, SymbolLoader.SymbolEntry> symbols = loader.getSymbols();
+        for (Map.Entry<String, Map<String, SymbolLoader.SymbolEntry>> row :
+                symbols.rowMap().entrySet()) {
+            String type = row.getKey();
+            if (STYLEABLE.equals(type)) {
+                Set<String> styleables = new HashSet<>();
+                List<String> indexes = new ArrayList<>();
+                for (SymbolLoader.SymbolEntry entry : row.getValue().values()) {
+                    if ("int[]".equals(entry.getType())) {
+                        styleables.add(entry.getName());
+                    } else {
+                        indexes.add(entry.getName());
+                    }
+                }
+                addStyleables(styleables, indexes, false);
+                continue;
+            }
+            for (String name : row.getValue().keySet()) {
+                if ("style".equals(type)) {
+                    name = name.replace('_', '.');
+                }
+                addResource(type, name);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * The attributes of a declare-styleable are named {@code <styleable>_<attribute>}, the
+     * styleable is the longest one whose name is a prefix of the field.
+     *
+     * @param framework whether the attributes are declared by the framework, otherwise only
+     *                  the ones prefixed with {@code android_} are in the android namespace
+     */
+    private void addStyleables(Set<String> styleables, List<String> indexes,
+                               boolean framework) {
+        for (String styleable : styleables) {
+            getOrCreate(mStyleables, styleable);
+        }
+        for (String index : indexes) {
+            for (int i = index.lastIndexOf('_'); i > 0; i = index.lastIndexOf('_', i - 1)) {
+                String styleable = index.substring(0, i);
+                if (!styleables.contains(styleable)) {
+                    continue;
+                }
+                String attribute = index.substring(i + 1);
+                String qualified;
+                if (framework) {
+                    qualified = XmlIndex.ANDROID_NAMESPACE + ":" + attribute;
+                } else if (attribute.startsWith("android_")) {
+                    qualified = XmlIndex.ANDROID_NAMESPACE + ":" +
+                            attribute.substring("android_".length());
+                } else {
+                    qualified = XmlIndex.APP_NAMESPACE + ":" + attribute;
+                }
+                getOrCreate(mStyleables, styleable).add(qualified);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Adds the attributes declared in a values file, such as the attrs.xml of the platform or
+     * the values.xml of a library, along with their formats and enum or flag values
+     *
+     * @param framework whether the file is from the platform, its attributes are in the
+     *                  android namespace
+     */
+    public XmlIndexBuilder addValues(@NonNull File file, boolean framework) throws IOException {
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.newSAXParser().parse(file, new ValuesHandler(framework));
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Unable to parse " + file, e);
+        }
+        return this;
+    }
+
+    private class ValuesHandler extends DefaultHandler {
+
+        private final String mNamespace;
+        private String mStyleable;
+        private String mAttribute;
+        private int mFormats;
+        private final List<String> mValues = new ArrayList<>();
+
+        ValuesHandler(boolean framework) {
+            mNamespace = framework ? XmlIndex.ANDROID_NAMESPACE : XmlIndex.APP_NAMESPACE;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                                 Attributes attributes) {
+            String name = attributes.getValue("name");
+            switch (qName) {
+                case "declare-styleable":
+                    mStyleable = name;
+                    break;
+                case "attr":
+                    if (name == null) {
+                        break;
+                    }
+                    mAttribute = name.indexOf(':') == -1 ? mNamespace + ":" + name : name;
+                    mFormats = parseFormats(attributes.getValue("format"));
+                    mValues.clear();
+                    if (mStyleable != null) {
+                        addStyleable(mStyleable, Arrays.asList(mAttribute));
+                    }
+                    break;
+                case "enum":
+                case "flag":
+                    if (mAttribute != null && name != null) {
+                        mFormats |= "enum".equals(qName) ? XmlIndex.FORMAT_ENUM
+                                : XmlIndex.FORMAT_FLAGS;
+                        mValues.add(name);
+                    }
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (qName) {
+                case "declare-styleable":
+                    mStyleable = null;
+                    break;
+                case "attr":
+                    if (mAttribute != null) {
+                        addAttribute(mAttribute, mFormats, mValues);
+                        mAttribute = null;
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static int parseFormats(@Nullable String format) {
+        if (format == null) {
+            return 0;
+        }
+        int formats = 0;
+        for (String name : format.split("\\|")) {
+            Integer value = FORMATS.get(name.trim());
+            if (value != null) {
+                formats |= value;
+            }
+        }
+        return formats;
+    }
+
+    public XmlIndex build() {
+        // only the classes that extend View are kept
+        Map<String, Boolean> isView = new HashMap<>();
+        List<String> views = new ArrayList<>();
+        for (String name : mSuperClasses.keySet()) {
+            if (isView(name, isView)) {
+                views.add(name);
+            }
+        }
+        String[] viewNames = views.toArray(new String[0]);
+        Arrays.sort(viewNames);
+        int[] viewSupers = new int[viewNames.length];
+        boolean[] viewAbstract = new boolean[viewNames.length];
+        for (int i = 0; i < viewNames.length; i++) {
+            String superName = mSuperClasses.get(viewNames[i]);
+            viewSupers[i] = superName == null ? -1 : Arrays.binarySearch(viewNames, superName);
+            if (viewSupers[i] < 0) {
+                viewSupers[i] = -1;
+            }
+            viewAbstract[i] = mAbstractClasses.contains(viewNames[i]);
+        }
+
+        String[] styleables = mStyleables.keySet().toArray(new String[0]);
+        String[][] styleableAttributes = new String[styleables.length][];
+        for (int i = 0; i < styleables.length; i++) {
+            styleableAttributes[i] = mStyleables.get(styleables[i]).toArray(new String[0]);
+        }
+
+        String[] attributes = mAttributeFormats.keySet().toArray(new String[0]);
+        int[] attributeFormats = new int[attributes.length];
+        String[][] attributeValues = new String[attributes.length][];
+        for (int i = 0; i < attributes.length; i++) {
+            attributeFormats[i] = mAttributeFormats.get(attributes[i]);
+            attributeValues[i] = mAttributeValues.get(attributes[i]).toArray(new String[0]);
+        }
+
+        String[] resourceTypes = mResources.keySet().toArray(new String[0]);
+        String[][] resourceNames = new String[resourceTypes.length][];
+        for (int i = 0; i < resourceTypes.length; i++) {
+            resourceNames[i] = mResources.get(resourceTypes[i]).toArray(new String[0]);
+        }
+
+        return new XmlIndex(viewNames, viewSupers, viewAbstract, styleables,
+                styleableAttributes, attributes, attributeFormats, attributeValues,
+                resourceTypes, resourceNames);
+    }
+
+    private boolean isView(String name, Map<String, Boolean> cache) {
+        List<String> visited = new ArrayList<>();
+        boolean result = false;
+        String current = name;
+        while (current != null) {
+            Boolean cached = cache.get(current);
+            if (cached != null) {
+                result = cached;
+                break;
+            }
+            if (VIEW.equals(current)) {
+                result = true;
+                break;
+            }
+            if (!mSuperClasses.containsKey(current)) {
+                break;
+            }
+            visited.add(current);
+            current = mSuperClasses.get(current);
+        }
+        for (String visitedName : visited) {
+            cache.put(visitedName, result);
+        }
+        return result || VIEW.equals(name);
+    }
+
+    private static Set<String> getOrCreate(Map<String, Set<String>> map, String key) {
+        Set<String> set = map.get(key);
+        if (set == null) {
+            set = new TreeSet<>();
+            map.put(key, set);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,188 @@
+package com.tyron.completion.xml.index;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.builder.project.cache.PersistentCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the {@link XmlIndex} of the android.jar and libraries of a module. The index is built
+ * once for the same set of files and written to the cache directory, so it is only read on the
+ * next start. The R.txt of the module changes whenever its resources do, it is kept in a
+ * separate index that is loaded again when the file changes.
+ */
+public class XmlIndexManager {
+
+    private static final String TAG = XmlIndexManager.class.getSimpleName();
+
+    private static final String PREFIX = "xml-index-";
+    private static final String EXTENSION = ".bin";
+
+    /**
+     * Incremented whenever the contents of the index change
+     */
+    private static final int VERSION = 1;
+
+    private static XmlIndexManager sInstance;
+
+    public static synchronized XmlIndexManager getInstance() {
+        if (sInstance == null) {
+            sInstance = new XmlIndexManager();
+        }
+        return sInstance;
+    }
+
+    private String mFingerprint;
+    private XmlIndex mIndex;
+
+    private File mSymbolFile;
+    private long mSymbolFileModified;
+    private XmlIndex mSymbolIndex = XmlIndex.EMPTY;
+
+    /**
+     * @param androidJar the android.jar of the platform, the attrs.xml of the platform is used
+     *                   as well if it is found next to it
+     * @param libraries  the classes.jar of each library, their R.txt and res directory are
+     *                   expected next to them
+     * @param cacheDir   where the index is written
+     */
+    public synchronized XmlIndex getIndex(@NonNull File androidJar,
+                                          @NonNull List<File> libraries,
+                                          @NonNull File cacheDir) throws IOException {
+        File frameworkAttrs = getFrameworkAttrs(androidJar);
+        List<File> inputs = new ArrayList<>();
+        inputs.add(androidJar);
+        inputs.add(frameworkAttrs);
+        for (File library : libraries) {
+            inputs.add(library);
+            inputs.add(new File(library.getParentFile(), "R.txt"));
+        }
+        String fingerprint = PersistentCache.fingerprint(inputs, VERSION);
+        if (mIndex != null && fingerprint.equals(mFingerprint)) {
+            return mIndex;
+        }
+
+        File file = new File(cacheDir, PREFIX + fingerprint + EXTENSION);
+        XmlIndex index = null;
+        if (file.exists()) {
+            try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+                index = XmlIndex.read(stream);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to read " + file + ", building it again", e);
+            }
+        }
+        if (index == null) {
+            index = build(androidJar, frameworkAttrs, libraries);
+            write(index, file);
+        }
+        mFingerprint = fingerprint;
+        mIndex = index;
+        return index;
+    }
+
+    /**
+     * @return the index of the R.txt of the module, or an empty index if it does not exist yet
+     */
+    public synchronized XmlIndex getSymbolIndex(@NonNull File symbolFile) {
+        if (!symbolFile.equals(mSymbolFile) ||
+                symbolFile.lastModified() != mSymbolFileModified) {
+            mSymbolFile = symbolFile;
+            mSymbolFileModified = symbolFile.lastModified();
+            mSymbolIndex = XmlIndex.EMPTY;
+            if (symbolFile.exists()) {
+                try {
+                    mSymbolIndex = new XmlIndexBuilder().addSymbols(symbolFile).build();
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to load " + symbolFile, e);
+                }
+            }
+        }
+        return mSymbolIndex;
+    }
+
+    private XmlIndex build(File androidJar, File frameworkAttrs, List<File> libraries)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        XmlIndexBuilder builder = new XmlIndexBuilder();
+        builder.addFrameworkJar(androidJar);
+        if (frameworkAttrs.exists()) {
+            builder.addValues(frameworkAttrs, true);
+        }
+        for (File library : libraries) {
+            File parent = library.getParentFile();
+            try {
+                if (library.exists()) {
+                    builder.addClasses(library);
+                }
+                if (parent == null) {
+                    continue;
+                }
+                File symbols = new File(parent, "R.txt");
+                if (symbols.exists()) {
+                    builder.addSymbols(symbols);
+                }
+                File values = new File(parent, "res/values/values.xml");
+                if (values.exists()) {
+                    builder.addValues(values, false);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to index library " + library, e);
+            }
+        }
+        XmlIndex index = builder.build();
+        Log.d(TAG, "Indexed " + (libraries.size() + 1) + " jars in " +
+                (System.currentTimeMillis() - start) + " ms");
+        return index;
+    }
+
+    private void write(XmlIndex index, File file) {
+        File parent = file.getParentFile();
+        if (parent == null || (!parent.exists() && !parent.mkdirs())) {
+            return;
+        }
+        File temp = new File(parent, file.getName() + ".tmp");
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(temp))) {
+            index.write(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + file, e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+
+        // indexes of the previous libraries are not needed anymore
+        File[] files = parent.listFiles((dir, name) -> name.startsWith(PREFIX) &&
+                name.endsWith(EXTENSION) && !name.equals(file.getName()));
+        if (files != null) {
+            for (File old : files) {
+                //noinspection ResultOfMethodCallIgnored
+                old.delete();
+            }
+        }
+    }
+
+    /**
+     * The android.jar of an SDK platform has the attributes of the framework at
+     * {@code data/res/values/attrs.xml} next to it
+     */
+    private static File getFrameworkAttrs(File androidJar) {
+        return new File(androidJar.getParentFile(), "data/res/values/attrs.xml");
+    }
+}
@@ -0,0 +1,123 @@
+package com.tyron.completion.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.completion.model.CompletionItem;
+import com.tyron.completion.model.CompletionList;
+import com.tyron.completion.xml.index.XmlIndex;
+import com.tyron.completion.xml.index.XmlIndexBuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class XmlCompletionProviderTest {
+
+    private List<XmlIndex> mIndexes;
+
+    @Before
+    public void setup() {
+        XmlIndex framework = new XmlIndexBuilder()
+                .addClass("android.view.View", "java.lang.Object", false)
+                .addClass("android.view.ViewGroup", "android.view.View", true)
+                .addClass("android.widget.TextView", "android.view.View", false)
+                .addClass("android.widget.LinearLayout", "android.view.ViewGroup", false)
+                .addClass("com.example.Badge", "android.widget.TextView", false)
+                .addStyleable("View", Arrays.asList("android:id", "android:visibility"))
+                .addStyleable("TextView", Collections.singletonList("android:text"))
+                .addStyleable("LinearLayout_Layout",
+                        Collections.singletonList("android:layout_weight"))
+                .addStyleable("ViewGroup_MarginLayout",
+                        Collections.singletonList("android:layout_margin"))
+                .addAttribute("android:visibility", XmlIndex.FORMAT_ENUM,
+                        Arrays.asList("visible", "invisible", "gone"))
+                .addResource("android:color", "black")
+                .addResource("drawable", "ic_launcher")
+                .build();
+        mIndexes = Collections.singletonList(framework);
+    }
+
+    @Test
+    public void testContext() {
+        String text = "<LinearLayout>\n    <!-- <Ignored> -->\n    <TextView android:text=\"a\"" +
+                " android:visibility=\"go";
+        XmlCompletionContext context = XmlCompletionContext.of(text, text.length());
+        assertEquals(XmlCompletionContext.Kind.ATTRIBUTE_VALUE, context.getKind());
+        assertEquals("TextView", context.getTag());
+        assertEquals("LinearLayout", context.getParentTag());
+        assertEquals("android:visibility", context.getAttribute());
+        assertEquals("go", context.getPrefix());
+
+        text = "<LinearLayout>\n<TextView/>\n<View></View>\n</";
+        context = XmlCompletionContext.of(text, text.length());
+        assertEquals(XmlCompletionContext.Kind.CLOSING_TAG, context.getKind());
+        assertEquals("LinearLayout", context.getParentTag());
+
+        text = "<TextView>text";
+        assertEquals(XmlCompletionContext.Kind.NONE,
+                XmlCompletionContext.of(text, text.length()).getKind());
+    }
+
+    @Test
+    public void testTags() {
+        String text = "<LinearLayout>\n    <Te";
+        List<String> labels = labels(XmlCompletionProvider.complete(mIndexes, text, "<Te",
+                text.length()));
+        assertEquals(Collections.singletonList("TextView"), labels);
+
+        // views outside of the implicit packages are written with their package
+        text = "<Bad";
+        CompletionList list = XmlCompletionProvider.complete(mIndexes, text, "<Bad",
+                text.length());
+        assertEquals("<com.example.Badge", list.items.get(0).commitText);
+    }
+
+    @Test
+    public void testAttributes() {
+        String text = "<LinearLayout>\n    <TextView android:";
+        CompletionList list = XmlCompletionProvider.complete(mIndexes, text, "android:",
+                text.length());
+        List<String> labels = labels(list);
+        assertTrue(labels.contains("android:text"));
+        assertTrue(labels.contains("android:id"));
+        // layout params of the parent
+        assertTrue(labels.contains("android:layout_weight"));
+        assertTrue(labels.contains("android:layout_margin"));
+
+        CompletionItem item = list.items.get(labels.indexOf("android:text"));
+        assertEquals("android:text=\"\"", item.commitText);
+        assertEquals(item.commitText.length() - 1, item.cursorOffset);
+    }
+
+    @Test
+    public void testValues() {
+        String text = "<TextView android:visibility=\"g";
+        List<String> labels = labels(XmlCompletionProvider.complete(mIndexes, text,
+                "android:visibility=\"g", text.length()));
+        assertEquals(Collections.singletonList("gone"), labels);
+
+        text = "<TextView android:background=\"@android:color/bl";
+        CompletionList list = XmlCompletionProvider.complete(mIndexes, text,
+                "android:background=\"@android:color/bl", text.length());
+        assertEquals("android:background=\"@android:color/black",
+                list.items.get(0).commitText);
+
+        text = "<TextView android:background=\"@dr";
+        labels = labels(XmlCompletionProvider.complete(mIndexes, text,
+                "android:background=\"@dr", text.length()));
+        assertEquals("@drawable/", labels.get(0));
+    }
+
+    private static List<String> labels(CompletionList list) {
+        List<String> labels = new ArrayList<>();
+        for (CompletionItem item : list.items) {
+            labels.add(item.label);
+        }
+        return labels;
+    }
+}
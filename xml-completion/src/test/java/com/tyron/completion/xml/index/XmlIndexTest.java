@@ -0,0 +1,89 @@
+package com.tyron.completion.xml.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class XmlIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testLibrary() throws Exception {
+        File symbols = mFolder.newFile("R.txt");
+        FileUtils.writeStringToFile(symbols, "int drawable ic_launcher 0x7f010000\n" +
+                "int style Theme_App 0x7f020000\n" +
+                "int[] styleable Badge { 0x0101014f, 0x7f030000 }\n" +
+                "int styleable Badge_android_text 0\n" +
+                "int styleable Badge_badgeGravity 1\n" +
+                "int[] styleable Badge_Layout { 0x7f030001 }\n" +
+                "int styleable Badge_Layout_layout_anchor 0\n", StandardCharsets.UTF_8);
+        File values = mFolder.newFile("values.xml");
+        FileUtils.writeStringToFile(values, "<resources>\n" +
+                "    <declare-styleable name=\"Badge\">\n" +
+                "        <attr name=\"badgeGravity\" format=\"integer\">\n" +
+                "            <flag name=\"top\" value=\"1\"/>\n" +
+                "            <flag name=\"end\" value=\"2\"/>\n" +
+                "        </attr>\n" +
+                "        <attr name=\"android:text\"/>\n" +
+                "    </declare-styleable>\n" +
+                "</resources>\n", StandardCharsets.UTF_8);
+
+        XmlIndex index = new XmlIndexBuilder()
+                .addClass("android.view.View", "java.lang.Object", false)
+                .addClass("com.example.Badge", "android.view.View", false)
+                .addClass("com.example.Helper", "java.lang.Object", false)
+                .addSymbols(symbols)
+                .addValues(values, false)
+                .build();
+
+        // written and read back the same
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        index = XmlIndex.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(Arrays.asList("android.view.View", "com.example.Badge"), index.getViews());
+        assertEquals("com.example.Badge", index.resolveView("com.example.Badge"));
+        assertEquals("android.view.View", index.resolveView("View"));
+        assertNull(index.resolveView("com.example.Helper"));
+        assertEquals(Arrays.asList("com.example.Badge", "android.view.View"),
+                index.getViewHierarchy("com.example.Badge"));
+
+        assertEquals(Arrays.asList("android:text", "app:badgeGravity"),
+                index.getStyleableAttributes("Badge"));
+        assertEquals(Collections.singletonList("app:layout_anchor"),
+                index.getStyleableAttributes("Badge_Layout"));
+        assertEquals(XmlIndex.FORMAT_INTEGER | XmlIndex.FORMAT_FLAGS,
+                index.getAttributeFormats("app:badgeGravity"));
+        assertEquals(Arrays.asList("end", "top"), index.getAttributeValues("app:badgeGravity"));
+
+        assertEquals(Collections.singletonList("ic_launcher"), index.getResources("drawable"));
+        assertEquals(Collections.singletonList("Theme.App"), index.getResources("style"));
+    }
+
+    @Test
+    public void testClassFileReader() throws Exception {
+        try (InputStream stream = ClassLoader.getSystemResourceAsStream(
+                "java/util/ArrayList.class")) {
+            ClassFileReader.ClassInfo info = ClassFileReader.read(stream, true);
+            assertEquals("java/util/ArrayList", info.getName());
+            assertEquals("java/util/AbstractList", info.getSuperName());
+            assertEquals(info.getFieldNames().size(), info.getFieldDescriptors().size());
+            assertEquals("J", info.getFieldDescriptors().get(
+                    info.getFieldNames().indexOf("serialVersionUID")));
+        }
+    }
+}